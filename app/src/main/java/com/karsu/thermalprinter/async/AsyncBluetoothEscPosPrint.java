@@ -8,7 +8,7 @@ package com.karsu.thermalprinter.async;
  *
  * Features:
  * - Auto-selects first paired Bluetooth printer if no device specified
- * - Handles Bluetooth connection establishment
+ * - Connection opened, or reused from the previous job, by PrinterSessionManager
  * - Uses CompletableFuture for async operations
  * - Falls back to base class printing logic after connection
  *
@@ -20,7 +20,6 @@ import android.content.Context;
 
 import com.dantsu.escposprinter.connection.DeviceConnection;
 import com.dantsu.escposprinter.connection.bluetooth.BluetoothPrintersConnections;
-import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 
 import timber.log.Timber;
 
@@ -65,15 +64,6 @@ public class AsyncBluetoothEscPosPrint extends AsyncEscPosPrint {
             );
             newPrinterData.setTextsToPrint(printerData.getTextsToPrint());
             printersData[0] = newPrinterData;
-        } else {
-            // Connect to specified device
-            try {
-                Timber.d("Connecting to specified Bluetooth device");
-                deviceConnection.connect();
-            } catch (EscPosConnectionException e) {
-                Timber.e(e, "Bluetooth connection failed");
-                return new PrinterStatus(printerData, FINISH_PRINTER_DISCONNECTED);
-            }
         }
 
         // Delegate to base class for actual printing
@@ -12,6 +12,7 @@ package com.karsu.thermalprinter.async;
  * - Functional callback interface for print completion
  * - Error handling for connection, parsing, encoding, and barcode errors
  * - Support for multiple texts printing with delay
+ * - Printer connections kept open between jobs by PrinterSessionManager
  *
  * Status codes:
  * - FINISH_SUCCESS: Print completed successfully
@@ -37,6 +38,7 @@ import android.widget.TextView;
 import com.dantsu.escposprinter.EscPosCharsetEncoding;
 import com.dantsu.escposprinter.EscPosPrinter;
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.PrinterSessionManager;
 import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
@@ -125,12 +127,15 @@ public class AsyncEscPosPrint {
 
         AsyncEscPosPrinter printerData = printersData[0];
 
-        try {
-            DeviceConnection deviceConnection = printerData.getPrinterConnection();
+        if (printerData.getPrinterConnection() == null) {
+            return new PrinterStatus(null, FINISH_NO_PRINTER);
+        }
 
-            if (deviceConnection == null) {
-                return new PrinterStatus(null, FINISH_NO_PRINTER);
-            }
+        DeviceConnection deviceConnection = null;
+        boolean printed = false;
+
+        try {
+            deviceConnection = acquireConnection(printerData);
 
             EscPosPrinter printer = new EscPosPrinter(
                 deviceConnection,
@@ -152,6 +157,7 @@ public class AsyncEscPosPrint {
             updateProgress(PROGRESS_PRINTED);
             Timber.i("Print completed successfully");
 
+            printed = true;
             return new PrinterStatus(printerData, FINISH_SUCCESS);
 
         } catch (EscPosConnectionException e) {
@@ -170,6 +176,30 @@ public class AsyncEscPosPrint {
             Timber.e(e, "Print interrupted");
             Thread.currentThread().interrupt();
             return new PrinterStatus(printerData, FINISH_PRINTER_DISCONNECTED);
+        } finally {
+            releaseConnection(deviceConnection, printed);
+        }
+    }
+
+    /**
+     * Get an open connection to the printer, the one of the previous job is reused when it still works.
+     */
+    protected DeviceConnection acquireConnection(AsyncEscPosPrinter printerData) throws EscPosConnectionException {
+        return PrinterSessionManager.getDefault().acquire(printerData.getPrinterConnection());
+    }
+
+    /**
+     * Give back the connection to the session manager. After a failed job, the connection may still
+     * hold unsent data, so it is closed.
+     */
+    protected void releaseConnection(DeviceConnection deviceConnection, boolean printed) {
+        if (deviceConnection == null) {
+            return;
+        }
+        if (printed) {
+            PrinterSessionManager.getDefault().release(deviceConnection);
+        } else {
+            PrinterSessionManager.getDefault().invalidate(deviceConnection);
         }
     }
 
@@ -11,6 +11,7 @@ package com.karsu.thermalprinter.async;
  * - Supports USB OTG connections
  * - Batch mode for faster USB transfers (buffers all data before sending)
  * - Uses ExecutorService for async operations
+ * - Connection kept open between jobs by PrinterSessionManager
  * - Inherits base class progress dialog and error handling
  *
  * @author Erkan Kaplan
@@ -59,12 +60,15 @@ public class AsyncUsbEscPosPrint extends AsyncEscPosPrint {
 
         AsyncEscPosPrinter printerData = printersData[0];
 
-        try {
-            DeviceConnection deviceConnection = printerData.getPrinterConnection();
+        if (printerData.getPrinterConnection() == null) {
+            return new PrinterStatus(null, FINISH_NO_PRINTER);
+        }
 
-            if (deviceConnection == null) {
-                return new PrinterStatus(null, FINISH_NO_PRINTER);
-            }
+        DeviceConnection deviceConnection = null;
+        boolean printed = false;
+
+        try {
+            deviceConnection = acquireConnection(printerData);
 
             // Enable batch mode for USB - all data will be buffered
             Timber.i("USB: Enabling batch mode for optimized transfer");
@@ -93,6 +97,7 @@ public class AsyncUsbEscPosPrint extends AsyncEscPosPrint {
             updateProgress(PROGRESS_PRINTED);
             Timber.i("USB: Print completed successfully with batch mode");
 
+            printed = true;
             return new PrinterStatus(printerData, FINISH_SUCCESS);
 
         } catch (EscPosConnectionException e) {
@@ -107,6 +112,12 @@ public class AsyncUsbEscPosPrint extends AsyncEscPosPrint {
         } catch (EscPosBarcodeException e) {
             Timber.e(e, "USB barcode error");
             return new PrinterStatus(printerData, FINISH_BARCODE_ERROR);
+        } finally {
+            // The connection goes back to the session manager, the next user does not expect the batch mode
+            if (deviceConnection != null) {
+                deviceConnection.setBatchMode(false);
+            }
+            releaseConnection(deviceConnection, printed);
         }
     }
 }
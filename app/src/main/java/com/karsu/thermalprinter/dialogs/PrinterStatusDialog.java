@@ -13,6 +13,7 @@ package com.karsu.thermalprinter.dialogs;
  * - Cash drawer status
  * - Error detection
  * - Ready state
+ * - Live updates with Automatic Status Back while the dialog is shown
  *
  * @author Erkan Kaplan
  * @date 2026-01-31
@@ -30,6 +31,7 @@ import android.widget.Toast;
 
 import com.dantsu.escposprinter.EscPosPrinter;
 import com.dantsu.escposprinter.PrinterStatus;
+import com.dantsu.escposprinter.PrinterStatusListener;
 import com.karsu.thermalprinter.R;
 
 import java.util.concurrent.ExecutorService;
@@ -69,16 +71,8 @@ public class PrinterStatusDialog {
                 try {
                     PrinterStatus status = printer.queryStatus();
                     if (status != null) {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("Online: ").append(status.isOnline()).append("\n");
-                        sb.append("Paper End: ").append(status.isPaperEnd()).append("\n");
-                        sb.append("Paper Near End: ").append(status.isPaperNearEnd()).append("\n");
-                        sb.append("Cover Open: ").append(status.isCoverOpen()).append("\n");
-                        sb.append("Drawer Open: ").append(status.isDrawerOpen()).append("\n");
-                        sb.append("Error: ").append(status.isErrorOccurred()).append("\n");
-                        sb.append("Ready: ").append(status.isReady());
-
-                        mainHandler.post(() -> txtPrinterStatus.setText(sb.toString()));
+                        String text = formatStatus(status);
+                        mainHandler.post(() -> txtPrinterStatus.setText(text));
                     } else {
                         mainHandler.post(() -> txtPrinterStatus.setText("Status: No response from printer"));
                     }
@@ -88,13 +82,51 @@ public class PrinterStatusDialog {
             });
         });
 
+        // The printer tells its status changes by itself while the dialog is shown
+        PrinterStatusListener statusListener = (status, previous) -> {
+            String text = formatStatus(status);
+            mainHandler.post(() -> txtPrinterStatus.setText(text));
+        };
+        if (printer != null && printer.supportsStatusQuery()) {
+            executor.execute(() -> {
+                try {
+                    printer.enableAutomaticStatusBack(statusListener);
+                } catch (Exception e) {
+                    showToast("Automatic status not available: " + e.getMessage());
+                }
+            });
+        }
+
         new AlertDialog.Builder(context)
                 .setTitle("Printer Status")
                 .setView(dialogView)
                 .setPositiveButton("Close", null)
+                .setOnDismissListener(dialog -> {
+                    if (printer != null) {
+                        executor.execute(() -> {
+                            try {
+                                printer.disableAutomaticStatusBack(statusListener);
+                            } catch (Exception e) {
+                                // Printer already disconnected
+                            }
+                        });
+                    }
+                })
                 .show();
     }
 
+    private String formatStatus(PrinterStatus status) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Online: ").append(status.isOnline()).append("\n");
+        sb.append("Paper End: ").append(status.isPaperEnd()).append("\n");
+        sb.append("Paper Near End: ").append(status.isPaperNearEnd()).append("\n");
+        sb.append("Cover Open: ").append(status.isCoverOpen()).append("\n");
+        sb.append("Drawer Open: ").append(status.isDrawerOpen()).append("\n");
+        sb.append("Error: ").append(status.isErrorOccurred()).append("\n");
+        sb.append("Ready: ").append(status.isReady());
+        return sb.toString();
+    }
+
     private void showToast(String message) {
         mainHandler.post(() -> Toast.makeText(context, message, Toast.LENGTH_SHORT).show());
     }
@@ -56,6 +56,9 @@ dependencies {
     implementation(libs.zxing.core)
     api(libs.timber)
     testImplementation(libs.junit)
+    testImplementation(libs.json)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso)
 }
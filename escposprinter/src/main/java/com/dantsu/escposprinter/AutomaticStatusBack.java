@@ -0,0 +1,104 @@
+package com.dantsu.escposprinter;
+
+import com.dantsu.escposprinter.connection.DeviceInputReader;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import timber.log.Timber;
+
+/**
+ * Receives the Automatic Status Back frames (GS a) among the printer data and tells the status changes to the
+ * listeners.
+ * <p>
+ * A frame is 4 bytes : the first one matches 0xx1xx00, the three others 0xx0xxxx. Their pattern does not match the
+ * DLE EOT replies nor XON/XOFF, so the other bytes are left to the replies.
+ */
+public class AutomaticStatusBack implements DeviceInputReader.Listener {
+
+    /**
+     * GS a n with drawer, online/offline, error and paper sensor status enabled.
+     */
+    public static final byte[] ENABLE = new byte[]{0x1D, 0x61, 0x0F};
+    public static final byte[] DISABLE = new byte[]{0x1D, 0x61, 0x00};
+
+    private final CopyOnWriteArrayList<PrinterStatusListener> listeners = new CopyOnWriteArrayList<PrinterStatusListener>();
+    private final byte[] frame = new byte[4];
+    private int frameLength = 0;
+    private volatile PrinterStatus status = null;
+
+    /**
+     * @param listener Listener of the status changes
+     * @return Fluent interface
+     */
+    public AutomaticStatusBack addListener(PrinterStatusListener listener) {
+        this.listeners.addIfAbsent(listener);
+        return this;
+    }
+
+    /**
+     * @param listener Listener added by addListener()
+     * @return Fluent interface
+     */
+    public AutomaticStatusBack removeListener(PrinterStatusListener listener) {
+        this.listeners.remove(listener);
+        return this;
+    }
+
+    public boolean hasListeners() {
+        return !this.listeners.isEmpty();
+    }
+
+    /**
+     * @return Last status sent by the printer, null if no frame was received
+     */
+    public PrinterStatus getStatus() {
+        return this.status;
+    }
+
+    @Override
+    public boolean onByteReceived(int b) {
+        if (this.frameLength == 0) {
+            if (!PrinterStatus.isAutomaticStatusBackStart((byte) b)) {
+                return false;
+            }
+        } else if ((b & 0x90) != 0) {
+            // Not a frame, the bytes already taken are lost.
+            Timber.tag("AutomaticStatusBack").w("Incomplete ASB frame dropped");
+            this.frameLength = 0;
+            return this.onByteReceived(b);
+        }
+
+        this.frame[this.frameLength++] = (byte) b;
+        if (this.frameLength == this.frame.length) {
+            this.frameLength = 0;
+            this.onFrameReceived(this.frame.clone());
+        }
+        return true;
+    }
+
+    private void onFrameReceived(byte[] frame) {
+        PrinterStatus status = new PrinterStatus();
+        status.parseAutomaticStatusBack(frame);
+        PrinterStatus previous = this.status;
+        this.status = status;
+
+        if (status.isSameStatus(previous)) {
+            return;
+        }
+        for (PrinterStatusListener listener : this.listeners) {
+            try {
+                listener.onStatusChanged(status, previous);
+            } catch (RuntimeException e) {
+                Timber.tag("AutomaticStatusBack").e(e, "Status listener failed");
+            }
+        }
+    }
+
+    /**
+     * Forget the last status, the next frame is told to the listeners as the first one.
+     */
+    public void reset() {
+        this.frameLength = 0;
+        this.status = null;
+    }
+}
@@ -9,11 +9,17 @@ import com.dantsu.escposprinter.textparser.PrinterTextParser;
 import com.dantsu.escposprinter.textparser.PrinterTextParserColumn;
 import com.dantsu.escposprinter.textparser.IPrinterTextParserElement;
 import com.dantsu.escposprinter.textparser.PrinterTextParserLine;
+import com.dantsu.escposprinter.textparser.PrinterTextParserReader;
 import com.dantsu.escposprinter.textparser.PrinterTextParserString;
 
+import java.io.Reader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class EscPosPrinter extends EscPosPrinterSize {
 
     private EscPosPrinterCommands printer = null;
+    private ForkJoinPool parsingPool = null;
 
     /**
      * Create new instance of EscPosPrinter.
@@ -55,6 +61,31 @@ public class EscPosPrinter extends EscPosPrinterSize {
         }
     }
 
+    /**
+     * Create new instance of EscPosPrinter with the DPI, printing width, characters per line (font A) and default
+     * codepage of a printer model.
+     *
+     * @param printerConnection Instance of class which implement DeviceConnection
+     * @param profile           Profile of the printer model, see PrinterProfiles
+     */
+    public EscPosPrinter(DeviceConnection printerConnection, PrinterProfile profile) throws EscPosConnectionException {
+        this(printerConnection != null ? new EscPosPrinterCommands(printerConnection, profile.getCharsetEncoding()) : null, profile);
+    }
+
+    /**
+     * Create new instance of EscPosPrinter with the DPI, printing width and characters per line (font A) of a printer
+     * model.
+     *
+     * @param printer Instance of EscPosPrinterCommands
+     * @param profile Profile of the printer model, see PrinterProfiles
+     */
+    public EscPosPrinter(EscPosPrinterCommands printer, PrinterProfile profile) throws EscPosConnectionException {
+        this(printer, profile.getDpi(), profile.getPrinterWidthMM(), profile.getCharsPerLine());
+        if (this.printer != null) {
+            this.printer.setProfile(profile);
+        }
+    }
+
     /**
      * Close the connection with the printer.
      *
@@ -118,6 +149,17 @@ public class EscPosPrinter extends EscPosPrinterSize {
         return this;
     }
 
+    /**
+     * Parse the formatted texts in parallel, see PrinterTextParser.parse(ForkJoinPool). Only long texts are worth it.
+     *
+     * @param pool ForkJoinPool running the parsing, ForkJoinPool.commonPool() for instance. null to parse on the calling thread (default).
+     * @return Fluent interface
+     */
+    public EscPosPrinter setParsingPool(ForkJoinPool pool) {
+        this.parsingPool = pool;
+        return this;
+    }
+
     /**
      * Print a formatted text. Read the README.md for more information about text formatting options.
      *
@@ -151,32 +193,95 @@ public class EscPosPrinter extends EscPosPrinterSize {
             return this;
         }
 
-        PrinterTextParser textParser = new PrinterTextParser(this);
-        PrinterTextParserLine[] linesParsed = textParser
-                .setFormattedText(text)
-                .parse();
+        PrinterTextParser textParser = new PrinterTextParser(this).setFormattedText(text);
+        PrinterTextParserLine[] linesParsed = this.parsingPool != null ? textParser.parse(this.parsingPool) : textParser.parse();
+
+        ReentrantLock lock = this.printer.getConnection().getLock();
+        lock.lock();
+        try {
+            this.printer.reset();
+
+            for (PrinterTextParserLine line : linesParsed) {
+                this.printLine(line);
+            }
+
+            this.printer.feedPaper(dotsFeedPaper);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
 
-        this.printer.reset();
+    /**
+     * Print a formatted text read from a Reader. Lines are parsed and printed as soon as they are read, so the whole text
+     * is never kept in memory. Read the README.md for more information about text formatting options.
+     *
+     * @param text Reader of the formatted text to be printed. It is not closed.
+     * @return Fluent interface
+     */
+    public EscPosPrinter printFormattedText(Reader text) throws EscPosConnectionException, EscPosParserException, EscPosEncodingException, EscPosBarcodeException {
+        return this.printFormattedText(text, 20f);
+    }
 
-        for (PrinterTextParserLine line : linesParsed) {
-            PrinterTextParserColumn[] columns = line.getColumns();
+    /**
+     * Print a formatted text read from a Reader. Lines are parsed and printed as soon as they are read, so the whole text
+     * is never kept in memory. Read the README.md for more information about text formatting options.
+     *
+     * @param text        Reader of the formatted text to be printed. It is not closed.
+     * @param mmFeedPaper millimeter distance feed paper at the end.
+     * @return Fluent interface
+     */
+    public EscPosPrinter printFormattedText(Reader text, float mmFeedPaper) throws EscPosConnectionException, EscPosParserException, EscPosEncodingException, EscPosBarcodeException {
+        return this.printFormattedText(text, this.mmToPx(mmFeedPaper));
+    }
 
-            IPrinterTextParserElement lastElement = null;
-            for (PrinterTextParserColumn column : columns) {
-                IPrinterTextParserElement[] elements = column.getElements();
-                for (IPrinterTextParserElement element : elements) {
-                    element.print(this.printer);
-                    lastElement = element;
-                }
+    /**
+     * Print a formatted text read from a Reader. Lines are parsed and printed as soon as they are read, so the whole text
+     * is never kept in memory. Read the README.md for more information about text formatting options.
+     *
+     * @param text          Reader of the formatted text to be printed. It is not closed.
+     * @param dotsFeedPaper distance feed paper at the end.
+     * @return Fluent interface
+     */
+    public EscPosPrinter printFormattedText(Reader text, int dotsFeedPaper) throws EscPosConnectionException, EscPosParserException, EscPosEncodingException, EscPosBarcodeException {
+        if (this.printer == null || this.printerNbrCharactersPerLine == 0) {
+            return this;
+        }
+
+        PrinterTextParserReader textParserReader = new PrinterTextParserReader(new PrinterTextParser(this), text);
+
+        ReentrantLock lock = this.printer.getConnection().getLock();
+        lock.lock();
+        try {
+            this.printer.reset();
+
+            PrinterTextParserLine line;
+            while ((line = textParserReader.readLine()) != null) {
+                this.printLine(line);
             }
 
-            if (lastElement instanceof PrinterTextParserString) {
-                this.printer.newLine();
+            this.printer.feedPaper(dotsFeedPaper);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    private void printLine(PrinterTextParserLine line) throws EscPosConnectionException, EscPosEncodingException {
+        PrinterTextParserColumn[] columns = line.getColumns();
+
+        IPrinterTextParserElement lastElement = null;
+        for (PrinterTextParserColumn column : columns) {
+            IPrinterTextParserElement[] elements = column.getElements();
+            for (IPrinterTextParserElement element : elements) {
+                element.print(this.printer);
+                lastElement = element;
             }
         }
 
-        this.printer.feedPaper(dotsFeedPaper);
-        return this;
+        if (lastElement instanceof PrinterTextParserString) {
+            this.printer.newLine();
+        }
     }
 
     /**
@@ -212,8 +317,14 @@ public class EscPosPrinter extends EscPosPrinterSize {
             return this;
         }
 
-        this.printFormattedText(text, dotsFeedPaper);
-        this.printer.cutPaper();
+        ReentrantLock lock = this.printer.getConnection().getLock();
+        lock.lock();
+        try {
+            this.printFormattedText(text, dotsFeedPaper);
+            this.printer.cutPaper();
+        } finally {
+            lock.unlock();
+        }
 
         return this;
     }
@@ -241,8 +352,14 @@ public class EscPosPrinter extends EscPosPrinterSize {
             return this;
         }
 
-        this.printFormattedTextAndCut(text, dotsFeedPaper);
-        this.printer.openCashBox();
+        ReentrantLock lock = this.printer.getConnection().getLock();
+        lock.lock();
+        try {
+            this.printFormattedTextAndCut(text, dotsFeedPaper);
+            this.printer.openCashBox();
+        } finally {
+            lock.unlock();
+        }
         return this;
     }
 
@@ -523,6 +640,44 @@ public class EscPosPrinter extends EscPosPrinterSize {
         return this.printer.queryPaperStatus(timeout);
     }
 
+    /**
+     * Enable Automatic Status Back : the printer sends its status by itself when it changes, no polling is needed.
+     * Note: Not all printers support it.
+     *
+     * @param listener Listener of the status changes, see PrinterStatusAdapter
+     * @return Fluent interface
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public EscPosPrinter enableAutomaticStatusBack(PrinterStatusListener listener) throws EscPosConnectionException {
+        if (this.printer != null) {
+            this.printer.enableAutomaticStatusBack(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Remove a listener of the status changes, Automatic Status Back is disabled when no listener is left.
+     *
+     * @param listener Listener given to enableAutomaticStatusBack()
+     * @return Fluent interface
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public EscPosPrinter disableAutomaticStatusBack(PrinterStatusListener listener) throws EscPosConnectionException {
+        if (this.printer != null) {
+            this.printer.disableAutomaticStatusBack(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Get the last status sent by the printer with Automatic Status Back.
+     *
+     * @return PrinterStatus, null if nothing was received
+     */
+    public PrinterStatus getAutomaticStatus() {
+        return this.printer != null ? this.printer.getAutomaticStatus() : null;
+    }
+
     /**
      * Check if the printer connection supports status queries.
      *
@@ -8,6 +8,8 @@ import java.util.EnumMap;
 
 import com.dantsu.escposprinter.barcode.Barcode;
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.PrintTimingModel;
+import com.dantsu.escposprinter.connection.usb.UsbConnection;
 import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
@@ -19,6 +21,8 @@ import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
 
+import timber.log.Timber;
+
 public class EscPosPrinterCommands {
 
     public static final byte LF = 0x0A;
@@ -81,11 +85,26 @@ public class EscPosPrinterCommands {
     public static final int QRCODE_1 = 49;
     public static final int QRCODE_2 = 50;
 
+    /**
+     * Mechanical time of the autocutter in milliseconds.
+     */
+    private static final int CUT_PAPER_TIME = 100;
+
+    /**
+     * Time of the cash drawer pulse sent by openCashBox() in milliseconds : (on time + off time) x 2ms.
+     */
+    private static final int CASH_DRAWER_PULSE_TIME = (0x3C + 0xFF) * 2;
+
     private DeviceConnection printerConnection;
     private EscPosCharsetEncoding charsetEncoding;
     private boolean useEscAsteriskCommand;
     private boolean cashBoxEnabled = true;
-    private int imageProcessingDelayPerLine = 5; // milliseconds per line of image
+    private int imageProcessingDelayPerLine = 0; // extra milliseconds per line of image, see PrintTimingModel
+    private int lineSpacingDots = 30;
+    private int lineHeightDots = 0;
+    private AutomaticStatusBack automaticStatusBack = null;
+    private PrinterCapabilities capabilities = null;
+    private PrinterProfile profile = null;
 
 
     public static byte[] initGSv0Command(int bytesByLine, int bitmapHeight) {
@@ -226,6 +245,24 @@ public class EscPosPrinterCommands {
         return returnedBytes;
     }
 
+    /**
+     * Get the module size giving a QR code of about the same size as QRCodeDataToBytes(), to print it with GS ( k.
+     *
+     * @param data String data of the QR Code
+     * @param size QR code dots size
+     * @return Module size in dots, between 1 and 16
+     */
+    public static int QRCodeModuleSize(String data, int size) throws EscPosBarcodeException {
+        try {
+            EnumMap<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+            int width = Encoder.encode(data, ErrorCorrectionLevel.L, hints).getMatrix().getWidth();
+            return Math.max(1, Math.min(16, Math.round((float) size / (float) width)));
+        } catch (WriterException e) {
+            throw new EscPosBarcodeException("Unable to encode QR code");
+        }
+    }
+
     /**
      * Convert a string to QR Code byte array compatible with ESC/POS printer.
      *
@@ -453,6 +490,11 @@ public class EscPosPrinterCommands {
             return this;
         }
         this.printerConnection.write(lineSpacing);
+        if (lineSpacing.length == 3 && lineSpacing[0] == 0x1B && lineSpacing[1] == 0x33) {
+            this.lineSpacingDots = lineSpacing[2] & 0xFF;
+        } else if (Arrays.equals(lineSpacing, EscPosPrinterCommands.LINE_SPACING_DEFAULT)) {
+            this.lineSpacingDots = 30;
+        }
         return this;
     }
 
@@ -471,6 +513,7 @@ public class EscPosPrinterCommands {
         if (dots < 0) dots = 0;
         if (dots > 255) dots = 255;
         this.printerConnection.write(new byte[]{0x1B, 0x33, (byte) dots});
+        this.lineSpacingDots = dots;
         return this;
     }
 
@@ -484,6 +527,7 @@ public class EscPosPrinterCommands {
             return this;
         }
         this.printerConnection.write(LINE_SPACING_DEFAULT);
+        this.lineSpacingDots = 30;
         return this;
     }
 
@@ -588,6 +632,31 @@ public class EscPosPrinterCommands {
             return this;
         }
 
+        try {
+            return this.printText(text.getBytes(this.charsetEncoding.getName()), textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike);
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+            throw new EscPosEncodingException(e.getMessage());
+        }
+    }
+
+    /**
+     * Print text already encoded with the charset encoding of the printer.
+     *
+     * @param textBytes        Text to be printed, encoded with getCharsetEncoding()
+     * @param textSize         Set the text size. Use EscPosPrinterCommands.TEXT_SIZE_... constants
+     * @param textColor        Set the text color. Use EscPosPrinterCommands.TEXT_COLOR_... constants
+     * @param textReverseColor Set the background and text color. Use EscPosPrinterCommands.TEXT_COLOR_REVERSE_... constants
+     * @param textBold         Set the text weight. Use EscPosPrinterCommands.TEXT_WEIGHT_... constants
+     * @param textUnderline    Set the underlining of the text. Use EscPosPrinterCommands.TEXT_UNDERLINE_... constants
+     * @param textDoubleStrike Set the double strike of the text. Use EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_... constants
+     * @return Fluent interface
+     */
+    public EscPosPrinterCommands printText(byte[] textBytes, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike) {
+        if (!this.printerConnection.isConnected()) {
+            return this;
+        }
+
         if (textSize == null) {
             textSize = EscPosPrinterCommands.TEXT_SIZE_NORMAL;
         }
@@ -607,47 +676,46 @@ public class EscPosPrinterCommands {
             textDoubleStrike = EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_OFF;
         }
 
-        try {
-            byte[] textBytes = text.getBytes(this.charsetEncoding.getName());
-            this.printerConnection.write(this.charsetEncoding.getCommand());
-            //this.printerConnection.write(EscPosPrinterCommands.TEXT_FONT_A);
+        this.printerConnection.write(this.charsetEncoding.getCommand());
+        //this.printerConnection.write(EscPosPrinterCommands.TEXT_FONT_A);
 
 
-            if (!Arrays.equals(this.currentTextSize, textSize)) {
-                this.printerConnection.write(textSize);
-                this.currentTextSize = textSize;
-            }
+        if (!Arrays.equals(this.currentTextSize, textSize)) {
+            this.printerConnection.write(textSize);
+            this.currentTextSize = textSize;
+        }
 
-            if (!Arrays.equals(this.currentTextDoubleStrike, textDoubleStrike)) {
-                this.printerConnection.write(textDoubleStrike);
-                this.currentTextDoubleStrike = textDoubleStrike;
-            }
+        if (!Arrays.equals(this.currentTextDoubleStrike, textDoubleStrike)) {
+            this.printerConnection.write(textDoubleStrike);
+            this.currentTextDoubleStrike = textDoubleStrike;
+        }
 
-            if (!Arrays.equals(this.currentTextUnderline, textUnderline)) {
-                this.printerConnection.write(textUnderline);
-                this.currentTextUnderline = textUnderline;
-            }
+        if (!Arrays.equals(this.currentTextUnderline, textUnderline)) {
+            this.printerConnection.write(textUnderline);
+            this.currentTextUnderline = textUnderline;
+        }
 
-            if (!Arrays.equals(this.currentTextBold, textBold)) {
-                this.printerConnection.write(textBold);
-                this.currentTextBold = textBold;
-            }
+        if (!Arrays.equals(this.currentTextBold, textBold)) {
+            this.printerConnection.write(textBold);
+            this.currentTextBold = textBold;
+        }
 
-            if (!Arrays.equals(this.currentTextColor, textColor)) {
-                this.printerConnection.write(textColor);
-                this.currentTextColor = textColor;
-            }
+        if (!Arrays.equals(this.currentTextColor, textColor)) {
+            this.printerConnection.write(textColor);
+            this.currentTextColor = textColor;
+        }
 
-            if (!Arrays.equals(this.currentTextReverseColor, textReverseColor)) {
-                this.printerConnection.write(textReverseColor);
-                this.currentTextReverseColor = textReverseColor;
-            }
+        if (!Arrays.equals(this.currentTextReverseColor, textReverseColor)) {
+            this.printerConnection.write(textReverseColor);
+            this.currentTextReverseColor = textReverseColor;
+        }
 
-            this.printerConnection.write(textBytes);
+        this.printerConnection.write(textBytes);
 
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            throw new EscPosEncodingException(e.getMessage());
+        // GS ! n : character height is ((n & 0x0F) + 1) x 24 dots
+        int textHeight = 24 * ((textSize.length == 3 ? textSize[2] & 0x0F : 0) + 1);
+        if (textHeight > this.lineHeightDots) {
+            this.lineHeightDots = textHeight;
         }
 
         return this;
@@ -720,10 +788,74 @@ public class EscPosPrinterCommands {
     }
 
     /**
-     * Set the image processing delay per line.
-     * Increase this value if paper cuts happen before image printing completes.
+     * Use the capabilities of the printer : images with GS v 0 or ESC *, QR codes with GS ( k when the printer supports
+     * it. See probeCapabilities() and PrinterCapabilitiesCache.
+     *
+     * @param capabilities Capabilities of the printer, null to forget them
+     * @return Fluent interface
+     */
+    public EscPosPrinterCommands setCapabilities(PrinterCapabilities capabilities) {
+        this.capabilities = capabilities;
+        if (capabilities != null) {
+            this.useEscAsteriskCommand = !capabilities.isRasterImageSupported();
+        }
+        return this;
+    }
+
+    /**
+     * @return Capabilities of the printer, null if they were not set
+     */
+    public PrinterCapabilities getCapabilities() {
+        return this.capabilities;
+    }
+
+    /**
+     * Use the profile of the printer model : image command, timing model of the connection from the print speed and
+     * the receive buffer, chunks no larger than the receive buffer. See PrinterProfiles.
+     *
+     * @param profile Profile of the printer model, null to forget it
+     * @return Fluent interface
+     */
+    public EscPosPrinterCommands setProfile(PrinterProfile profile) {
+        this.profile = profile;
+        if (profile == null) {
+            return this;
+        }
+        this.useEscAsteriskCommand = !profile.supportsGraphics(PrinterProfile.GRAPHICS_RASTER_IMAGE);
+        if (profile.getPrintSpeed() > 0 && profile.getReceiveBufferSize() > 0) {
+            this.printerConnection.setTimingModel(new PrintTimingModel(profile.getReceiveBufferSize(), profile.getMillisPerDotLine()));
+        }
+        int chunkSize = this.printerConnection.getChunkSize();
+        if (profile.getReceiveBufferSize() > 0 && chunkSize > profile.getReceiveBufferSize()) {
+            this.printerConnection.setChunkSize(profile.getReceiveBufferSize());
+        }
+        return this;
+    }
+
+    /**
+     * @return Profile of the printer model, null if it was not set
+     */
+    public PrinterProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Check if QR codes can be printed with GS ( k. The probed capabilities are used first, then the model profile.
      *
-     * @param delayPerLine Delay in milliseconds per line of image (default: 5)
+     * @return true if the printer prints QR codes natively
+     */
+    public boolean isNativeQrCodeSupported() {
+        if (this.capabilities != null) {
+            return this.capabilities.isNativeQrCodeSupported();
+        }
+        return this.profile != null && this.profile.supportsSymbology(PrinterProfile.SYMBOLOGY_QRCODE);
+    }
+
+    /**
+     * Set an extra image processing delay per line, added to the printing time of the timing model.
+     * Increase this value if the printer is slower than its timing model when printing images.
+     *
+     * @param delayPerLine Delay in milliseconds per line of image (default: 0)
      * @return Fluent interface
      */
     public EscPosPrinterCommands setImageProcessingDelay(int delayPerLine) {
@@ -761,22 +893,15 @@ public class EscPosPrinterCommands {
             imageHeight = yH * 256 + yL;
         }
 
+        // The printing time of the image paces the next sendings, only if the printer buffer is full
+        this.printerConnection
+                .addDotLines(imageHeight)
+                .addPrintingTime(imageHeight * this.imageProcessingDelayPerLine);
+
         for (byte[] bytes : bytesToPrint) {
             this.printerConnection.write(bytes);
-            this.printerConnection.send();
-        }
-
-        // Add processing delay based on image height
-        // This ensures the printer has time to process and print the image
-        // before executing subsequent commands (like paper cut)
-        if (imageHeight > 0 && this.imageProcessingDelayPerLine > 0) {
-            int processingTime = imageHeight * this.imageProcessingDelayPerLine;
-            try {
-                Thread.sleep(processingTime);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
         }
+        this.printerConnection.send();
 
         return this;
     }
@@ -805,6 +930,7 @@ public class EscPosPrinterCommands {
         this.printerConnection.write(new byte[]{0x1D, 0x77, (byte) barcode.getColWidth()});
         this.printerConnection.write(new byte[]{0x1D, 0x68, (byte) barcode.getHeight()});
         this.printerConnection.write(barcodeCommand);
+        this.lineHeightDots = Math.max(this.lineHeightDots, barcode.getHeight() + (barcode.getTextPosition() != EscPosPrinterCommands.BARCODE_TEXT_POSITION_NONE ? 24 : 0));
         return this;
     }
 
@@ -851,6 +977,8 @@ public class EscPosPrinterCommands {
             System.arraycopy(textBytes, 0, qrCodeCommand, 8, textBytes.length);
             this.printerConnection.write(qrCodeCommand);
             this.printerConnection.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30});
+            // Approximate height : version 2 QR code with its quiet zone
+            this.lineHeightDots = Math.max(this.lineHeightDots, 33 * size);
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
             throw new EscPosEncodingException(e.getMessage());
@@ -879,6 +1007,8 @@ public class EscPosPrinterCommands {
         }
 
         this.printerConnection.write(new byte[]{EscPosPrinterCommands.LF});
+        this.printerConnection.addDotLines(Math.max(this.lineSpacingDots, this.lineHeightDots));
+        this.lineHeightDots = 0;
         this.printerConnection.send();
 
         if (align != null) {
@@ -900,7 +1030,8 @@ public class EscPosPrinterCommands {
 
         if (dots > 0) {
             this.printerConnection.write(new byte[]{0x1B, 0x4A, (byte) dots});
-            this.printerConnection.send(dots);
+            this.printerConnection.addDotLines(dots);
+            this.printerConnection.send();
         }
 
         return this;
@@ -935,7 +1066,10 @@ public class EscPosPrinterCommands {
         // GS V 66 n - Partial cut with feed
         // Feeds paper n dots, then performs a partial cut
         this.printerConnection.write(new byte[]{0x1D, 0x56, 0x42, (byte) feedDots});
-        this.printerConnection.send(100);
+        this.printerConnection
+                .addDotLines(feedDots)
+                .addPrintingTime(EscPosPrinterCommands.CUT_PAPER_TIME);
+        this.printerConnection.send();
         return this;
     }
 
@@ -968,7 +1102,10 @@ public class EscPosPrinterCommands {
         // GS V 65 n - Full cut with feed
         // Feeds paper n dots, then performs a full cut
         this.printerConnection.write(new byte[]{0x1D, 0x56, 0x41, (byte) feedDots});
-        this.printerConnection.send(100);
+        this.printerConnection
+                .addDotLines(feedDots)
+                .addPrintingTime(EscPosPrinterCommands.CUT_PAPER_TIME);
+        this.printerConnection.send();
         return this;
     }
 
@@ -1018,7 +1155,8 @@ public class EscPosPrinterCommands {
         // t1 = on time (t1 * 2ms), t2 = off time (t2 * 2ms)
         byte pinByte = (byte) (pin == 1 ? 1 : 0);
         this.printerConnection.write(new byte[]{0x1B, 0x70, pinByte, 0x3C, (byte) 0xFF});
-        this.printerConnection.send(100);
+        this.printerConnection.addPrintingTime(EscPosPrinterCommands.CASH_DRAWER_PULSE_TIME);
+        this.printerConnection.send();
         return this;
     }
 
@@ -1122,10 +1260,23 @@ public class EscPosPrinterCommands {
     public static final byte[] STATUS_QUERY_PAPER = new byte[]{0x10, 0x04, 0x04};    // DLE EOT 4
 
     /**
-     * Query printer status using DLE EOT command.
-     * Note: Not all printers support status queries. USB connections may not support reading.
+     * The four DLE EOT queries sent in one write by queryStatus().
+     */
+    public static final byte[] STATUS_QUERY_ALL = new byte[]{
+            0x10, 0x04, 0x01,
+            0x10, 0x04, 0x02,
+            0x10, 0x04, 0x03,
+            0x10, 0x04, 0x04
+    };
+
+    /**
+     * Query printer status using DLE EOT command. With USB, the printer class port status is added.
+     * The four queries are sent in one write and their replies are read in order, the status comes back after about
+     * one round trip. If the printer answers only some of them, the other statuses are left not queried, see
+     * PrinterStatus.isPrinterStatusQueried() and the like.
+     * Note: Not all printers support status queries.
      *
-     * @param timeout Timeout in milliseconds to wait for response
+     * @param timeout Timeout in milliseconds to wait for all the replies
      * @return PrinterStatus object containing status information
      * @throws EscPosConnectionException if connection error occurs
      */
@@ -1137,50 +1288,36 @@ public class EscPosPrinterCommands {
         }
 
         if (!this.printerConnection.canRead()) {
+            this.queryPortStatus(status, timeout);
             return status;
         }
 
-        // Query printer status (DLE EOT 1)
-        try {
-            this.printerConnection.write(STATUS_QUERY_PRINTER);
-            this.printerConnection.send();
-            byte[] response = this.printerConnection.read(timeout);
-            status.parsePrinterStatus(response);
-        } catch (Exception e) {
-            // Continue with other queries
-        }
-
-        // Query offline status (DLE EOT 2)
+        this.printerConnection.getLock().lock();
         try {
-            this.printerConnection.write(STATUS_QUERY_OFFLINE);
+            this.printerConnection.clearInput();
+            this.printerConnection.write(STATUS_QUERY_ALL);
             this.printerConnection.send();
-            byte[] response = this.printerConnection.read(timeout);
-            status.parseOfflineStatus(response);
-        } catch (Exception e) {
-            // Continue with other queries
+            byte[] responses = this.printerConnection.read(4, timeout);
+            if (status.parseStatusReplies(responses) < 4) {
+                Timber.tag("EscPosPrinterCommands").d("Status query: %d of 4 replies received", responses.length);
+            }
+        } catch (EscPosConnectionException e) {
+            Timber.tag("EscPosPrinterCommands").w("Status query failed: %s", e.getMessage());
+        } finally {
+            this.printerConnection.getLock().unlock();
         }
 
-        // Query error status (DLE EOT 3)
-        try {
-            this.printerConnection.write(STATUS_QUERY_ERROR);
-            this.printerConnection.send();
-            byte[] response = this.printerConnection.read(timeout);
-            status.parseErrorStatus(response);
-        } catch (Exception e) {
-            // Continue with other queries
-        }
+        this.queryPortStatus(status, timeout);
+        return status;
+    }
 
-        // Query paper status (DLE EOT 4)
-        try {
-            this.printerConnection.write(STATUS_QUERY_PAPER);
-            this.printerConnection.send();
-            byte[] response = this.printerConnection.read(timeout);
-            status.parsePaperStatus(response);
-        } catch (Exception e) {
-            // Ignore
+    /**
+     * Add the USB printer class port status (GET_PORT_STATUS) to a status, for USB connections only.
+     */
+    private void queryPortStatus(PrinterStatus status, int timeout) {
+        if (this.printerConnection instanceof UsbConnection) {
+            status.parsePortStatus(((UsbConnection) this.printerConnection).getPortStatus(timeout));
         }
-
-        return status;
     }
 
     /**
@@ -1207,10 +1344,15 @@ public class EscPosPrinterCommands {
             return status;
         }
 
-        this.printerConnection.write(STATUS_QUERY_PAPER);
-        this.printerConnection.send();
-        byte[] response = this.printerConnection.read(timeout);
-        status.parsePaperStatus(response);
+        this.printerConnection.getLock().lock();
+        try {
+            this.printerConnection.write(STATUS_QUERY_PAPER);
+            this.printerConnection.send();
+            byte[] response = this.printerConnection.read(1, timeout);
+            status.parsePaperStatus(response);
+        } finally {
+            this.printerConnection.getLock().unlock();
+        }
 
         return status;
     }
@@ -1223,4 +1365,128 @@ public class EscPosPrinterCommands {
     public boolean supportsStatusQuery() {
         return this.printerConnection != null && this.printerConnection.canRead();
     }
+
+    /**
+     * Enable Automatic Status Back (GS a) : the printer sends its status by itself when it changes, and once right
+     * after this command. The connection must be able to read, see supportsStatusQuery().
+     *
+     * @param listener Listener of the status changes, called from the thread receiving the printer data
+     * @return Fluent interface
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public EscPosPrinterCommands enableAutomaticStatusBack(PrinterStatusListener listener) throws EscPosConnectionException {
+        if (this.automaticStatusBack == null) {
+            this.automaticStatusBack = new AutomaticStatusBack();
+        }
+        this.automaticStatusBack.reset();
+        this.automaticStatusBack.addListener(listener);
+        this.printerConnection.addInputListener(this.automaticStatusBack);
+
+        if (this.printerConnection.isConnected()) {
+            this.printerConnection.write(AutomaticStatusBack.ENABLE);
+            this.printerConnection.send();
+        }
+        return this;
+    }
+
+    /**
+     * Remove a listener of the status changes. Automatic Status Back is disabled when no listener is left.
+     *
+     * @param listener Listener given to enableAutomaticStatusBack()
+     * @return Fluent interface
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public EscPosPrinterCommands disableAutomaticStatusBack(PrinterStatusListener listener) throws EscPosConnectionException {
+        if (this.automaticStatusBack == null) {
+            return this;
+        }
+        this.automaticStatusBack.removeListener(listener);
+        if (this.automaticStatusBack.hasListeners()) {
+            return this;
+        }
+
+        this.printerConnection.removeInputListener(this.automaticStatusBack);
+        if (this.printerConnection.isConnected()) {
+            this.printerConnection.write(AutomaticStatusBack.DISABLE);
+            this.printerConnection.send();
+        }
+        return this;
+    }
+
+    /**
+     * Probe the capabilities of the printer and use them, see setCapabilities(). The queries do not print anything. A
+     * printer that cannot reply gets the default capabilities. If no profile was set, the profile of the probed model
+     * is used, see PrinterProfiles.
+     * Probe before enabling Automatic Status Back from another instance, its frames look like some GS I replies.
+     *
+     * @param timeout Timeout in milliseconds to wait for each reply
+     * @return Capabilities of the printer
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public PrinterCapabilities probeCapabilities(int timeout) throws EscPosConnectionException {
+        PrinterCapabilities capabilities = new PrinterCapabilities();
+
+        if (!this.printerConnection.isConnected() || !this.printerConnection.canRead()) {
+            return capabilities;
+        }
+
+        this.printerConnection.getLock().lock();
+        try {
+            this.printerConnection.clearInput();
+            this.printerConnection.write(STATUS_QUERY_PRINTER);
+            this.printerConnection.send();
+            capabilities.parseStatusReply(this.printerConnection.read(1, timeout));
+            if (!capabilities.isStatusSupported()) {
+                // A printer ignoring DLE EOT does not answer the other queries either.
+                Timber.tag("EscPosPrinterCommands").d("Capabilities probe: no status reply");
+                return this.setCapabilities(capabilities).getCapabilities();
+            }
+
+            this.printerConnection.write(PrinterCapabilities.INFO_MODEL_ID);
+            this.printerConnection.write(PrinterCapabilities.INFO_TYPE_ID);
+            this.printerConnection.send();
+            capabilities.parseIds(this.printerConnection.read(2, timeout));
+
+            for (byte[] command : new byte[][]{PrinterCapabilities.INFO_FIRMWARE, PrinterCapabilities.INFO_MANUFACTURER, PrinterCapabilities.INFO_MODEL_NAME}) {
+                this.printerConnection.write(command);
+                this.printerConnection.send();
+                capabilities.parseInformation(command, this.printerConnection.readUntil((byte) 0x00, 80, timeout));
+            }
+
+            this.printerConnection.write(PrinterCapabilities.QRCODE_SIZE_INFO);
+            this.printerConnection.send();
+            capabilities.parseQrCodeSizeInfo(this.printerConnection.readUntil((byte) 0x00, 32, timeout));
+
+            if (this.automaticStatusBack != null && this.automaticStatusBack.hasListeners()) {
+                capabilities.setAutomaticStatusBackSupported(this.automaticStatusBack.getStatus() != null);
+            } else {
+                this.printerConnection.write(AutomaticStatusBack.ENABLE);
+                this.printerConnection.send();
+                capabilities.parseAutomaticStatusBack(this.printerConnection.read(4, timeout));
+                this.printerConnection.write(AutomaticStatusBack.DISABLE);
+                this.printerConnection.send();
+            }
+            this.printerConnection.clearInput();
+        } finally {
+            this.printerConnection.getLock().unlock();
+        }
+
+        Timber.tag("EscPosPrinterCommands").i("Capabilities probed: %s", capabilities);
+        if (this.profile == null) {
+            this.setProfile(PrinterProfiles.getDefault().find(capabilities));
+        }
+        if (this.profile != null) {
+            capabilities.setRasterImageSupported(this.profile.supportsGraphics(PrinterProfile.GRAPHICS_RASTER_IMAGE));
+        }
+        return this.setCapabilities(capabilities).getCapabilities();
+    }
+
+    /**
+     * Get the last status sent by the printer with Automatic Status Back.
+     *
+     * @return PrinterStatus, null if Automatic Status Back is not enabled or the printer sent nothing yet
+     */
+    public PrinterStatus getAutomaticStatus() {
+        return this.automaticStatusBack != null ? this.automaticStatusBack.getStatus() : null;
+    }
 }
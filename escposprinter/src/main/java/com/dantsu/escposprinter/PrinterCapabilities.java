@@ -0,0 +1,233 @@
+package com.dantsu.escposprinter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Capabilities of a printer, probed once with EscPosPrinterCommands.probeCapabilities() and kept per device by
+ * PrinterCapabilitiesCache.
+ * <p>
+ * The identity comes from the GS I printer information. The supported commands are tested with queries that do not
+ * print : DLE EOT, GS a and the QR code size information of GS ( k. The raster image command (GS v 0) cannot be tested
+ * without printing, it is considered supported unless setRasterImageSupported(false) is called.
+ */
+public class PrinterCapabilities {
+
+    // GS I n
+    public static final byte[] INFO_MODEL_ID = new byte[]{0x1D, 0x49, 0x01};
+    public static final byte[] INFO_TYPE_ID = new byte[]{0x1D, 0x49, 0x02};
+    public static final byte[] INFO_FIRMWARE = new byte[]{0x1D, 0x49, 0x41};
+    public static final byte[] INFO_MANUFACTURER = new byte[]{0x1D, 0x49, 0x42};
+    public static final byte[] INFO_MODEL_NAME = new byte[]{0x1D, 0x49, 0x43};
+
+    /**
+     * GS ( k fn 82 : transmit the size information of the stored QR code, answered without printing.
+     */
+    public static final byte[] QRCODE_SIZE_INFO = new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x52, 0x30};
+
+    private int modelId = -1;
+    private int typeId = -1;
+    private String firmware = null;
+    private String manufacturer = null;
+    private String modelName = null;
+    private boolean statusSupported = false;
+    private boolean automaticStatusBackSupported = false;
+    private boolean nativeQrCodeSupported = false;
+    private boolean rasterImageSupported = true;
+
+    public PrinterCapabilities() {
+    }
+
+    /**
+     * Parse the reply to DLE EOT 1.
+     */
+    public void parseStatusReply(byte[] response) {
+        this.statusSupported = response != null && response.length > 0 && PrinterStatus.isStatusReply(response[0]);
+    }
+
+    /**
+     * Parse the replies to GS I 1 and GS I 2, sent in one write.
+     */
+    public void parseIds(byte[] responses) {
+        if (responses != null && responses.length > 0) {
+            this.modelId = responses[0] & 0xFF;
+        }
+        if (responses != null && responses.length > 1) {
+            this.typeId = responses[1] & 0xFF;
+        }
+    }
+
+    /**
+     * Parse the reply to GS I 65 to 67 : header 0x5F, text, NUL.
+     *
+     * @param command  GS I command sent, INFO_FIRMWARE, INFO_MANUFACTURER or INFO_MODEL_NAME
+     * @param response Reply read until NUL
+     */
+    public void parseInformation(byte[] command, byte[] response) {
+        if (response == null || response.length < 2 || response[0] != 0x5F || response[response.length - 1] != 0x00) {
+            return;
+        }
+        // ';' is the separator of the serialized capabilities.
+        String value = new String(response, 1, response.length - 2, StandardCharsets.US_ASCII).replace(';', ',').trim();
+        if (value.isEmpty()) {
+            return;
+        }
+        switch (command[2]) {
+            case 0x41:
+                this.firmware = value;
+                break;
+            case 0x42:
+                this.manufacturer = value;
+                break;
+            case 0x43:
+                this.modelName = value;
+                break;
+        }
+    }
+
+    /**
+     * Parse the reply to QRCODE_SIZE_INFO : header 0x37 0x36, size information, NUL.
+     */
+    public void parseQrCodeSizeInfo(byte[] response) {
+        this.nativeQrCodeSupported = response != null && response.length > 1 && response[0] == 0x37 && response[1] == 0x36;
+    }
+
+    /**
+     * Parse the first frame sent after GS a.
+     */
+    public void parseAutomaticStatusBack(byte[] frame) {
+        this.automaticStatusBackSupported = frame != null && frame.length == 4 && PrinterStatus.isAutomaticStatusBackStart(frame[0]);
+    }
+
+    /**
+     * @param automaticStatusBackSupported true if the printer sends Automatic Status Back frames
+     * @return Fluent interface
+     */
+    public PrinterCapabilities setAutomaticStatusBackSupported(boolean automaticStatusBackSupported) {
+        this.automaticStatusBackSupported = automaticStatusBackSupported;
+        return this;
+    }
+
+    /**
+     * @param rasterImageSupported false to print the images with ESC * instead of GS v 0
+     * @return Fluent interface
+     */
+    public PrinterCapabilities setRasterImageSupported(boolean rasterImageSupported) {
+        this.rasterImageSupported = rasterImageSupported;
+        return this;
+    }
+
+    /**
+     * @return Model ID (GS I 1), -1 if unknown
+     */
+    public int getModelId() {
+        return this.modelId;
+    }
+
+    /**
+     * @return Type ID (GS I 2), -1 if unknown
+     */
+    public int getTypeId() {
+        return this.typeId;
+    }
+
+    /**
+     * @return true if the type ID tells an autocutter is equipped
+     */
+    public boolean hasAutocutter() {
+        return this.typeId != -1 && (this.typeId & 0x02) != 0;
+    }
+
+    /**
+     * @return Firmware version (GS I 65), null if unknown
+     */
+    public String getFirmware() {
+        return this.firmware;
+    }
+
+    /**
+     * @return Manufacturer (GS I 66), null if unknown
+     */
+    public String getManufacturer() {
+        return this.manufacturer;
+    }
+
+    /**
+     * @return Model name (GS I 67), null if unknown
+     */
+    public String getModelName() {
+        return this.modelName;
+    }
+
+    /**
+     * @return true if the printer answers the DLE EOT status queries
+     */
+    public boolean isStatusSupported() {
+        return this.statusSupported;
+    }
+
+    public boolean isAutomaticStatusBackSupported() {
+        return this.automaticStatusBackSupported;
+    }
+
+    /**
+     * @return true if QR codes can be printed with GS ( k instead of an image
+     */
+    public boolean isNativeQrCodeSupported() {
+        return this.nativeQrCodeSupported;
+    }
+
+    /**
+     * @return true if images can be printed with GS v 0, false to use ESC *
+     */
+    public boolean isRasterImageSupported() {
+        return this.rasterImageSupported;
+    }
+
+    String serialize() {
+        return this.modelId + ";" + this.typeId + ";" +
+                (this.firmware != null ? this.firmware : "") + ";" +
+                (this.manufacturer != null ? this.manufacturer : "") + ";" +
+                (this.modelName != null ? this.modelName : "") + ";" +
+                (this.statusSupported ? 1 : 0) + ";" +
+                (this.automaticStatusBackSupported ? 1 : 0) + ";" +
+                (this.nativeQrCodeSupported ? 1 : 0) + ";" +
+                (this.rasterImageSupported ? 1 : 0);
+    }
+
+    static PrinterCapabilities unserialize(String value) {
+        String[] parts = value.split(";", -1);
+        if (parts.length != 9) {
+            return null;
+        }
+        try {
+            PrinterCapabilities capabilities = new PrinterCapabilities();
+            capabilities.modelId = Integer.parseInt(parts[0]);
+            capabilities.typeId = Integer.parseInt(parts[1]);
+            capabilities.firmware = parts[2].isEmpty() ? null : parts[2];
+            capabilities.manufacturer = parts[3].isEmpty() ? null : parts[3];
+            capabilities.modelName = parts[4].isEmpty() ? null : parts[4];
+            capabilities.statusSupported = parts[5].equals("1");
+            capabilities.automaticStatusBackSupported = parts[6].equals("1");
+            capabilities.nativeQrCodeSupported = parts[7].equals("1");
+            capabilities.rasterImageSupported = parts[8].equals("1");
+            return capabilities;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterCapabilities{" +
+                "manufacturer=" + this.manufacturer +
+                ", modelName=" + this.modelName +
+                ", firmware=" + this.firmware +
+                ", modelId=" + this.modelId +
+                ", typeId=" + this.typeId +
+                ", status=" + this.statusSupported +
+                ", automaticStatusBack=" + this.automaticStatusBackSupported +
+                ", nativeQrCode=" + this.nativeQrCodeSupported +
+                ", rasterImage=" + this.rasterImageSupported +
+                "}";
+    }
+}
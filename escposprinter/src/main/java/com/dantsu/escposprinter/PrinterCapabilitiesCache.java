@@ -0,0 +1,141 @@
+package com.dantsu.escposprinter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.PrinterSessionManager;
+import com.dantsu.escposprinter.connection.usb.UsbConnection;
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * Capabilities of the printers already probed, persisted per device : address for TCP and Bluetooth, vendor and product
+ * IDs for USB (the same model on any port). A printer is probed only the first time it is used.
+ * <pre>
+ * PrinterCapabilitiesCache.getInstance(context).load(printer.getPrinterCommands(), 500);
+ * </pre>
+ */
+public class PrinterCapabilitiesCache {
+
+    private static final String PREFERENCES_NAME = "escposprinter_capabilities_cache";
+
+    private static PrinterCapabilitiesCache instance;
+
+    /**
+     * Get the cache shared by the application.
+     *
+     * @param context Application context
+     * @return PrinterCapabilitiesCache instance
+     */
+    public static synchronized PrinterCapabilitiesCache getInstance(Context context) {
+        if (PrinterCapabilitiesCache.instance == null) {
+            PrinterCapabilitiesCache.instance = new PrinterCapabilitiesCache(context.getApplicationContext());
+        }
+        return PrinterCapabilitiesCache.instance;
+    }
+
+    /**
+     * Get the key identifying the printer of a connection.
+     *
+     * @param connection DeviceConnection instance
+     * @return Key of the printer, null if the connection type is unknown
+     */
+    public static String getKey(DeviceConnection connection) {
+        if (connection instanceof UsbConnection) {
+            UsbConnection usbConnection = (UsbConnection) connection;
+            return usbConnection.getDevice() != null ?
+                    String.format(Locale.US, "usb:%04x:%04x", usbConnection.getDevice().getVendorId(), usbConnection.getDevice().getProductId()) :
+                    null;
+        }
+        return PrinterSessionManager.getSessionKey(connection);
+    }
+
+
+    private final SharedPreferences preferences;
+    private final HashMap<String, PrinterCapabilities> entries = new HashMap<String, PrinterCapabilities>();
+
+    private PrinterCapabilitiesCache(Context context) {
+        this.preferences = context.getSharedPreferences(PrinterCapabilitiesCache.PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Use the cached capabilities of a printer, probe them if the printer is unknown. Capabilities are cached only when
+     * the printer answered the probe. The profile of the model is used too if none was set.
+     *
+     * @param printer Connected printer
+     * @param timeout Timeout in milliseconds to wait for each reply of the probe
+     * @return Capabilities of the printer
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public PrinterCapabilities load(EscPosPrinterCommands printer, int timeout) throws EscPosConnectionException {
+        String key = PrinterCapabilitiesCache.getKey(printer.getConnection());
+        PrinterCapabilities capabilities = key != null ? this.get(key) : null;
+        if (capabilities != null) {
+            if (printer.getProfile() == null) {
+                printer.setProfile(PrinterProfiles.getDefault().find(capabilities));
+            }
+            printer.setCapabilities(capabilities);
+            return capabilities;
+        }
+
+        capabilities = printer.probeCapabilities(timeout);
+        if (key != null && capabilities.isStatusSupported()) {
+            this.put(key, capabilities);
+        }
+        return capabilities;
+    }
+
+    /**
+     * @param key Key of the printer, see getKey()
+     * @return Capabilities of the printer, null if it is unknown
+     */
+    public synchronized PrinterCapabilities get(String key) {
+        PrinterCapabilities capabilities = this.entries.get(key);
+        if (capabilities == null) {
+            String value = this.preferences.getString(key, null);
+            if (value != null) {
+                capabilities = PrinterCapabilities.unserialize(value);
+                if (capabilities != null) {
+                    this.entries.put(key, capabilities);
+                }
+            }
+        }
+        return capabilities;
+    }
+
+    /**
+     * @param key          Key of the printer, see getKey()
+     * @param capabilities Capabilities of the printer
+     */
+    public synchronized void put(String key, PrinterCapabilities capabilities) {
+        PrinterCapabilities previous = this.entries.put(key, capabilities);
+        if (previous == null || !previous.serialize().equals(capabilities.serialize())) {
+            Timber.tag("PrinterCapabilitiesCache").d("Saving capabilities of %s", key);
+            this.preferences.edit().putString(key, capabilities.serialize()).apply();
+        }
+    }
+
+    /**
+     * Forget a printer, it is probed again the next time it is loaded (firmware update, other model on the same
+     * address).
+     *
+     * @param key Key of the printer, see getKey()
+     */
+    public synchronized void remove(String key) {
+        this.entries.remove(key);
+        this.preferences.edit().remove(key).apply();
+    }
+
+    /**
+     * Forget all the printers.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.preferences.edit().clear().apply();
+    }
+}
@@ -0,0 +1,255 @@
+package com.dantsu.escposprinter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Characteristics of a printer model, from the profile database PrinterProfiles : printing width, fonts, receive
+ * buffer, print speed, codepages and supported commands.
+ * <pre>
+ * {
+ *   "id": "epson-tm-t20",
+ *   "name": "Epson TM-T20",
+ *   "models": ["TM-T20", "TM-T20II"],
+ *   "dpi": 203,
+ *   "dotsPerLine": 576,
+ *   "charsPerLine": {"A": 48, "B": 64},
+ *   "receiveBufferSize": 4096,
+ *   "printSpeed": 200,
+ *   "defaultCodepage": "windows-1252",
+ *   "codepages": {"cp437": 0, "windows-1252": 16},
+ *   "graphics": ["GS v 0", "ESC *"],
+ *   "symbologies": ["EAN13", "CODE128", "QRCODE"]
+ * }
+ * </pre>
+ * models are the names answered to GS I 67, printSpeed is in millimeters per second.
+ */
+public class PrinterProfile {
+
+    public static final String FONT_A = "A";
+    public static final String FONT_B = "B";
+
+    public static final String GRAPHICS_RASTER_IMAGE = "GS v 0";
+    public static final String GRAPHICS_BIT_IMAGE = "ESC *";
+    public static final String GRAPHICS_GRAPHICS = "GS ( L";
+
+    public static final String SYMBOLOGY_UPCA = "UPCA";
+    public static final String SYMBOLOGY_UPCE = "UPCE";
+    public static final String SYMBOLOGY_EAN13 = "EAN13";
+    public static final String SYMBOLOGY_EAN8 = "EAN8";
+    public static final String SYMBOLOGY_CODE39 = "CODE39";
+    public static final String SYMBOLOGY_ITF = "ITF";
+    public static final String SYMBOLOGY_CODE128 = "CODE128";
+    public static final String SYMBOLOGY_QRCODE = "QRCODE";
+    public static final String SYMBOLOGY_PDF417 = "PDF417";
+
+    private final String id;
+    private final String name;
+    private final String[] models;
+    private final int dpi;
+    private final int dotsPerLine;
+    private final HashMap<String, Integer> charsPerLine;
+    private final int receiveBufferSize;
+    private final int printSpeed;
+    private final String defaultCodepage;
+    private final HashMap<String, Integer> codepages;
+    private final HashSet<String> graphics;
+    private final HashSet<String> symbologies;
+
+    /**
+     * Create new instance of PrinterProfile.
+     *
+     * @param id                Unique ID of the profile
+     * @param name              Name displayed to the user
+     * @param models            Model names answered to GS I 67
+     * @param dpi               DPI of the printer
+     * @param dotsPerLine       Printing width in dots
+     * @param charsPerLine      Characters per line for each font (A, B...)
+     * @param receiveBufferSize Size of the receive buffer in bytes
+     * @param printSpeed        Mechanical print speed in millimeters per second
+     * @param defaultCodepage   Charset name of the codepage used by default
+     * @param codepages         ESC t number of each supported charset name
+     * @param graphics          Supported image commands, PrinterProfile.GRAPHICS_... constants
+     * @param symbologies       Supported barcodes and 2D codes, PrinterProfile.SYMBOLOGY_... constants
+     */
+    public PrinterProfile(String id, String name, String[] models, int dpi, int dotsPerLine, HashMap<String, Integer> charsPerLine,
+                          int receiveBufferSize, int printSpeed, String defaultCodepage, HashMap<String, Integer> codepages,
+                          HashSet<String> graphics, HashSet<String> symbologies) {
+        this.id = id;
+        this.name = name;
+        this.models = models;
+        this.dpi = dpi;
+        this.dotsPerLine = dotsPerLine;
+        this.charsPerLine = charsPerLine;
+        this.receiveBufferSize = receiveBufferSize;
+        this.printSpeed = printSpeed;
+        this.defaultCodepage = defaultCodepage;
+        this.codepages = codepages;
+        this.graphics = graphics;
+        this.symbologies = symbologies;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Model names answered to GS I 67
+     */
+    public String[] getModels() {
+        return this.models;
+    }
+
+    public int getDpi() {
+        return this.dpi;
+    }
+
+    /**
+     * @return Printing width in dots
+     */
+    public int getDotsPerLine() {
+        return this.dotsPerLine;
+    }
+
+    /**
+     * @return Printing width in millimeters
+     */
+    public float getPrinterWidthMM() {
+        return ((float) this.dotsPerLine) * EscPosPrinterSize.INCH_TO_MM / ((float) this.dpi);
+    }
+
+    /**
+     * @return Characters per line with the font A
+     */
+    public int getCharsPerLine() {
+        return this.getCharsPerLine(PrinterProfile.FONT_A);
+    }
+
+    /**
+     * @param font Font name, PrinterProfile.FONT_... constants
+     * @return Characters per line with this font, 0 if the font is unknown
+     */
+    public int getCharsPerLine(String font) {
+        Integer chars = this.charsPerLine.get(font);
+        return chars != null ? chars : 0;
+    }
+
+    /**
+     * @return Size of the receive buffer in bytes, 0 if unknown
+     */
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    /**
+     * @return Mechanical print speed in millimeters per second, 0 if unknown
+     */
+    public int getPrintSpeed() {
+        return this.printSpeed;
+    }
+
+    /**
+     * @return Time to print one dot line in milliseconds, 0 if the print speed is unknown
+     */
+    public float getMillisPerDotLine() {
+        if (this.printSpeed <= 0) {
+            return 0f;
+        }
+        return 1000f * EscPosPrinterSize.INCH_TO_MM / ((float) this.printSpeed * (float) this.dpi);
+    }
+
+    /**
+     * @return Charset encoding of the default codepage
+     */
+    public EscPosCharsetEncoding getCharsetEncoding() {
+        return this.getCharsetEncoding(this.defaultCodepage);
+    }
+
+    /**
+     * @param charsetName Name of charset encoding (Ex: windows-1252)
+     * @return Charset encoding with the ESC t number of this model, null if the model does not support the charset
+     */
+    public EscPosCharsetEncoding getCharsetEncoding(String charsetName) {
+        Integer escPosCharsetId = charsetName != null ? this.codepages.get(charsetName) : null;
+        return escPosCharsetId != null ? new EscPosCharsetEncoding(charsetName, escPosCharsetId) : null;
+    }
+
+    /**
+     * @param command Image command, PrinterProfile.GRAPHICS_... constants
+     * @return true if the model supports this command
+     */
+    public boolean supportsGraphics(String command) {
+        return this.graphics.contains(command);
+    }
+
+    /**
+     * @param symbology Barcode or 2D code, PrinterProfile.SYMBOLOGY_... constants
+     * @return true if the model prints this symbology natively
+     */
+    public boolean supportsSymbology(String symbology) {
+        return this.symbologies.contains(symbology);
+    }
+
+    static PrinterProfile fromJson(JSONObject json) throws JSONException {
+        JSONArray jsonModels = json.optJSONArray("models");
+        String[] models = new String[jsonModels != null ? jsonModels.length() : 0];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = jsonModels.getString(i);
+        }
+
+        HashMap<String, Integer> charsPerLine = new HashMap<String, Integer>();
+        JSONObject jsonCharsPerLine = json.getJSONObject("charsPerLine");
+        for (Iterator<String> fonts = jsonCharsPerLine.keys(); fonts.hasNext(); ) {
+            String font = fonts.next();
+            charsPerLine.put(font, jsonCharsPerLine.getInt(font));
+        }
+
+        HashMap<String, Integer> codepages = new HashMap<String, Integer>();
+        JSONObject jsonCodepages = json.optJSONObject("codepages");
+        if (jsonCodepages != null) {
+            for (Iterator<String> charsetNames = jsonCodepages.keys(); charsetNames.hasNext(); ) {
+                String charsetName = charsetNames.next();
+                codepages.put(charsetName, jsonCodepages.getInt(charsetName));
+            }
+        }
+
+        return new PrinterProfile(
+                json.getString("id"),
+                json.optString("name", json.getString("id")),
+                models,
+                json.getInt("dpi"),
+                json.getInt("dotsPerLine"),
+                charsPerLine,
+                json.optInt("receiveBufferSize", 0),
+                json.optInt("printSpeed", 0),
+                json.optString("defaultCodepage", "windows-1252"),
+                codepages,
+                PrinterProfile.toSet(json.optJSONArray("graphics")),
+                PrinterProfile.toSet(json.optJSONArray("symbologies"))
+        );
+    }
+
+    private static HashSet<String> toSet(JSONArray jsonArray) throws JSONException {
+        HashSet<String> set = new HashSet<String>();
+        if (jsonArray != null) {
+            for (int i = 0; i < jsonArray.length(); i++) {
+                set.add(jsonArray.getString(i));
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterProfile{" + this.id + ", " + this.dotsPerLine + " dots at " + this.dpi + " dpi}";
+    }
+}
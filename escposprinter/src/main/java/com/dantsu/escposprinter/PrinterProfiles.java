@@ -0,0 +1,153 @@
+package com.dantsu.escposprinter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * Database of printer model profiles, see PrinterProfile.
+ * <p>
+ * The default database is loaded from the profiles bundled with the library the first time it is used. An application
+ * adds its own profiles or overrides the bundled ones (same id) with load(). Profiles are indexed by id and by model
+ * name (GS I 67), both lookups are a single hash lookup.
+ * <pre>
+ * PrinterProfile profile = PrinterProfiles.getDefault().get("epson-tm-t20");
+ * EscPosPrinter printer = new EscPosPrinter(connection, profile);
+ * </pre>
+ */
+public class PrinterProfiles {
+
+    private static final String BUNDLED_PROFILES = "printer_profiles.json";
+
+    private static PrinterProfiles defaultProfiles;
+
+    /**
+     * Get the profiles database shared by the application, with the bundled profiles.
+     *
+     * @return Default PrinterProfiles instance
+     */
+    public static synchronized PrinterProfiles getDefault() {
+        if (PrinterProfiles.defaultProfiles == null) {
+            PrinterProfiles profiles = new PrinterProfiles();
+            try (InputStream inputStream = PrinterProfiles.class.getResourceAsStream(PrinterProfiles.BUNDLED_PROFILES)) {
+                if (inputStream != null) {
+                    profiles.load(inputStream);
+                }
+            } catch (IOException | JSONException e) {
+                Timber.tag("PrinterProfiles").e(e, "Unable to load the bundled printer profiles");
+            }
+            PrinterProfiles.defaultProfiles = profiles;
+        }
+        return PrinterProfiles.defaultProfiles;
+    }
+
+    private static String normalizeModelName(String modelName) {
+        return modelName.trim().toUpperCase(Locale.US);
+    }
+
+
+    private final HashMap<String, PrinterProfile> profiles = new HashMap<String, PrinterProfile>();
+    private final HashMap<String, PrinterProfile> profilesByModel = new HashMap<String, PrinterProfile>();
+
+    /**
+     * Create new empty instance of PrinterProfiles.
+     */
+    public PrinterProfiles() {
+    }
+
+    /**
+     * Add the profiles of a JSON file : {"profiles": [...]}. A profile with the id of a known one replaces it.
+     *
+     * @param inputStream JSON file encoded in UTF-8
+     * @return Fluent interface
+     */
+    public PrinterProfiles load(InputStream inputStream) throws IOException, JSONException {
+        StringBuilder json = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            json.append(buffer, 0, read);
+        }
+        return this.load(json.toString());
+    }
+
+    /**
+     * Add the profiles of a JSON string : {"profiles": [...]}. A profile with the id of a known one replaces it.
+     *
+     * @param json JSON string
+     * @return Fluent interface
+     */
+    public PrinterProfiles load(String json) throws JSONException {
+        JSONArray jsonProfiles = new JSONObject(json).getJSONArray("profiles");
+        ArrayList<PrinterProfile> profiles = new ArrayList<PrinterProfile>(jsonProfiles.length());
+        for (int i = 0; i < jsonProfiles.length(); i++) {
+            profiles.add(PrinterProfile.fromJson(jsonProfiles.getJSONObject(i)));
+        }
+        for (PrinterProfile profile : profiles) {
+            this.put(profile);
+        }
+        return this;
+    }
+
+    /**
+     * Add a profile, or replace the profile with the same id.
+     *
+     * @param profile Profile of a printer model
+     * @return Fluent interface
+     */
+    public synchronized PrinterProfiles put(PrinterProfile profile) {
+        PrinterProfile previous = this.profiles.put(profile.getId(), profile);
+        if (previous != null) {
+            for (String model : previous.getModels()) {
+                this.profilesByModel.remove(PrinterProfiles.normalizeModelName(model));
+            }
+        }
+        for (String model : profile.getModels()) {
+            this.profilesByModel.put(PrinterProfiles.normalizeModelName(model), profile);
+        }
+        return this;
+    }
+
+    /**
+     * @param id Id of the profile
+     * @return Profile, null if it is unknown
+     */
+    public synchronized PrinterProfile get(String id) {
+        return this.profiles.get(id);
+    }
+
+    /**
+     * @param modelName Model name answered to GS I 67, the case is ignored
+     * @return Profile of the model, null if it is unknown
+     */
+    public synchronized PrinterProfile findByModelName(String modelName) {
+        return modelName != null ? this.profilesByModel.get(PrinterProfiles.normalizeModelName(modelName)) : null;
+    }
+
+    /**
+     * @param capabilities Capabilities probed, see EscPosPrinterCommands.probeCapabilities()
+     * @return Profile of the probed model, null if it is unknown
+     */
+    public PrinterProfile find(PrinterCapabilities capabilities) {
+        return capabilities != null ? this.findByModelName(capabilities.getModelName()) : null;
+    }
+
+    /**
+     * @return All the profiles, to let the user choose a printer model
+     */
+    public synchronized ArrayList<PrinterProfile> getAll() {
+        return new ArrayList<PrinterProfile>(this.profiles.values());
+    }
+}
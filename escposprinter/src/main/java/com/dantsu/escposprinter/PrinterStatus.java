@@ -31,12 +31,15 @@ public class PrinterStatus {
     private byte[] rawOfflineStatus;
     private byte[] rawErrorStatus;
     private byte[] rawPaperStatus;
+    private byte[] rawAutomaticStatusBack;
 
     // Query success flags
     private boolean printerStatusQueried = false;
     private boolean offlineStatusQueried = false;
     private boolean errorStatusQueried = false;
     private boolean paperStatusQueried = false;
+    private boolean portStatusQueried = false;
+    private boolean automaticStatusBack = false;
 
     public PrinterStatus() {
     }
@@ -97,6 +100,101 @@ public class PrinterStatus {
         }
     }
 
+    /**
+     * Check that a byte is a DLE EOT reply : bits 0 and 7 cleared, bits 1 and 4 set.
+     *
+     * @param b Received byte
+     * @return true if the byte can be a DLE EOT reply
+     */
+    public static boolean isStatusReply(byte b) {
+        return (b & 0x93) == 0x12;
+    }
+
+    /**
+     * Parse the replies of the pipelined DLE EOT 1, 2, 3 and 4 queries, in this order. When the printer answers only
+     * some of them, only the statuses received are set as queried. A byte that is not a DLE EOT reply leaves its status
+     * not queried.
+     *
+     * @param responses Bytes received, up to one per query
+     * @return Number of statuses parsed
+     */
+    public int parseStatusReplies(byte[] responses) {
+        int parsed = 0;
+        for (int i = 0; i < Math.min(responses.length, 4); i++) {
+            if (!PrinterStatus.isStatusReply(responses[i])) {
+                continue;
+            }
+            byte[] response = new byte[]{responses[i]};
+            switch (i) {
+                case 0:
+                    this.parsePrinterStatus(response);
+                    break;
+                case 1:
+                    this.parseOfflineStatus(response);
+                    break;
+                case 2:
+                    this.parseErrorStatus(response);
+                    break;
+                default:
+                    this.parsePaperStatus(response);
+                    break;
+            }
+            parsed++;
+        }
+        return parsed;
+    }
+
+    /**
+     * Check that a byte can start an Automatic Status Back frame : bits 0, 1 and 7 cleared, bit 4 set.
+     *
+     * @param b Received byte
+     * @return true if the byte can be the first byte of an ASB frame
+     */
+    public static boolean isAutomaticStatusBackStart(byte b) {
+        return (b & 0x93) == 0x10;
+    }
+
+    /**
+     * Parse an Automatic Status Back frame (GS a), the 4 bytes sent by the printer when its status changes.
+     * It holds the same information as the four DLE EOT replies, all the statuses are set as queried.
+     */
+    public void parseAutomaticStatusBack(byte[] frame) {
+        if (frame != null && frame.length >= 4) {
+            this.rawAutomaticStatusBack = frame;
+            this.automaticStatusBack = true;
+            this.printerStatusQueried = true;
+            this.offlineStatusQueried = true;
+            this.errorStatusQueried = true;
+            this.paperStatusQueried = true;
+
+            this.drawerOpen = (frame[0] & 0x04) != 0;
+            this.online = (frame[0] & 0x08) == 0;
+            this.coverOpen = (frame[0] & 0x20) != 0;
+            this.paperFeedActive = (frame[0] & 0x40) != 0;
+
+            this.recoverableError = (frame[1] & 0x04) != 0;
+            this.autocutterError = (frame[1] & 0x08) != 0;
+            this.unrecoverableError = (frame[1] & 0x20) != 0;
+            this.autoRecoverableError = (frame[1] & 0x40) != 0;
+            this.errorOccurred = (frame[1] & 0x6C) != 0;
+
+            this.paperNearEnd = (frame[2] & 0x03) != 0;
+            this.paperEnd = (frame[2] & 0x0C) != 0;
+        }
+    }
+
+    /**
+     * Parse USB printer class port status (GET_PORT_STATUS).
+     */
+    public void parsePortStatus(int status) {
+        if (status >= 0) {
+            this.portStatusQueried = true;
+            this.paperEnd = this.paperEnd || (status & 0x20) != 0;
+            this.online = this.online && (status & 0x10) != 0;
+            this.errorOccurred = this.errorOccurred || (status & 0x08) == 0;
+        }
+    }
+
     // Getters
 
     /**
@@ -227,6 +325,30 @@ public class PrinterStatus {
         return paperStatusQueried;
     }
 
+    /**
+     * Check if USB port status was successfully queried.
+     * @return true if status was queried
+     */
+    public boolean isPortStatusQueried() {
+        return portStatusQueried;
+    }
+
+    /**
+     * Check if the status comes from an Automatic Status Back frame.
+     * @return true if the printer sent the status by itself
+     */
+    public boolean isAutomaticStatusBack() {
+        return automaticStatusBack;
+    }
+
+    /**
+     * Get raw Automatic Status Back frame.
+     * @return raw frame bytes or null
+     */
+    public byte[] getRawAutomaticStatusBack() {
+        return rawAutomaticStatusBack;
+    }
+
     /**
      * Get raw printer status bytes.
      * @return raw response bytes or null
@@ -267,12 +389,33 @@ public class PrinterStatus {
         return online && !coverOpen && !paperEnd && !errorOccurred && !unrecoverableError;
     }
 
+    /**
+     * Compare the printer state, the raw bytes and the query flags are ignored.
+     * @param other Status to compare
+     * @return true if both statuses tell the same printer state
+     */
+    public boolean isSameStatus(PrinterStatus other) {
+        return other != null &&
+                drawerOpen == other.drawerOpen &&
+                online == other.online &&
+                coverOpen == other.coverOpen &&
+                paperFeedActive == other.paperFeedActive &&
+                paperEndError == other.paperEndError &&
+                errorOccurred == other.errorOccurred &&
+                recoverableError == other.recoverableError &&
+                autocutterError == other.autocutterError &&
+                unrecoverableError == other.unrecoverableError &&
+                autoRecoverableError == other.autoRecoverableError &&
+                paperNearEnd == other.paperNearEnd &&
+                paperEnd == other.paperEnd;
+    }
+
     /**
      * Check if any status was successfully queried.
      * @return true if at least one status query succeeded
      */
     public boolean hasAnyStatus() {
-        return printerStatusQueried || offlineStatusQueried || errorStatusQueried || paperStatusQueried;
+        return printerStatusQueried || offlineStatusQueried || errorStatusQueried || paperStatusQueried || portStatusQueried;
     }
 
     @Override
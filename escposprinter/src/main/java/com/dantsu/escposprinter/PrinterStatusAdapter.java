@@ -0,0 +1,73 @@
+package com.dantsu.escposprinter;
+
+/**
+ * PrinterStatusListener calling one method per changed state. Override only the methods needed.
+ * For the first status received, every method is called.
+ */
+public abstract class PrinterStatusAdapter implements PrinterStatusListener {
+
+    @Override
+    public void onStatusChanged(PrinterStatus status, PrinterStatus previous) {
+        if (previous == null || status.isOnline() != previous.isOnline()) {
+            this.onOnlineChanged(status.isOnline());
+        }
+        if (previous == null || status.isCoverOpen() != previous.isCoverOpen()) {
+            this.onCoverOpenChanged(status.isCoverOpen());
+        }
+        if (previous == null || status.isDrawerOpen() != previous.isDrawerOpen()) {
+            this.onDrawerOpenChanged(status.isDrawerOpen());
+        }
+        if (previous == null || status.isPaperNearEnd() != previous.isPaperNearEnd()) {
+            this.onPaperNearEndChanged(status.isPaperNearEnd());
+        }
+        if (previous == null || status.isPaperEnd() != previous.isPaperEnd()) {
+            this.onPaperEndChanged(status.isPaperEnd());
+        }
+        if (
+            previous == null ||
+            status.isErrorOccurred() != previous.isErrorOccurred() ||
+            status.isRecoverableError() != previous.isRecoverableError() ||
+            status.isAutocutterError() != previous.isAutocutterError() ||
+            status.isUnrecoverableError() != previous.isUnrecoverableError() ||
+            status.isAutoRecoverableError() != previous.isAutoRecoverableError()
+        ) {
+            this.onErrorChanged(status);
+        }
+    }
+
+    /**
+     * @param online true if the printer is online
+     */
+    public void onOnlineChanged(boolean online) {
+    }
+
+    /**
+     * @param coverOpen true if the printer cover is open
+     */
+    public void onCoverOpenChanged(boolean coverOpen) {
+    }
+
+    /**
+     * @param drawerOpen true if the cash drawer is open
+     */
+    public void onDrawerOpenChanged(boolean drawerOpen) {
+    }
+
+    /**
+     * @param paperNearEnd true if the paper roll is running low
+     */
+    public void onPaperNearEndChanged(boolean paperNearEnd) {
+    }
+
+    /**
+     * @param paperEnd true if there is no paper
+     */
+    public void onPaperEndChanged(boolean paperEnd) {
+    }
+
+    /**
+     * @param status Status with the error flags, see PrinterStatus.isErrorOccurred() and the like
+     */
+    public void onErrorChanged(PrinterStatus status) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.dantsu.escposprinter;
+
+/**
+ * Listener of the printer status changes, see EscPosPrinter.enableAutomaticStatusBack().
+ * It is called from the thread receiving the printer data, not from the main thread.
+ */
+public interface PrinterStatusListener {
+    /**
+     * Called when the printer status changes.
+     *
+     * @param status   New status
+     * @param previous Status before the change, null for the first status received
+     */
+    void onStatusChanged(PrinterStatus status, PrinterStatus previous);
+}
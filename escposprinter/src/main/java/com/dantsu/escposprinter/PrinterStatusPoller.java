@@ -0,0 +1,321 @@
+package com.dantsu.escposprinter;
+
+import com.dantsu.escposprinter.connection.DeviceConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Poll the status of connected printers that do not support Automatic Status Back, and tell the changes to listeners.
+ * <p>
+ * All the printers are polled by one shared thread. The polls due at about the same time run in the same round. The
+ * interval of each printer adapts to its state :
+ * <ul>
+ *     <li>fast interval while a print job is active, see setJobActive(), or while the printer is not ready;</li>
+ *     <li>min idle interval after a change, doubled after each unchanged status up to the max idle interval;</li>
+ *     <li>max idle interval when the printer does not answer or sends Automatic Status Back frames.</li>
+ * </ul>
+ * A printer is not queried while another thread holds its connection lock (print job), it is polled again after the
+ * fast interval. Listeners are called from the polling thread, only when the status changes.
+ * <pre>
+ * PrinterStatusPoller.getDefault().register(printer.getPrinterCommands(), new PrinterStatusAdapter() {
+ *     public void onPaperEndChanged(boolean paperEnd) { ... }
+ * });
+ * </pre>
+ */
+public class PrinterStatusPoller {
+
+    public static final long DEFAULT_FAST_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MIN_IDLE_INTERVAL_MS = 5000;
+    public static final long DEFAULT_MAX_IDLE_INTERVAL_MS = 60000;
+    public static final int DEFAULT_QUERY_TIMEOUT_MS = 500;
+
+    /**
+     * Polls due within this time after the first one run in the same round.
+     */
+    private static final long MERGE_WINDOW_MS = 250;
+
+    private static final PrinterStatusPoller DEFAULT_POLLER = new PrinterStatusPoller();
+
+    /**
+     * Get the status poller shared by the application.
+     *
+     * @return Default PrinterStatusPoller instance
+     */
+    public static PrinterStatusPoller getDefault() {
+        return PrinterStatusPoller.DEFAULT_POLLER;
+    }
+
+
+    private static final class Entry {
+        private final EscPosPrinterCommands printer;
+        private final CopyOnWriteArrayList<PrinterStatusListener> listeners = new CopyOnWriteArrayList<PrinterStatusListener>();
+        private PrinterStatus status = null;
+        private boolean jobActive = false;
+        private long interval;
+        private long nextPoll;
+
+        Entry(EscPosPrinterCommands printer) {
+            this.printer = printer;
+        }
+    }
+
+
+    private final HashMap<EscPosPrinterCommands, Entry> entries = new HashMap<EscPosPrinterCommands, Entry>();
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextRound = null;
+    private long nextRoundTime = 0;
+    private long fastIntervalMs = PrinterStatusPoller.DEFAULT_FAST_INTERVAL_MS;
+    private long minIdleIntervalMs = PrinterStatusPoller.DEFAULT_MIN_IDLE_INTERVAL_MS;
+    private long maxIdleIntervalMs = PrinterStatusPoller.DEFAULT_MAX_IDLE_INTERVAL_MS;
+    private int queryTimeoutMs = PrinterStatusPoller.DEFAULT_QUERY_TIMEOUT_MS;
+
+    /**
+     * Create new instance of PrinterStatusPoller, with its own polling thread.
+     */
+    public PrinterStatusPoller() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PrinterStatusPoller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Set the interval used while a job is active or the printer is not ready.
+     *
+     * @param fastIntervalMs Interval in milliseconds (default: 1000)
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller setFastInterval(long fastIntervalMs) {
+        this.fastIntervalMs = fastIntervalMs;
+        return this;
+    }
+
+    /**
+     * Set the intervals used while the printer is idle : the min one after a change, up to the max one when nothing
+     * changes.
+     *
+     * @param minIdleIntervalMs Interval in milliseconds (default: 5000)
+     * @param maxIdleIntervalMs Interval in milliseconds (default: 60000)
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller setIdleIntervals(long minIdleIntervalMs, long maxIdleIntervalMs) {
+        this.minIdleIntervalMs = minIdleIntervalMs;
+        this.maxIdleIntervalMs = Math.max(minIdleIntervalMs, maxIdleIntervalMs);
+        return this;
+    }
+
+    /**
+     * Set the time to wait for the status replies.
+     *
+     * @param queryTimeoutMs Timeout in milliseconds (default: 500)
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller setQueryTimeout(int queryTimeoutMs) {
+        this.queryTimeoutMs = queryTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Start polling a printer, or add a listener to a printer already polled. The listener gets the current status
+     * after the first poll.
+     *
+     * @param printer  Printer to poll
+     * @param listener Listener of the status changes, called from the polling thread
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller register(EscPosPrinterCommands printer, PrinterStatusListener listener) {
+        Entry entry = this.entries.get(printer);
+        if (entry == null) {
+            entry = new Entry(printer);
+            entry.interval = this.minIdleIntervalMs;
+            entry.nextPoll = System.currentTimeMillis();
+            this.entries.put(printer, entry);
+            this.scheduleNextRound();
+        } else if (entry.status != null) {
+            listener.onStatusChanged(entry.status, null);
+        }
+        entry.listeners.addIfAbsent(listener);
+        return this;
+    }
+
+    /**
+     * Remove a listener. The printer is not polled anymore when no listener is left.
+     *
+     * @param printer  Printer given to register()
+     * @param listener Listener given to register()
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller unregister(EscPosPrinterCommands printer, PrinterStatusListener listener) {
+        Entry entry = this.entries.get(printer);
+        if (entry != null) {
+            entry.listeners.remove(listener);
+            if (entry.listeners.isEmpty()) {
+                this.entries.remove(printer);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Tell that a print job starts or ends. The printer is polled at the fast interval while the job is active, to see
+     * a paper end or an open cover as soon as possible.
+     *
+     * @param printer Printer given to register()
+     * @param active  true when the job starts, false when it ends
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller setJobActive(EscPosPrinterCommands printer, boolean active) {
+        Entry entry = this.entries.get(printer);
+        if (entry != null) {
+            entry.jobActive = active;
+            entry.interval = active ? this.fastIntervalMs : this.minIdleIntervalMs;
+            entry.nextPoll = Math.min(entry.nextPoll, System.currentTimeMillis() + entry.interval);
+            this.scheduleNextRound();
+        }
+        return this;
+    }
+
+    /**
+     * @param printer Printer given to register()
+     * @return Last status polled, null if the printer has not answered yet
+     */
+    public synchronized PrinterStatus getStatus(EscPosPrinterCommands printer) {
+        Entry entry = this.entries.get(printer);
+        return entry != null ? entry.status : null;
+    }
+
+    /**
+     * Stop polling all the printers.
+     *
+     * @return Fluent interface
+     */
+    public synchronized PrinterStatusPoller clear() {
+        this.entries.clear();
+        if (this.nextRound != null) {
+            this.nextRound.cancel(false);
+            this.nextRound = null;
+        }
+        return this;
+    }
+
+    /**
+     * Schedule the next round at the time of the first poll due.
+     */
+    private void scheduleNextRound() {
+        if (this.entries.isEmpty()) {
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        for (Entry entry : this.entries.values()) {
+            next = Math.min(next, entry.nextPoll);
+        }
+        if (this.nextRound != null) {
+            if (this.nextRoundTime <= next) {
+                return;
+            }
+            this.nextRound.cancel(false);
+        }
+        this.nextRoundTime = next;
+        this.nextRound = this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                PrinterStatusPoller.this.pollRound();
+            }
+        }, Math.max(next - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    private void pollRound() {
+        ArrayList<Entry> due = new ArrayList<Entry>();
+        int queryTimeout;
+        synchronized (this) {
+            this.nextRound = null;
+            long limit = System.currentTimeMillis() + PrinterStatusPoller.MERGE_WINDOW_MS;
+            for (Entry entry : this.entries.values()) {
+                if (entry.nextPoll <= limit) {
+                    due.add(entry);
+                }
+            }
+            queryTimeout = this.queryTimeoutMs;
+        }
+
+        for (Entry entry : due) {
+            this.poll(entry, queryTimeout);
+        }
+
+        synchronized (this) {
+            this.scheduleNextRound();
+        }
+    }
+
+    private void poll(Entry entry, int queryTimeout) {
+        DeviceConnection connection = entry.printer.getConnection();
+        PrinterStatus status = null;
+        boolean busy = false;
+
+        if (entry.printer.getAutomaticStatus() == null && connection.isConnected() && connection.canRead()) {
+            if (connection.getLock().tryLock()) {
+                try {
+                    status = entry.printer.queryStatus(queryTimeout);
+                } catch (Exception e) {
+                    Timber.tag("PrinterStatusPoller").w("Status query failed: %s", e.getMessage());
+                } finally {
+                    connection.getLock().unlock();
+                }
+            } else {
+                busy = true;
+            }
+        }
+
+        PrinterStatus previous;
+        boolean changed = false;
+        synchronized (this) {
+            previous = entry.status;
+            if (busy) {
+                entry.interval = this.fastIntervalMs;
+            } else if (status == null || !status.hasAnyStatus()) {
+                entry.interval = this.maxIdleIntervalMs;
+            } else {
+                changed = !status.isSameStatus(previous);
+                entry.status = status;
+                if (entry.jobActive || !status.isReady()) {
+                    entry.interval = this.fastIntervalMs;
+                } else if (changed) {
+                    entry.interval = this.minIdleIntervalMs;
+                } else {
+                    entry.interval = Math.min(Math.max(entry.interval, this.minIdleIntervalMs) * 2, this.maxIdleIntervalMs);
+                }
+            }
+            entry.nextPoll = System.currentTimeMillis() + entry.interval;
+        }
+
+        if (changed && entry.jobActive && status.isRecoverableError() && (previous == null || !previous.isRecoverableError())) {
+            // A recoverable error during a job is often a receive buffer overrun, the transfer backs off
+            connection.reportTransferError();
+        }
+
+        if (changed) {
+            for (PrinterStatusListener listener : entry.listeners) {
+                try {
+                    listener.onStatusChanged(status, previous);
+                } catch (RuntimeException e) {
+                    Timber.tag("PrinterStatusPoller").e(e, "Status listener failed");
+                }
+            }
+        }
+    }
+}
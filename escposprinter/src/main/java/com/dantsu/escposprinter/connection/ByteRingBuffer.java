@@ -0,0 +1,160 @@
+package com.dantsu.escposprinter.connection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ring buffer of the bytes received from a printer, with one writer (the thread receiving the data) and one reader.
+ * <p>
+ * Writing and reading do not lock : the positions are atomic and each side only moves its own. The lock is only taken
+ * by a reader waiting for data and by the writer waking it up. When the buffer is full, the new bytes are dropped.
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicInteger waitingReaders = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = this.lock.newCondition();
+    private volatile boolean closed = false;
+
+    /**
+     * Create new instance of ByteRingBuffer.
+     *
+     * @param capacity Minimum number of bytes, rounded up to a power of two
+     */
+    public ByteRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * @return Number of bytes received and not read yet
+     */
+    public int available() {
+        return (int) (this.writePosition.get() - this.readPosition.get());
+    }
+
+    /**
+     * Add received bytes, from the writer thread only.
+     *
+     * @return Number of bytes added, less than length if the buffer is full
+     */
+    public int write(byte[] bytes, int offset, int length) {
+        long write = this.writePosition.get();
+        int free = this.buffer.length - (int) (write - this.readPosition.get());
+        int count = Math.min(length, free);
+        if (count <= 0) {
+            return 0;
+        }
+
+        int index = (int) (write & this.mask);
+        int first = Math.min(count, this.buffer.length - index);
+        System.arraycopy(bytes, offset, this.buffer, index, first);
+        System.arraycopy(bytes, offset + first, this.buffer, 0, count - first);
+        this.writePosition.set(write + count);
+
+        if (this.waitingReaders.get() > 0) {
+            this.lock.lock();
+            try {
+                this.dataAvailable.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Take the received bytes without waiting, from the reader thread only.
+     *
+     * @return Number of bytes read, 0 if nothing was received
+     */
+    public int read(byte[] bytes, int offset, int length) {
+        long read = this.readPosition.get();
+        int count = Math.min(length, (int) (this.writePosition.get() - read));
+        if (count <= 0) {
+            return 0;
+        }
+
+        int index = (int) (read & this.mask);
+        int first = Math.min(count, this.buffer.length - index);
+        System.arraycopy(this.buffer, index, bytes, offset, first);
+        System.arraycopy(this.buffer, 0, bytes, offset + first, count - first);
+        this.readPosition.set(read + count);
+        return count;
+    }
+
+    /**
+     * Take the received bytes, waiting for at least one byte, from the reader thread only.
+     *
+     * @param timeout Maximum time to wait in milliseconds
+     * @return Number of bytes read, 0 if nothing was received before the timeout
+     */
+    public int read(byte[] bytes, int offset, int length, long timeout) throws InterruptedException {
+        int count = this.read(bytes, offset, length);
+        if (count > 0 || timeout <= 0) {
+            return count;
+        }
+        return this.awaitData(timeout) ? this.read(bytes, offset, length) : 0;
+    }
+
+    /**
+     * Wait for data to be received.
+     *
+     * @param timeout Maximum time to wait in milliseconds
+     * @return false if nothing was received before the timeout or the buffer is closed
+     */
+    public boolean awaitData(long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.lock.lock();
+        this.waitingReaders.incrementAndGet();
+        try {
+            // The writer checks waitingReaders after moving its position, one of both sees the other.
+            while (this.available() == 0) {
+                if (nanos <= 0 || this.closed) {
+                    return false;
+                }
+                nanos = this.dataAvailable.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.waitingReaders.decrementAndGet();
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stop waiting for data : no more bytes will be written, the waiting readers return at once.
+     */
+    public void close() {
+        this.closed = true;
+        this.lock.lock();
+        try {
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Drop the bytes not read yet, from the reader thread only.
+     */
+    public void clear() {
+        this.readPosition.set(this.writePosition.get());
+    }
+}
@@ -5,13 +5,18 @@ import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import timber.log.Timber;
 
 public abstract class DeviceConnection {
     protected OutputStream outputStream;
     protected InputStream inputStream;
+    protected DeviceInputReader inputReader = null;
     protected byte[] data;
+    private final CopyOnWriteArrayList<DeviceInputReader.Listener> inputListeners = new CopyOnWriteArrayList<DeviceInputReader.Listener>();
+    private final ReentrantLock lock = new ReentrantLock();
 
     /**
      * Chunk size for sending large data (default: 256 bytes).
@@ -20,16 +25,38 @@ public abstract class DeviceConnection {
     protected int chunkSize = 256;
 
     /**
-     * Delay between chunks in milliseconds (default: 10ms).
+     * Delay between chunks in milliseconds (default: 0ms, the chunks are paced by the timing model).
      */
-    protected int chunkDelayMs = 10;
+    protected int chunkDelayMs = 0;
 
     /**
-     * Bytes per millisecond for calculating wait time (default: 16).
-     * Lower values = longer wait times = more reliable but slower.
+     * Not used anymore, the transmission is paced by timingModel.
      */
+    @Deprecated
     protected int bytesPerMs = 16;
 
+    /**
+     * Printing time and receive buffer fill of the printer, pacing send().
+     */
+    protected PrintTimingModel timingModel = new PrintTimingModel();
+
+    /**
+     * Tuner of chunkSize and chunkDelayMs, null to use the fixed values.
+     */
+    protected TransportTuner tuner = null;
+
+    /**
+     * XON/XOFF flow control from the printer input, null if disabled.
+     */
+    protected XonXoffFlowControl flowControl = null;
+    protected int flowControlTimeout = 30000;
+
+    /**
+     * Dot lines and mechanical time of the data written since the last send().
+     */
+    protected int pendingDotLines = 0;
+    protected int pendingPrintingTime = 0;
+
     /**
      * Batch mode flag. When enabled, send() only accumulates data.
      * Data is only sent when flushBatch() is called.
@@ -59,6 +86,28 @@ public abstract class DeviceConnection {
         return this.outputStream != null;
     }
 
+    /**
+     * Get the lock of the connection, held by a thread for a sequence of calls that must not be mixed with the calls of
+     * another thread : a status query (write, send, read) or a print job. EscPosPrinter holds it while printing a
+     * formatted text and EscPosPrinterCommands while querying the status. write(), send() and flushBatch() take it
+     * too, so commands called from another thread never mix their bytes in the buffer of the connection.
+     *
+     * @return ReentrantLock of the connection
+     */
+    public ReentrantLock getLock() {
+        return this.lock;
+    }
+
+    /**
+     * Check that the connection still works before reusing it for a new print job, see PrinterSessionManager.
+     * By default, only isConnected() is checked.
+     *
+     * @return true if the connection can be used
+     */
+    public boolean isAlive() {
+        return this.isConnected();
+    }
+
     /**
      * Set the chunk size for sending large data.
      * Smaller chunks improve reliability on slow connections (like Bluetooth).
@@ -71,10 +120,17 @@ public abstract class DeviceConnection {
         return this;
     }
 
+    /**
+     * @return Size of each chunk in bytes, 0 if data is sent without chunks
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
     /**
      * Set the delay between chunks.
      *
-     * @param delayMs Delay in milliseconds (default: 10)
+     * @param delayMs Delay in milliseconds (default: 0)
      * @return Fluent interface
      */
     public DeviceConnection setChunkDelay(int delayMs) {
@@ -83,17 +139,132 @@ public abstract class DeviceConnection {
     }
 
     /**
-     * Set the bytes per millisecond for calculating wait time.
-     * Lower values result in longer wait times.
+     * @return Delay between chunks in milliseconds
+     */
+    public int getChunkDelay() {
+        return this.chunkDelayMs;
+    }
+
+    /**
+     * Tune the chunk size and the delay between chunks automatically, see TransportTuningCache to keep the tuned values
+     * from one session to the next. On BLE, the tuner sets the size of the packets, never larger than the MTU allows,
+     * and the delay between them. On USB, it is not used with the RTS/CTS flow control.
+     *
+     * @param tuner TransportTuner instance, null to use the fixed chunk size and delay
+     * @return Fluent interface
+     */
+    public DeviceConnection setTuner(TransportTuner tuner) {
+        this.tuner = tuner;
+        return this;
+    }
+
+    public TransportTuner getTuner() {
+        return this.tuner;
+    }
+
+    /**
+     * Report a transfer error not seen by send() : status error after a print job, garbled or missing output. The
+     * tuner, if any, backs off to smaller chunks and longer delays.
      *
-     * @param bytesPerMs Bytes per millisecond (default: 16)
      * @return Fluent interface
      */
+    public DeviceConnection reportTransferError() {
+        TransportTuner tuner = this.tuner;
+        if (tuner != null) {
+            tuner.onError();
+            Timber.tag("DeviceConnection").d("Transfer error reported, backing off to %s", tuner);
+        }
+        return this;
+    }
+
+    /**
+     * Not used anymore : send() does not wait for an assumed byte rate, see setTimingModel().
+     *
+     * @param bytesPerMs Bytes per millisecond
+     * @return Fluent interface
+     * @deprecated The transmission is paced by the timing model of the printer
+     */
+    @Deprecated
     public DeviceConnection setBytesPerMs(int bytesPerMs) {
         this.bytesPerMs = bytesPerMs;
         return this;
     }
 
+    /**
+     * Set the timing model of the printer, see PrinterProfile. By default, a slow printer with a small receive buffer
+     * is assumed.
+     *
+     * @param timingModel Receive buffer size and print speed of the printer, null to send without pacing
+     * @return Fluent interface
+     */
+    public DeviceConnection setTimingModel(PrintTimingModel timingModel) {
+        this.timingModel = timingModel;
+        return this;
+    }
+
+    public PrintTimingModel getTimingModel() {
+        return this.timingModel;
+    }
+
+    /**
+     * Enable the XON/XOFF flow control : the chunks are sent only while the printer accepts data, instead of being paced
+     * by the timing model. Only for the printers sending XOFF when their buffer is nearly full, the others would be
+     * overflowed. On USB, the RTS/CTS flow control takes precedence when it is enabled.
+     *
+     * @param enabled true to wait for XON while XOFF is in effect
+     * @return Fluent interface
+     */
+    public DeviceConnection setXonXoffFlowControl(boolean enabled) {
+        if (enabled && this.flowControl == null) {
+            this.flowControl = new XonXoffFlowControl();
+            this.addInputListener(this.flowControl);
+            this.getInputReader();
+        } else if (!enabled && this.flowControl != null) {
+            this.removeInputListener(this.flowControl);
+            this.flowControl.reset();
+            this.flowControl = null;
+        }
+        return this;
+    }
+
+    public boolean isXonXoffFlowControlEnabled() {
+        return this.flowControl != null;
+    }
+
+    /**
+     * Set the maximum time to wait for XON before sending a chunk.
+     *
+     * @param timeout Timeout in milliseconds (default: 30000)
+     * @return Fluent interface
+     */
+    public DeviceConnection setFlowControlTimeout(int timeout) {
+        this.flowControlTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Tell how many dot lines the data written since the last send() prints : text lines, images, paper feeds.
+     *
+     * @param dotLines Number of dot lines
+     * @return Fluent interface
+     */
+    public DeviceConnection addDotLines(int dotLines) {
+        this.pendingDotLines += dotLines;
+        return this;
+    }
+
+    /**
+     * Tell the mechanical time of the data written since the last send() that is not printing dot lines (cut, cash
+     * drawer pulse).
+     *
+     * @param printingTime Time in milliseconds
+     * @return Fluent interface
+     */
+    public DeviceConnection addPrintingTime(int printingTime) {
+        this.pendingPrintingTime += printingTime;
+        return this;
+    }
+
     /**
      * Enable or disable batch mode.
      * When batch mode is enabled, send() only accumulates data in the buffer.
@@ -120,6 +291,15 @@ public abstract class DeviceConnection {
         return this.batchMode;
     }
 
+    /**
+     * Check if data was written and not sent yet.
+     *
+     * @return true if send() or flushBatch() has data to send
+     */
+    public boolean hasPendingData() {
+        return this.data.length > 0;
+    }
+
     /**
      * Flush the batch buffer - actually send all accumulated data.
      * This should be called after all print operations when using batch mode.
@@ -127,6 +307,15 @@ public abstract class DeviceConnection {
      * @throws EscPosConnectionException if sending fails
      */
     public void flushBatch() throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.flushBatchData();
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void flushBatchData() throws EscPosConnectionException {
         if (this.data.length > 0) {
             boolean wasBatchMode = this.batchMode;
             this.batchMode = false;
@@ -140,6 +329,15 @@ public abstract class DeviceConnection {
      * Add data to send.
      */
     public void write(byte[] bytes) {
+        this.getLock().lock();
+        try {
+            this.writeData(bytes);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void writeData(byte[] bytes) {
         byte[] data = new byte[bytes.length + this.data.length];
         System.arraycopy(this.data, 0, data, 0, this.data.length);
         System.arraycopy(bytes, 0, data, this.data.length, bytes.length);
@@ -158,6 +356,15 @@ public abstract class DeviceConnection {
      * Send data to the device.
      */
     public void send(int addWaitingTime) throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.sendData(addWaitingTime);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void sendData(int addWaitingTime) throws EscPosConnectionException {
         // In batch mode, only accumulate waiting time - don't actually send
         if (this.batchMode) {
             this.batchWaitingTime += addWaitingTime;
@@ -170,40 +377,54 @@ public abstract class DeviceConnection {
             throw new EscPosConnectionException("Unable to send data to device.");
         }
 
-        Timber.tag("DeviceConnection").d("Sending %d bytes (chunk: %d, delay: %dms)", this.data.length, this.chunkSize, this.chunkDelayMs);
+        TransportTuner tuner = this.tuner;
+        int chunkSize = tuner != null ? tuner.getChunkSize() : this.chunkSize;
+        int chunkDelayMs = tuner != null ? tuner.getChunkDelay() : this.chunkDelayMs;
+
+        Timber.tag("DeviceConnection").d("Sending %d bytes (chunk: %d, delay: %dms)", this.data.length, chunkSize, chunkDelayMs);
+
+        int dotLines = this.pendingDotLines;
+        int printingTime = this.pendingPrintingTime;
+        this.pendingDotLines = 0;
+        this.pendingPrintingTime = 0;
 
         try {
-            // Send data in chunks for better reliability
-            if (this.data.length > this.chunkSize && this.chunkSize > 0) {
-                int offset = 0;
-                while (offset < this.data.length) {
-                    int length = Math.min(this.chunkSize, this.data.length - offset);
-                    this.outputStream.write(this.data, offset, length);
-                    this.outputStream.flush();
-                    offset += length;
-
-                    Timber.tag("DeviceConnection").v("Sent chunk: %d/%d bytes", offset, this.data.length);
-
-                    // Delay between chunks
-                    if (offset < this.data.length && this.chunkDelayMs > 0) {
-                        Thread.sleep(this.chunkDelayMs);
-                    }
+            // Send data in chunks, each chunk waits for XON or only if the printer receive buffer would overflow
+            int offset = 0;
+            while (offset < this.data.length) {
+                int length = this.data.length - offset;
+                if (chunkSize > 0) {
+                    length = Math.min(length, chunkSize);
                 }
-            } else {
-                this.outputStream.write(this.data);
+                length = this.awaitNextBlock(offset, length, this.data.length, dotLines, printingTime);
+
+                this.outputStream.write(this.data, offset, length);
                 this.outputStream.flush();
+                offset += length;
+                if (tuner != null) {
+                    tuner.onSuccess();
+                }
+
+                Timber.tag("DeviceConnection").v("Sent chunk: %d/%d bytes", offset, this.data.length);
+
+                // Delay between chunks
+                if (offset < this.data.length && chunkDelayMs > 0) {
+                    Thread.sleep(chunkDelayMs);
+                }
             }
 
-            int waitingTime = addWaitingTime + this.data.length / this.bytesPerMs;
             int sentBytes = this.data.length;
             this.data = new byte[0];
-            if (waitingTime > 0) {
-                Thread.sleep(waitingTime);
+            if (addWaitingTime > 0) {
+                Thread.sleep(addWaitingTime);
             }
 
             Timber.tag("DeviceConnection").d("Send complete: %d bytes sent successfully", sentBytes);
         } catch (IOException e) {
             Timber.tag("DeviceConnection").e(e, "Send IO error: %s", e.getMessage());
+            if (tuner != null) {
+                tuner.onError();
+            }
             throw new EscPosConnectionException(e.getMessage());
         } catch (InterruptedException e) {
             Timber.tag("DeviceConnection").e(e, "Send interrupted: %s", e.getMessage());
@@ -212,6 +433,73 @@ public abstract class DeviceConnection {
         }
     }
 
+    /**
+     * Wait until the next block of the data sent can be written : XON with the XON/XOFF flow control, room in the
+     * printer receive buffer otherwise, see awaitPrinterBuffer().
+     *
+     * @param offset       Offset of the block in the data sent
+     * @param length       Length of the block
+     * @param dataLength   Length of the data sent
+     * @param dotLines     Dot lines printed by the data sent
+     * @param printingTime Mechanical time of the data sent in milliseconds
+     * @return Length of the block to send, no larger than length
+     * @throws EscPosConnectionException if the printer does not send XON in time
+     */
+    protected int awaitNextBlock(int offset, int length, int dataLength, int dotLines, int printingTime) throws EscPosConnectionException, InterruptedException {
+        XonXoffFlowControl flowControl = this.flowControl;
+        if (flowControl == null) {
+            return this.awaitPrinterBuffer(offset, length, dataLength, dotLines, printingTime);
+        }
+        if (!flowControl.awaitXon(this.flowControlTimeout)) {
+            Timber.tag("DeviceConnection").e("Send failed: no XON after %dms", this.flowControlTimeout);
+            throw new EscPosConnectionException("The printer does not accept data.");
+        }
+        return length;
+    }
+
+    /**
+     * Report a chunk written to the tuner, if any, and wait for its delay between chunks.
+     *
+     * @param last true if it is the last chunk of the data sent, no delay is needed after it
+     */
+    protected void onChunkSent(boolean last) throws InterruptedException {
+        TransportTuner tuner = this.tuner;
+        if (tuner == null) {
+            return;
+        }
+        tuner.onSuccess();
+        int chunkDelay = tuner.getChunkDelay();
+        if (!last && chunkDelay > 0) {
+            Thread.sleep(chunkDelay);
+        }
+    }
+
+    /**
+     * Wait until a block of the data sent fits in the printer receive buffer, see PrintTimingModel. The dot lines and
+     * the printing time of the data sent are shared between its blocks in proportion to their size.
+     *
+     * @param offset       Offset of the block in the data sent
+     * @param length       Length of the block
+     * @param dataLength   Length of the data sent
+     * @param dotLines     Dot lines printed by the data sent
+     * @param printingTime Mechanical time of the data sent in milliseconds
+     * @return Length of the block to send, no larger than the receive buffer
+     */
+    protected int awaitPrinterBuffer(int offset, int length, int dataLength, int dotLines, int printingTime) throws InterruptedException {
+        PrintTimingModel timingModel = this.timingModel;
+        if (timingModel == null) {
+            return length;
+        }
+        length = Math.min(length, timingModel.getReceiveBufferSize());
+        int blockDotLines = (int) ((long) dotLines * (offset + length) / dataLength - (long) dotLines * offset / dataLength);
+        long waitingTime = timingModel.reserve(length, blockDotLines, offset + length == dataLength ? printingTime : 0);
+        if (waitingTime > 0) {
+            Timber.tag("DeviceConnection").v("Printer buffer full, waiting %dms", waitingTime);
+            Thread.sleep(waitingTime);
+        }
+        return length;
+    }
+
     /**
      * Read data from the device.
      *
@@ -220,46 +508,171 @@ public abstract class DeviceConnection {
      * @throws EscPosConnectionException if connection error occurs
      */
     public byte[] read(int timeout) throws EscPosConnectionException {
-        if (!this.isConnected() || this.inputStream == null) {
+        DeviceInputReader reader = this.getInputReader();
+        if (reader == null) {
             return new byte[0];
         }
 
+        byte[] response;
         try {
-            // Wait for data with timeout
-            long startTime = System.currentTimeMillis();
-            while (this.inputStream.available() == 0) {
-                if (System.currentTimeMillis() - startTime > timeout) {
-                    return new byte[0];
-                }
-                Thread.sleep(10);
-            }
+            response = reader.read(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EscPosConnectionException("Error reading from device: " + e.getMessage());
+        }
+        if (response.length == 0 && !reader.isRunning()) {
+            throw new EscPosConnectionException("Error reading from device: connection closed by the printer.");
+        }
+        return response;
+    }
 
-            // Read available data
-            int available = this.inputStream.available();
-            byte[] buffer = new byte[available];
-            int bytesRead = this.inputStream.read(buffer);
+    /**
+     * Read a reply of a known length, gathering the bytes received in several packets.
+     *
+     * @param length  Length of the reply in bytes
+     * @param timeout Maximum time to wait for the whole reply in milliseconds
+     * @return byte array with read data, shorter than length if the timeout is reached first
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public byte[] read(int length, int timeout) throws EscPosConnectionException {
+        DeviceInputReader reader = this.getInputReader();
+        if (reader != null) {
+            byte[] response;
+            try {
+                response = reader.read(length, timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EscPosConnectionException("Error reading from device: " + e.getMessage());
+            }
+            if (response.length < length && !reader.isRunning()) {
+                throw new EscPosConnectionException("Error reading from device: connection closed by the printer.");
+            }
+            return response;
+        }
 
-            if (bytesRead > 0) {
-                if (bytesRead < buffer.length) {
-                    byte[] result = new byte[bytesRead];
-                    System.arraycopy(buffer, 0, result, 0, bytesRead);
-                    return result;
-                }
-                return buffer;
+        // Connection reading its input itself : gather its replies until the deadline.
+        byte[] result = new byte[length];
+        int count = 0;
+        long deadline = System.currentTimeMillis() + timeout;
+        while (count < length) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
             }
+            byte[] response = this.read((int) remaining);
+            int copied = Math.min(response.length, length - count);
+            System.arraycopy(response, 0, result, count, copied);
+            count += copied;
+        }
+        if (count < length) {
+            byte[] partial = new byte[count];
+            System.arraycopy(result, 0, partial, 0, count);
+            return partial;
+        }
+        return result;
+    }
+
+    /**
+     * Read a reply ended by a terminator byte, gathering the bytes received in several packets.
+     *
+     * @param terminator Last byte of the reply
+     * @param maxLength  Maximum length of the reply in bytes
+     * @param timeout    Maximum time to wait for the whole reply in milliseconds
+     * @return byte array with read data including the terminator, without it if the timeout is reached first
+     * @throws EscPosConnectionException if connection error occurs
+     */
+    public byte[] readUntil(byte terminator, int maxLength, int timeout) throws EscPosConnectionException {
+        DeviceInputReader reader = this.getInputReader();
+        if (reader == null) {
             return new byte[0];
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        }
+        try {
+            return reader.readUntil(terminator, maxLength, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new EscPosConnectionException("Error reading from device: " + e.getMessage());
         }
     }
 
+    /**
+     * Drop the received bytes not read yet, so a late reply to a previous query is not taken for the next one.
+     */
+    public void clearInput() {
+        DeviceInputReader reader = this.inputReader;
+        if (reader != null) {
+            reader.clear();
+        }
+    }
+
+    /**
+     * Add a listener of the unsolicited bytes sent by the printer (Automatic Status Back, XON/XOFF...).
+     * The listener is kept across the reconnections.
+     *
+     * @param listener Listener called from the receiving thread
+     * @return Fluent interface
+     */
+    public DeviceConnection addInputListener(DeviceInputReader.Listener listener) {
+        this.inputListeners.addIfAbsent(listener);
+        return this;
+    }
+
+    /**
+     * @param listener Listener added by addInputListener()
+     * @return Fluent interface
+     */
+    public DeviceConnection removeInputListener(DeviceInputReader.Listener listener) {
+        this.inputListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Create the reader of the printer replies, dispatching the unsolicited bytes to the input listeners.
+     */
+    protected DeviceInputReader newInputReader() {
+        return new DeviceInputReader(this.getClass().getSimpleName(), this.inputListeners, DeviceInputReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Start receiving the printer replies in the background, call it once connected.
+     *
+     * @param source Input of the connection
+     */
+    protected void startInputReader(DeviceInputReader.Source source) {
+        this.stopInputReader();
+        if (this.flowControl != null) {
+            this.flowControl.reset();
+        }
+        this.inputReader = this.newInputReader().start(source);
+    }
+
+    /**
+     * Stop receiving, call it when disconnecting.
+     */
+    protected void stopInputReader() {
+        if (this.inputReader != null) {
+            this.inputReader.stop();
+            this.inputReader = null;
+        }
+    }
+
+    /**
+     * Get the reader of the printer replies. A connection giving only an input stream gets its reader on the first read.
+     *
+     * @return DeviceInputReader, null if the connection cannot read
+     */
+    protected DeviceInputReader getInputReader() {
+        if (this.inputReader == null && this.inputStream != null && this.isConnected()) {
+            this.startInputReader(new DeviceInputReader.InputStreamSource(this.inputStream));
+        }
+        return this.inputReader;
+    }
+
     /**
      * Check if input stream is available for reading.
      *
      * @return true if input stream is available
      */
     public boolean canRead() {
-        return this.inputStream != null;
+        return this.inputReader != null || this.inputStream != null;
     }
 }
@@ -0,0 +1,250 @@
+package com.dantsu.escposprinter.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Receives the bytes sent by a printer in the background, so the replies are waited for without polling.
+ * <p>
+ * A thread blocks on the connection input and pushes the bytes in a ByteRingBuffer. Each byte is first offered to the
+ * listeners : the bytes a listener takes (Automatic Status Back, XON/XOFF...) are unsolicited and never reach the
+ * replies. The replies are read by one thread at a time, waiting for a whole frame until an exact deadline.
+ * <p>
+ * A connection receiving its data from callbacks (BLE notifications) calls receive() directly, without start().
+ */
+public class DeviceInputReader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * Source of the received bytes, read by the background thread.
+     */
+    public interface Source {
+        /**
+         * Block until bytes are received.
+         *
+         * @param buffer Buffer to fill
+         * @return Number of bytes received, -1 when the connection is closed
+         */
+        int read(byte[] buffer) throws IOException;
+    }
+
+    /**
+     * Listener of the bytes received outside the replies.
+     */
+    public interface Listener {
+        /**
+         * Called from the receiving thread for each byte, in order.
+         *
+         * @param b Received byte, 0 to 255
+         * @return true if the byte is unsolicited and taken by the listener, false to leave it to the replies
+         */
+        boolean onByteReceived(int b);
+    }
+
+    /**
+     * Source reading an InputStream.
+     */
+    public static class InputStreamSource implements Source {
+        private final InputStream inputStream;
+
+        public InputStreamSource(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            return this.inputStream.read(buffer);
+        }
+    }
+
+
+    private final ByteRingBuffer buffer;
+    private final List<Listener> listeners;
+    private final String name;
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    /**
+     * Create new instance of DeviceInputReader.
+     *
+     * @param name       Name of the connection, for the thread name and the logs
+     * @param listeners  Listeners of the unsolicited bytes, the list can change while receiving
+     * @param bufferSize Size of the replies buffer in bytes
+     */
+    public DeviceInputReader(String name, List<Listener> listeners, int bufferSize) {
+        this.name = name;
+        this.listeners = listeners;
+        this.buffer = new ByteRingBuffer(bufferSize);
+    }
+
+    /**
+     * Start the background thread reading the source.
+     *
+     * @param source Input of the connection
+     * @return Fluent interface
+     */
+    public DeviceInputReader start(final Source source) {
+        this.running = true;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DeviceInputReader.this.readSource(source);
+            }
+        }, "EscPosInputReader-" + this.name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+        return this;
+    }
+
+    private void readSource(Source source) {
+        byte[] bytes = new byte[512];
+        try {
+            int read;
+            while (this.running && (read = source.read(bytes)) != -1) {
+                this.receive(bytes, 0, read);
+            }
+            Timber.tag("DeviceInputReader").d("%s: input closed", this.name);
+        } catch (IOException e) {
+            if (this.running) {
+                Timber.tag("DeviceInputReader").w("%s: input error: %s", this.name, e.getMessage());
+            }
+        } finally {
+            this.running = false;
+            this.buffer.close();
+        }
+    }
+
+    /**
+     * Stop receiving. The source must be closed by the connection to unblock the thread.
+     */
+    public void stop() {
+        this.running = false;
+        this.buffer.close();
+        if (this.thread != null && this.thread != Thread.currentThread()) {
+            this.thread.interrupt();
+        }
+        this.thread = null;
+    }
+
+    /**
+     * @return false once the input is closed or failed
+     */
+    public boolean isRunning() {
+        return !this.buffer.isClosed();
+    }
+
+    /**
+     * Dispatch received bytes, from the receiving thread only.
+     */
+    public void receive(byte[] bytes, int offset, int length) {
+        if (this.listeners.isEmpty()) {
+            this.store(bytes, offset, length);
+            return;
+        }
+
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (this.isUnsolicited(bytes[i] & 0xFF)) {
+                this.store(bytes, start, i - start);
+                start = i + 1;
+            }
+        }
+        this.store(bytes, start, end - start);
+    }
+
+    private boolean isUnsolicited(int b) {
+        for (Listener listener : this.listeners) {
+            if (listener.onByteReceived(b)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void store(byte[] bytes, int offset, int length) {
+        if (length > 0 && this.buffer.write(bytes, offset, length) < length) {
+            Timber.tag("DeviceInputReader").w("%s: replies buffer full, bytes dropped", this.name);
+        }
+    }
+
+    /**
+     * Wait for a reply and take all the bytes received.
+     *
+     * @param timeout Maximum time to wait for the first byte in milliseconds
+     * @return Received bytes, empty array if nothing was received before the timeout
+     */
+    public synchronized byte[] read(int timeout) throws InterruptedException {
+        if (!this.buffer.awaitData(timeout) && this.buffer.available() == 0) {
+            return new byte[0];
+        }
+        byte[] result = new byte[this.buffer.available()];
+        int count = this.buffer.read(result, 0, result.length);
+        return count == result.length ? result : DeviceInputReader.trim(result, count);
+    }
+
+    /**
+     * Wait for a reply of a known length. A reply split over several packets is gathered.
+     *
+     * @param length  Length of the reply in bytes
+     * @param timeout Maximum time to wait for the whole reply in milliseconds
+     * @return Reply, shorter than length if the deadline is reached first
+     */
+    public synchronized byte[] read(int length, int timeout) throws InterruptedException {
+        byte[] result = new byte[length];
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        int count = this.buffer.read(result, 0, length);
+        while (count < length) {
+            long remaining = (deadline - System.nanoTime() + 999999L) / 1000000L;
+            if (remaining <= 0 || !this.buffer.awaitData(remaining)) {
+                break;
+            }
+            count += this.buffer.read(result, count, length - count);
+        }
+        return count == length ? result : DeviceInputReader.trim(result, count);
+    }
+
+    /**
+     * Wait for a reply ended by a terminator byte (GS I printer information ends with NUL).
+     *
+     * @param terminator Last byte of the reply
+     * @param maxLength  Maximum length of the reply in bytes
+     * @param timeout    Maximum time to wait for the whole reply in milliseconds
+     * @return Reply with its terminator, without it if the deadline or maxLength is reached first
+     */
+    public synchronized byte[] readUntil(byte terminator, int maxLength, int timeout) throws InterruptedException {
+        byte[] result = new byte[maxLength];
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        int count = 0;
+        while (count < maxLength) {
+            if (this.buffer.read(result, count, 1) == 1) {
+                if (result[count++] == terminator) {
+                    break;
+                }
+                continue;
+            }
+            long remaining = (deadline - System.nanoTime() + 999999L) / 1000000L;
+            if (remaining <= 0 || !this.buffer.awaitData(remaining)) {
+                break;
+            }
+        }
+        return count == maxLength ? result : DeviceInputReader.trim(result, count);
+    }
+
+    /**
+     * Drop the replies not read yet.
+     */
+    public synchronized void clear() {
+        this.buffer.clear();
+    }
+
+    private static byte[] trim(byte[] bytes, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, 0, result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.dantsu.escposprinter.connection;
+
+import java.util.ArrayDeque;
+
+/**
+ * Estimates how long the printer takes to print the data sent and how full its receive buffer is, to pace the
+ * transmission only when the buffer would overflow.
+ * <p>
+ * The printing time depends on the dot lines printed (text lines, images, paper feeds) and the mechanical print speed,
+ * not on the number of bytes. Each block sent is kept in the receive buffer until its dot lines are printed, after the
+ * blocks sent before it. A block that does not fit in the free space waits until enough blocks are printed. A printer
+ * that is faster than the job is never waited for.
+ */
+public class PrintTimingModel {
+
+    /**
+     * Receive buffer assumed for unknown printers, small enough for most of them.
+     */
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 1024;
+
+    /**
+     * Print speed assumed for unknown printers : 50 mm/s at 203 dpi.
+     */
+    public static final float DEFAULT_MILLIS_PER_DOT_LINE = 2.5f;
+
+    private final int receiveBufferSize;
+    private final float millisPerDotLine;
+    /**
+     * Blocks not printed yet : {bytes, printing end time in nanoseconds}.
+     */
+    private final ArrayDeque<long[]> blocks = new ArrayDeque<long[]>();
+    private int bufferedBytes = 0;
+    private long printingEnd;
+
+    /**
+     * Create new instance of PrintTimingModel for an unknown printer.
+     */
+    public PrintTimingModel() {
+        this(PrintTimingModel.DEFAULT_RECEIVE_BUFFER_SIZE, PrintTimingModel.DEFAULT_MILLIS_PER_DOT_LINE);
+    }
+
+    /**
+     * Create new instance of PrintTimingModel.
+     *
+     * @param receiveBufferSize Size of the printer receive buffer in bytes
+     * @param millisPerDotLine  Time to print one dot line in milliseconds, see PrinterProfile.getMillisPerDotLine()
+     */
+    public PrintTimingModel(int receiveBufferSize, float millisPerDotLine) {
+        this.receiveBufferSize = Math.max(1, receiveBufferSize);
+        this.millisPerDotLine = millisPerDotLine;
+        this.printingEnd = System.nanoTime();
+    }
+
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    public float getMillisPerDotLine() {
+        return this.millisPerDotLine;
+    }
+
+    /**
+     * Add a block about to be sent.
+     *
+     * @param bytes        Size of the block, not larger than the receive buffer
+     * @param dotLines     Dot lines printed by the block
+     * @param printingTime Mechanical time of the block in milliseconds, not counted in dot lines (cut, drawer pulse)
+     * @return Time to wait before sending the block in milliseconds, 0 if it fits in the receive buffer now
+     */
+    public long reserve(int bytes, int dotLines, int printingTime) {
+        return this.reserve(bytes, dotLines, printingTime, System.nanoTime());
+    }
+
+    synchronized long reserve(int bytes, int dotLines, int printingTime, long now) {
+        this.release(now);
+
+        long sendTime = now;
+        while (this.bufferedBytes + bytes > this.receiveBufferSize && !this.blocks.isEmpty()) {
+            long[] block = this.blocks.poll();
+            this.bufferedBytes -= (int) block[0];
+            if (block[1] - sendTime > 0) {
+                sendTime = block[1];
+            }
+        }
+
+        long start = this.printingEnd - sendTime > 0 ? this.printingEnd : sendTime;
+        this.printingEnd = start + (long) (dotLines * this.millisPerDotLine * 1000000f) + printingTime * 1000000L;
+        this.blocks.add(new long[]{bytes, this.printingEnd});
+        this.bufferedBytes += bytes;
+        return (sendTime - now + 999999L) / 1000000L;
+    }
+
+    private void release(long now) {
+        while (!this.blocks.isEmpty() && this.blocks.peek()[1] - now <= 0) {
+            this.bufferedBytes -= (int) this.blocks.poll()[0];
+        }
+    }
+
+    /**
+     * @return Estimated number of bytes waiting in the receive buffer
+     */
+    public int getBufferedBytes() {
+        return this.getBufferedBytes(System.nanoTime());
+    }
+
+    synchronized int getBufferedBytes(long now) {
+        this.release(now);
+        return this.bufferedBytes;
+    }
+
+    /**
+     * @return Estimated time until the printer has printed all the data sent, in milliseconds
+     */
+    public synchronized long getRemainingPrintingTime() {
+        long remaining = this.printingEnd - System.nanoTime();
+        return remaining > 0 ? (remaining + 999999L) / 1000000L : 0;
+    }
+
+    /**
+     * Forget the data sent, when the connection is opened again.
+     */
+    public synchronized void reset() {
+        this.blocks.clear();
+        this.bufferedBytes = 0;
+        this.printingEnd = System.nanoTime();
+    }
+}
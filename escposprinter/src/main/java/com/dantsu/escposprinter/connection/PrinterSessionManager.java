@@ -0,0 +1,327 @@
+package com.dantsu.escposprinter.connection;
+
+import com.dantsu.escposprinter.connection.bluetooth.BluetoothConnection;
+import com.dantsu.escposprinter.connection.bluetooth.BluetoothLeConnection;
+import com.dantsu.escposprinter.connection.tcp.TcpConnection;
+import com.dantsu.escposprinter.connection.usb.UsbConnection;
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Keep one open DeviceConnection per printer from one print job to the next.
+ * <p>
+ * Opening a connection is often the slowest part of a small print job (TCP handshake, RFCOMM connection, GATT
+ * connection and services discovery). acquire() returns the connection already open for the same printer, after
+ * checking it still works, and reconnects it if needed. release() gives it back, it is closed after the idle timeout.
+ * <pre>
+ * DeviceConnection connection = PrinterSessionManager.getDefault().acquire(new TcpConnection("192.168.1.3", 9100));
+ * try {
+ *     new EscPosPrinter(connection, 203, 48f, 32).printFormattedTextAndCut(text);
+ * } finally {
+ *     PrinterSessionManager.getDefault().release(connection);
+ * }
+ * </pre>
+ */
+public class PrinterSessionManager {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+    private static final PrinterSessionManager DEFAULT_MANAGER = new PrinterSessionManager(PrinterSessionManager.DEFAULT_IDLE_TIMEOUT_MS);
+
+    /**
+     * Get the session manager shared by the application.
+     *
+     * @return Default PrinterSessionManager instance
+     */
+    public static PrinterSessionManager getDefault() {
+        return PrinterSessionManager.DEFAULT_MANAGER;
+    }
+
+    /**
+     * Get the key identifying the printer of a connection : address and port for TCP, MAC address for Bluetooth and
+     * device name for USB.
+     *
+     * @param connection DeviceConnection instance
+     * @return Key of the printer, null if the connection type is unknown
+     */
+    public static String getSessionKey(DeviceConnection connection) {
+        if (connection instanceof TcpConnection) {
+            TcpConnection tcpConnection = (TcpConnection) connection;
+            return "tcp:" + tcpConnection.getAddress() + ":" + tcpConnection.getPort();
+        } else if (connection instanceof BluetoothConnection) {
+            BluetoothConnection bluetoothConnection = (BluetoothConnection) connection;
+            return bluetoothConnection.getDevice() != null ? "bt:" + bluetoothConnection.getDevice().getAddress() : null;
+        } else if (connection instanceof BluetoothLeConnection) {
+            BluetoothLeConnection bluetoothLeConnection = (BluetoothLeConnection) connection;
+            return bluetoothLeConnection.getDevice() != null ? "ble:" + bluetoothLeConnection.getDevice().getAddress() : null;
+        } else if (connection instanceof UsbConnection) {
+            UsbConnection usbConnection = (UsbConnection) connection;
+            return usbConnection.getDevice() != null ? "usb:" + usbConnection.getDevice().getDeviceName() : null;
+        }
+        return null;
+    }
+
+
+    private static final class Session {
+        private DeviceConnection connection;
+        private boolean inUse = false;
+        private boolean connecting = false;
+        private ScheduledFuture<?> idleClose = null;
+
+        Session(DeviceConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+
+    private final HashMap<String, Session> sessions = new HashMap<String, Session>();
+    private final ScheduledExecutorService scheduler;
+    private long idleTimeoutMs;
+
+    /**
+     * Create new instance of PrinterSessionManager.
+     *
+     * @param idleTimeoutMs Time in milliseconds an unused connection stays open
+     */
+    public PrinterSessionManager(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PrinterSessionManager");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Set the time an unused connection stays open, applied to the next released connections.
+     *
+     * @param idleTimeoutMs Time in milliseconds, 0 to close the connections as soon as they are released
+     * @return Fluent interface
+     */
+    public PrinterSessionManager setIdleTimeout(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        return this;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeoutMs;
+    }
+
+    /**
+     * Get an open connection to the printer of the given connection. If a connection to this printer is already open
+     * and still works, it is returned instead of the given one.
+     *
+     * @param connection Not connected DeviceConnection to the printer, used if no connection is open yet
+     * @return Open connection to the printer, to be given back with release()
+     */
+    public DeviceConnection acquire(DeviceConnection connection) throws EscPosConnectionException {
+        String key = PrinterSessionManager.getSessionKey(connection);
+        if (key == null) {
+            return connection.connect();
+        }
+        return this.acquire(key, connection);
+    }
+
+    /**
+     * Get an open connection to a printer. If a connection with the same key is already open and still works, it is
+     * returned instead of the given one. A printer runs one job at a time : if its connection is used by another job,
+     * this method waits until it is released.
+     *
+     * @param key        Key identifying the printer
+     * @param connection Not connected DeviceConnection to the printer, used if no connection is open yet
+     * @return Open connection to the printer, to be given back with release()
+     */
+    public DeviceConnection acquire(String key, DeviceConnection connection) throws EscPosConnectionException {
+        Session session;
+
+        // Reserve the session of the printer, the connection is opened outside the lock so that a slow printer does
+        // not hold back the jobs of the other printers.
+        synchronized (this) {
+            session = this.sessions.get(key);
+            try {
+                while (session != null && session.inUse) {
+                    this.wait();
+                    session = this.sessions.get(key);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EscPosConnectionException("Interrupted while waiting for the printer " + key);
+            }
+
+            if (session == null) {
+                session = new Session(connection);
+                this.sessions.put(key, session);
+            } else if (session.idleClose != null) {
+                session.idleClose.cancel(false);
+                session.idleClose = null;
+            }
+            session.inUse = true;
+            session.connecting = true;
+        }
+
+        DeviceConnection sessionConnection = session.connection;
+        try {
+            if (sessionConnection != connection && !sessionConnection.isAlive()) {
+                Timber.tag("PrinterSessionManager").i("Reconnecting %s", key);
+                sessionConnection.disconnect();
+            }
+            try {
+                sessionConnection.connect();
+            } catch (EscPosConnectionException e) {
+                if (sessionConnection == connection) {
+                    throw e;
+                }
+                // The connection kept from a previous job is broken for good, start again with the new one.
+                Timber.tag("PrinterSessionManager").w("Replacing the connection of %s", key);
+                sessionConnection.disconnect();
+                sessionConnection = connection;
+                connection.connect();
+            }
+        } catch (EscPosConnectionException e) {
+            synchronized (this) {
+                if (this.sessions.get(key) == session) {
+                    this.sessions.remove(key);
+                }
+                this.notifyAll();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            session.connecting = false;
+            if (this.sessions.get(key) != session) {
+                // close() was called while connecting.
+                sessionConnection.disconnect();
+                this.notifyAll();
+                throw new EscPosConnectionException("The connection to the printer " + key + " was closed while connecting.");
+            }
+            session.connection = sessionConnection;
+        }
+
+        if (connection != sessionConnection && connection.isConnected()) {
+            // The given connection was opened by the caller, the printer keeps the one of the session.
+            connection.disconnect();
+        }
+        return sessionConnection;
+    }
+
+    /**
+     * Give back a connection returned by acquire(). It stays open for the next print job until the idle timeout. A
+     * connection still in batch mode or with data not sent is closed instead, the next job would not be able to use it.
+     *
+     * @param connection Connection returned by acquire()
+     * @return Fluent interface
+     */
+    public synchronized PrinterSessionManager release(DeviceConnection connection) {
+        final String key = this.findKey(connection);
+        if (key == null) {
+            connection.disconnect();
+            return this;
+        }
+
+        if (connection.isBatchMode() || connection.hasPendingData()) {
+            Timber.tag("PrinterSessionManager").w("Closing %s, released in batch mode or with data not sent", key);
+            this.close(key);
+            return this;
+        }
+
+        final Session session = this.sessions.get(key);
+        session.inUse = false;
+
+        if (this.idleTimeoutMs <= 0) {
+            this.close(key);
+        } else {
+            session.idleClose = this.scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (PrinterSessionManager.this) {
+                        if (PrinterSessionManager.this.sessions.get(key) == session && !session.inUse) {
+                            Timber.tag("PrinterSessionManager").d("Closing idle connection %s", key);
+                            PrinterSessionManager.this.close(key);
+                        }
+                    }
+                }
+            }, this.idleTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        this.notifyAll();
+        return this;
+    }
+
+    /**
+     * Give back a connection that failed during a print job. It is closed, the next acquire() opens a new one.
+     *
+     * @param connection Connection returned by acquire()
+     * @return Fluent interface
+     */
+    public synchronized PrinterSessionManager invalidate(DeviceConnection connection) {
+        String key = this.findKey(connection);
+        if (key == null) {
+            connection.disconnect();
+            return this;
+        }
+        this.close(key);
+        return this;
+    }
+
+    /**
+     * Close the connection to a printer.
+     *
+     * @param key Key identifying the printer
+     * @return Fluent interface
+     */
+    public synchronized PrinterSessionManager close(String key) {
+        Session session = this.sessions.remove(key);
+        if (session != null) {
+            if (session.idleClose != null) {
+                session.idleClose.cancel(false);
+            }
+            if (!session.connecting) {
+                // Otherwise acquire() disconnects it once connected.
+                session.connection.disconnect();
+            }
+            this.notifyAll();
+        }
+        return this;
+    }
+
+    /**
+     * Close all the connections.
+     *
+     * @return Fluent interface
+     */
+    public synchronized PrinterSessionManager closeAll() {
+        for (String key : this.sessions.keySet().toArray(new String[0])) {
+            this.close(key);
+        }
+        return this;
+    }
+
+    /**
+     * @return Number of printers with an open connection
+     */
+    public synchronized int size() {
+        return this.sessions.size();
+    }
+
+    private String findKey(DeviceConnection connection) {
+        for (HashMap.Entry<String, Session> entry : this.sessions.entrySet()) {
+            if (entry.getValue().connection == connection) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,163 @@
+package com.dantsu.escposprinter.connection;
+
+/**
+ * AIMD tuning of the chunk size and the delay between chunks of a connection.
+ * <p>
+ * While the chunks are written without error, the chunk size grows by a fixed step and the delay shrinks by a fixed
+ * step (additive increase). On a write error, a status error or garbled output reported by the application, the chunk
+ * size is halved and the delay doubled (multiplicative decrease). A good printer quickly reaches large chunks without
+ * delay, a bad one settles just below the values it fails with. The values are persisted per device by
+ * TransportTuningCache.
+ */
+public class TransportTuner {
+
+    /**
+     * Listener of the tuned values, called each time they change.
+     */
+    public interface Listener {
+        void onTuned(TransportTuner tuner);
+    }
+
+    public static final int MIN_CHUNK_SIZE = 20;
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 4096;
+    public static final int MAX_CHUNK_DELAY = 200;
+
+    private static final int CHUNK_SIZE_STEP = 32;
+    private static final int CHUNK_DELAY_STEP = 2;
+    private static final int MIN_ERROR_CHUNK_DELAY = 10;
+    private static final int SUCCESSES_TO_GROW = 8;
+
+    private final int maxChunkSize;
+    private int chunkSize;
+    private int chunkDelay;
+    private int successes = 0;
+    private Listener listener = null;
+
+    /**
+     * Create new instance of TransportTuner.
+     *
+     * @param chunkSize    Initial chunk size in bytes
+     * @param chunkDelay   Initial delay between chunks in milliseconds
+     * @param maxChunkSize Largest chunk size in bytes
+     */
+    public TransportTuner(int chunkSize, int chunkDelay, int maxChunkSize) {
+        this.maxChunkSize = Math.max(TransportTuner.MIN_CHUNK_SIZE, maxChunkSize);
+        this.setValues(chunkSize, chunkDelay);
+    }
+
+    /**
+     * Create new instance of TransportTuner, with the current settings of a connection.
+     *
+     * @param connection DeviceConnection instance
+     */
+    public TransportTuner(DeviceConnection connection) {
+        this(
+                connection.getChunkSize() > 0 ? connection.getChunkSize() : TransportTuner.DEFAULT_MAX_CHUNK_SIZE,
+                connection.getChunkDelay(),
+                TransportTuner.DEFAULT_MAX_CHUNK_SIZE
+        );
+    }
+
+    /**
+     * Set the listener of the tuned values.
+     *
+     * @param listener Listener instance, null to remove it
+     * @return Fluent interface
+     */
+    public TransportTuner setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Restore tuned values, from a previous session.
+     *
+     * @param chunkSize  Chunk size in bytes
+     * @param chunkDelay Delay between chunks in milliseconds
+     * @return Fluent interface
+     */
+    public synchronized TransportTuner setValues(int chunkSize, int chunkDelay) {
+        this.chunkSize = Math.max(TransportTuner.MIN_CHUNK_SIZE, Math.min(this.maxChunkSize, chunkSize));
+        this.chunkDelay = Math.max(0, Math.min(TransportTuner.MAX_CHUNK_DELAY, chunkDelay));
+        this.successes = 0;
+        return this;
+    }
+
+    public synchronized int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    public synchronized int getChunkDelay() {
+        return this.chunkDelay;
+    }
+
+    public int getMaxChunkSize() {
+        return this.maxChunkSize;
+    }
+
+    /**
+     * Report a chunk written without error.
+     */
+    public void onSuccess() {
+        synchronized (this) {
+            if (++this.successes < TransportTuner.SUCCESSES_TO_GROW) {
+                return;
+            }
+            this.successes = 0;
+            if (this.chunkSize >= this.maxChunkSize && this.chunkDelay == 0) {
+                return;
+            }
+            this.chunkSize = Math.min(this.maxChunkSize, this.chunkSize + TransportTuner.CHUNK_SIZE_STEP);
+            this.chunkDelay = Math.max(0, this.chunkDelay - TransportTuner.CHUNK_DELAY_STEP);
+        }
+        this.notifyListener();
+    }
+
+    /**
+     * Report a write error, a status error or garbled output.
+     */
+    public void onError() {
+        synchronized (this) {
+            this.successes = 0;
+            this.chunkSize = Math.max(TransportTuner.MIN_CHUNK_SIZE, this.chunkSize / 2);
+            this.chunkDelay = Math.min(TransportTuner.MAX_CHUNK_DELAY, Math.max(TransportTuner.MIN_ERROR_CHUNK_DELAY, this.chunkDelay * 2));
+        }
+        this.notifyListener();
+    }
+
+    private void notifyListener() {
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onTuned(this);
+        }
+    }
+
+    /**
+     * @param values {chunkSize, chunkDelay}
+     * @return Values serialized for TransportTuningCache
+     */
+    static String serialize(int[] values) {
+        return values[0] + ";" + values[1];
+    }
+
+    /**
+     * @param value Values serialized by serialize()
+     * @return {chunkSize, chunkDelay}, null if the value is invalid
+     */
+    static int[] unserialize(String value) {
+        String[] parts = value.split(";");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TransportTuner{chunk: " + this.getChunkSize() + ", delay: " + this.getChunkDelay() + "ms}";
+    }
+}
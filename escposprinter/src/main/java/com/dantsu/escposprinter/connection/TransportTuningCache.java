@@ -0,0 +1,118 @@
+package com.dantsu.escposprinter.connection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+
+import timber.log.Timber;
+
+/**
+ * Chunk size and delay between chunks tuned for each printer, persisted per device address (see
+ * PrinterSessionManager.getSessionKey()). The next session starts with the values tuned by the previous one.
+ * <pre>
+ * TransportTuningCache.getInstance(context).attach(connection);
+ * </pre>
+ */
+public class TransportTuningCache {
+
+    private static final String PREFERENCES_NAME = "escposprinter_transport_tuning_cache";
+
+    private static TransportTuningCache instance;
+
+    /**
+     * Get the cache shared by the application.
+     *
+     * @param context Application context
+     * @return TransportTuningCache instance
+     */
+    public static synchronized TransportTuningCache getInstance(Context context) {
+        if (TransportTuningCache.instance == null) {
+            TransportTuningCache.instance = new TransportTuningCache(context.getApplicationContext());
+        }
+        return TransportTuningCache.instance;
+    }
+
+
+    private final SharedPreferences preferences;
+    private final HashMap<String, int[]> entries = new HashMap<String, int[]>();
+
+    private TransportTuningCache(Context context) {
+        this.preferences = context.getSharedPreferences(TransportTuningCache.PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Tune a connection automatically : the tuner starts with the values saved for the printer, or the current
+     * settings of the connection, and the tuned values are saved each time they change.
+     *
+     * @param connection DeviceConnection instance
+     * @return Tuner of the connection
+     */
+    public TransportTuner attach(DeviceConnection connection) {
+        TransportTuner tuner = new TransportTuner(connection);
+        final String key = PrinterSessionManager.getSessionKey(connection);
+        if (key != null) {
+            int[] values = this.get(key);
+            if (values != null) {
+                tuner.setValues(values[0], values[1]);
+            }
+            tuner.setListener(new TransportTuner.Listener() {
+                @Override
+                public void onTuned(TransportTuner tuner) {
+                    TransportTuningCache.this.put(key, tuner);
+                }
+            });
+        }
+        connection.setTuner(tuner);
+        return tuner;
+    }
+
+    /**
+     * @param key Key of the printer, see PrinterSessionManager.getSessionKey()
+     * @return {chunkSize, chunkDelay} tuned for the printer, null if it is unknown
+     */
+    public synchronized int[] get(String key) {
+        int[] values = this.entries.get(key);
+        if (values == null) {
+            String value = this.preferences.getString(key, null);
+            if (value != null) {
+                values = TransportTuner.unserialize(value);
+                if (values != null) {
+                    this.entries.put(key, values);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param key   Key of the printer, see PrinterSessionManager.getSessionKey()
+     * @param tuner Tuner of the printer connection
+     */
+    public synchronized void put(String key, TransportTuner tuner) {
+        int[] values = new int[]{tuner.getChunkSize(), tuner.getChunkDelay()};
+        int[] previous = this.entries.put(key, values);
+        if (previous == null || previous[0] != values[0] || previous[1] != values[1]) {
+            Timber.tag("TransportTuningCache").v("Saving %s of %s", tuner, key);
+            this.preferences.edit().putString(key, TransportTuner.serialize(values)).apply();
+        }
+    }
+
+    /**
+     * Forget the values tuned for a printer.
+     *
+     * @param key Key of the printer, see PrinterSessionManager.getSessionKey()
+     */
+    public synchronized void remove(String key) {
+        this.entries.remove(key);
+        this.preferences.edit().remove(key).apply();
+    }
+
+    /**
+     * Forget all the printers.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.preferences.edit().clear().apply();
+    }
+}
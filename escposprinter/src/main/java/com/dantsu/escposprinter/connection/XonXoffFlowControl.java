@@ -0,0 +1,72 @@
+package com.dantsu.escposprinter.connection;
+
+import timber.log.Timber;
+
+/**
+ * Software flow control of the printers sending XOFF (0x13) when their receive buffer is nearly full and XON (0x11)
+ * when it drains.
+ * <p>
+ * Registered as a DeviceInputReader listener, it takes the XON and XOFF bytes out of the received data. The chunk
+ * writer waits for XON before each chunk while XOFF is in effect. These bytes never collide with the status replies :
+ * DLE EOT and Automatic Status Back bytes have fixed bits that XON and XOFF do not match.
+ */
+public class XonXoffFlowControl implements DeviceInputReader.Listener {
+
+    public static final int XON = 0x11;
+    public static final int XOFF = 0x13;
+
+    private boolean paused = false;
+
+    @Override
+    public boolean onByteReceived(int b) {
+        if (b == XonXoffFlowControl.XOFF) {
+            synchronized (this) {
+                this.paused = true;
+            }
+            Timber.tag("XonXoffFlowControl").v("XOFF received");
+            return true;
+        }
+        if (b == XonXoffFlowControl.XON) {
+            synchronized (this) {
+                this.paused = false;
+                this.notifyAll();
+            }
+            Timber.tag("XonXoffFlowControl").v("XON received");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true while XOFF is in effect
+     */
+    public synchronized boolean isPaused() {
+        return this.paused;
+    }
+
+    /**
+     * Wait until the printer accepts data.
+     *
+     * @param timeout Maximum time to wait for XON in milliseconds
+     * @return true if the printer accepts data, false if XOFF is still in effect after the timeout
+     */
+    public synchronized boolean awaitXon(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        while (this.paused) {
+            long remaining = (deadline - System.nanoTime()) / 1000000L;
+            if (remaining <= 0) {
+                return false;
+            }
+            this.wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Forget the XOFF received, when the connection is opened again.
+     */
+    public synchronized void reset() {
+        this.paused = false;
+        this.notifyAll();
+    }
+}
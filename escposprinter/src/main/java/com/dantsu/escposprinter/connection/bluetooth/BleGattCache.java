@@ -0,0 +1,157 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+import timber.log.Timber;
+
+/**
+ * GATT layout of the BLE printers already connected, persisted per device address : print service, write and notify
+ * characteristics, MTU and write type. A reconnection takes the characteristic from the cache instead of searching all
+ * the services.
+ */
+public class BleGattCache {
+
+    private static final String PREFERENCES_NAME = "escposprinter_ble_gatt_cache";
+
+    private static BleGattCache instance;
+
+    /**
+     * Get the cache shared by the application.
+     *
+     * @param context Application context
+     * @return BleGattCache instance
+     */
+    public static synchronized BleGattCache getInstance(Context context) {
+        if (BleGattCache.instance == null) {
+            BleGattCache.instance = new BleGattCache(context.getApplicationContext());
+        }
+        return BleGattCache.instance;
+    }
+
+    /**
+     * GATT layout of one printer.
+     */
+    public static class Entry {
+        private final UUID serviceUuid;
+        private final UUID characteristicUuid;
+        private final UUID notifyCharacteristicUuid;
+        private final int mtu;
+        private final int writeType;
+
+        public Entry(UUID serviceUuid, UUID characteristicUuid, UUID notifyCharacteristicUuid, int mtu, int writeType) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.notifyCharacteristicUuid = notifyCharacteristicUuid;
+            this.mtu = mtu;
+            this.writeType = writeType;
+        }
+
+        public UUID getServiceUuid() {
+            return this.serviceUuid;
+        }
+
+        public UUID getCharacteristicUuid() {
+            return this.characteristicUuid;
+        }
+
+        /**
+         * @return UUID of the characteristic notifying the printer replies, null if the printer has none
+         */
+        public UUID getNotifyCharacteristicUuid() {
+            return this.notifyCharacteristicUuid;
+        }
+
+        public int getMtu() {
+            return this.mtu;
+        }
+
+        public int getWriteType() {
+            return this.writeType;
+        }
+
+        private String serialize() {
+            return this.serviceUuid + ";" + this.characteristicUuid + ";" + this.mtu + ";" + this.writeType + ";" +
+                    (this.notifyCharacteristicUuid != null ? this.notifyCharacteristicUuid : "");
+        }
+
+        private static Entry unserialize(String value) {
+            String[] parts = value.split(";", -1);
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(
+                        UUID.fromString(parts[0]),
+                        UUID.fromString(parts[1]),
+                        parts[4].isEmpty() ? null : UUID.fromString(parts[4]),
+                        Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3])
+                );
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+
+    private final SharedPreferences preferences;
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    private BleGattCache(Context context) {
+        this(context.getSharedPreferences(BleGattCache.PREFERENCES_NAME, Context.MODE_PRIVATE));
+    }
+
+    BleGattCache(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    /**
+     * @param address MAC address of the printer
+     * @return GATT layout of the printer, null if it is unknown
+     */
+    public synchronized Entry get(String address) {
+        Entry entry = this.entries.get(address);
+        if (entry == null) {
+            String value = this.preferences.getString(address, null);
+            if (value != null) {
+                entry = Entry.unserialize(value);
+                if (entry != null) {
+                    this.entries.put(address, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @param address MAC address of the printer
+     * @param entry   GATT layout of the printer
+     */
+    public synchronized void put(String address, Entry entry) {
+        Entry previous = this.entries.put(address, entry);
+        if (previous == null || !previous.serialize().equals(entry.serialize())) {
+            Timber.tag("BleGattCache").d("Saving GATT layout of %s", address);
+            this.preferences.edit().putString(address, entry.serialize()).apply();
+        }
+    }
+
+    /**
+     * @param address MAC address of the printer
+     */
+    public synchronized void remove(String address) {
+        this.entries.remove(address);
+        this.preferences.edit().remove(address).apply();
+    }
+
+    /**
+     * Forget all the printers.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.preferences.edit().clear().apply();
+    }
+}
@@ -0,0 +1,152 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import timber.log.Timber;
+
+/**
+ * Negotiation of a fast BLE link : high connection priority (short connection interval) and LE 2M PHY while data is
+ * sent, balanced connection priority after a time without data. Keeps the link parameters granted by the device.
+ * <p>
+ * LE Data Length Extension has no public API, it is negotiated by the Android stack itself.
+ */
+class BleLinkNegotiator {
+
+    /**
+     * Requests to the GATT connection and to the main thread.
+     */
+    interface Link {
+        /**
+         * @param priority BluetoothGatt.CONNECTION_PRIORITY_HIGH or CONNECTION_PRIORITY_BALANCED
+         * @return false if the request was not sent
+         */
+        boolean requestConnectionPriority(int priority);
+
+        /**
+         * Ask for the LE 2M PHY, then read the PHY in use : devices without 2M PHY do not call onPhyUpdate.
+         */
+        void requestLe2mPhy();
+
+        void postDelayed(Runnable runnable, long delay);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    private final Link link;
+    private final Runnable relaxPriority = this::relaxPriority;
+    private int idlePriorityDelay = BluetoothLeConnection.DEFAULT_IDLE_PRIORITY_DELAY_MS;
+    private volatile boolean highPriority = false;
+    private volatile int txPhy = BluetoothDevice.PHY_LE_1M;
+    private volatile int rxPhy = BluetoothDevice.PHY_LE_1M;
+    private volatile int connectionInterval = -1;
+
+    /**
+     * Create new instance of BleLinkNegotiator.
+     *
+     * @param link Requests to the GATT connection and to the main thread
+     */
+    BleLinkNegotiator(Link link) {
+        this.link = link;
+    }
+
+    /**
+     * Set the time without data after which the connection priority goes back to balanced.
+     *
+     * @param idlePriorityDelay Time in milliseconds, 0 to keep the high priority (default: 5000)
+     * @return Fluent interface
+     */
+    BleLinkNegotiator setIdlePriorityDelay(int idlePriorityDelay) {
+        this.idlePriorityDelay = idlePriorityDelay;
+        return this;
+    }
+
+    /**
+     * Ask for the fastest link the device allows, once connected.
+     */
+    void requestFastLink() {
+        this.requestHighPriority();
+        this.link.requestLe2mPhy();
+    }
+
+    /**
+     * Ask for the high connection priority before sending, if it is not in effect.
+     */
+    void requestHighPriority() {
+        this.link.removeCallbacks(this.relaxPriority);
+        if (!this.highPriority && this.link.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH)) {
+            this.highPriority = true;
+        }
+    }
+
+    /**
+     * Go back to the balanced connection priority after the idle delay, unless data is sent meanwhile.
+     */
+    void scheduleRelaxPriority() {
+        this.link.removeCallbacks(this.relaxPriority);
+        if (this.idlePriorityDelay > 0) {
+            this.link.postDelayed(this.relaxPriority, this.idlePriorityDelay);
+        }
+    }
+
+    /**
+     * Go back to the balanced connection priority, the high priority drains the battery of both devices.
+     */
+    private void relaxPriority() {
+        if (this.highPriority && this.link.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED)) {
+            this.highPriority = false;
+            Timber.tag("BleLinkNegotiator").d("BLE link idle, connection priority balanced");
+        }
+    }
+
+    /**
+     * Forget the link parameters, when disconnecting.
+     */
+    void reset() {
+        this.link.removeCallbacks(this.relaxPriority);
+        this.highPriority = false;
+        this.connectionInterval = -1;
+    }
+
+    /**
+     * Called by onPhyUpdate and onPhyRead of the GATT callback.
+     */
+    void onPhyUpdate(int txPhy, int rxPhy, int status) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            this.txPhy = txPhy;
+            this.rxPhy = rxPhy;
+            Timber.tag("BleLinkNegotiator").i("PHY updated: tx=%d, rx=%d", txPhy, rxPhy);
+        }
+    }
+
+    /**
+     * Called by the hidden onConnectionUpdated of the GATT callback.
+     *
+     * @param interval Connection interval in units of 1.25 ms
+     */
+    void onConnectionUpdated(int interval, int latency, int status) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            this.connectionInterval = interval;
+            Timber.tag("BleLinkNegotiator").i("Connection interval: %.2f ms, latency: %d", interval * 1.25f, latency);
+        }
+    }
+
+    boolean isHighPriority() {
+        return this.highPriority;
+    }
+
+    int getTxPhy() {
+        return this.txPhy;
+    }
+
+    int getRxPhy() {
+        return this.rxPhy;
+    }
+
+    /**
+     * @return Connection interval in milliseconds, -1 if the stack did not tell it
+     */
+    float getConnectionInterval() {
+        return this.connectionInterval < 0 ? -1 : this.connectionInterval * 1.25f;
+    }
+}
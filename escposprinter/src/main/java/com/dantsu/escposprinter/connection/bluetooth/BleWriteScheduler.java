@@ -0,0 +1,204 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+import com.dantsu.escposprinter.exceptions.EscPosTimeoutException;
+
+import timber.log.Timber;
+
+/**
+ * Credit based flow control of the BLE packets.
+ * <p>
+ * Each packet written takes a credit, the write callback of the packet gives it back. Packets are written as soon as
+ * a credit is free instead of after a fixed delay, so the link runs at the speed the printer and the Bluetooth stack
+ * accept. When the stack answers busy (API 33+ write status, or false from the legacy write), the packet is written
+ * again after the next callback.
+ * <p>
+ * Android runs one GATT operation at a time per connection, 1 outstanding packet is the default. A bigger window
+ * only helps on stacks that queue several writes.
+ */
+public class BleWriteScheduler {
+
+    public static final int WRITE_OK = 0;
+    public static final int WRITE_BUSY = 1;
+    public static final int WRITE_FAILED = 2;
+
+    public static final int DEFAULT_MAX_OUTSTANDING_PACKETS = 1;
+    public static final int DEFAULT_PACKET_TIMEOUT_MS = 2000;
+
+    /**
+     * Write of one packet to the GATT characteristic.
+     */
+    public interface PacketWriter {
+        /**
+         * @param packet Bytes of the packet, at most the MTU payload size
+         * @return WRITE_OK, WRITE_BUSY or WRITE_FAILED
+         */
+        int writePacket(byte[] packet);
+    }
+
+    private final PacketWriter packetWriter;
+    private int maxOutstandingPackets = BleWriteScheduler.DEFAULT_MAX_OUTSTANDING_PACKETS;
+    private int packetTimeout = BleWriteScheduler.DEFAULT_PACKET_TIMEOUT_MS;
+    private int packetDelay = 0;
+
+    private int outstandingPackets = 0;
+    private boolean writeFailed = false;
+    private boolean cancelled = false;
+
+    /**
+     * Create new instance of BleWriteScheduler.
+     *
+     * @param packetWriter Write of one packet to the GATT characteristic
+     */
+    public BleWriteScheduler(PacketWriter packetWriter) {
+        this.packetWriter = packetWriter;
+    }
+
+    /**
+     * Set the number of packets written and not acknowledged yet by a write callback.
+     *
+     * @param maxOutstandingPackets Number of packets (default: 1)
+     * @return Fluent interface
+     */
+    public BleWriteScheduler setMaxOutstandingPackets(int maxOutstandingPackets) {
+        this.maxOutstandingPackets = Math.max(maxOutstandingPackets, 1);
+        return this;
+    }
+
+    public int getMaxOutstandingPackets() {
+        return this.maxOutstandingPackets;
+    }
+
+    /**
+     * Set the time to wait for the write callback of a packet. Some stacks never call back the writes without
+     * response : the credit is then given back after this time.
+     *
+     * @param packetTimeout Time in milliseconds (default: 2000)
+     * @return Fluent interface
+     */
+    public BleWriteScheduler setPacketTimeout(int packetTimeout) {
+        this.packetTimeout = Math.max(packetTimeout, 1);
+        return this;
+    }
+
+    /**
+     * Set a fixed delay between packets, for the printers that lose data when packets come too fast.
+     *
+     * @param packetDelay Time in milliseconds (default: 0)
+     * @return Fluent interface
+     */
+    public BleWriteScheduler setPacketDelay(int packetDelay) {
+        this.packetDelay = Math.max(packetDelay, 0);
+        return this;
+    }
+
+    /**
+     * Reset the scheduler for a new connection.
+     */
+    public synchronized void reset() {
+        this.outstandingPackets = 0;
+        this.writeFailed = false;
+        this.cancelled = false;
+    }
+
+    /**
+     * Write callback of a packet, from the GATT callback thread.
+     *
+     * @param success false if the printer rejected the packet
+     */
+    public synchronized void onPacketWritten(boolean success) {
+        if (this.outstandingPackets > 0) {
+            this.outstandingPackets--;
+        }
+        if (!success) {
+            this.writeFailed = true;
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Stop the current write, the connection is lost.
+     */
+    public synchronized void cancel() {
+        this.cancelled = true;
+        this.notifyAll();
+    }
+
+    /**
+     * Split data into packets and write them, waiting for the credits. Returns when all the packets are acknowledged.
+     *
+     * @param data       Bytes to send
+     * @param packetSize Maximum size of a packet
+     */
+    public synchronized void write(byte[] data, int packetSize) throws EscPosConnectionException {
+        packetSize = Math.max(packetSize, 1);
+        int offset = 0;
+
+        try {
+            while (offset < data.length) {
+                this.waitForCredit(this.maxOutstandingPackets, offset);
+
+                int length = Math.min(packetSize, data.length - offset);
+                byte[] packet = new byte[length];
+                System.arraycopy(data, offset, packet, 0, length);
+
+                long busyDeadline = System.currentTimeMillis() + this.packetTimeout;
+                int result;
+                while ((result = this.packetWriter.writePacket(packet)) == BleWriteScheduler.WRITE_BUSY) {
+                    long remaining = busyDeadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new EscPosTimeoutException("BLE write timeout, the printer does not accept data anymore.", offset);
+                    }
+                    // The stack is busy with a previous packet, its callback or a short delay frees it.
+                    this.wait(Math.min(remaining, 10));
+                    this.checkState(offset);
+                }
+                if (result == BleWriteScheduler.WRITE_FAILED) {
+                    throw new EscPosConnectionException("BLE write failed at offset " + offset);
+                }
+
+                this.outstandingPackets++;
+                offset += length;
+
+                if (this.packetDelay > 0 && offset < data.length) {
+                    this.wait(this.packetDelay);
+                }
+            }
+
+            this.waitForCredit(1, offset);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EscPosConnectionException("BLE write interrupted");
+        }
+    }
+
+    /**
+     * Wait until less than maxOutstanding packets are not acknowledged.
+     */
+    private void waitForCredit(int maxOutstanding, int offset) throws InterruptedException, EscPosConnectionException {
+        long deadline = System.currentTimeMillis() + this.packetTimeout;
+        while (true) {
+            this.checkState(offset);
+            if (this.outstandingPackets < maxOutstanding) {
+                return;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                Timber.tag("BleWriteScheduler").w("No write callback for %d packet(s), continuing anyway", this.outstandingPackets);
+                this.outstandingPackets = 0;
+                return;
+            }
+            this.wait(remaining);
+        }
+    }
+
+    private void checkState(int offset) throws EscPosConnectionException {
+        if (this.cancelled) {
+            throw new EscPosConnectionException("BLE connection lost after " + offset + " bytes");
+        }
+        if (this.writeFailed) {
+            this.writeFailed = false;
+            throw new EscPosConnectionException("BLE write rejected by the printer before offset " + offset);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import android.os.Build;
 import android.os.ParcelUuid;
 
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.DeviceInputReader;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 
 import java.io.IOException;
@@ -50,9 +51,7 @@ public class BluetoothConnection extends DeviceConnection {
         this.device = device;
         this.contextRef = context != null ? new WeakReference<>(context.getApplicationContext()) : null;
         // Bluetooth-optimized settings for better reliability
-        this.chunkSize = 200;      // Smaller chunks for Bluetooth
-        this.chunkDelayMs = 20;    // Longer delay between chunks
-        this.bytesPerMs = 8;       // Slower byte rate assumption
+        this.chunkSize = 200;      // Smaller chunks for Bluetooth, paced by the timing model of the printer
     }
 
     /**
@@ -74,6 +73,16 @@ public class BluetoothConnection extends DeviceConnection {
         return this.socket != null && this.socket.isConnected() && super.isConnected();
     }
 
+    /**
+     * Check that the RFCOMM socket is not broken, the input reader stops once the printer is gone.
+     *
+     * @return true if the connection can be used
+     */
+    @Override
+    public boolean isAlive() {
+        return this.isConnected() && this.inputReader != null && this.inputReader.isRunning();
+    }
+
     /**
      * Get BluetoothAdapter using the modern API when possible.
      */
@@ -123,7 +132,11 @@ public class BluetoothConnection extends DeviceConnection {
             this.socket.connect();
             this.outputStream = this.socket.getOutputStream();
             this.inputStream = this.socket.getInputStream();
+            this.startInputReader(new DeviceInputReader.InputStreamSource(this.inputStream));
             this.data = new byte[0];
+            if (this.timingModel != null) {
+                this.timingModel.reset();
+            }
             Timber.tag("BluetoothConnection").i("Bluetooth SPP connected successfully: %s", deviceName);
         } catch (IOException e) {
             Timber.tag("BluetoothConnection").e(e, "Bluetooth connection failed: %s - %s", deviceName, e.getMessage());
@@ -154,6 +167,8 @@ public class BluetoothConnection extends DeviceConnection {
     public BluetoothConnection disconnect() {
         Timber.tag("BluetoothConnection").d("Disconnecting Bluetooth device");
         this.data = new byte[0];
+        // Closing the input stream unblocks the reader thread.
+        this.stopInputReader();
         if (this.inputStream != null) {
             try {
                 this.inputStream.close();
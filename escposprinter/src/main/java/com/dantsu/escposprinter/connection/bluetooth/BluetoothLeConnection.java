@@ -8,11 +8,14 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothStatusCodes;
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.DeviceInputReader;
+import com.dantsu.escposprinter.connection.TransportTuner;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 
 import timber.log.Timber;
@@ -20,6 +23,7 @@ import timber.log.Timber;
 import java.io.ByteArrayOutputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -27,6 +31,9 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Bluetooth Low Energy (BLE) connection for ESC/POS printers.
+ * <p>
+ * write() buffers the data like the other connections, send() splits it into MTU sized packets paced by the write
+ * callbacks (see BleWriteScheduler), so batch mode works with BLE too.
  */
 public class BluetoothLeConnection extends DeviceConnection {
 
@@ -63,7 +70,7 @@ public class BluetoothLeConnection extends DeviceConnection {
     private volatile boolean servicesDiscovered = false;
     private CountDownLatch connectionLatch;
     private CountDownLatch servicesLatch;
-    private CountDownLatch writeLatch;
+    private final BleWriteScheduler writeScheduler = new BleWriteScheduler(this::writePacket);
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final ByteArrayOutputStream pendingData = new ByteArrayOutputStream();
@@ -72,6 +79,47 @@ public class BluetoothLeConnection extends DeviceConnection {
     private int mtuSize = 20;
     private static final int REQUESTED_MTU = 512;
 
+    // Link parameters granted by the device
+    public static final int DEFAULT_IDLE_PRIORITY_DELAY_MS = 5000;
+    private final BleLinkNegotiator linkNegotiator = new BleLinkNegotiator(new BleLinkNegotiator.Link() {
+        @Override
+        @SuppressLint("MissingPermission")
+        public boolean requestConnectionPriority(int priority) {
+            BluetoothGatt gatt = bluetoothGatt;
+            return gatt != null && gatt.requestConnectionPriority(priority);
+        }
+
+        @Override
+        @SuppressLint("MissingPermission")
+        public void requestLe2mPhy() {
+            BluetoothGatt gatt = bluetoothGatt;
+            if (gatt != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                gatt.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+                gatt.readPhy();
+            }
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delay) {
+            mainHandler.postDelayed(runnable, delay);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            mainHandler.removeCallbacks(runnable);
+        }
+    });
+    private volatile float throughput = 0;
+
+    // GATT layout cache and background reconnection
+    private static final int AUTO_CONNECT_TIMEOUT_S = 30;
+    private boolean gattCacheEnabled = true;
+    private boolean autoConnect = false;
+    private BleGattCache.Entry gattCacheEntry;
+
+    // Printer replies received by notification
+    private CountDownLatch descriptorLatch;
+
     /**
      * Create an instance of BluetoothLeConnection.
      *
@@ -84,9 +132,8 @@ public class BluetoothLeConnection extends DeviceConnection {
         this.contextRef = context != null ? new WeakReference<>(context.getApplicationContext()) : null;
 
         // BLE-optimized settings
-        this.chunkSize = 20;       // Default BLE packet size
-        this.chunkDelayMs = 50;    // Delay between chunks (BLE needs more time)
-        this.bytesPerMs = 2;       // Very conservative rate for BLE
+        this.chunkSize = 20;       // Default BLE packet size, updated with the MTU
+        this.chunkDelayMs = 0;     // Packets are paced by the write callbacks, see BleWriteScheduler
     }
 
     /**
@@ -121,24 +168,44 @@ public class BluetoothLeConnection extends DeviceConnection {
 
         connectionLatch = new CountDownLatch(1);
         servicesLatch = new CountDownLatch(1);
-
-        // Connect on main thread
-        mainHandler.post(() -> {
-            try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    bluetoothGatt = device.connectGatt(context, false, gattCallback, BluetoothDevice.TRANSPORT_LE);
-                } else {
-                    bluetoothGatt = device.connectGatt(context, false, gattCallback);
-                }
-            } catch (Exception e) {
-                Timber.tag(TAG).e( "Failed to connect GATT", e);
+        descriptorLatch = new CountDownLatch(1);
+        writeScheduler.reset();
+        if (this.timingModel != null) {
+            this.timingModel.reset();
+        }
+        // Notified bytes are pushed by the GATT callbacks, the reader has no thread of its own.
+        this.stopInputReader();
+        this.inputReader = this.newInputReader();
+        gattCacheEntry = gattCacheEnabled ? BleGattCache.getInstance(context).get(device.getAddress()) : null;
+
+        BluetoothGatt backgroundGatt = bluetoothGatt;
+        if (autoConnect && backgroundGatt != null) {
+            // The GATT client kept after the link loss reconnects by itself when the printer is back.
+            Timber.tag(TAG).d("Waiting for background reconnection");
+            if (isConnected) {
                 connectionLatch.countDown();
+            } else {
+                mainHandler.post(backgroundGatt::connect);
             }
-        });
+        } else {
+            // Connect on main thread
+            mainHandler.post(() -> {
+                try {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                        bluetoothGatt = device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE);
+                    } else {
+                        bluetoothGatt = device.connectGatt(context, autoConnect, gattCallback);
+                    }
+                } catch (Exception e) {
+                    Timber.tag(TAG).e( "Failed to connect GATT", e);
+                    connectionLatch.countDown();
+                }
+            });
+        }
 
         try {
-            // Wait for connection (timeout 10 seconds)
-            if (!connectionLatch.await(10, TimeUnit.SECONDS)) {
+            // Wait for connection (timeout 10 seconds, longer with the background connection)
+            if (!connectionLatch.await(autoConnect ? AUTO_CONNECT_TIMEOUT_S : 10, TimeUnit.SECONDS)) {
                 disconnect();
                 throw new EscPosConnectionException("BLE connection timeout");
             }
@@ -162,6 +229,22 @@ public class BluetoothLeConnection extends DeviceConnection {
             this.chunkSize = Math.max(20, mtuSize - 3);
             Timber.tag(TAG).i( "BLE connected with MTU: " + mtuSize + ", chunk size: " + chunkSize);
 
+            // The CCCD write started with the services discovery must end before the first packet.
+            BluetoothGattCharacteristic notify = notifyCharacteristic;
+            if (notify != null && !descriptorLatch.await(2, TimeUnit.SECONDS)) {
+                Timber.tag(TAG).w("No answer to the notification subscription");
+            }
+
+            this.linkNegotiator.requestFastLink();
+            this.linkNegotiator.scheduleRelaxPriority();
+
+            if (gattCacheEnabled) {
+                BleGattCache.getInstance(context).put(device.getAddress(), new BleGattCache.Entry(
+                        writeCharacteristic.getService().getUuid(), writeCharacteristic.getUuid(),
+                        notify != null ? notify.getUuid() : null, mtuSize, getWriteType()
+                ));
+            }
+
         } catch (InterruptedException e) {
             disconnect();
             throw new EscPosConnectionException("BLE connection interrupted");
@@ -177,12 +260,14 @@ public class BluetoothLeConnection extends DeviceConnection {
             Timber.tag(TAG).d( "onConnectionStateChange: status=" + status + ", newState=" + newState);
 
             if (newState == BluetoothProfile.STATE_CONNECTED) {
+                writeScheduler.reset();
                 isConnected = true;
                 connectionLatch.countDown();
 
-                // Request higher MTU
+                // Request higher MTU, the one granted last time when it is known
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    gatt.requestMtu(REQUESTED_MTU);
+                    BleGattCache.Entry entry = gattCacheEntry;
+                    gatt.requestMtu(entry != null && entry.getMtu() > 23 ? entry.getMtu() : REQUESTED_MTU);
                 }
 
                 // Discover services
@@ -191,11 +276,15 @@ public class BluetoothLeConnection extends DeviceConnection {
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 isConnected = false;
                 servicesDiscovered = false;
+                // The characteristics are found again after the next services discovery.
+                writeCharacteristic = null;
+                notifyCharacteristic = null;
+                if (autoConnect) {
+                    Timber.tag(TAG).i("BLE link lost, waiting for the printer to come back");
+                }
                 connectionLatch.countDown();
                 servicesLatch.countDown();
-                if (writeLatch != null) {
-                    writeLatch.countDown();
-                }
+                writeScheduler.cancel();
             }
         }
 
@@ -214,24 +303,105 @@ public class BluetoothLeConnection extends DeviceConnection {
             Timber.tag(TAG).d( "onServicesDiscovered: status=" + status);
 
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                // Find printer service and characteristic
-                findPrinterCharacteristics(gatt);
+                // Find printer service and characteristic, from the cached layout first
+                if (!findCachedCharacteristic(gatt)) {
+                    findPrinterCharacteristics(gatt);
+                }
+                if (writeCharacteristic != null) {
+                    subscribeNotifications(gatt);
+                }
                 servicesDiscovered = true;
             }
             servicesLatch.countDown();
         }
 
         @Override
-        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            if (writeLatch != null) {
-                writeLatch.countDown();
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            linkNegotiator.onPhyUpdate(txPhy, rxPhy, status);
+        }
+
+        @Override
+        public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            this.onPhyUpdate(gatt, txPhy, rxPhy, status);
+        }
+
+        /**
+         * Hidden callback of BluetoothGattCallback, called by the stack when the connection interval changes. It is not
+         * in the public SDK, so it has no @Override.
+         */
+        public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+            linkNegotiator.onConnectionUpdated(interval, latency, status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            if (CCCD_UUID.equals(descriptor.getUuid())) {
+                Timber.tag(TAG).d("Notification subscription status: %d", status);
+                CountDownLatch latch = descriptorLatch;
+                if (latch != null) {
+                    latch.countDown();
+                }
             }
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, byte[] value) {
+            receive(characteristic, value);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            // Called instead of the method above before API 33.
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
+                receive(characteristic, characteristic.getValue());
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 Timber.tag(TAG).e( "Characteristic write failed: " + status);
             }
+            writeScheduler.onPacketWritten(status == BluetoothGatt.GATT_SUCCESS);
         }
     };
 
+    /**
+     * Take the write characteristic saved in the GATT cache, if the printer still has it.
+     *
+     * @return false if the layout of the printer is unknown or changed
+     */
+    private boolean findCachedCharacteristic(BluetoothGatt gatt) {
+        BleGattCache.Entry entry = gattCacheEntry;
+        if (entry == null) {
+            return false;
+        }
+        BluetoothGattService service = gatt.getService(entry.getServiceUuid());
+        BluetoothGattCharacteristic characteristic = service != null ? service.getCharacteristic(entry.getCharacteristicUuid()) : null;
+        BluetoothGattCharacteristic notify = null;
+        if (service != null && entry.getNotifyCharacteristicUuid() != null) {
+            notify = service.getCharacteristic(entry.getNotifyCharacteristicUuid());
+            if (notify == null) {
+                for (BluetoothGattService otherService : gatt.getServices()) {
+                    notify = otherService.getCharacteristic(entry.getNotifyCharacteristicUuid());
+                    if (notify != null) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (characteristic == null || !isWritable(characteristic) || (entry.getNotifyCharacteristicUuid() != null && (notify == null || !isNotifiable(notify)))) {
+            Timber.tag(TAG).w("Cached GATT layout does not match, searching the services");
+            gattCacheEntry = null;
+            return false;
+        }
+        Timber.tag(TAG).d("Using cached write characteristic: %s", characteristic.getUuid());
+        writeCharacteristic = characteristic;
+        notifyCharacteristic = notify;
+        return true;
+    }
+
     @SuppressLint("MissingPermission")
     private void findPrinterCharacteristics(BluetoothGatt gatt) {
         List<BluetoothGattService> services = gatt.getServices();
@@ -283,6 +453,85 @@ public class BluetoothLeConnection extends DeviceConnection {
         }
     }
 
+    private boolean isNotifiable(BluetoothGattCharacteristic characteristic) {
+        int properties = characteristic.getProperties();
+        return (properties & (BluetoothGattCharacteristic.PROPERTY_NOTIFY | BluetoothGattCharacteristic.PROPERTY_INDICATE)) != 0;
+    }
+
+    /**
+     * Find the characteristic the printer sends its replies on : in the print service first, then in the others.
+     */
+    private void findNotifyCharacteristic(BluetoothGatt gatt) {
+        BluetoothGattService printService = writeCharacteristic.getService();
+        for (BluetoothGattCharacteristic characteristic : printService.getCharacteristics()) {
+            if (isNotifiable(characteristic)) {
+                notifyCharacteristic = characteristic;
+                return;
+            }
+        }
+        for (BluetoothGattService service : gatt.getServices()) {
+            if (service == printService) {
+                continue;
+            }
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                if (isNotifiable(characteristic)) {
+                    notifyCharacteristic = characteristic;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Enable the notifications (or indications) of the notify characteristic by writing its CCCD. onDescriptorWrite
+     * tells the end of the subscription.
+     */
+    @SuppressLint("MissingPermission")
+    private void subscribeNotifications(BluetoothGatt gatt) {
+        if (notifyCharacteristic == null) {
+            findNotifyCharacteristic(gatt);
+        }
+        BluetoothGattCharacteristic notify = notifyCharacteristic;
+        if (notify == null) {
+            Timber.tag(TAG).i("No notify characteristic, status queries are not available");
+            return;
+        }
+        BluetoothGattDescriptor descriptor = notify.getDescriptor(CCCD_UUID);
+        if (!gatt.setCharacteristicNotification(notify, true) || descriptor == null) {
+            Timber.tag(TAG).w("Unable to enable notifications of %s", notify.getUuid());
+            notifyCharacteristic = null;
+            return;
+        }
+        byte[] value = (notify.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0
+                ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+                : BluetoothGattDescriptor.ENABLE_INDICATION_VALUE;
+        boolean written;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            written = gatt.writeDescriptor(descriptor, value) == BluetoothStatusCodes.SUCCESS;
+        } else {
+            written = writeDescriptorLegacy(gatt, descriptor, value);
+        }
+        Timber.tag(TAG).i("Subscribing to %s: %b", notify.getUuid(), written);
+    }
+
+    @SuppressWarnings("deprecation")
+    @SuppressLint("MissingPermission")
+    private boolean writeDescriptorLegacy(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, byte[] value) {
+        descriptor.setValue(value);
+        return gatt.writeDescriptor(descriptor);
+    }
+
+    /**
+     * Bytes notified by the printer, from the GATT callback thread.
+     */
+    private void receive(BluetoothGattCharacteristic characteristic, byte[] value) {
+        DeviceInputReader reader = this.inputReader;
+        if (value == null || value.length == 0 || characteristic != notifyCharacteristic || reader == null) {
+            return;
+        }
+        reader.receive(value, 0, value.length);
+    }
+
     private boolean isWritable(BluetoothGattCharacteristic characteristic) {
         int properties = characteristic.getProperties();
         return (properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0 ||
@@ -290,90 +539,124 @@ public class BluetoothLeConnection extends DeviceConnection {
     }
 
     /**
-     * Send data to the BLE printer.
+     * Write type of the characteristic. Printers work better with WRITE_TYPE_NO_RESPONSE, it is used even when only
+     * PROPERTY_WRITE is advertised.
      */
-    @SuppressLint("MissingPermission")
-    @Override
-    public void write(byte[] bytes) {
-        if (!isConnected() || writeCharacteristic == null || bluetoothGatt == null) {
-            Timber.tag(TAG).e( "BLE printer not connected");
-            return;
+    private int getWriteType() {
+        BleGattCache.Entry entry = gattCacheEntry;
+        if (entry != null) {
+            return entry.getWriteType();
+        }
+        int properties = writeCharacteristic.getProperties();
+        if ((properties & (BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE | BluetoothGattCharacteristic.PROPERTY_WRITE)) != 0) {
+            return BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
         }
+        return BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+    }
 
-        Timber.tag(TAG).d( "Writing " + bytes.length + " bytes, chunk size: " + chunkSize);
-
-        // Split data into chunks based on MTU
-        int offset = 0;
-        while (offset < bytes.length) {
-            int length = Math.min(chunkSize, bytes.length - offset);
-            byte[] chunk = new byte[length];
-            System.arraycopy(bytes, offset, chunk, 0, length);
-
-            // Determine write type - prefer NO_RESPONSE for printers (faster, more reliable)
-            int properties = writeCharacteristic.getProperties();
-            boolean supportsNoResponse = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
-            boolean supportsWrite = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0;
-
-            // For printers, prefer WRITE_TYPE_NO_RESPONSE as it's faster and printers don't usually need confirmation
-            int writeType;
-            boolean waitForCallback;
-            if (supportsNoResponse) {
-                writeType = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
-                waitForCallback = false;
-            } else if (supportsWrite) {
-                // Try NO_RESPONSE anyway - many printers work better with it even if not advertised
-                writeType = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
-                waitForCallback = false;
-            } else {
-                writeType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
-                waitForCallback = true;
+    /**
+     * Write one packet to the characteristic, called by the write scheduler.
+     */
+    @SuppressLint("MissingPermission")
+    private int writePacket(byte[] packet) {
+        BluetoothGatt gatt = bluetoothGatt;
+        if (!isConnected() || gatt == null) {
+            return BleWriteScheduler.WRITE_FAILED;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            int result = gatt.writeCharacteristic(writeCharacteristic, packet, getWriteType());
+            if (result == BluetoothStatusCodes.SUCCESS) {
+                return BleWriteScheduler.WRITE_OK;
             }
-
-            if (waitForCallback) {
-                writeLatch = new CountDownLatch(1);
+            if (result == BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY) {
+                return BleWriteScheduler.WRITE_BUSY;
             }
+            Timber.tag(TAG).e("Failed to write characteristic: %d", result);
+            return BleWriteScheduler.WRITE_FAILED;
+        }
+        // Before API 33, false means busy most of the time : the previous packet is not called back yet.
+        @SuppressWarnings("deprecation")
+        boolean result = writeCharacteristicLegacy(packet, getWriteType());
+        return result ? BleWriteScheduler.WRITE_OK : BleWriteScheduler.WRITE_BUSY;
+    }
 
-            boolean writeResult;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                int result = bluetoothGatt.writeCharacteristic(writeCharacteristic, chunk, writeType);
-                writeResult = (result == BluetoothGatt.GATT_SUCCESS);
-            } else {
-                @SuppressWarnings("deprecation")
-                boolean result = writeCharacteristicLegacy(chunk, writeType);
-                writeResult = result;
-            }
+    /**
+     * Use the GATT layout saved at the previous connection to the printer (see BleGattCache).
+     *
+     * @param gattCacheEnabled false to search the print characteristic at each connection (default: true)
+     * @return Fluent interface
+     */
+    public BluetoothLeConnection setGattCacheEnabled(boolean gattCacheEnabled) {
+        this.gattCacheEnabled = gattCacheEnabled;
+        return this;
+    }
 
-            if (!writeResult) {
-                Timber.tag(TAG).e( "Failed to write characteristic at offset " + offset);
-            }
+    /**
+     * Use the Android background connection (connectGatt autoConnect) : connect() waits up to 30 seconds for the
+     * printer to be in range, and after a link loss (printer turned off, out of range) the connection is established
+     * again by the Bluetooth stack as soon as the printer is back, until disconnect() is called.
+     *
+     * @param autoConnect true for the background connection (default: false)
+     * @return Fluent interface
+     */
+    public BluetoothLeConnection setAutoConnect(boolean autoConnect) {
+        this.autoConnect = autoConnect;
+        return this;
+    }
 
-            if (waitForCallback) {
-                try {
-                    // Wait for write callback (timeout 2 seconds)
-                    if (!writeLatch.await(2, TimeUnit.SECONDS)) {
-                        Timber.tag(TAG).w( "Write callback timeout at offset " + offset + " - continuing anyway");
-                    }
-                } catch (InterruptedException e) {
-                    Timber.tag(TAG).e( "Write interrupted", e);
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
+    /**
+     * Set the time without data after which the connection priority goes back to balanced.
+     *
+     * @param idlePriorityDelay Time in milliseconds, 0 to keep the high priority (default: 5000)
+     * @return Fluent interface
+     */
+    public BluetoothLeConnection setIdlePriorityDelay(int idlePriorityDelay) {
+        this.linkNegotiator.setIdlePriorityDelay(idlePriorityDelay);
+        return this;
+    }
 
-            offset += length;
+    /**
+     * @return MTU negotiated with the device
+     */
+    public int getMtu() {
+        return this.mtuSize;
+    }
 
-            // Delay between chunks - important for BLE stability
-            int delayMs = waitForCallback ? chunkDelayMs : Math.max(chunkDelayMs, 50);
-            if (offset < bytes.length && delayMs > 0) {
-                try {
-                    Thread.sleep(delayMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
+    /**
+     * @return PHY used to send data : BluetoothDevice.PHY_LE_1M, PHY_LE_2M or PHY_LE_CODED
+     */
+    public int getTxPhy() {
+        return this.linkNegotiator.getTxPhy();
+    }
+
+    /**
+     * @return PHY used to receive data : BluetoothDevice.PHY_LE_1M, PHY_LE_2M or PHY_LE_CODED
+     */
+    public int getRxPhy() {
+        return this.linkNegotiator.getRxPhy();
+    }
 
-        Timber.tag(TAG).d( "Write complete: " + bytes.length + " bytes");
+    /**
+     * @return Connection interval in milliseconds, -1 if the stack did not tell it
+     */
+    public float getConnectionInterval() {
+        return this.linkNegotiator.getConnectionInterval();
+    }
+
+    /**
+     * @return Throughput of the last send() in bytes per second
+     */
+    public float getThroughput() {
+        return this.throughput;
+    }
+
+    /**
+     * Get the scheduler of the BLE packets, to tune its flow control.
+     *
+     * @return BleWriteScheduler of the connection
+     */
+    public BleWriteScheduler getWriteScheduler() {
+        return this.writeScheduler;
     }
 
     /**
@@ -396,10 +679,19 @@ public class BluetoothLeConnection extends DeviceConnection {
     }
 
     /**
-     * Override send() to use BLE-specific write instead of outputStream.
+     * Send the buffered data through the BLE write scheduler.
      */
     @Override
     public void send(int addWaitingTime) throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.sendData(addWaitingTime);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void sendData(int addWaitingTime) throws EscPosConnectionException {
         // In batch mode, only accumulate waiting time - don't actually send
         if (this.batchMode) {
             this.batchWaitingTime += addWaitingTime;
@@ -418,16 +710,52 @@ public class BluetoothLeConnection extends DeviceConnection {
 
         Timber.tag(TAG).d("BLE sending %d bytes", this.data.length);
 
-        // Use BLE write method
         byte[] dataToSend = this.data;
         this.data = new byte[0];
-        write(dataToSend);
+        int dotLines = this.pendingDotLines;
+        int printingTime = this.pendingPrintingTime;
+        this.pendingDotLines = 0;
+        this.pendingPrintingTime = 0;
+        // The tuner sets the packets, no larger than the MTU allows
+        TransportTuner tuner = this.tuner;
+        int packetSize = tuner != null ? Math.min(this.chunkSize, tuner.getChunkSize()) : this.chunkSize;
+        this.linkNegotiator.requestHighPriority();
+        long elapsed = 0;
+        try {
+            this.writeScheduler.setPacketDelay(tuner != null ? tuner.getChunkDelay() : this.chunkDelayMs);
+            // Write block by block, each one once the printer accepts it.
+            int offset = 0;
+            while (offset < dataToSend.length) {
+                int length = this.awaitNextBlock(offset, dataToSend.length - offset, dataToSend.length, dotLines, printingTime);
+                long start = System.nanoTime();
+                try {
+                    this.writeScheduler.write(offset == 0 && length == dataToSend.length ? dataToSend : Arrays.copyOfRange(dataToSend, offset, offset + length), packetSize);
+                } catch (EscPosConnectionException e) {
+                    if (tuner != null) {
+                        tuner.onError();
+                    }
+                    throw e;
+                }
+                elapsed += System.nanoTime() - start;
+                offset += length;
+                if (tuner != null) {
+                    tuner.onSuccess();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EscPosConnectionException(e.getMessage());
+        } finally {
+            this.linkNegotiator.scheduleRelaxPriority();
+        }
+        // Throughput of the link, without the waits for the printer buffer
+        this.throughput = dataToSend.length * 1000000000f / Math.max(elapsed, 1);
+        Timber.tag(TAG).d("BLE throughput: %.0f bytes/s (MTU %d, PHY %d, interval %.2f ms)",
+                this.throughput, this.mtuSize, this.getTxPhy(), this.getConnectionInterval());
 
-        // Wait time based on data length
-        int waitingTime = addWaitingTime + dataToSend.length / this.bytesPerMs;
-        if (waitingTime > 0) {
+        if (addWaitingTime > 0) {
             try {
-                Thread.sleep(waitingTime);
+                Thread.sleep(addWaitingTime);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -436,11 +764,44 @@ public class BluetoothLeConnection extends DeviceConnection {
         Timber.tag(TAG).d("BLE send complete: %d bytes", dataToSend.length);
     }
 
+    /**
+     * Check if the printer can answer : a notify characteristic is subscribed.
+     */
+    @Override
+    public boolean canRead() {
+        return this.isConnected() && this.notifyCharacteristic != null;
+    }
+
+    /**
+     * Read the bytes notified by the printer.
+     *
+     * @param timeout Maximum time to wait for data in milliseconds
+     * @return byte array with read data, or empty array if no data available
+     */
+    @Override
+    public byte[] read(int timeout) throws EscPosConnectionException {
+        return this.canRead() ? super.read(timeout) : new byte[0];
+    }
+
+    @Override
+    public byte[] read(int length, int timeout) throws EscPosConnectionException {
+        return this.canRead() ? super.read(length, timeout) : new byte[0];
+    }
+
     /**
      * Override flushBatch() for BLE.
      */
     @Override
     public void flushBatch() throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.flushBatchData();
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void flushBatchData() throws EscPosConnectionException {
         if (this.data.length > 0) {
             boolean wasBatchMode = this.batchMode;
             this.batchMode = false;
@@ -456,9 +817,12 @@ public class BluetoothLeConnection extends DeviceConnection {
     @SuppressLint("MissingPermission")
     public BluetoothLeConnection disconnect() {
         isConnected = false;
+        writeScheduler.cancel();
+        linkNegotiator.reset();
         servicesDiscovered = false;
         writeCharacteristic = null;
         notifyCharacteristic = null;
+        this.stopInputReader();
 
         if (bluetoothGatt != null) {
             try {
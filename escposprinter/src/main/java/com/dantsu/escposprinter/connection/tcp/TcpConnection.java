@@ -1,21 +1,87 @@
 package com.dantsu.escposprinter.connection.tcp;
 
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.DeviceInputReader;
+import com.dantsu.escposprinter.connection.TransportTuner;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+import com.dantsu.escposprinter.exceptions.EscPosTimeoutException;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 
 import timber.log.Timber;
 
+/**
+ * TCP connection with a printer, built on a non-blocking SocketChannel.
+ * <p>
+ * Written bytes are copied in direct buffers and sent with gathering writes. The socket back-pressure paces the
+ * sending : when the send buffer is full, send() waits until the printer reads more data, up to the write timeout.
+ * So there is no waiting time computed from an assumed byte rate, bytesPerMs is not used.
+ */
 public class TcpConnection extends DeviceConnection {
-    private Socket socket = null;
+
+    private static final int BUFFER_SIZE = 16384;
+    private static final int MAX_FREE_BUFFERS = 8;
+
+    private SocketChannel channel = null;
+    private Selector writeSelector = null;
+    private Selector readSelector = null;
     private String address;
     private int port;
     private int timeout;
+    private int writeTimeout = 10000;
+    private boolean tcpNoDelay = true;
+    private boolean keepAlive = true;
+    private int sendBufferSize = 0;
+
+    private ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    private ArrayList<ByteBuffer> freeBuffers = new ArrayList<ByteBuffer>();
+    private int bufferedLength = 0;
+
+    /**
+     * Source of the input reader : waits on the read selector, then reads the non-blocking channel.
+     */
+    private static class ChannelSource implements DeviceInputReader.Source {
+        private final SocketChannel channel;
+        private final Selector selector;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(1024);
+
+        ChannelSource(SocketChannel channel, Selector selector) {
+            this.channel = channel;
+            this.selector = selector;
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    this.readBuffer.clear();
+                    this.readBuffer.limit(Math.min(buffer.length, this.readBuffer.capacity()));
+                    int read = this.channel.read(this.readBuffer);
+                    if (read != 0) {
+                        if (read > 0) {
+                            this.readBuffer.flip();
+                            this.readBuffer.get(buffer, 0, read);
+                        }
+                        return read;
+                    }
+                    this.selector.select();
+                    this.selector.selectedKeys().clear();
+                }
+            } catch (ClosedSelectorException e) {
+                // Disconnected
+            }
+            return -1;
+        }
+    }
 
     /**
      * Create un instance of TcpConnection.
@@ -49,13 +115,82 @@ public class TcpConnection extends DeviceConnection {
         this.chunkDelayMs = 0;
     }
 
+    public String getAddress() {
+        return this.address;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Set the maximum time to wait for the printer to accept data, a printer that stops reading makes send() fail
+     * instead of blocking forever.
+     *
+     * @param writeTimeout Timeout in milliseconds (default: 10000ms), 0 to wait forever
+     * @return Fluent interface
+     */
+    public TcpConnection setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+
+    /**
+     * Enable or disable TCP_NODELAY, applied on the next connection.
+     *
+     * @param tcpNoDelay true to send small packets without delay (default: true)
+     * @return Fluent interface
+     */
+    public TcpConnection setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Enable or disable SO_KEEPALIVE, applied on the next connection.
+     *
+     * @param keepAlive true to detect dead connections (default: true)
+     * @return Fluent interface
+     */
+    public TcpConnection setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Set SO_SNDBUF, applied on the next connection. A small send buffer makes the back-pressure of a slow printer
+     * visible sooner.
+     *
+     * @param sendBufferSize Size in bytes, 0 to keep the system default (default: 0)
+     * @return Fluent interface
+     */
+    public TcpConnection setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
     /**
      * Check if the TCP device is connected by socket.
      *
      * @return true if is connected
      */
     public boolean isConnected() {
-        return this.socket != null && this.socket.isConnected() && super.isConnected();
+        return this.channel != null && this.channel.isConnected();
+    }
+
+    /**
+     * Check that the printer did not close the connection, the input reader stops when it does. Bytes received since
+     * the last job are dropped.
+     *
+     * @return true if the connection can be used
+     */
+    @Override
+    public boolean isAlive() {
+        if (!this.isConnected() || this.inputReader == null || !this.inputReader.isRunning()) {
+            return false;
+        }
+        this.inputReader.clear();
+        return true;
     }
 
     /**
@@ -70,16 +205,39 @@ public class TcpConnection extends DeviceConnection {
         Timber.tag("TcpConnection").i("Connecting to TCP %s:%d (timeout: %dms)", this.address, this.port, this.timeout);
 
         try {
-            this.socket = new Socket();
-            this.socket.connect(new InetSocketAddress(InetAddress.getByName(this.address), this.port), this.timeout);
-            this.outputStream = this.socket.getOutputStream();
-            this.inputStream = this.socket.getInputStream();
+            this.channel = SocketChannel.open();
+            this.channel.configureBlocking(false);
+            this.channel.setOption(StandardSocketOptions.TCP_NODELAY, this.tcpNoDelay);
+            this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, this.keepAlive);
+            if (this.sendBufferSize > 0) {
+                this.channel.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBufferSize);
+            }
+            this.writeSelector = Selector.open();
+            this.readSelector = Selector.open();
+
+            if (!this.channel.connect(new InetSocketAddress(InetAddress.getByName(this.address), this.port))) {
+                SelectionKey key = this.channel.register(this.writeSelector, SelectionKey.OP_CONNECT);
+                long deadline = System.currentTimeMillis() + this.timeout;
+                while (!this.channel.finishConnect()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        Timber.tag("TcpConnection").e("TCP connection timeout: %s:%d", this.address, this.port);
+                        this.disconnect();
+                        throw new EscPosConnectionException("TCP connection timeout to " + this.address + ":" + this.port);
+                    }
+                    this.writeSelector.select(remaining);
+                    this.writeSelector.selectedKeys().clear();
+                }
+                key.interestOps(0);
+            }
+
+            this.channel.register(this.readSelector, SelectionKey.OP_READ);
+            this.startInputReader(new ChannelSource(this.channel, this.readSelector));
             this.data = new byte[0];
+            if (this.timingModel != null) {
+                this.timingModel.reset();
+            }
             Timber.tag("TcpConnection").i("TCP connected successfully to %s:%d", this.address, this.port);
-        } catch (SocketTimeoutException e) {
-            Timber.tag("TcpConnection").e(e, "TCP connection timeout: %s:%d", this.address, this.port);
-            this.disconnect();
-            throw new EscPosConnectionException("TCP connection timeout to " + this.address + ":" + this.port);
         } catch (IOException e) {
             Timber.tag("TcpConnection").e(e, "TCP connection failed: %s:%d - %s", this.address, this.port, e.getMessage());
             this.disconnect();
@@ -88,34 +246,249 @@ public class TcpConnection extends DeviceConnection {
         return this;
     }
 
+    /**
+     * Add data to send. The bytes are copied in direct buffers, they are sent all at once by send().
+     */
+    @Override
+    public void write(byte[] bytes) {
+        this.getLock().lock();
+        try {
+            this.writeData(bytes);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void writeData(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ByteBuffer buffer = this.buffers.isEmpty() ? null : this.buffers.get(this.buffers.size() - 1);
+            if (buffer == null || !buffer.hasRemaining()) {
+                buffer = this.freeBuffers.isEmpty() ? ByteBuffer.allocateDirect(TcpConnection.BUFFER_SIZE) : this.freeBuffers.remove(this.freeBuffers.size() - 1);
+                this.buffers.add(buffer);
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+        this.bufferedLength += bytes.length;
+    }
+
+    /**
+     * Send data to the device.
+     */
+    @Override
+    public void send(int addWaitingTime) throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.sendData(addWaitingTime);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void sendData(int addWaitingTime) throws EscPosConnectionException {
+        // In batch mode, only accumulate waiting time - don't actually send
+        if (this.batchMode) {
+            this.batchWaitingTime += addWaitingTime;
+            Timber.tag("TcpConnection").v("Batch mode: buffering %d bytes", this.bufferedLength);
+            return;
+        }
+
+        if (!this.isConnected()) {
+            Timber.tag("TcpConnection").e("Send failed: Not connected to device");
+            this.clearBuffers();
+            throw new EscPosConnectionException("Unable to send data to device.");
+        }
+
+        int sentBytes = this.bufferedLength;
+        Timber.tag("TcpConnection").d("Sending %d bytes", sentBytes);
+
+        TransportTuner tuner = this.tuner;
+        int dotLines = this.pendingDotLines;
+        int printingTime = this.pendingPrintingTime;
+        this.pendingDotLines = 0;
+        this.pendingPrintingTime = 0;
+
+        try {
+            if (sentBytes > 0) {
+                ByteBuffer[] buffers = this.buffers.toArray(new ByteBuffer[0]);
+                for (ByteBuffer buffer : buffers) {
+                    buffer.flip();
+                }
+                // Write block by block, each one once the printer accepts it, in chunks of the tuner if any.
+                int offset = 0;
+                while (offset < sentBytes) {
+                    int length = sentBytes - offset;
+                    if (tuner != null) {
+                        length = Math.min(length, tuner.getChunkSize());
+                    }
+                    length = this.awaitNextBlock(offset, length, sentBytes, dotLines, printingTime);
+                    int end = offset + length,
+                            last = (end - 1) / TcpConnection.BUFFER_SIZE,
+                            limit = buffers[last].limit();
+                    buffers[last].limit(end - last * TcpConnection.BUFFER_SIZE);
+                    this.writeFully(buffers, last);
+                    buffers[last].limit(limit);
+                    offset = end;
+                    this.onChunkSent(offset == sentBytes);
+                }
+            }
+
+            if (addWaitingTime > 0) {
+                Thread.sleep(addWaitingTime);
+            }
+
+            Timber.tag("TcpConnection").d("Send complete: %d bytes sent successfully", sentBytes);
+        } catch (IOException e) {
+            Timber.tag("TcpConnection").e(e, "Send IO error: %s", e.getMessage());
+            if (tuner != null) {
+                tuner.onError();
+            }
+            throw new EscPosConnectionException(e.getMessage());
+        } catch (InterruptedException e) {
+            Timber.tag("TcpConnection").e(e, "Send interrupted: %s", e.getMessage());
+            Thread.currentThread().interrupt();
+            throw new EscPosConnectionException(e.getMessage());
+        } finally {
+            // Also on EscPosTimeoutException : the buffers are flipped and partly written, the next send must start from empty buffers.
+            this.clearBuffers();
+        }
+    }
+
+    /**
+     * Write the buffers up to the given one, waiting for the socket to be writable when its send buffer is full. All the
+     * buffers but the last one are full, the byte at offset n is in buffers[n / BUFFER_SIZE].
+     */
+    private void writeFully(ByteBuffer[] buffers, int lastIndex) throws IOException, EscPosConnectionException {
+        ByteBuffer last = buffers[lastIndex];
+        long deadline = this.writeTimeout > 0 ? System.currentTimeMillis() + this.writeTimeout : 0;
+        SelectionKey key = null;
+        int first = 0;
+
+        try {
+            while (last.hasRemaining()) {
+                this.channel.write(buffers, first, lastIndex - first + 1);
+                while (first < lastIndex && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+                if (!last.hasRemaining()) {
+                    break;
+                }
+
+                // The send buffer is full, wait for the printer to read.
+                if (key == null) {
+                    key = this.channel.register(this.writeSelector, SelectionKey.OP_WRITE);
+                } else {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+                if (deadline == 0) {
+                    this.writeSelector.select();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        int bytesWritten = 0;
+                        for (ByteBuffer buffer : buffers) {
+                            bytesWritten += buffer.position();
+                        }
+                        throw new EscPosTimeoutException("TCP write timeout, the printer does not read data anymore.", bytesWritten);
+                    }
+                    this.writeSelector.select(remaining);
+                }
+                this.writeSelector.selectedKeys().clear();
+            }
+        } finally {
+            if (key != null && key.isValid()) {
+                key.interestOps(0);
+            }
+        }
+    }
+
+    /**
+     * Send the data buffered in batch mode.
+     */
+    @Override
+    public void flushBatch() throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.flushBatchData();
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void flushBatchData() throws EscPosConnectionException {
+        if (this.bufferedLength > 0) {
+            boolean wasBatchMode = this.batchMode;
+            this.batchMode = false;
+            this.send(this.batchWaitingTime);
+            this.batchMode = wasBatchMode;
+            this.batchWaitingTime = 0;
+        }
+    }
+
+    /**
+     * Check if data was written and not sent yet.
+     *
+     * @return true if send() or flushBatch() has data to send
+     */
+    @Override
+    public boolean hasPendingData() {
+        return this.bufferedLength > 0;
+    }
+
+    private void clearBuffers() {
+        for (ByteBuffer buffer : this.buffers) {
+            if (this.freeBuffers.size() < TcpConnection.MAX_FREE_BUFFERS) {
+                buffer.clear();
+                this.freeBuffers.add(buffer);
+            }
+        }
+        this.buffers.clear();
+        this.bufferedLength = 0;
+    }
+
+    /**
+     * Check if input stream is available for reading.
+     *
+     * @return true if the socket is connected
+     */
+    @Override
+    public boolean canRead() {
+        return this.isConnected();
+    }
+
     /**
      * Close the socket connection with the TCP device.
      */
     public TcpConnection disconnect() {
         this.data = new byte[0];
-        if (this.inputStream != null) {
+        this.clearBuffers();
+        // Interrupting the reader thread wakes up its selector.
+        this.stopInputReader();
+        if (this.writeSelector != null) {
             try {
-                this.inputStream.close();
-                this.inputStream = null;
+                this.writeSelector.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            this.writeSelector = null;
         }
-        if (this.outputStream != null) {
+        if (this.readSelector != null) {
             try {
-                this.outputStream.close();
-                this.outputStream = null;
+                this.readSelector.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            this.readSelector = null;
         }
-        if (this.socket != null) {
+        if (this.channel != null) {
             try {
-                this.socket.close();
-                this.socket = null;
+                this.channel.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            this.channel = null;
         }
         return this;
     }
@@ -0,0 +1,683 @@
+package com.dantsu.escposprinter.connection.tcp;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.os.Build;
+
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import timber.log.Timber;
+
+/**
+ * Find network printers on the local network.
+ * <p>
+ * All the addresses of the local IPv4 subnets are tried at once on the raw printing port (9100) with non-blocking
+ * connections handled by a single selector, so a /24 subnet is scanned in the time of the slowest answer instead of
+ * one connection timeout per address. With a Context, the printers announced with mDNS as
+ * {@code _pdl-datastream._tcp} are found as well, even outside the scanned subnets or on another port.
+ * <p>
+ * discover() blocks until the time budget is spent, call it from a background thread.
+ */
+public class TcpPrintersDiscovery {
+
+    public static final int DEFAULT_PORT = 9100;
+    public static final int DEFAULT_TIME_BUDGET_MS = 2000;
+    public static final int DEFAULT_MAX_PENDING_CONNECTIONS = 128;
+    public static final String MDNS_SERVICE_TYPE = "_pdl-datastream._tcp";
+
+    /**
+     * Biggest subnet scanned around a local address, larger subnets are reduced to the /24 of the address.
+     */
+    private static final int MIN_PREFIX_LENGTH = 24;
+
+    /**
+     * DLE EOT 1 : transmit printer status.
+     */
+    private static final byte[] STATUS_QUERY = new byte[]{0x10, 0x04, 0x01};
+
+    /**
+     * Callback of the printers found during discover().
+     */
+    public interface OnPrinterFoundListener {
+        /**
+         * Called from the discovery thread as soon as a printer answers.
+         *
+         * @param printer Printer found
+         */
+        void onPrinterFound(TcpPrinter printer);
+    }
+
+    /**
+     * Printer found on the network.
+     */
+    public static class TcpPrinter {
+        private final TcpConnection connection;
+        private final long rtt;
+        private final boolean statusConfirmed;
+        private final String serviceName;
+
+        TcpPrinter(TcpConnection connection, long rtt, boolean statusConfirmed, String serviceName) {
+            this.connection = connection;
+            this.rtt = rtt;
+            this.statusConfirmed = statusConfirmed;
+            this.serviceName = serviceName;
+        }
+
+        /**
+         * @return Not connected TcpConnection to the printer
+         */
+        public TcpConnection getConnection() {
+            return this.connection;
+        }
+
+        /**
+         * @return Time in milliseconds the printer took to accept the connection
+         */
+        public long getRtt() {
+            return this.rtt;
+        }
+
+        /**
+         * @return true if the printer answered the DLE EOT status query, always false when the probe is disabled
+         */
+        public boolean isStatusConfirmed() {
+            return this.statusConfirmed;
+        }
+
+        /**
+         * @return Name announced with mDNS, null if the printer was found by the port scan
+         */
+        public String getServiceName() {
+            return this.serviceName;
+        }
+    }
+
+
+    private final Context context;
+    private int port = TcpPrintersDiscovery.DEFAULT_PORT;
+    private int timeBudget = TcpPrintersDiscovery.DEFAULT_TIME_BUDGET_MS;
+    private int maxPendingConnections = TcpPrintersDiscovery.DEFAULT_MAX_PENDING_CONNECTIONS;
+    private boolean statusProbe = false;
+
+    /**
+     * Create new instance of TcpPrintersDiscovery.
+     *
+     * @param context Application context, used for mDNS. Can be null to only scan the subnets.
+     */
+    public TcpPrintersDiscovery(Context context) {
+        this.context = context != null ? context.getApplicationContext() : null;
+    }
+
+    /**
+     * Set the port tried on each address of the subnets.
+     *
+     * @param port TCP port (default: 9100)
+     * @return Fluent interface
+     */
+    public TcpPrintersDiscovery setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Set the total time of the discovery.
+     *
+     * @param timeBudget Time in milliseconds (default: 2000)
+     * @return Fluent interface
+     */
+    public TcpPrintersDiscovery setTimeBudget(int timeBudget) {
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of connections in progress at the same time, to stay below the file descriptors limit.
+     *
+     * @param maxPendingConnections Number of connections (default: 128)
+     * @return Fluent interface
+     */
+    public TcpPrintersDiscovery setMaxPendingConnections(int maxPendingConnections) {
+        this.maxPendingConnections = Math.max(1, maxPendingConnections);
+        return this;
+    }
+
+    /**
+     * Send a DLE EOT status query to each open port, to tell an ESC/POS printer from any other service listening on
+     * the same port. Printers that do not answer in the time budget are still returned, not confirmed.
+     *
+     * @param statusProbe true to send the status query (default: false)
+     * @return Fluent interface
+     */
+    public TcpPrintersDiscovery setStatusProbe(boolean statusProbe) {
+        this.statusProbe = statusProbe;
+        return this;
+    }
+
+    /**
+     * Find the printers of the local subnets and the printers announced with mDNS.
+     *
+     * @return Printers found, fastest first
+     */
+    public List<TcpPrinter> discover() throws EscPosConnectionException {
+        return this.discover(null);
+    }
+
+    /**
+     * Find the printers of the local subnets and the printers announced with mDNS.
+     *
+     * @param listener Called as soon as a printer is found, can be null
+     * @return Printers found, fastest first
+     */
+    public List<TcpPrinter> discover(OnPrinterFoundListener listener) throws EscPosConnectionException {
+        ArrayList<InetSocketAddress> targets = new ArrayList<InetSocketAddress>();
+        for (InetAddress address : TcpPrintersDiscovery.getLocalSubnetsAddresses()) {
+            targets.add(new InetSocketAddress(address, this.port));
+        }
+        Timber.tag("TcpPrintersDiscovery").i("Scanning %d addresses on port %d", targets.size(), this.port);
+
+        ConcurrentLinkedQueue<Target> announced = new ConcurrentLinkedQueue<Target>();
+        MdnsBrowser browser = this.context != null ? new MdnsBrowser(this.context, announced) : null;
+        try {
+            return this.scan(targets, announced, browser, listener);
+        } finally {
+            if (browser != null) {
+                browser.stop();
+            }
+        }
+    }
+
+    /**
+     * Try the given addresses only, without mDNS.
+     *
+     * @param targets  Addresses and ports to try
+     * @param listener Called as soon as a printer is found, can be null
+     * @return Printers found, fastest first
+     */
+    public List<TcpPrinter> scan(Collection<InetSocketAddress> targets, OnPrinterFoundListener listener) throws EscPosConnectionException {
+        return this.scan(targets, null, null, listener);
+    }
+
+    private static class Target {
+        private final InetSocketAddress address;
+        private final String serviceName;
+        private long connectStart;
+        private long rtt;
+        private ByteBuffer query;
+
+        Target(InetSocketAddress address, String serviceName) {
+            this.address = address;
+            this.serviceName = serviceName;
+        }
+    }
+
+    private List<TcpPrinter> scan(Collection<InetSocketAddress> addresses, ConcurrentLinkedQueue<Target> announced,
+                                  MdnsBrowser browser, OnPrinterFoundListener listener) throws EscPosConnectionException {
+        ArrayDeque<Target> queue = new ArrayDeque<Target>();
+        HashSet<InetSocketAddress> known = new HashSet<InetSocketAddress>();
+        for (InetSocketAddress address : addresses) {
+            if (known.add(address)) {
+                queue.add(new Target(address, null));
+            }
+        }
+
+        HashMap<InetSocketAddress, TcpPrinter> found = new HashMap<InetSocketAddress, TcpPrinter>();
+        long deadline = System.currentTimeMillis() + this.timeBudget;
+        Selector selector;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new EscPosConnectionException("Unable to start the network discovery : " + e.getMessage());
+        }
+        if (browser != null) {
+            browser.start(selector);
+        }
+
+        // Cancelled keys stay in selector.keys() until the next select, the connections in progress are counted apart.
+        int pending = 0;
+        try {
+            while (true) {
+                if (announced != null) {
+                    Target target;
+                    while ((target = announced.poll()) != null) {
+                        if (known.add(target.address)) {
+                            // Announced printers are tried first.
+                            queue.addFirst(target);
+                        }
+                    }
+                }
+
+                while (!queue.isEmpty() && pending < this.maxPendingConnections) {
+                    if (this.startConnect(selector, queue.poll())) {
+                        pending++;
+                    }
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || (queue.isEmpty() && pending == 0 && browser == null)) {
+                    break;
+                }
+
+                selector.select(remaining);
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    TcpPrinter printer = this.handleKey(key);
+                    if (!key.isValid()) {
+                        pending--;
+                    }
+                    if (printer != null) {
+                        found.put(((Target) key.attachment()).address, printer);
+                        if (listener != null) {
+                            listener.onPrinterFound(printer);
+                        }
+                    }
+                }
+            }
+
+            // Printers still waiting for the status reply answered the connection, they are not confirmed.
+            for (SelectionKey key : selector.keys()) {
+                Target target = (Target) key.attachment();
+                if (key.isValid() && target.query != null) {
+                    TcpPrinter printer = this.newPrinter(target, false);
+                    found.put(target.address, printer);
+                    if (listener != null) {
+                        listener.onPrinterFound(printer);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new EscPosConnectionException("Network discovery failed : " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                TcpPrintersDiscovery.closeQuietly(key.channel());
+            }
+            TcpPrintersDiscovery.closeQuietly(selector);
+        }
+
+        ArrayList<TcpPrinter> printers = new ArrayList<TcpPrinter>(found.values());
+        Collections.sort(printers, new Comparator<TcpPrinter>() {
+            @Override
+            public int compare(TcpPrinter p1, TcpPrinter p2) {
+                return Long.compare(p1.getRtt(), p2.getRtt());
+            }
+        });
+        Timber.tag("TcpPrintersDiscovery").i("Found %d network printer(s)", printers.size());
+        return printers;
+    }
+
+    private boolean startConnect(Selector selector, Target target) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            target.connectStart = System.nanoTime();
+            if (channel.connect(target.address)) {
+                target.rtt = 0;
+                channel.register(selector, SelectionKey.OP_WRITE, target);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, target);
+            }
+            return true;
+        } catch (IOException e) {
+            // Unreachable address, network down or too many open files : skip it.
+            TcpPrintersDiscovery.closeQuietly(channel);
+            return false;
+        }
+    }
+
+    /**
+     * Move a connection one step forward.
+     *
+     * @return The printer when it is found, null otherwise
+     */
+    private TcpPrinter handleKey(SelectionKey key) {
+        Target target = (Target) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            if (key.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return null;
+                }
+                target.rtt = (System.nanoTime() - target.connectStart) / 1000000;
+                if (!this.statusProbe) {
+                    key.cancel();
+                    channel.close();
+                    return this.newPrinter(target, false);
+                }
+                target.query = ByteBuffer.wrap(TcpPrintersDiscovery.STATUS_QUERY);
+                key.interestOps(SelectionKey.OP_WRITE);
+                return null;
+            }
+
+            if (key.isWritable()) {
+                if (target.query == null) {
+                    // Connected at once by startConnect().
+                    if (!this.statusProbe) {
+                        key.cancel();
+                        channel.close();
+                        return this.newPrinter(target, false);
+                    }
+                    target.query = ByteBuffer.wrap(TcpPrintersDiscovery.STATUS_QUERY);
+                }
+                channel.write(target.query);
+                if (!target.query.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                return null;
+            }
+
+            if (key.isReadable()) {
+                ByteBuffer reply = ByteBuffer.allocate(16);
+                int read = channel.read(reply);
+                key.cancel();
+                channel.close();
+                if (read <= 0) {
+                    return this.newPrinter(target, false);
+                }
+                // A status byte always has bit 1 and 4 set and bit 0 and 7 cleared.
+                return this.newPrinter(target, (reply.get(0) & 0x93) == 0x12);
+            }
+        } catch (IOException e) {
+            // Connection refused or reset : nothing is listening on this address.
+            key.cancel();
+            TcpPrintersDiscovery.closeQuietly(channel);
+        }
+        return null;
+    }
+
+    private TcpPrinter newPrinter(Target target, boolean statusConfirmed) {
+        Timber.tag("TcpPrintersDiscovery").d("Printer found at %s (%d ms)", target.address, target.rtt);
+        return new TcpPrinter(
+                new TcpConnection(target.address.getAddress().getHostAddress(), target.address.getPort()),
+                target.rtt,
+                statusConfirmed,
+                target.serviceName
+        );
+    }
+
+    /**
+     * Get all the host addresses of the IPv4 subnets the device is connected to, without its own addresses. Subnets
+     * larger than /24 are reduced to the /24 around the device address.
+     *
+     * @return Addresses to scan
+     */
+    public static List<InetAddress> getLocalSubnetsAddresses() {
+        LinkedHashSet<InetAddress> hosts = new LinkedHashSet<InetAddress>();
+        HashSet<InetAddress> ownAddresses = new HashSet<InetAddress>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            if (interfaces == null) {
+                return new ArrayList<InetAddress>();
+            }
+            for (NetworkInterface networkInterface : Collections.list(interfaces)) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback() || networkInterface.isPointToPoint()) {
+                    continue;
+                }
+                for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                    InetAddress address = interfaceAddress.getAddress();
+                    if (!(address instanceof Inet4Address)) {
+                        continue;
+                    }
+                    ownAddresses.add(address);
+
+                    int prefixLength = Math.max(interfaceAddress.getNetworkPrefixLength(), TcpPrintersDiscovery.MIN_PREFIX_LENGTH);
+                    if (prefixLength >= 31) {
+                        continue;
+                    }
+                    byte[] bytes = address.getAddress();
+                    int ip = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+                    int mask = -1 << (32 - prefixLength);
+                    int network = ip & mask;
+                    int broadcast = network | ~mask;
+                    for (int host = network + 1; host < broadcast; host++) {
+                        hosts.add(InetAddress.getByAddress(new byte[]{
+                                (byte) (host >>> 24), (byte) (host >>> 16), (byte) (host >>> 8), (byte) host
+                        }));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Timber.tag("TcpPrintersDiscovery").w("Unable to list the network interfaces : %s", e.getMessage());
+        }
+        hosts.removeAll(ownAddresses);
+        return new ArrayList<InetAddress>(hosts);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * mDNS browsing with NsdManager. Resolved services are queued for the scan and the selector is woken up.
+     */
+    private static class MdnsBrowser {
+        /**
+         * Run the ServiceInfoCallback on the NsdManager thread, it only queues the target for the scan.
+         */
+        private static final Executor DIRECT_EXECUTOR = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        private final NsdManager nsdManager;
+        private final ConcurrentLinkedQueue<Target> announced;
+        private final ArrayDeque<NsdServiceInfo> toResolve = new ArrayDeque<NsdServiceInfo>();
+        private final ArrayList<NsdManager.ServiceInfoCallback> serviceInfoCallbacks = new ArrayList<NsdManager.ServiceInfoCallback>();
+        private boolean resolving = false;
+        private boolean started = false;
+        private Selector selector;
+
+        private final NsdManager.DiscoveryListener discoveryListener = new NsdManager.DiscoveryListener() {
+            @Override
+            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+                Timber.tag("TcpPrintersDiscovery").w("mDNS discovery failed : %d", errorCode);
+            }
+
+            @Override
+            public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+            }
+
+            @Override
+            public void onDiscoveryStarted(String serviceType) {
+            }
+
+            @Override
+            public void onDiscoveryStopped(String serviceType) {
+            }
+
+            @Override
+            public void onServiceFound(NsdServiceInfo serviceInfo) {
+                MdnsBrowser.this.resolve(serviceInfo);
+            }
+
+            @Override
+            public void onServiceLost(NsdServiceInfo serviceInfo) {
+            }
+        };
+
+        MdnsBrowser(Context context, ConcurrentLinkedQueue<Target> announced) {
+            this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+            this.announced = announced;
+        }
+
+        void start(Selector selector) {
+            this.selector = selector;
+            if (this.nsdManager == null) {
+                return;
+            }
+            try {
+                this.nsdManager.discoverServices(TcpPrintersDiscovery.MDNS_SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, this.discoveryListener);
+                this.started = true;
+            } catch (RuntimeException e) {
+                Timber.tag("TcpPrintersDiscovery").w("Unable to start mDNS discovery : %s", e.getMessage());
+            }
+        }
+
+        void stop() {
+            if (!this.started) {
+                return;
+            }
+            this.started = false;
+            try {
+                this.nsdManager.stopServiceDiscovery(this.discoveryListener);
+            } catch (RuntimeException e) {
+                // Already stopped
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                synchronized (this) {
+                    for (NsdManager.ServiceInfoCallback callback : this.serviceInfoCallbacks.toArray(new NsdManager.ServiceInfoCallback[0])) {
+                        this.unregisterServiceInfoCallback(callback);
+                    }
+                }
+            }
+        }
+
+        private void resolve(NsdServiceInfo serviceInfo) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                this.registerServiceInfoCallback(serviceInfo);
+            } else {
+                this.resolveService(serviceInfo);
+            }
+        }
+
+        /**
+         * Since API 34, the addresses of a service are given by a ServiceInfoCallback, unregistered after the first
+         * update with an address. There is no limit on the number of services resolved at the same time.
+         */
+        private synchronized void registerServiceInfoCallback(NsdServiceInfo serviceInfo) {
+            NsdManager.ServiceInfoCallback callback = new NsdManager.ServiceInfoCallback() {
+                @Override
+                public void onServiceInfoCallbackRegistrationFailed(int errorCode) {
+                    Timber.tag("TcpPrintersDiscovery").w("mDNS resolution failed : %d", errorCode);
+                    synchronized (MdnsBrowser.this) {
+                        MdnsBrowser.this.serviceInfoCallbacks.remove(this);
+                    }
+                }
+
+                @Override
+                public void onServiceUpdated(NsdServiceInfo serviceInfo) {
+                    List<InetAddress> addresses = serviceInfo.getHostAddresses();
+                    if (addresses.isEmpty()) {
+                        return;
+                    }
+                    InetAddress host = addresses.get(0);
+                    for (InetAddress address : addresses) {
+                        if (address instanceof Inet4Address) {
+                            host = address;
+                            break;
+                        }
+                    }
+                    MdnsBrowser.this.announce(serviceInfo.getServiceName(), host, serviceInfo.getPort());
+                    synchronized (MdnsBrowser.this) {
+                        MdnsBrowser.this.unregisterServiceInfoCallback(this);
+                    }
+                }
+
+                @Override
+                public void onServiceLost() {
+                }
+
+                @Override
+                public void onServiceInfoCallbackUnregistered() {
+                }
+            };
+            try {
+                this.nsdManager.registerServiceInfoCallback(serviceInfo, MdnsBrowser.DIRECT_EXECUTOR, callback);
+                this.serviceInfoCallbacks.add(callback);
+            } catch (RuntimeException e) {
+                Timber.tag("TcpPrintersDiscovery").w("Unable to resolve %s : %s", serviceInfo.getServiceName(), e.getMessage());
+            }
+        }
+
+        private void unregisterServiceInfoCallback(NsdManager.ServiceInfoCallback callback) {
+            if (!this.serviceInfoCallbacks.remove(callback)) {
+                return;
+            }
+            try {
+                this.nsdManager.unregisterServiceInfoCallback(callback);
+            } catch (RuntimeException e) {
+                // Already unregistered
+            }
+        }
+
+        /**
+         * NsdManager resolves one service at a time before API 34, services are queued.
+         */
+        @SuppressWarnings("deprecation")
+        private synchronized void resolveService(NsdServiceInfo serviceInfo) {
+            if (this.resolving) {
+                this.toResolve.add(serviceInfo);
+                return;
+            }
+            this.resolving = true;
+            this.nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
+                @Override
+                public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+                    MdnsBrowser.this.resolveNext();
+                }
+
+                @Override
+                public void onServiceResolved(NsdServiceInfo serviceInfo) {
+                    if (serviceInfo.getHost() != null) {
+                        MdnsBrowser.this.announce(serviceInfo.getServiceName(), serviceInfo.getHost(), serviceInfo.getPort());
+                    }
+                    MdnsBrowser.this.resolveNext();
+                }
+            });
+        }
+
+        private void announce(String name, InetAddress host, int port) {
+            Timber.tag("TcpPrintersDiscovery").d("mDNS printer %s at %s:%d", name, host, port);
+            this.announced.add(new Target(new InetSocketAddress(host, port), name));
+            Selector selector = this.selector;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+
+        private synchronized void resolveNext() {
+            this.resolving = false;
+            NsdServiceInfo next = this.toResolve.poll();
+            if (next != null && this.started) {
+                this.resolveService(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import java.io.IOException;
+
+/**
+ * Driver of the USB CDC-ACM serial adapters (standard class, most microcontroller based adapters and printers).
+ * <p>
+ * CDC-ACM does not report CTS : the adapter applies the RS-232 flow control itself and NAKs the bulk transfers while
+ * the printer is busy, so getModemStatus() returns -1 and the data is not paced on CTS.
+ */
+public class CdcAcmSerialDriver extends UsbSerialDriver {
+
+    private static final int REQUEST_SET_LINE_CODING = 0x20;
+    private static final int REQUEST_SET_CONTROL_LINE_STATE = 0x22;
+
+    private final int controlInterfaceId;
+
+    /**
+     * @param controlInterfaceId ID of the communication interface receiving the requests
+     */
+    public CdcAcmSerialDriver(int controlInterfaceId) {
+        this.controlInterfaceId = controlInterfaceId;
+    }
+
+    @Override
+    public String getName() {
+        return "CDC-ACM";
+    }
+
+    @Override
+    public void setLineCoding(int baudRate, int dataBits, int stopBits, int parity) throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_CLASS_INTERFACE_OUT, CdcAcmSerialDriver.REQUEST_SET_LINE_CODING, 0,
+                this.controlInterfaceId, UsbSerialDriver.lineCoding(baudRate, dataBits, stopBits, parity));
+    }
+
+    @Override
+    public void setControlLines(boolean dtr, boolean rts) throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_CLASS_INTERFACE_OUT, CdcAcmSerialDriver.REQUEST_SET_CONTROL_LINE_STATE,
+                (dtr ? 0x01 : 0) | (rts ? 0x02 : 0), this.controlInterfaceId, null);
+    }
+
+    @Override
+    public int getModemStatus() {
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import java.io.IOException;
+
+/**
+ * Driver of the WCH CH340 / CH341 USB-serial adapters.
+ * <p>
+ * The chip is configured with vendor register writes. It has no automatic flow control, CTS is read from the modem
+ * status register.
+ */
+public class Ch34xSerialDriver extends UsbSerialDriver {
+
+    public static final int VENDOR_ID = 0x1A86;
+
+    private static final int REQUEST_READ_VERSION = 0x5F;
+    private static final int REQUEST_READ_REGISTER = 0x95;
+    private static final int REQUEST_WRITE_REGISTER = 0x9A;
+    private static final int REQUEST_SERIAL_INIT = 0xA1;
+    private static final int REQUEST_MODEM_CONTROL = 0xA4;
+
+    private static final int REGISTER_PRESCALER = 0x1312;
+    private static final int REGISTER_DIVISOR = 0x0F2C;
+    private static final int REGISTER_LCR = 0x2518;
+    private static final int REGISTER_MODEM_STATUS = 0x0706;
+
+    private static final int LCR_ENABLE_RX = 0x80;
+    private static final int LCR_ENABLE_TX = 0x40;
+    private static final int LCR_MARK_SPACE = 0x20;
+    private static final int LCR_PARITY_EVEN = 0x10;
+    private static final int LCR_ENABLE_PARITY = 0x08;
+    private static final int LCR_STOP_BITS_2 = 0x04;
+
+    private static final int CONTROL_DTR = 0x20;
+    private static final int CONTROL_RTS = 0x40;
+
+    private static final long BAUD_BASE_FACTOR = 1532620800L;
+
+    @Override
+    public String getName() {
+        return "CH34x";
+    }
+
+    @Override
+    protected void init() throws IOException {
+        this.controlIn(UsbSerialDriver.REQUEST_TYPE_VENDOR_IN, Ch34xSerialDriver.REQUEST_READ_VERSION, 0, 0, 2);
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Ch34xSerialDriver.REQUEST_SERIAL_INIT, 0, 0, null);
+    }
+
+    @Override
+    public void setLineCoding(int baudRate, int dataBits, int stopBits, int parity) throws IOException {
+        if (baudRate <= 0 || dataBits < 5 || dataBits > 8) {
+            throw new IOException("Unsupported serial parameters.");
+        }
+
+        // The baud rate is BAUD_BASE_FACTOR / (factor x 8^(3 - divisor))
+        long factor = Ch34xSerialDriver.BAUD_BASE_FACTOR / baudRate;
+        int divisor = 3;
+        while (factor > 0xFFF0 && divisor > 0) {
+            factor >>= 3;
+            divisor--;
+        }
+        if (factor > 0xFFF0) {
+            throw new IOException("Unsupported baud rate : " + baudRate);
+        }
+        factor = 0x10000 - factor;
+        divisor |= 0x80; // Send the data immediately, not when the chip buffer is full
+
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Ch34xSerialDriver.REQUEST_WRITE_REGISTER,
+                Ch34xSerialDriver.REGISTER_PRESCALER, (int) (factor & 0xFF00) | divisor, null);
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Ch34xSerialDriver.REQUEST_WRITE_REGISTER,
+                Ch34xSerialDriver.REGISTER_DIVISOR, (int) (factor & 0xFF), null);
+
+        int lcr = Ch34xSerialDriver.LCR_ENABLE_RX | Ch34xSerialDriver.LCR_ENABLE_TX | (dataBits - 5);
+        switch (parity) {
+            case UsbSerialDriver.PARITY_ODD:
+                lcr |= Ch34xSerialDriver.LCR_ENABLE_PARITY;
+                break;
+            case UsbSerialDriver.PARITY_EVEN:
+                lcr |= Ch34xSerialDriver.LCR_ENABLE_PARITY | Ch34xSerialDriver.LCR_PARITY_EVEN;
+                break;
+            case UsbSerialDriver.PARITY_MARK:
+                lcr |= Ch34xSerialDriver.LCR_ENABLE_PARITY | Ch34xSerialDriver.LCR_MARK_SPACE;
+                break;
+            case UsbSerialDriver.PARITY_SPACE:
+                lcr |= Ch34xSerialDriver.LCR_ENABLE_PARITY | Ch34xSerialDriver.LCR_MARK_SPACE | Ch34xSerialDriver.LCR_PARITY_EVEN;
+                break;
+        }
+        if (stopBits == UsbSerialDriver.STOP_BITS_2) {
+            lcr |= Ch34xSerialDriver.LCR_STOP_BITS_2;
+        }
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Ch34xSerialDriver.REQUEST_WRITE_REGISTER,
+                Ch34xSerialDriver.REGISTER_LCR, lcr, null);
+    }
+
+    @Override
+    public void setControlLines(boolean dtr, boolean rts) throws IOException {
+        int control = (dtr ? Ch34xSerialDriver.CONTROL_DTR : 0) | (rts ? Ch34xSerialDriver.CONTROL_RTS : 0);
+        // The output lines are active low
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Ch34xSerialDriver.REQUEST_MODEM_CONTROL, ~control & 0xFFFF, 0, null);
+    }
+
+    @Override
+    public int getModemStatus() throws IOException {
+        byte[] status = this.controlIn(UsbSerialDriver.REQUEST_TYPE_VENDOR_IN, Ch34xSerialDriver.REQUEST_READ_REGISTER,
+                Ch34xSerialDriver.REGISTER_MODEM_STATUS, 0, 2);
+        // The input lines are active low, in the order CTS, DSR, RI, DCD
+        return ~status[0] & 0x0F;
+    }
+}
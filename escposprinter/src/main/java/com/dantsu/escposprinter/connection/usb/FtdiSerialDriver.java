@@ -0,0 +1,116 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import java.io.IOException;
+
+/**
+ * Driver of the FTDI USB-serial adapters (FT232R, FT230X, FT2232, FT4232, FT232H).
+ * <p>
+ * The chip is configured with vendor requests. Each packet received on the bulk IN endpoint starts with 2 modem status
+ * bytes, removed by filterInput().
+ */
+public class FtdiSerialDriver extends UsbSerialDriver {
+
+    public static final int VENDOR_ID = 0x0403;
+
+    private static final int REQUEST_RESET = 0x00;
+    private static final int REQUEST_MODEM_CONTROL = 0x01;
+    private static final int REQUEST_SET_BAUD_RATE = 0x03;
+    private static final int REQUEST_SET_DATA = 0x04;
+    private static final int REQUEST_POLL_MODEM_STATUS = 0x05;
+
+    private static final int MODEM_CONTROL_DTR = 0x01;
+    private static final int MODEM_CONTROL_RTS = 0x02;
+    private static final int MODEM_CONTROL_DTR_ENABLE = 0x0100;
+    private static final int MODEM_CONTROL_RTS_ENABLE = 0x0200;
+
+    private static final int STATUS_CTS = 0x10;
+    private static final int STATUS_DSR = 0x20;
+    private static final int STATUS_RI = 0x40;
+    private static final int STATUS_DCD = 0x80;
+
+    private static final int BAUD_BASE = 48000000;
+    private static final int[] DIVISOR_FRACTIONS = {0, 3, 2, 4, 1, 5, 6, 7};
+
+    private static final int INPUT_HEADER_LENGTH = 2;
+
+    private final int portIndex;
+    private final boolean multiPortChip;
+    private final int packetSize;
+
+    /**
+     * @param portIndex     Index of the port on a multi-port chip (1 for A, 2 for B...), 0 on a single port chip
+     * @param multiPortChip true for the FT2232, FT4232 and FT232H chips, which take the port in the baud rate request
+     * @param packetSize    Max packet size of the bulk IN endpoint
+     */
+    public FtdiSerialDriver(int portIndex, boolean multiPortChip, int packetSize) {
+        this.portIndex = portIndex;
+        this.multiPortChip = multiPortChip;
+        this.packetSize = Math.max(packetSize, FtdiSerialDriver.INPUT_HEADER_LENGTH + 1);
+    }
+
+    @Override
+    public String getName() {
+        return "FTDI";
+    }
+
+    @Override
+    protected void init() throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, FtdiSerialDriver.REQUEST_RESET, 0, this.portIndex, null);
+    }
+
+    @Override
+    public void setLineCoding(int baudRate, int dataBits, int stopBits, int parity) throws IOException {
+        if (baudRate <= 0 || baudRate > 3000000 || dataBits < 7 || dataBits > 8) {
+            throw new IOException("Unsupported serial parameters.");
+        }
+
+        // Divisor in eighths of the 3MHz clock : integer part in the low 14 bits, fraction code in the next 3 bits
+        int divisor3 = (FtdiSerialDriver.BAUD_BASE + baudRate) / (2 * baudRate);
+        int divisor = (divisor3 >> 3) | (FtdiSerialDriver.DIVISOR_FRACTIONS[divisor3 & 7] << 14);
+        if (divisor == 1) {
+            divisor = 0; // 3000000 baud
+        } else if (divisor == 0x4001) {
+            divisor = 1; // 2000000 baud
+        }
+        int index = divisor >> 16;
+        if (this.multiPortChip) {
+            index = (index << 8) | this.portIndex;
+        }
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, FtdiSerialDriver.REQUEST_SET_BAUD_RATE, divisor & 0xFFFF, index, null);
+
+        int stopBitsCode = stopBits == UsbSerialDriver.STOP_BITS_1_5 ? 1 : (stopBits == UsbSerialDriver.STOP_BITS_2 ? 2 : 0);
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, FtdiSerialDriver.REQUEST_SET_DATA,
+                dataBits | (parity << 8) | (stopBitsCode << 11), this.portIndex, null);
+    }
+
+    @Override
+    public void setControlLines(boolean dtr, boolean rts) throws IOException {
+        int value = FtdiSerialDriver.MODEM_CONTROL_DTR_ENABLE | FtdiSerialDriver.MODEM_CONTROL_RTS_ENABLE |
+                (dtr ? FtdiSerialDriver.MODEM_CONTROL_DTR : 0) | (rts ? FtdiSerialDriver.MODEM_CONTROL_RTS : 0);
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, FtdiSerialDriver.REQUEST_MODEM_CONTROL, value, this.portIndex, null);
+    }
+
+    @Override
+    public int getModemStatus() throws IOException {
+        byte[] status = this.controlIn(UsbSerialDriver.REQUEST_TYPE_VENDOR_IN, FtdiSerialDriver.REQUEST_POLL_MODEM_STATUS, 0, this.portIndex, 2);
+        int lines = status[0] & 0xFF;
+        return ((lines & FtdiSerialDriver.STATUS_CTS) != 0 ? UsbSerialDriver.MODEM_STATUS_CTS : 0) |
+                ((lines & FtdiSerialDriver.STATUS_DSR) != 0 ? UsbSerialDriver.MODEM_STATUS_DSR : 0) |
+                ((lines & FtdiSerialDriver.STATUS_RI) != 0 ? UsbSerialDriver.MODEM_STATUS_RI : 0) |
+                ((lines & FtdiSerialDriver.STATUS_DCD) != 0 ? UsbSerialDriver.MODEM_STATUS_DCD : 0);
+    }
+
+    @Override
+    public int filterInput(byte[] buffer, int length) {
+        int dataLength = 0;
+        for (int packet = 0; packet < length; packet += this.packetSize) {
+            int start = packet + FtdiSerialDriver.INPUT_HEADER_LENGTH;
+            int end = Math.min(packet + this.packetSize, length);
+            if (start < end) {
+                System.arraycopy(buffer, start, buffer, dataLength, end - start);
+                dataLength += end - start;
+            }
+        }
+        return dataLength;
+    }
+}
@@ -0,0 +1,93 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import java.io.IOException;
+
+/**
+ * Driver of the Prolific PL2303 USB-serial adapters (type 0 and HX compatible chips, not the HXN ones).
+ * <p>
+ * The serial line is configured with the CDC requests. The modem status is sent by the chip on its interrupt endpoint
+ * when it changes, so the last status received is kept. Until the first one, CTS is assumed asserted.
+ */
+public class Pl2303SerialDriver extends UsbSerialDriver {
+
+    public static final int VENDOR_ID = 0x067B;
+
+    private static final int REQUEST_VENDOR = 0x01;
+    private static final int REQUEST_SET_LINE_CODING = 0x20;
+    private static final int REQUEST_SET_CONTROL_LINE_STATE = 0x22;
+
+    private static final int STATUS_LENGTH = 10;
+    private static final int STATUS_INDEX = 8;
+    private static final int STATUS_DCD = 0x01;
+    private static final int STATUS_DSR = 0x02;
+    private static final int STATUS_RI = 0x08;
+    private static final int STATUS_CTS = 0x80;
+
+    private final boolean hx;
+    private int modemStatus = UsbSerialDriver.MODEM_STATUS_CTS | UsbSerialDriver.MODEM_STATUS_DSR;
+
+    /**
+     * @param hx true for the HX compatible chips, false for the type 0 ones
+     */
+    public Pl2303SerialDriver(boolean hx) {
+        this.hx = hx;
+    }
+
+    @Override
+    public String getName() {
+        return this.hx ? "PL2303HX" : "PL2303";
+    }
+
+    @Override
+    protected void init() throws IOException {
+        // Initialization sequence of the Prolific driver
+        this.vendorIn(0x8484);
+        this.vendorOut(0x0404, 0);
+        this.vendorIn(0x8484);
+        this.vendorIn(0x8383);
+        this.vendorIn(0x8484);
+        this.vendorOut(0x0404, 1);
+        this.vendorIn(0x8484);
+        this.vendorIn(0x8383);
+        this.vendorOut(0, 1);
+        this.vendorOut(1, 0);
+        this.vendorOut(2, this.hx ? 0x44 : 0x24);
+    }
+
+    private void vendorIn(int value) throws IOException {
+        this.controlIn(UsbSerialDriver.REQUEST_TYPE_VENDOR_IN, Pl2303SerialDriver.REQUEST_VENDOR, value, 0, 1);
+    }
+
+    private void vendorOut(int value, int index) throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_VENDOR_OUT, Pl2303SerialDriver.REQUEST_VENDOR, value, index, null);
+    }
+
+    @Override
+    public void setLineCoding(int baudRate, int dataBits, int stopBits, int parity) throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_CLASS_INTERFACE_OUT, Pl2303SerialDriver.REQUEST_SET_LINE_CODING, 0, 0,
+                UsbSerialDriver.lineCoding(baudRate, dataBits, stopBits, parity));
+    }
+
+    @Override
+    public void setControlLines(boolean dtr, boolean rts) throws IOException {
+        this.controlOut(UsbSerialDriver.REQUEST_TYPE_CLASS_INTERFACE_OUT, Pl2303SerialDriver.REQUEST_SET_CONTROL_LINE_STATE,
+                (dtr ? 0x01 : 0) | (rts ? 0x02 : 0), 0, null);
+    }
+
+    @Override
+    public synchronized int getModemStatus() throws IOException {
+        if (this.transport == null) {
+            throw new IOException("USB serial adapter is not open.");
+        }
+        byte[] buffer = new byte[Pl2303SerialDriver.STATUS_LENGTH];
+        if (this.transport.readInterrupt(buffer, buffer.length, 1) > Pl2303SerialDriver.STATUS_INDEX) {
+            int status = buffer[Pl2303SerialDriver.STATUS_INDEX] & 0xFF;
+            this.modemStatus =
+                    ((status & Pl2303SerialDriver.STATUS_CTS) != 0 ? UsbSerialDriver.MODEM_STATUS_CTS : 0) |
+                    ((status & Pl2303SerialDriver.STATUS_DSR) != 0 ? UsbSerialDriver.MODEM_STATUS_DSR : 0) |
+                    ((status & Pl2303SerialDriver.STATUS_RI) != 0 ? UsbSerialDriver.MODEM_STATUS_RI : 0) |
+                    ((status & Pl2303SerialDriver.STATUS_DCD) != 0 ? UsbSerialDriver.MODEM_STATUS_DCD : 0);
+        }
+        return this.modemStatus;
+    }
+}
@@ -1,19 +1,72 @@
 package com.dantsu.escposprinter.connection.usb;
 
+import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 
 import com.dantsu.escposprinter.connection.DeviceConnection;
+import com.dantsu.escposprinter.connection.DeviceInputReader;
+import com.dantsu.escposprinter.connection.TransportTuner;
 import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+import com.dantsu.escposprinter.exceptions.EscPosTimeoutException;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 import timber.log.Timber;
 
 public class UsbConnection extends DeviceConnection {
 
+    /**
+     * USB printer class request GET_PORT_STATUS.
+     */
+    private static final int REQUEST_GET_PORT_STATUS = 0x01;
+    public static final int PORT_STATUS_PAPER_EMPTY = 0x20;
+    public static final int PORT_STATUS_SELECTED = 0x10;
+    public static final int PORT_STATUS_NOT_ERROR = 0x08;
+
     private UsbManager usbManager;
     private UsbDevice usbDevice;
+    private int usbRequestsCount = UsbOutputStream.DEFAULT_REQUESTS_COUNT;
+    private int writeTimeout = UsbOutputStream.DEFAULT_WRITE_TIMEOUT;
+
+    /**
+     * Bytes sent between two CTS checks, small enough for the margin left by a printer when it clears CTS.
+     */
+    private static final int SERIAL_CHUNK_SIZE = 64;
+    private static final int CTS_POLL_INTERVAL = 2;
+
+    private int baudRate = 9600;
+    private int dataBits = 8;
+    private int stopBits = UsbSerialDriver.STOP_BITS_1;
+    private int parity = UsbSerialDriver.PARITY_NONE;
+    private boolean rtsCtsFlowControl = false;
+    private UsbSerialDriver serialDriver = null;
+
+    /**
+     * Source of the input reader : bulk transfers on the IN endpoint, repeated until the printer sends data.
+     */
+    private static class BulkInSource implements DeviceInputReader.Source {
+        private final UsbInputStream inputStream;
+
+        BulkInSource(UsbInputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            int read;
+            while ((read = this.inputStream.read(buffer, 0, buffer.length, UsbInputStream.DEFAULT_READ_TIMEOUT)) == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return -1;
+                }
+            }
+            return read;
+        }
+    }
 
     /**
      * Create un instance of UsbConnection.
@@ -36,6 +89,70 @@ public class UsbConnection extends DeviceConnection {
         return this.usbDevice;
     }
 
+    /**
+     * Set the maximum number of USB transfers in flight, applied on the next connection.
+     *
+     * @param usbRequestsCount Number of UsbRequest queued at the same time (default: 4)
+     * @return Fluent interface
+     */
+    public UsbConnection setUsbRequestsCount(int usbRequestsCount) {
+        this.usbRequestsCount = usbRequestsCount;
+        return this;
+    }
+
+    /**
+     * Set the maximum time to wait for the printer to read a USB transfer. When it is reached, send() throws an
+     * EscPosTimeoutException instead of blocking the print thread.
+     *
+     * @param writeTimeout Time in milliseconds, 0 to wait forever (default: 10000)
+     * @return Fluent interface
+     */
+    public UsbConnection setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+        if (this.isConnected()) {
+            ((UsbOutputStream) this.outputStream).setWriteTimeout(writeTimeout);
+        }
+        return this;
+    }
+
+    /**
+     * Set the serial line of a printer behind a USB-serial adapter (CH340, PL2303, FTDI, CDC-ACM), applied on the next
+     * connection. Ignored for a USB printer.
+     *
+     * @param baudRate Baud rate (default: 9600)
+     * @param dataBits Data bits (default: 8)
+     * @param stopBits Stop bits, UsbSerialDriver.STOP_BITS_... constants (default: 1)
+     * @param parity   Parity, UsbSerialDriver.PARITY_... constants (default: none)
+     * @return Fluent interface
+     */
+    public UsbConnection setSerialParameters(int baudRate, int dataBits, int stopBits, int parity) {
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+        this.parity = parity;
+        return this;
+    }
+
+    /**
+     * Enable the RTS/CTS flow control of a printer behind a USB-serial adapter : the data is sent in small chunks, each
+     * one only while the printer asserts CTS. CDC-ACM adapters do not report CTS, they apply the flow control themselves.
+     * The tuner, the timing model and the XON/XOFF flow control are not used while it is enabled.
+     *
+     * @param enabled true to wait for CTS, false to ignore it (default: false)
+     * @return Fluent interface
+     */
+    public UsbConnection setRtsCtsFlowControl(boolean enabled) {
+        this.rtsCtsFlowControl = enabled;
+        return this;
+    }
+
+    /**
+     * @return Driver of the USB-serial adapter, null if not connected or if the device is a USB printer
+     */
+    public UsbSerialDriver getSerialDriver() {
+        return this.serialDriver;
+    }
+
     /**
      * Start socket connection with the usbDevice.
      */
@@ -48,12 +165,44 @@ public class UsbConnection extends DeviceConnection {
         Timber.tag("UsbConnection").i("Connecting to USB device: %s", this.usbDevice.getDeviceName());
 
         try {
-            this.outputStream = new UsbOutputStream(this.usbManager, this.usbDevice);
+            UsbOutputStream usbOutputStream = new UsbOutputStream(this.usbManager, this.usbDevice, this.usbRequestsCount)
+                    .setWriteTimeout(this.writeTimeout);
+            this.outputStream = usbOutputStream;
+            this.serialDriver = UsbSerialDriver.probe(this.usbDevice);
+            if (this.serialDriver != null) {
+                this.serialDriver.open(new UsbSerialDriver.UsbTransport(
+                        usbOutputStream.getUsbConnection(),
+                        usbOutputStream.getUsbInterface(),
+                        UsbDeviceHelper.findSerialControlInterface(this.usbDevice)
+                ));
+                this.serialDriver.setLineCoding(this.baudRate, this.dataBits, this.stopBits, this.parity);
+                this.serialDriver.setControlLines(true, true);
+                Timber.tag("UsbConnection").i("%s serial adapter configured at %d baud", this.serialDriver.getName(), this.baudRate);
+            }
+            UsbEndpoint endpointOut = UsbDeviceHelper.findEndpointOut(usbOutputStream.getUsbInterface());
+            if (endpointOut != null) {
+                this.inputStream = new UsbInputStream(usbOutputStream.getUsbConnection(), endpointOut).setSerialDriver(this.serialDriver);
+                this.startInputReader(new BulkInSource((UsbInputStream) this.inputStream));
+            } else {
+                Timber.tag("UsbConnection").w("No bulk IN endpoint, status queries are not available");
+            }
             this.data = new byte[0];
+            if (this.timingModel != null) {
+                this.timingModel.reset();
+            }
             Timber.tag("UsbConnection").i("USB connected successfully: %s", this.usbDevice.getDeviceName());
         } catch (IOException e) {
             Timber.tag("UsbConnection").e(e, "USB connection failed: %s", e.getMessage());
+            if (this.outputStream != null) {
+                try {
+                    this.outputStream.close();
+                } catch (IOException closeException) {
+                    Timber.tag("UsbConnection").e(closeException, "Error closing USB connection");
+                }
+            }
+            this.serialDriver = null;
             this.outputStream = null;
+            this.inputStream = null;
             throw new EscPosConnectionException("Unable to connect to USB device: " + e.getMessage());
         }
         return this;
@@ -65,6 +214,11 @@ public class UsbConnection extends DeviceConnection {
     public UsbConnection disconnect() {
         Timber.tag("UsbConnection").d("Disconnecting USB device");
         this.data = new byte[0];
+        this.stopInputReader();
+        if (this.inputStream != null) {
+            ((UsbInputStream) this.inputStream).close();
+            this.inputStream = null;
+        }
         if (this.isConnected()) {
             try {
                 this.outputStream.close();
@@ -73,6 +227,10 @@ public class UsbConnection extends DeviceConnection {
             }
             this.outputStream = null;
         }
+        if (this.serialDriver != null) {
+            this.serialDriver.close();
+            this.serialDriver = null;
+        }
         return this;
     }
 
@@ -89,6 +247,15 @@ public class UsbConnection extends DeviceConnection {
      */
     @Override
     public void send(int addWaitingTime) throws EscPosConnectionException {
+        this.getLock().lock();
+        try {
+            this.sendData(addWaitingTime);
+        } finally {
+            this.getLock().unlock();
+        }
+    }
+
+    private void sendData(int addWaitingTime) throws EscPosConnectionException {
         // In batch mode, only accumulate waiting time - don't actually send
         if (this.batchMode) {
             this.batchWaitingTime += addWaitingTime;
@@ -100,9 +267,41 @@ public class UsbConnection extends DeviceConnection {
             return;
         }
 
+        if (!this.isConnected()) {
+            Timber.tag("UsbConnection").e("Send failed: Not connected to USB device");
+            throw new EscPosConnectionException("Unable to send data to device.");
+        }
+
         Timber.tag("UsbConnection").d("Sending %d bytes via USB", this.data.length);
+        UsbOutputStream usbOutputStream = (UsbOutputStream) this.outputStream;
+        long bytesWrittenBefore = usbOutputStream.getBytesWritten();
+        TransportTuner tuner = this.tuner;
+        int dotLines = this.pendingDotLines;
+        int printingTime = this.pendingPrintingTime;
+        this.pendingDotLines = 0;
+        this.pendingPrintingTime = 0;
         try {
-            this.outputStream.write(this.data);
+            if (this.serialDriver != null && this.rtsCtsFlowControl) {
+                this.writePacedOnCts(usbOutputStream);
+            } else {
+                // Write block by block, each one once the printer accepts it, in chunks of the tuner if any.
+                int offset = 0;
+                while (offset < this.data.length) {
+                    int length = this.data.length - offset;
+                    if (tuner != null) {
+                        length = Math.min(length, tuner.getChunkSize());
+                    }
+                    length = this.awaitNextBlock(offset, length, this.data.length, dotLines, printingTime);
+                    this.outputStream.write(this.data, offset, length);
+                    offset += length;
+                    if (tuner != null) {
+                        // The delay between chunks only makes sense once the chunk is transferred.
+                        this.outputStream.flush();
+                    }
+                    this.onChunkSent(offset == this.data.length);
+                }
+                this.outputStream.flush();
+            }
             int sentBytes = this.data.length;
             this.data = new byte[0];
 
@@ -112,8 +311,16 @@ public class UsbConnection extends DeviceConnection {
             }
 
             Timber.tag("UsbConnection").d("USB send complete: %d bytes", sentBytes);
+        } catch (InterruptedIOException e) {
+            int bytesWritten = (int) (usbOutputStream.getBytesWritten() - bytesWrittenBefore);
+            Timber.tag("UsbConnection").e("USB send timeout after %d/%d bytes", bytesWritten, this.data.length);
+            this.data = new byte[0];
+            throw new EscPosTimeoutException(e.getMessage(), bytesWritten);
         } catch (IOException e) {
             Timber.tag("UsbConnection").e(e, "USB send failed: %s", e.getMessage());
+            if (tuner != null) {
+                tuner.onError();
+            }
             throw new EscPosConnectionException(e.getMessage());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -121,4 +328,63 @@ public class UsbConnection extends DeviceConnection {
             throw new EscPosConnectionException(e.getMessage());
         }
     }
+
+    /**
+     * Write the data in small chunks, each one once the printer asserts CTS.
+     */
+    private void writePacedOnCts(UsbOutputStream usbOutputStream) throws IOException {
+        int chunkSize = this.chunkSize > 0 ? Math.min(this.chunkSize, UsbConnection.SERIAL_CHUNK_SIZE) : UsbConnection.SERIAL_CHUNK_SIZE;
+        for (int offset = 0; offset < this.data.length; offset += chunkSize) {
+            this.waitForCts();
+            usbOutputStream.write(this.data, offset, Math.min(chunkSize, this.data.length - offset));
+            usbOutputStream.flush();
+        }
+    }
+
+    private void waitForCts() throws IOException {
+        long deadline = System.nanoTime() + this.writeTimeout * 1000000L;
+        int status;
+        while ((status = this.serialDriver.getModemStatus()) != -1 && (status & UsbSerialDriver.MODEM_STATUS_CTS) == 0) {
+            if (this.writeTimeout > 0 && System.nanoTime() - deadline > 0) {
+                throw new InterruptedIOException("The printer does not assert CTS.");
+            }
+            try {
+                Thread.sleep(UsbConnection.CTS_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for CTS.");
+            }
+        }
+    }
+
+    /**
+     * Get the USB printer class port status (GET_PORT_STATUS control request). Unlike DLE EOT, it is answered by the
+     * USB controller of the printer even when its receive buffer is full.
+     *
+     * @param timeout Maximum time to wait for the answer in milliseconds
+     * @return Status byte (PORT_STATUS_PAPER_EMPTY, PORT_STATUS_SELECTED, PORT_STATUS_NOT_ERROR), -1 if the printer
+     * does not support the request
+     */
+    public int getPortStatus(int timeout) {
+        if (!this.isConnected()) {
+            return -1;
+        }
+        UsbOutputStream usbOutputStream = (UsbOutputStream) this.outputStream;
+        UsbDeviceConnection usbConnection = usbOutputStream.getUsbConnection();
+        UsbInterface usbInterface = usbOutputStream.getUsbInterface();
+        if (usbConnection == null || usbInterface == null) {
+            return -1;
+        }
+        byte[] status = new byte[1];
+        int received = usbConnection.controlTransfer(
+                UsbConstants.USB_DIR_IN | UsbConstants.USB_TYPE_CLASS | 0x01, // Recipient : interface
+                UsbConnection.REQUEST_GET_PORT_STATUS,
+                0,
+                usbInterface.getId(),
+                status,
+                1,
+                Math.max(timeout, 1)
+        );
+        return received == 1 ? status[0] & 0xFF : -1;
+    }
 }
@@ -104,6 +104,31 @@ public class UsbDeviceHelper {
         return null;
     }
 
+    /**
+     * Find the communication interface of a CDC-ACM serial adapter, receiving the line coding requests. The printer
+     * data goes through the CDC data interface, found by findPrinterInterface().
+     *
+     * @param usbDevice USB device
+     * @return CDC-ACM communication interface, null if the device is not a CDC-ACM adapter
+     */
+    @Nullable
+    static public UsbInterface findSerialControlInterface(UsbDevice usbDevice) {
+        if (usbDevice == null) {
+            return null;
+        }
+        boolean hasDataInterface = false;
+        UsbInterface controlInterface = null;
+        for (int i = 0; i < usbDevice.getInterfaceCount(); i++) {
+            UsbInterface usbInterface = usbDevice.getInterface(i);
+            if (usbInterface.getInterfaceClass() == UsbConstants.USB_CLASS_COMM && usbInterface.getInterfaceSubclass() == 0x02) {
+                controlInterface = usbInterface;
+            } else if (usbInterface.getInterfaceClass() == UsbConstants.USB_CLASS_CDC_DATA) {
+                hasDataInterface = true;
+            }
+        }
+        return hasDataInterface ? controlInterface : null;
+    }
+
     /**
      * Find the USB endpoint for device input (sending data to printer).
      *
@@ -124,4 +149,25 @@ public class UsbDeviceHelper {
         }
         return null;
     }
+
+    /**
+     * Find the USB endpoint for device output (reading data from printer).
+     *
+     * @param usbInterface USB interface
+     * @return Output endpoint or null if not found
+     */
+    @Nullable
+    static public UsbEndpoint findEndpointOut(UsbInterface usbInterface) {
+        if (usbInterface != null) {
+            int endpointsCount = usbInterface.getEndpointCount();
+            for (int i = 0; i < endpointsCount; i++) {
+                UsbEndpoint endpoint = usbInterface.getEndpoint(i);
+                if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK &&
+                    endpoint.getDirection() == UsbConstants.USB_DIR_IN) {
+                    return endpoint;
+                }
+            }
+        }
+        return null;
+    }
 }
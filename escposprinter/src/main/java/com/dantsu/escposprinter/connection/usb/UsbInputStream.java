@@ -0,0 +1,133 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream reading the bulk IN endpoint of a USB printer, for the status replies.
+ * <p>
+ * It uses the UsbDeviceConnection opened by UsbOutputStream. Reads are synchronous bulkTransfer() calls with a
+ * timeout, they never take a UsbRequest completed for the pipelined writes of UsbOutputStream.
+ */
+public class UsbInputStream extends InputStream {
+
+    public static final int DEFAULT_READ_TIMEOUT = 1000;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private UsbDeviceConnection usbConnection;
+    private UsbEndpoint usbEndpoint;
+    private final byte[] buffer;
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private int readTimeout = UsbInputStream.DEFAULT_READ_TIMEOUT;
+    private UsbSerialDriver serialDriver = null;
+
+    /**
+     * Create new instance of UsbInputStream.
+     *
+     * @param usbConnection Open connection to the printer, the interface of the endpoint must be claimed
+     * @param usbEndpoint   Bulk IN endpoint
+     */
+    public UsbInputStream(UsbDeviceConnection usbConnection, UsbEndpoint usbEndpoint) {
+        this.usbConnection = usbConnection;
+        this.usbEndpoint = usbEndpoint;
+        // A transfer shorter than the max packet size would fail with an overflow if the printer sends a full packet.
+        int maxPacketSize = Math.max(usbEndpoint.getMaxPacketSize(), 1);
+        this.buffer = new byte[Math.max(UsbInputStream.BUFFER_SIZE / maxPacketSize, 1) * maxPacketSize];
+    }
+
+    /**
+     * Set the driver of the USB-serial adapter, removing the bytes it adds to the received data.
+     *
+     * @param serialDriver Driver of the adapter, null for a USB printer
+     * @return Fluent interface
+     */
+    public UsbInputStream setSerialDriver(UsbSerialDriver serialDriver) {
+        this.serialDriver = serialDriver;
+        return this;
+    }
+
+    /**
+     * Set the time read() waits for data.
+     *
+     * @param readTimeout Time in milliseconds (default: 1000)
+     * @return Fluent interface
+     */
+    public UsbInputStream setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        int read = this.read(bytes, 0, 1);
+        return read <= 0 ? -1 : bytes[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] bytes, int offset, int length) throws IOException {
+        int read = this.read(bytes, offset, length, this.readTimeout);
+        return read == 0 && length > 0 ? -1 : read;
+    }
+
+    /**
+     * Read the data sent by the printer.
+     *
+     * @param bytes   Destination array
+     * @param offset  Offset in the destination array
+     * @param length  Maximum number of bytes to read
+     * @param timeout Maximum time to wait for data in milliseconds
+     * @return Number of bytes read, 0 if the printer sent nothing before the timeout
+     */
+    public int read(@NonNull byte[] bytes, int offset, int length, int timeout) throws IOException {
+        if (this.usbConnection == null) {
+            throw new IOException("USB input stream is closed.");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (this.bufferStart == this.bufferEnd) {
+            // bulkTransfer() waits forever with a timeout of 0.
+            int received = this.usbConnection.bulkTransfer(this.usbEndpoint, this.buffer, this.buffer.length, Math.max(timeout, 1));
+            if (received <= 0) {
+                // Timeout and error are not told apart by bulkTransfer().
+                return 0;
+            }
+            if (this.serialDriver != null && (received = this.serialDriver.filterInput(this.buffer, received)) == 0) {
+                return 0;
+            }
+            this.bufferStart = 0;
+            this.bufferEnd = received;
+        }
+        int count = Math.min(length, this.bufferEnd - this.bufferStart);
+        System.arraycopy(this.buffer, this.bufferStart, bytes, offset, count);
+        this.bufferStart += count;
+        return count;
+    }
+
+    /**
+     * @return Number of bytes already received and not read yet
+     */
+    @Override
+    public int available() {
+        return this.bufferEnd - this.bufferStart;
+    }
+
+    /**
+     * Detach the stream, the UsbDeviceConnection is closed by UsbOutputStream.
+     */
+    @Override
+    public void close() {
+        this.usbConnection = null;
+        this.usbEndpoint = null;
+        this.bufferStart = 0;
+        this.bufferEnd = 0;
+    }
+}
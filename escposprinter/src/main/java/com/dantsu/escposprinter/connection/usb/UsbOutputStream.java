@@ -1,5 +1,6 @@
 package com.dantsu.escposprinter.connection.usb;
 
+import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
@@ -11,23 +12,218 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeoutException;
 
+import timber.log.Timber;
+
+/**
+ * OutputStream writing to the bulk OUT endpoint of a USB printer.
+ * <p>
+ * The interface is claimed once when the stream is opened. Data is split into transfers aligned on the endpoint max
+ * packet size and queued on a pool of reusable UsbRequest, so several transfers are in flight and the endpoint never
+ * waits for the next one. write() returns as soon as the data is queued, flush() waits until every transfer is done.
+ * <p>
+ * When no transfer ends during the write timeout, the transfers in flight are cancelled and an InterruptedIOException
+ * tells the number of bytes the printer received. Before Android 8.0, requestWait() has no timeout : with a write
+ * timeout, the data is sent with synchronous bulkTransfer() calls instead.
+ */
 public class UsbOutputStream extends OutputStream {
+
+    public static final int DEFAULT_REQUESTS_COUNT = 4;
+
+    /**
+     * Maximum length of a transfer, UsbRequest.queue() does not accept more than 16384 bytes before Android 9.
+     */
+    private static final int MAX_TRANSFER_SIZE = 16384;
+
+    public static final int DEFAULT_WRITE_TIMEOUT = 10000;
+
+    /**
+     * Time to wait for the cancelled transfers and for the endpoint control requests.
+     */
+    private static final int CANCEL_TIMEOUT = 500;
+
+    private static final int RECIPIENT_ENDPOINT = 0x02;
+    private static final int REQUEST_GET_STATUS = 0x00;
+    private static final int REQUEST_CLEAR_FEATURE = 0x01;
+    private static final int FEATURE_ENDPOINT_HALT = 0x00;
+
+    /**
+     * Transfer of the pool : its buffer and the UsbRequest queuing it.
+     */
+    static class Transfer {
+        final ByteBuffer buffer;
+        int length;
+        boolean queued = false;
+        UsbRequest usbRequest;
+
+        Transfer(int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * Transfers to the bulk OUT endpoint used by the stream : UsbRequest on the device, a fake one in the unit tests.
+     */
+    interface Transport {
+        /**
+         * Prepare a transfer of the pool before it is queued the first time.
+         *
+         * @return false on error
+         */
+        boolean initialize(Transfer transfer);
+
+        /**
+         * Queue the transfer.length bytes of transfer.buffer.
+         *
+         * @return false on error
+         */
+        boolean queue(Transfer transfer);
+
+        /**
+         * Wait for the end of a queued transfer, see UsbDeviceConnection.requestWait().
+         *
+         * @param timeout Time in milliseconds, 0 to wait forever, ignored if requestWait() has no timeout
+         * @return Transfer ended, null on error
+         */
+        Transfer requestWait(int timeout) throws TimeoutException;
+
+        void cancel(Transfer transfer);
+
+        /**
+         * Free a transfer that will not be queued anymore.
+         */
+        void release(Transfer transfer);
+
+        /**
+         * @return true if requestWait() supports a timeout (Android 8.0+)
+         */
+        boolean hasRequestWaitTimeout();
+
+        /**
+         * Synchronous transfer, see UsbDeviceConnection.bulkTransfer().
+         *
+         * @return Number of bytes transferred, negative on error
+         */
+        int bulkTransfer(byte[] bytes, int offset, int length, int timeout);
+
+        /**
+         * See UsbDeviceConnection.controlTransfer().
+         *
+         * @return Number of bytes transferred, negative on error
+         */
+        int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout);
+    }
+
+    /**
+     * Transport on the UsbRequest of an open UsbDeviceConnection.
+     */
+    private static class UsbRequestTransport implements Transport {
+        private final UsbDeviceConnection usbConnection;
+        private final UsbEndpoint usbEndpoint;
+
+        UsbRequestTransport(UsbDeviceConnection usbConnection, UsbEndpoint usbEndpoint) {
+            this.usbConnection = usbConnection;
+            this.usbEndpoint = usbEndpoint;
+        }
+
+        @Override
+        public boolean initialize(Transfer transfer) {
+            UsbRequest usbRequest = new UsbRequest();
+            if (!usbRequest.initialize(this.usbConnection, this.usbEndpoint)) {
+                return false;
+            }
+            usbRequest.setClientData(transfer);
+            transfer.usbRequest = usbRequest;
+            return true;
+        }
+
+        @Override
+        public boolean queue(Transfer transfer) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // Use modern API (Android 8.0+)
+                return transfer.usbRequest.queue(transfer.buffer);
+            }
+            // Use deprecated API for older versions
+            @SuppressWarnings("deprecation")
+            boolean queued = transfer.usbRequest.queue(transfer.buffer, transfer.length);
+            return queued;
+        }
+
+        @Override
+        public Transfer requestWait(int timeout) throws TimeoutException {
+            UsbRequest usbRequest = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && timeout > 0 ?
+                    this.usbConnection.requestWait(timeout) : this.usbConnection.requestWait();
+            return usbRequest != null ? (Transfer) usbRequest.getClientData() : null;
+        }
+
+        @Override
+        public void cancel(Transfer transfer) {
+            transfer.usbRequest.cancel();
+        }
+
+        @Override
+        public void release(Transfer transfer) {
+            if (transfer.usbRequest != null) {
+                transfer.usbRequest.cancel();
+                transfer.usbRequest.close();
+                transfer.usbRequest = null;
+            }
+        }
+
+        @Override
+        public boolean hasRequestWaitTimeout() {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+        }
+
+        @Override
+        public int bulkTransfer(byte[] bytes, int offset, int length, int timeout) {
+            return this.usbConnection.bulkTransfer(this.usbEndpoint, bytes, offset, length, timeout);
+        }
+
+        @Override
+        public int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout) {
+            return this.usbConnection.controlTransfer(requestType, request, value, index, buffer, length, timeout);
+        }
+    }
+
     private UsbDeviceConnection usbConnection;
     private UsbInterface usbInterface;
-    private UsbEndpoint usbEndpoint;
+    private Transport transport;
+    private int endpointAddress;
+
+    private int transferSize;
+    private Transfer[] transfers;
+    private final ArrayDeque<Transfer> freeTransfers = new ArrayDeque<Transfer>();
+    private int pendingRequests = 0;
+    private int writeTimeout = UsbOutputStream.DEFAULT_WRITE_TIMEOUT;
+    private long bytesWritten = 0;
+    private long operationStart = 0;
 
     public UsbOutputStream(UsbManager usbManager, UsbDevice usbDevice) throws IOException {
+        this(usbManager, usbDevice, UsbOutputStream.DEFAULT_REQUESTS_COUNT);
+    }
+
+    /**
+     * Open the USB printer and claim its interface.
+     *
+     * @param usbManager    an instance of UsbManager
+     * @param usbDevice     an instance of UsbDevice
+     * @param requestsCount Maximum number of transfers in flight
+     */
+    public UsbOutputStream(UsbManager usbManager, UsbDevice usbDevice, int requestsCount) throws IOException {
 
         this.usbInterface = UsbDeviceHelper.findPrinterInterface(usbDevice);
         if(this.usbInterface == null) {
             throw new IOException("Unable to find USB interface.");
         }
 
-        this.usbEndpoint = UsbDeviceHelper.findEndpointIn(this.usbInterface);
-        if(this.usbEndpoint == null) {
+        UsbEndpoint usbEndpoint = UsbDeviceHelper.findEndpointIn(this.usbInterface);
+        if(usbEndpoint == null) {
             throw new IOException("Unable to find USB endpoint.");
         }
 
@@ -35,6 +231,65 @@ public class UsbOutputStream extends OutputStream {
         if(this.usbConnection == null) {
             throw new IOException("Unable to open USB connection.");
         }
+
+        if (!this.usbConnection.claimInterface(this.usbInterface, true)) {
+            this.usbConnection.close();
+            this.usbConnection = null;
+            throw new IOException("Error during claim USB interface.");
+        }
+
+        this.open(new UsbRequestTransport(this.usbConnection, usbEndpoint), usbEndpoint.getAddress(), usbEndpoint.getMaxPacketSize(), requestsCount);
+    }
+
+    /**
+     * Create the stream on a transport, for the unit tests.
+     */
+    UsbOutputStream(Transport transport, int endpointAddress, int maxPacketSize, int requestsCount) throws IOException {
+        this.open(transport, endpointAddress, maxPacketSize, requestsCount);
+    }
+
+    private void open(Transport transport, int endpointAddress, int maxPacketSize, int requestsCount) throws IOException {
+        this.transport = transport;
+        this.endpointAddress = endpointAddress;
+        maxPacketSize = Math.max(maxPacketSize, 1);
+        this.transferSize = Math.max(UsbOutputStream.MAX_TRANSFER_SIZE / maxPacketSize, 1) * maxPacketSize;
+
+        this.transfers = new Transfer[Math.max(requestsCount, 1)];
+        for (int i = 0; i < this.transfers.length; i++) {
+            Transfer transfer = new Transfer(this.transferSize);
+            if (!transport.initialize(transfer)) {
+                this.close();
+                throw new IOException("Error initializing USB request.");
+            }
+            this.transfers[i] = transfer;
+            this.freeTransfers.add(transfer);
+        }
+    }
+
+    /**
+     * Set the maximum time to wait for the end of a transfer.
+     *
+     * @param writeTimeout Time in milliseconds, 0 to wait forever (default: 10000)
+     * @return Fluent interface
+     */
+    public UsbOutputStream setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = Math.max(writeTimeout, 0);
+        return this;
+    }
+
+    /**
+     * @return Number of bytes received by the printer since the stream is open
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    UsbDeviceConnection getUsbConnection() {
+        return this.usbConnection;
+    }
+
+    UsbInterface getUsbInterface() {
+        return this.usbInterface;
     }
 
     @Override
@@ -49,48 +304,198 @@ public class UsbOutputStream extends OutputStream {
 
     @Override
     public void write(final @NonNull byte[] bytes, final int offset, final int length) throws IOException {
-        if (this.usbInterface == null || this.usbEndpoint == null || this.usbConnection == null) {
+        if (this.transport == null) {
             throw new IOException("Unable to connect to USB device.");
         }
 
-        if (!this.usbConnection.claimInterface(this.usbInterface, true)) {
-            throw new IOException("Error during claim USB interface.");
+        this.operationStart = this.bytesWritten;
+        if (!this.transport.hasRequestWaitTimeout() && this.writeTimeout > 0) {
+            // requestWait() has no timeout before Android 8.0, transfers are sent one by one.
+            this.bulkWrite(bytes, offset, length);
+            return;
         }
 
-        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
-        UsbRequest usbRequest = new UsbRequest();
-        try {
-            usbRequest.initialize(this.usbConnection, this.usbEndpoint);
-            boolean queued;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                // Use modern API (Android 8.0+)
-                queued = usbRequest.queue(buffer);
-            } else {
-                // Use deprecated API for older versions
-                @SuppressWarnings("deprecation")
-                boolean result = usbRequest.queue(buffer, length);
-                queued = result;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            if (this.freeTransfers.isEmpty()) {
+                this.reapRequest();
             }
-            if (!queued) {
+            Transfer transfer = this.freeTransfers.poll();
+            transfer.length = Math.min(this.transferSize, end - position);
+            transfer.buffer.clear();
+            transfer.buffer.put(bytes, position, transfer.length);
+            transfer.buffer.flip();
+
+            if (!this.transport.queue(transfer)) {
+                this.freeTransfers.add(transfer);
+                this.abortTransfers();
                 throw new IOException("Error queueing USB request.");
             }
-            this.usbConnection.requestWait();
-        } finally {
-            usbRequest.close();
+            transfer.queued = true;
+            this.pendingRequests++;
+            position += transfer.length;
+        }
+    }
+
+    /**
+     * Send the data with synchronous bulk transfers, each one limited by the write timeout.
+     */
+    private void bulkWrite(byte[] bytes, int offset, int length) throws IOException {
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int transferLength = Math.min(this.transferSize, end - position);
+            long start = System.currentTimeMillis();
+            int sent = this.transport.bulkTransfer(bytes, position, transferLength, this.writeTimeout);
+            if (sent < 0) {
+                if (System.currentTimeMillis() - start >= this.writeTimeout) {
+                    throw this.newTimeoutException();
+                }
+                this.clearHalt();
+                throw new IOException("Error during USB transfer.");
+            }
+            this.bytesWritten += sent;
+            position += sent;
+        }
+    }
+
+    /**
+     * Wait for the end of one transfer in flight and give it back to the pool.
+     */
+    private void reapRequest() throws IOException {
+        if (this.pendingRequests == 0) {
+            throw new IOException("No USB request available.");
+        }
+        Transfer transfer;
+        do {
+            try {
+                transfer = this.transport.requestWait(this.writeTimeout);
+            } catch (TimeoutException e) {
+                this.abortTransfers();
+                throw this.newTimeoutException();
+            }
+            if (transfer == null) {
+                this.abortTransfers();
+                throw new IOException("Error during USB transfer.");
+            }
+            // A transfer replaced after a cancel may still end, it is not in flight anymore.
+        } while (!transfer.queued);
+        transfer.queued = false;
+        this.pendingRequests--;
+        this.bytesWritten += transfer.length;
+        this.freeTransfers.add(transfer);
+    }
+
+    /**
+     * Cancel the transfers in flight, give them back to the pool and clear the endpoint halt if the printer stalled it.
+     * The transfers not given back after the cancel are replaced by new ones, the pool keeps its size.
+     */
+    private void abortTransfers() {
+        for (Transfer transfer : this.transfers) {
+            if (transfer.queued) {
+                this.transport.cancel(transfer);
+            }
+        }
+        while (this.pendingRequests > 0) {
+            Transfer transfer = null;
+            try {
+                transfer = this.transport.requestWait(UsbOutputStream.CANCEL_TIMEOUT);
+            } catch (TimeoutException e) {
+                // The request is lost
+            }
+            if (transfer == null) {
+                break;
+            }
+            if (transfer.queued) {
+                transfer.queued = false;
+                this.pendingRequests--;
+                this.freeTransfers.add(transfer);
+            }
+        }
+        if (this.pendingRequests > 0) {
+            Timber.tag("UsbOutputStream").w("%d USB request(s) not given back after cancel, replacing them", this.pendingRequests);
+            for (int i = 0; i < this.transfers.length; i++) {
+                Transfer lost = this.transfers[i];
+                if (!lost.queued) {
+                    continue;
+                }
+                lost.queued = false;
+                this.transport.release(lost);
+                Transfer transfer = new Transfer(this.transferSize);
+                if (this.transport.initialize(transfer)) {
+                    this.transfers[i] = transfer;
+                    this.freeTransfers.add(transfer);
+                } else {
+                    Timber.tag("UsbOutputStream").e("Unable to replace a lost USB request");
+                }
+            }
+            this.pendingRequests = 0;
+        }
+        this.clearHalt();
+    }
+
+    /**
+     * Clear the halt feature of the bulk OUT endpoint if it is set (GET_STATUS and CLEAR_FEATURE standard requests).
+     *
+     * @return true if the endpoint was halted
+     */
+    boolean clearHalt() {
+        if (this.transport == null) {
+            return false;
+        }
+        byte[] status = new byte[2];
+        int received = this.transport.controlTransfer(
+                UsbConstants.USB_DIR_IN | UsbOutputStream.RECIPIENT_ENDPOINT, UsbOutputStream.REQUEST_GET_STATUS,
+                0, this.endpointAddress, status, 2, UsbOutputStream.CANCEL_TIMEOUT
+        );
+        if (received != 2 || (status[0] & 0x01) == 0) {
+            return false;
         }
+        Timber.tag("UsbOutputStream").w("USB endpoint halted, clearing it");
+        this.transport.controlTransfer(
+                UsbConstants.USB_DIR_OUT | UsbOutputStream.RECIPIENT_ENDPOINT, UsbOutputStream.REQUEST_CLEAR_FEATURE,
+                UsbOutputStream.FEATURE_ENDPOINT_HALT, this.endpointAddress, null, 0, UsbOutputStream.CANCEL_TIMEOUT
+        );
+        return true;
     }
 
+    private InterruptedIOException newTimeoutException() {
+        InterruptedIOException e = new InterruptedIOException("USB write timeout, the printer does not read data anymore.");
+        e.bytesTransferred = (int) (this.bytesWritten - this.operationStart);
+        return e;
+    }
+
+    /**
+     * Wait until all the queued data is transferred to the printer.
+     */
     @Override
     public void flush() throws IOException {
-
+        this.operationStart = this.bytesWritten;
+        while (this.pendingRequests > 0 && this.transport != null) {
+            this.reapRequest();
+        }
     }
 
     @Override
     public void close() throws IOException {
+        if (this.transport != null) {
+            if (this.transfers != null) {
+                for (Transfer transfer : this.transfers) {
+                    if (transfer != null) {
+                        this.transport.release(transfer);
+                    }
+                }
+                this.transfers = null;
+            }
+            this.freeTransfers.clear();
+            this.pendingRequests = 0;
+            this.transport = null;
+        }
         if (this.usbConnection != null) {
+            this.usbConnection.releaseInterface(this.usbInterface);
             this.usbConnection.close();
             this.usbInterface = null;
-            this.usbEndpoint = null;
             this.usbConnection = null;
         }
     }
@@ -82,6 +82,11 @@ public class UsbPrintersConnections extends UsbConnections {
                 usbClass = UsbConstants.USB_CLASS_PRINTER;
             }
 
+            if (usbClass != UsbConstants.USB_CLASS_PRINTER && UsbSerialDriver.isSupported(device)) {
+                Timber.i("  -> Device is a USB-serial adapter, treating as PRINTER");
+                usbClass = UsbConstants.USB_CLASS_PRINTER;
+            }
+
             if (usbClass == UsbConstants.USB_CLASS_PRINTER) {
                 Timber.i("  -> ✓ Added as printer");
                 printersTmp[i++] = new UsbConnection(this.usbManager, device);
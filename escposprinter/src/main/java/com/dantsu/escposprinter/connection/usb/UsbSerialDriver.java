@@ -0,0 +1,278 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import timber.log.Timber;
+
+/**
+ * Driver of a USB-serial adapter (CH340, PL2303, FTDI, CDC-ACM) in front of an RS-232 printer.
+ * <p>
+ * The printer data goes through the bulk endpoints of the adapter like a USB printer, see UsbOutputStream. The driver
+ * configures the serial line with control transfers (baud rate, data bits, parity, stop bits, DTR and RTS) and reads
+ * the modem status, so UsbConnection sends the next chunk only while the printer asserts CTS.
+ * <p>
+ * The driver talks to the adapter through a Transport : a UsbDeviceConnection on the device, a fake one in the unit
+ * tests.
+ */
+public abstract class UsbSerialDriver {
+
+    /**
+     * Transfers to the adapter used by the driver.
+     */
+    public interface Transport {
+        /**
+         * See UsbDeviceConnection.controlTransfer().
+         *
+         * @return Number of bytes transferred, negative on error
+         */
+        int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout);
+
+        /**
+         * Read the interrupt IN endpoint of the adapter.
+         *
+         * @return Number of bytes received, negative on timeout, error or if the adapter has no interrupt endpoint
+         */
+        int readInterrupt(byte[] buffer, int length, int timeout);
+    }
+
+    /**
+     * Transport on an open UsbDeviceConnection.
+     */
+    public static class UsbTransport implements Transport {
+        private final UsbDeviceConnection usbConnection;
+        private final UsbEndpoint interruptEndpoint;
+
+        /**
+         * @param usbConnection    Open connection to the adapter, the data interface is claimed
+         * @param dataInterface    Interface of the bulk endpoints
+         * @param controlInterface Interface of the CDC-ACM requests, claimed here, null for the other adapters
+         */
+        public UsbTransport(UsbDeviceConnection usbConnection, UsbInterface dataInterface, @Nullable UsbInterface controlInterface) throws IOException {
+            this.usbConnection = usbConnection;
+            if (controlInterface != null && controlInterface != dataInterface && !usbConnection.claimInterface(controlInterface, true)) {
+                throw new IOException("Error during claim USB control interface.");
+            }
+            UsbEndpoint interruptEndpoint = UsbSerialDriver.findInterruptEndpoint(controlInterface);
+            this.interruptEndpoint = interruptEndpoint != null ? interruptEndpoint : UsbSerialDriver.findInterruptEndpoint(dataInterface);
+        }
+
+        @Override
+        public int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout) {
+            return this.usbConnection.controlTransfer(requestType, request, value, index, buffer, length, timeout);
+        }
+
+        @Override
+        public int readInterrupt(byte[] buffer, int length, int timeout) {
+            if (this.interruptEndpoint == null) {
+                return -1;
+            }
+            return this.usbConnection.bulkTransfer(this.interruptEndpoint, buffer, length, Math.max(timeout, 1));
+        }
+    }
+
+    public static final int PARITY_NONE = 0;
+    public static final int PARITY_ODD = 1;
+    public static final int PARITY_EVEN = 2;
+    public static final int PARITY_MARK = 3;
+    public static final int PARITY_SPACE = 4;
+
+    public static final int STOP_BITS_1 = 1;
+    public static final int STOP_BITS_1_5 = 3;
+    public static final int STOP_BITS_2 = 2;
+
+    public static final int MODEM_STATUS_CTS = 0x01;
+    public static final int MODEM_STATUS_DSR = 0x02;
+    public static final int MODEM_STATUS_RI = 0x04;
+    public static final int MODEM_STATUS_DCD = 0x08;
+
+    protected static final int CONTROL_TIMEOUT = 500;
+
+    protected static final int REQUEST_TYPE_VENDOR_OUT = UsbConstants.USB_TYPE_VENDOR | UsbConstants.USB_DIR_OUT;
+    protected static final int REQUEST_TYPE_VENDOR_IN = UsbConstants.USB_TYPE_VENDOR | UsbConstants.USB_DIR_IN;
+    protected static final int REQUEST_TYPE_CLASS_INTERFACE_OUT = UsbConstants.USB_TYPE_CLASS | UsbConstants.USB_DIR_OUT | 0x01;
+
+    /**
+     * Get the driver of a USB-serial adapter.
+     *
+     * @param usbDevice USB device
+     * @return Driver of the adapter, null if the device is not a supported USB-serial adapter
+     */
+    @Nullable
+    public static UsbSerialDriver probe(UsbDevice usbDevice) {
+        if (usbDevice == null) {
+            return null;
+        }
+        int vendorId = usbDevice.getVendorId();
+        int productId = usbDevice.getProductId();
+
+        if (vendorId == Ch34xSerialDriver.VENDOR_ID &&
+                (productId == 0x7523 || productId == 0x7522 || productId == 0x5523)) {
+            return new Ch34xSerialDriver();
+        }
+        if (vendorId == Pl2303SerialDriver.VENDOR_ID && productId == 0x2303) {
+            // Type 0 chips have the CDC device class, the others are HX compatible.
+            return new Pl2303SerialDriver(usbDevice.getDeviceClass() != UsbConstants.USB_CLASS_COMM);
+        }
+        if (vendorId == FtdiSerialDriver.VENDOR_ID &&
+                (productId == 0x6001 || productId == 0x6010 || productId == 0x6011 || productId == 0x6014 || productId == 0x6015)) {
+            UsbInterface dataInterface = UsbDeviceHelper.findPrinterInterface(usbDevice);
+            UsbEndpoint endpointIn = UsbDeviceHelper.findEndpointOut(dataInterface);
+            return new FtdiSerialDriver(
+                    usbDevice.getInterfaceCount() > 1 && dataInterface != null ? dataInterface.getId() + 1 : 0,
+                    productId == 0x6010 || productId == 0x6011 || productId == 0x6014,
+                    endpointIn != null ? endpointIn.getMaxPacketSize() : 64
+            );
+        }
+        UsbInterface controlInterface = UsbDeviceHelper.findSerialControlInterface(usbDevice);
+        if (controlInterface != null) {
+            return new CdcAcmSerialDriver(controlInterface.getId());
+        }
+        return null;
+    }
+
+    /**
+     * @param usbDevice USB device
+     * @return true if the device is a supported USB-serial adapter
+     */
+    public static boolean isSupported(UsbDevice usbDevice) {
+        return UsbSerialDriver.probe(usbDevice) != null;
+    }
+
+    @Nullable
+    private static UsbEndpoint findInterruptEndpoint(UsbInterface usbInterface) {
+        if (usbInterface != null) {
+            for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
+                UsbEndpoint endpoint = usbInterface.getEndpoint(i);
+                if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_INT && endpoint.getDirection() == UsbConstants.USB_DIR_IN) {
+                    return endpoint;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    protected Transport transport;
+
+    /**
+     * Initialize the adapter.
+     *
+     * @param transport Transfers to the adapter
+     */
+    public void open(Transport transport) throws IOException {
+        this.transport = transport;
+        Timber.tag("UsbSerialDriver").d("Opening %s adapter", this.getName());
+        this.init();
+    }
+
+    /**
+     * Vendor specific initialization of the adapter, called by open().
+     */
+    protected void init() throws IOException {
+    }
+
+    public void close() {
+        this.transport = null;
+    }
+
+    /**
+     * @return Name of the adapter chip, for the logs
+     */
+    public abstract String getName();
+
+    /**
+     * Configure the serial line.
+     *
+     * @param baudRate Baud rate (Ex: 9600, 19200, 38400, 115200)
+     * @param dataBits Data bits, 5 to 8
+     * @param stopBits Stop bits, UsbSerialDriver.STOP_BITS_... constants
+     * @param parity   Parity, UsbSerialDriver.PARITY_... constants
+     */
+    public abstract void setLineCoding(int baudRate, int dataBits, int stopBits, int parity) throws IOException;
+
+    /**
+     * Set the DTR and RTS output lines.
+     *
+     * @param dtr true to assert DTR
+     * @param rts true to assert RTS
+     */
+    public abstract void setControlLines(boolean dtr, boolean rts) throws IOException;
+
+    /**
+     * Read the modem status input lines.
+     *
+     * @return UsbSerialDriver.MODEM_STATUS_... bits, -1 if the adapter does not report CTS
+     */
+    public abstract int getModemStatus() throws IOException;
+
+    /**
+     * Remove the bytes added by the adapter to the received data.
+     *
+     * @param buffer Bytes received by a bulk IN transfer, filtered in place
+     * @param length Number of bytes received
+     * @return Number of data bytes left in the buffer
+     */
+    public int filterInput(byte[] buffer, int length) {
+        return length;
+    }
+
+    protected void controlOut(int requestType, int request, int value, int index, byte[] data) throws IOException {
+        int length = data != null ? data.length : 0;
+        int result = this.getTransport().controlTransfer(requestType, request, value, index, data, length, UsbSerialDriver.CONTROL_TIMEOUT);
+        if (result < length) {
+            throw new IOException(String.format("%s control request 0x%02X failed (%d).", this.getName(), request, result));
+        }
+    }
+
+    protected byte[] controlIn(int requestType, int request, int value, int index, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        int result = this.getTransport().controlTransfer(requestType, request, value, index, buffer, length, UsbSerialDriver.CONTROL_TIMEOUT);
+        if (result < length) {
+            throw new IOException(String.format("%s control request 0x%02X failed (%d).", this.getName(), request, result));
+        }
+        return buffer;
+    }
+
+    private Transport getTransport() throws IOException {
+        Transport transport = this.transport;
+        if (transport == null) {
+            throw new IOException("USB serial adapter is not open.");
+        }
+        return transport;
+    }
+
+    /**
+     * CDC line coding structure, used by CDC-ACM and PL2303 : dwDTERate, bCharFormat, bParityType, bDataBits.
+     */
+    protected static byte[] lineCoding(int baudRate, int dataBits, int stopBits, int parity) {
+        int charFormat;
+        switch (stopBits) {
+            case UsbSerialDriver.STOP_BITS_1_5:
+                charFormat = 1;
+                break;
+            case UsbSerialDriver.STOP_BITS_2:
+                charFormat = 2;
+                break;
+            default:
+                charFormat = 0;
+                break;
+        }
+        return new byte[]{
+                (byte) baudRate,
+                (byte) (baudRate >> 8),
+                (byte) (baudRate >> 16),
+                (byte) (baudRate >> 24),
+                (byte) charFormat,
+                (byte) parity,
+                (byte) dataBits
+        };
+    }
+}
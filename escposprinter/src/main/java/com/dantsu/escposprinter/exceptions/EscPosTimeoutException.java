@@ -0,0 +1,20 @@
+package com.dantsu.escposprinter.exceptions;
+
+/**
+ * The printer stopped reading data before the end of a write (paper out, cover open, ...).
+ */
+public class EscPosTimeoutException extends EscPosConnectionException {
+    private final int bytesWritten;
+
+    public EscPosTimeoutException(String errorMessage, int bytesWritten) {
+        super(errorMessage);
+        this.bytesWritten = bytesWritten;
+    }
+
+    /**
+     * @return Number of bytes received by the printer before the timeout
+     */
+    public int getBytesWritten() {
+        return this.bytesWritten;
+    }
+}
@@ -1,9 +1,15 @@
 package com.dantsu.escposprinter.textparser;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
 import com.dantsu.escposprinter.EscPosPrinter;
-import com.dantsu.escposprinter.EscPosPrinterCommands;
 import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
 import com.dantsu.escposprinter.exceptions.EscPosParserException;
@@ -68,6 +74,8 @@ public class PrinterTextParser {
     public static final String ATTR_FORMAT_TEXT_FONT_FONT_E = "e";
 
     public static final String ATTR_QRCODE_SIZE = "size";
+
+    public static final int PARALLEL_LINES_PER_CHUNK = 256;
     
     private static String regexAlignTags;
     public static String getRegexAlignTags() {
@@ -82,18 +90,34 @@ public class PrinterTextParser {
     }
     
     public static boolean isTagTextFormat(String tagName) {
-        if (tagName.substring(0, 1).equals("/")) {
-            tagName = tagName.substring(1);
+        int start = tagName.startsWith("/") ? 1 : 0;
+        for (String tag : PrinterTextParser.TAGS_FORMAT_TEXT) {
+            if (PrinterTextParserLexer.regionEquals(tagName, start, tagName.length(), tag, false)) {
+                return true;
+            }
         }
-        
+        return false;
+    }
+    
+    /**
+     * Check if the current tag token of the lexer is a text format tag.
+     *
+     * @param lexer Lexer positioned on a tag token
+     * @return true if the tag is a text format tag
+     */
+    public static boolean isTagTextFormat(PrinterTextParserLexer lexer) {
         for (String tag : PrinterTextParser.TAGS_FORMAT_TEXT) {
-            if (tag.equals(tagName)) {
+            if (lexer.nameEquals(tag)) {
                 return true;
             }
         }
         return false;
     }
     
+    /**
+     * @deprecated The parser keeps its text styles in PrinterTextParserStyle words, this helper is not used anymore.
+     */
+    @Deprecated
     public static byte[][] arrayByteDropLast(byte[][] arr) {
         if (arr.length == 0) {
             return arr;
@@ -105,6 +129,10 @@ public class PrinterTextParser {
         return newArr;
     }
     
+    /**
+     * @deprecated The parser keeps its text styles in PrinterTextParserStyle words, this helper is not used anymore.
+     */
+    @Deprecated
     public static byte[][] arrayBytePush(byte[][] arr, byte[] add) {
         byte[][] newArr = new byte[arr.length + 1][];
         System.arraycopy(arr, 0, newArr, 0, arr.length);
@@ -116,144 +144,228 @@ public class PrinterTextParser {
     
     
     private EscPosPrinter printer;
-    private byte[][] textSize = {EscPosPrinterCommands.TEXT_SIZE_NORMAL};
-    private byte[][] textColor = {EscPosPrinterCommands.TEXT_COLOR_BLACK};
-    private byte[][] textReverseColor = {EscPosPrinterCommands.TEXT_COLOR_REVERSE_OFF};
-    private byte[][] textBold = {EscPosPrinterCommands.TEXT_WEIGHT_NORMAL};
-    private byte[][] textUnderline = {EscPosPrinterCommands.TEXT_UNDERLINE_OFF};
-    private byte[][] textDoubleStrike = {EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_OFF};
-    private boolean[] textStrikethrough = {false};
-    private byte[][] textFont = {EscPosPrinterCommands.TEXT_FONT_A};
+    private byte[][] styleStacks = new byte[PrinterTextParserStyle.FIELDS_COUNT][16];
+    private int[] styleStacksSize = new int[PrinterTextParserStyle.FIELDS_COUNT];
+    private int style = PrinterTextParserStyle.DEFAULT;
     private String text = "";
+    private PrinterTextParserLexer lexer = new PrinterTextParserLexer();
+    private PrinterTextParserCache cache = PrinterTextParserCache.getDefault();
     
     public PrinterTextParser(EscPosPrinter printer) {
         this.printer = printer;
+        // The bottom of each stack is the default code of the field, it is never dropped.
+        Arrays.fill(this.styleStacksSize, 1);
     }
     
     public EscPosPrinter getPrinter() {
         return printer;
     }
     
+    /**
+     * @return Lexer shared by the lines and columns of this parser, they use it one after the other
+     */
+    PrinterTextParserLexer getLexer() {
+        return this.lexer;
+    }
+    
     public PrinterTextParser setFormattedText(String text) {
         this.text = text;
         return this;
     }
 
-    public byte[] getLastTextSize() {
-        return this.textSize[this.textSize.length - 1];
+    /**
+     * Set the cache of parsed lines. PrinterTextParserCache.getDefault() is used by default.
+     *
+     * @param cache PrinterTextParserCache instance, null to disable the cache
+     * @return Fluent interface
+     */
+    public PrinterTextParser setCache(PrinterTextParserCache cache) {
+        this.cache = cache;
+        return this;
     }
 
-    public PrinterTextParser addTextSize(byte[] newTextSize) {
-        this.textSize = PrinterTextParser.arrayBytePush(this.textSize, newTextSize);
+    public PrinterTextParserCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Save the stacks of all the text style fields.
+     *
+     * @return Opaque state to be given to restoreStyleState()
+     */
+    public byte[] saveStyleState() {
+        // Each stack is stored as its depth, on 4 bytes, followed by its codes.
+        int length = PrinterTextParserStyle.FIELDS_COUNT * 4;
+        for (int size : this.styleStacksSize) {
+            length += size;
+        }
+        byte[] state = new byte[length];
+        int offset = 0;
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            int size = this.styleStacksSize[field];
+            state[offset++] = (byte) (size >>> 24);
+            state[offset++] = (byte) (size >>> 16);
+            state[offset++] = (byte) (size >>> 8);
+            state[offset++] = (byte) size;
+            System.arraycopy(this.styleStacks[field], 0, state, offset, size);
+            offset += size;
+        }
+        return state;
+    }
+
+    /**
+     * Restore the stacks of all the text style fields.
+     *
+     * @param state State returned by saveStyleState()
+     * @return Fluent interface
+     */
+    public PrinterTextParser restoreStyleState(byte[] state) {
+        int offset = 0, style = PrinterTextParserStyle.DEFAULT;
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            int size = ((state[offset] & 0xFF) << 24) | ((state[offset + 1] & 0xFF) << 16) | ((state[offset + 2] & 0xFF) << 8) | (state[offset + 3] & 0xFF);
+            offset += 4;
+            if (this.styleStacks[field].length < size) {
+                this.styleStacks[field] = new byte[size * 2];
+            }
+            System.arraycopy(state, offset, this.styleStacks[field], 0, size);
+            this.styleStacksSize[field] = size;
+            style = PrinterTextParserStyle.set(style, field, state[offset + size - 1]);
+            offset += size;
+        }
+        this.style = style;
         return this;
     }
 
-    public PrinterTextParser dropLastTextSize() {
-        if (this.textSize.length > 1) {
-            this.textSize = PrinterTextParser.arrayByteDropLast(this.textSize);
+    /**
+     * Get the current text style, see PrinterTextParserStyle.
+     *
+     * @return Style word
+     */
+    public int getStyle() {
+        return this.style;
+    }
+
+    /**
+     * Push a new code on the stack of a style field.
+     *
+     * @param field One of PrinterTextParserStyle.FIELD_... constants
+     * @param code  Code of the field
+     * @return Fluent interface
+     */
+    public PrinterTextParser pushStyle(int field, int code) {
+        byte[] stack = this.styleStacks[field];
+        int size = this.styleStacksSize[field];
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+            this.styleStacks[field] = stack;
         }
+        stack[size] = (byte) code;
+        this.styleStacksSize[field] = size + 1;
+        this.style = PrinterTextParserStyle.set(this.style, field, code);
         return this;
     }
 
+    /**
+     * Drop the last code of the stack of a style field. The default code is never dropped.
+     *
+     * @param field One of PrinterTextParserStyle.FIELD_... constants
+     * @return Fluent interface
+     */
+    public PrinterTextParser dropStyle(int field) {
+        int size = this.styleStacksSize[field];
+        if (size > 1) {
+            this.styleStacksSize[field] = --size;
+            this.style = PrinterTextParserStyle.set(this.style, field, this.styleStacks[field][size - 1]);
+        }
+        return this;
+    }
+
+    private PrinterTextParser pushStyleCommand(int field, byte[] command) {
+        return this.pushStyle(field, PrinterTextParserStyle.getCode(field, command));
+    }
+
+    public byte[] getLastTextSize() {
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_SIZE);
+    }
+
+    public PrinterTextParser addTextSize(byte[] newTextSize) {
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_SIZE, newTextSize);
+    }
+
+    public PrinterTextParser dropLastTextSize() {
+        return this.dropStyle(PrinterTextParserStyle.FIELD_SIZE);
+    }
+
     public byte[] getLastTextColor() {
-        return this.textColor[this.textColor.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_COLOR);
     }
 
     public PrinterTextParser addTextColor(byte[] newTextColor) {
-        this.textColor = PrinterTextParser.arrayBytePush(this.textColor, newTextColor);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_COLOR, newTextColor);
     }
 
     public PrinterTextParser dropLastTextColor() {
-        if (this.textColor.length > 1) {
-            this.textColor = PrinterTextParser.arrayByteDropLast(this.textColor);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_COLOR);
     }
 
     public byte[] getLastTextReverseColor() {
-        return this.textReverseColor[this.textReverseColor.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_REVERSE_COLOR);
     }
 
     public PrinterTextParser addTextReverseColor(byte[] newTextReverseColor) {
-        this.textReverseColor = PrinterTextParser.arrayBytePush(this.textReverseColor, newTextReverseColor);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_REVERSE_COLOR, newTextReverseColor);
     }
 
     public PrinterTextParser dropLastTextReverseColor() {
-        if (this.textReverseColor.length > 1) {
-            this.textReverseColor = PrinterTextParser.arrayByteDropLast(this.textReverseColor);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_REVERSE_COLOR);
     }
     
     public byte[] getLastTextBold() {
-        return this.textBold[this.textBold.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_BOLD);
     }
     
     public PrinterTextParser addTextBold(byte[] newTextBold) {
-        this.textBold = PrinterTextParser.arrayBytePush(this.textBold, newTextBold);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_BOLD, newTextBold);
     }
 
     public PrinterTextParser dropTextBold() {
-        if (this.textBold.length > 1) {
-            this.textBold = PrinterTextParser.arrayByteDropLast(this.textBold);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_BOLD);
     }
 
     public byte[] getLastTextUnderline() {
-        return this.textUnderline[this.textUnderline.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_UNDERLINE);
     }
 
     public PrinterTextParser addTextUnderline(byte[] newTextUnderline) {
-        this.textUnderline = PrinterTextParser.arrayBytePush(this.textUnderline, newTextUnderline);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_UNDERLINE, newTextUnderline);
     }
 
     public PrinterTextParser dropLastTextUnderline() {
-        if (this.textUnderline.length > 1) {
-            this.textUnderline = PrinterTextParser.arrayByteDropLast(this.textUnderline);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_UNDERLINE);
     }
 
     public byte[] getLastTextDoubleStrike() {
-        return this.textDoubleStrike[this.textDoubleStrike.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE);
     }
 
     public PrinterTextParser addTextDoubleStrike(byte[] newTextDoubleStrike) {
-        this.textDoubleStrike = PrinterTextParser.arrayBytePush(this.textDoubleStrike, newTextDoubleStrike);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE, newTextDoubleStrike);
     }
 
     public PrinterTextParser dropLastTextDoubleStrike() {
-        if (this.textDoubleStrike.length > 1) {
-            this.textDoubleStrike = PrinterTextParser.arrayByteDropLast(this.textDoubleStrike);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE);
     }
 
     public boolean getLastTextStrikethrough() {
-        return this.textStrikethrough[this.textStrikethrough.length - 1];
+        return PrinterTextParserStyle.get(this.style, PrinterTextParserStyle.FIELD_STRIKETHROUGH) == PrinterTextParserStyle.ON;
     }
 
     public PrinterTextParser addTextStrikethrough(boolean newTextStrikethrough) {
-        boolean[] newArr = new boolean[this.textStrikethrough.length + 1];
-        System.arraycopy(this.textStrikethrough, 0, newArr, 0, this.textStrikethrough.length);
-        newArr[this.textStrikethrough.length] = newTextStrikethrough;
-        this.textStrikethrough = newArr;
-        return this;
+        return this.pushStyle(PrinterTextParserStyle.FIELD_STRIKETHROUGH, newTextStrikethrough ? PrinterTextParserStyle.ON : PrinterTextParserStyle.OFF);
     }
 
     public PrinterTextParser dropLastTextStrikethrough() {
-        if (this.textStrikethrough.length > 1) {
-            boolean[] newArr = new boolean[this.textStrikethrough.length - 1];
-            System.arraycopy(this.textStrikethrough, 0, newArr, 0, newArr.length);
-            this.textStrikethrough = newArr;
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_STRIKETHROUGH);
     }
 
     /**
@@ -273,28 +385,162 @@ public class PrinterTextParser {
     }
 
     public byte[] getLastTextFont() {
-        return this.textFont[this.textFont.length - 1];
+        return PrinterTextParserStyle.getCommand(this.style, PrinterTextParserStyle.FIELD_FONT);
     }
 
     public PrinterTextParser addTextFont(byte[] newTextFont) {
-        this.textFont = PrinterTextParser.arrayBytePush(this.textFont, newTextFont);
-        return this;
+        return this.pushStyleCommand(PrinterTextParserStyle.FIELD_FONT, newTextFont);
     }
 
     public PrinterTextParser dropLastTextFont() {
-        if (this.textFont.length > 1) {
-            this.textFont = PrinterTextParser.arrayByteDropLast(this.textFont);
-        }
-        return this;
+        return this.dropStyle(PrinterTextParserStyle.FIELD_FONT);
     }
 
     public PrinterTextParserLine[] parse() throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
-        String[] stringLines = this.text.split("\n|\r\n");
-        PrinterTextParserLine[] lines = new PrinterTextParserLine[stringLines.length];
-        int i = 0;
-        for (String line : stringLines) {
-            lines[i++] = new PrinterTextParserLine(this, line);
+        PrinterTextParserReader reader = new PrinterTextParserReader(this, this.text);
+        ArrayList<PrinterTextParserLine> lines = new ArrayList<PrinterTextParserLine>();
+        PrinterTextParserLine line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines.toArray(new PrinterTextParserLine[0]);
+    }
+
+    /**
+     * Parse the formatted text with the tasks of a ForkJoinPool.
+     * <p>
+     * The text is cut in chunks of PARALLEL_LINES_PER_CHUNK lines. A quick scan of the text format tags gives the text
+     * styles at the start of each chunk, then the chunks are parsed, and their text encoded, in parallel. The lines are
+     * the same as the ones of parse(). A text of one chunk, or a pool of one thread, is parsed on the calling thread.
+     *
+     * @param pool ForkJoinPool running the chunks, ForkJoinPool.commonPool() for instance
+     * @return Parsed lines
+     */
+    public PrinterTextParserLine[] parse(ForkJoinPool pool) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        final String text = this.text;
+        PrinterTextParserReader reader = new PrinterTextParserReader(this, text);
+        int[] linesBounds = new int[256];
+        int nbrLines = 0;
+
+        while (reader.nextLine()) {
+            if (nbrLines * 2 == linesBounds.length) {
+                linesBounds = Arrays.copyOf(linesBounds, linesBounds.length * 2);
+            }
+            // Empty lines are given outside of the text, an empty range of the text is the same line.
+            linesBounds[nbrLines * 2] = reader.getLineSource() == text ? reader.getLineStart() : 0;
+            linesBounds[nbrLines * 2 + 1] = reader.getLineSource() == text ? reader.getLineEnd() : 0;
+            nbrLines++;
+        }
+
+        final int chunkSize = PrinterTextParser.PARALLEL_LINES_PER_CHUNK;
+        int nbrChunks = (nbrLines + chunkSize - 1) / chunkSize;
+
+        if (nbrChunks < 2 || pool.getParallelism() < 2) {
+            PrinterTextParserLine[] lines = new PrinterTextParserLine[nbrLines];
+            for (int i = 0; i < nbrLines; i++) {
+                lines[i] = this.parseLine(text, linesBounds[i * 2], linesBounds[i * 2 + 1]);
+            }
+            return lines;
+        }
+
+        // =================================================================
+        // Text styles at the start of each chunk
+
+        byte[][] chunksStyleState = new byte[nbrChunks][];
+        for (int i = 0; i < nbrLines; i++) {
+            if (i % chunkSize == 0) {
+                chunksStyleState[i / chunkSize] = this.saveStyleState();
+            }
+            new PrinterTextParserLine(this, text, linesBounds[i * 2], linesBounds[i * 2 + 1], true);
+        }
+
+        // =================================================================
+        // Parse the chunks, each one with its own parser
+
+        final int[] bounds = linesBounds;
+        final PrinterTextParserLine[] lines = new PrinterTextParserLine[nbrLines];
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nbrChunks);
+
+        for (int chunk = 0; chunk < nbrChunks; chunk++) {
+            final int from = chunk * chunkSize, to = Math.min(from + chunkSize, nbrLines);
+            final byte[] styleState = chunksStyleState[chunk];
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    PrinterTextParser chunkParser = new PrinterTextParser(PrinterTextParser.this.printer)
+                            .setCache(PrinterTextParser.this.cache)
+                            .restoreStyleState(styleState);
+                    for (int i = from; i < to; i++) {
+                        lines[i] = chunkParser.parseLine(text, bounds[i * 2], bounds[i * 2 + 1]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        List<Future<Void>> results = pool.invokeAll(tasks);
+
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EscPosParserException("Formatted text parsing interrupted.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof EscPosParserException) {
+                    throw (EscPosParserException) cause;
+                } else if (cause instanceof EscPosBarcodeException) {
+                    throw (EscPosBarcodeException) cause;
+                } else if (cause instanceof EscPosEncodingException) {
+                    throw (EscPosEncodingException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new EscPosParserException("Unable to parse the formatted text : " + cause);
+            }
         }
         return lines;
     }
+
+    /**
+     * Parse one line, using the cache of parsed lines when possible.
+     *
+     * @param source Char sequence containing the line
+     * @param start  Start index of the line in the char sequence
+     * @param end    End index (exclusive) of the line in the char sequence
+     * @return Parsed line
+     */
+    public PrinterTextParserLine parseLine(CharSequence source, int start, int end) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        PrinterTextParserCache cache = this.cache;
+
+        if (cache == null || end - start > cache.getMaxLineLength()) {
+            return new PrinterTextParserLine(this, source, start, end);
+        }
+
+        EscPosCharsetEncoding charsetEncoding = this.printer.getEncoding();
+        PrinterTextParserCache.Key key = new PrinterTextParserCache.Key(
+                source.subSequence(start, end).toString(),
+                this.saveStyleState(),
+                this.printer.getPrinterNbrCharactersPerLine(),
+                charsetEncoding != null ? charsetEncoding.getName() : null
+        );
+        PrinterTextParserCache.CachedLine cachedLine = cache.get(key);
+
+        if (cachedLine != null) {
+            this.restoreStyleState(cachedLine.getStyleState());
+            return new PrinterTextParserLine(this, cachedLine.getColumnsElements());
+        }
+
+        String text = key.getText();
+        PrinterTextParserLine line = new PrinterTextParserLine(this, text, 0, text.length());
+        IPrinterTextParserElement[][] columnsElements = line.getColumnsElements();
+
+        if (columnsElements != null) {
+            cache.put(key, new PrinterTextParserCache.CachedLine(columnsElements, this.saveStyleState()));
+        }
+        return line;
+    }
 }
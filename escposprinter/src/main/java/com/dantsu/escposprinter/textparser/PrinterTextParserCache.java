@@ -0,0 +1,159 @@
+package com.dantsu.escposprinter.textparser;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed lines.
+ * <p>
+ * A line is identified by its formatted text, the text style state before the line, the number of characters per line
+ * and the charset encoding of the printer. The cache keeps the elements of each column, with their text already encoded,
+ * and the text style state after the line. Receipts repeat many identical lines (separators, item layouts, footers),
+ * within a job and from one job to another, so the default cache is shared by all the parsers.
+ * <p>
+ * Only lines made of text are cached, image, barcode and QR code lines are always parsed.
+ */
+public class PrinterTextParserCache {
+
+    public static final int DEFAULT_MAX_LINES = 512;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 256;
+
+    private static final PrinterTextParserCache DEFAULT_CACHE = new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, PrinterTextParserCache.DEFAULT_MAX_LINE_LENGTH);
+
+    /**
+     * Get the cache shared by all the parsers.
+     *
+     * @return Default cache instance
+     */
+    public static PrinterTextParserCache getDefault() {
+        return PrinterTextParserCache.DEFAULT_CACHE;
+    }
+
+
+    static final class Key {
+        private final String text;
+        private final byte[] styleState;
+        private final int nbrCharactersPerLine;
+        private final String charsetName;
+        private final int hashCode;
+
+        Key(String text, byte[] styleState, int nbrCharactersPerLine, String charsetName) {
+            this.text = text;
+            this.styleState = styleState;
+            this.nbrCharactersPerLine = nbrCharactersPerLine;
+            this.charsetName = charsetName;
+            int hashCode = text.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(styleState);
+            hashCode = 31 * hashCode + nbrCharactersPerLine;
+            this.hashCode = 31 * hashCode + (charsetName != null ? charsetName.hashCode() : 0);
+        }
+
+        String getText() {
+            return this.text;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return this.hashCode == key.hashCode &&
+                    this.nbrCharactersPerLine == key.nbrCharactersPerLine &&
+                    this.text.equals(key.text) &&
+                    Arrays.equals(this.styleState, key.styleState) &&
+                    (this.charsetName != null ? this.charsetName.equals(key.charsetName) : key.charsetName == null);
+        }
+    }
+
+    static final class CachedLine {
+        private final IPrinterTextParserElement[][] columnsElements;
+        private final byte[] styleState;
+
+        CachedLine(IPrinterTextParserElement[][] columnsElements, byte[] styleState) {
+            this.columnsElements = columnsElements;
+            this.styleState = styleState;
+        }
+
+        IPrinterTextParserElement[][] getColumnsElements() {
+            return this.columnsElements;
+        }
+
+        byte[] getStyleState() {
+            return this.styleState;
+        }
+    }
+
+
+    private final int maxLineLength;
+    private final LinkedHashMap<Key, CachedLine> lines;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Create new instance of PrinterTextParserCache.
+     *
+     * @param maxLines      Maximum number of lines kept, the least recently used line is removed first
+     * @param maxLineLength Lines longer than this number of characters are not cached
+     */
+    public PrinterTextParserCache(final int maxLines, int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+        this.lines = new LinkedHashMap<Key, CachedLine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedLine> eldest) {
+                return this.size() > maxLines;
+            }
+        };
+    }
+
+    public int getMaxLineLength() {
+        return this.maxLineLength;
+    }
+
+    synchronized CachedLine get(Key key) {
+        CachedLine line = this.lines.get(key);
+        if (line != null) {
+            this.hitCount++;
+        } else {
+            this.missCount++;
+        }
+        return line;
+    }
+
+    synchronized void put(Key key, CachedLine line) {
+        this.lines.put(key, line);
+    }
+
+    /**
+     * Remove all the cached lines.
+     *
+     * @return Fluent interface
+     */
+    public synchronized PrinterTextParserCache clear() {
+        this.lines.clear();
+        this.hitCount = 0;
+        this.missCount = 0;
+        return this;
+    }
+
+    public synchronized int size() {
+        return this.lines.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+}
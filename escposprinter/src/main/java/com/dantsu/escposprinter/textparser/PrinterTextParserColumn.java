@@ -2,8 +2,6 @@ package com.dantsu.escposprinter.textparser;
 
 import java.util.Hashtable;
 
-import com.dantsu.escposprinter.EscPosPrinter;
-import com.dantsu.escposprinter.EscPosPrinterCommands;
 import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
 import com.dantsu.escposprinter.exceptions.EscPosParserException;
@@ -29,231 +27,163 @@ public class PrinterTextParserColumn {
      * @param textColumn     Text that the column contain
      */
     public PrinterTextParserColumn(PrinterTextParserLine textParserLine, String textColumn) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        this(textParserLine, textColumn, 0, textColumn.length());
+    }
+
+    /**
+     * Create a new instance of PrinterTextParserColumn from the elements of an already parsed column.
+     *
+     * @param textParserLine Parent PrinterTextParserLine instance
+     * @param elements       Elements of the column
+     */
+    PrinterTextParserColumn(PrinterTextParserLine textParserLine, IPrinterTextParserElement[] elements) {
+        this.textParserLine = textParserLine;
+        this.elements = elements;
+    }
+
+    /**
+     * Create a new instance of PrinterTextParserColumn from a range of a char sequence, the column is not copied.
+     *
+     * @param textParserLine Parent PrinterTextParserLine instance
+     * @param source         Char sequence containing the column
+     * @param start          Start index of the column in the char sequence
+     * @param end            End index (exclusive) of the column in the char sequence
+     */
+    public PrinterTextParserColumn(PrinterTextParserLine textParserLine, CharSequence source, int start, int end) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        this(textParserLine, source, start, end, false);
+    }
+
+    /**
+     * Create a new instance of PrinterTextParserColumn from a range of a char sequence, the column is not copied.
+     *
+     * @param textParserLine Parent PrinterTextParserLine instance
+     * @param source         Char sequence containing the column
+     * @param start          Start index of the column in the char sequence
+     * @param end            End index (exclusive) of the column in the char sequence
+     * @param styleOnly      true to only apply the text format tags to the parser styles, the column stays empty
+     */
+    PrinterTextParserColumn(PrinterTextParserLine textParserLine, CharSequence source, int start, int end, boolean styleOnly) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
         this.textParserLine = textParserLine;
         PrinterTextParser textParser = this.textParserLine.getTextParser();
+        PrinterTextParserLexer lexer = textParser.getLexer().reset(source, start, end);
         String textAlign = PrinterTextParser.TAGS_ALIGN_LEFT;
-        byte[]
-                textUnderlineStartColumn = textParser.getLastTextUnderline(),
-                textDoubleStrikeStartColumn = textParser.getLastTextDoubleStrike(),
-                textColorStartColumn = textParser.getLastTextColor(),
-                textReverseColorStartColumn = textParser.getLastTextReverseColor();
+        int textStyleStartColumn = textParser.getStyle();
 
 
         // =================================================================
         // Check the column alignment
-        if(textColumn.length() > 2) {
-            switch (textColumn.substring(0, 3).toUpperCase()) {
-                case "[" + PrinterTextParser.TAGS_ALIGN_LEFT + "]":
-                case "[" + PrinterTextParser.TAGS_ALIGN_CENTER + "]":
-                case "[" + PrinterTextParser.TAGS_ALIGN_RIGHT + "]":
-                    textAlign = textColumn.substring(1, 2).toUpperCase();
-                    textColumn = textColumn.substring(3);
-                    break;
-            }
+
+        int token = lexer.next();
+        if (token == PrinterTextParserLexer.TOKEN_ALIGN) {
+            textAlign = lexer.getAlign();
+            start = lexer.getTokenEnd();
+            token = lexer.next();
+        }
+
+        int trimmedStart = start, trimmedEnd = end;
+        while (trimmedStart < trimmedEnd && source.charAt(trimmedStart) <= ' ') {
+            trimmedStart++;
+        }
+        while (trimmedEnd > trimmedStart && source.charAt(trimmedEnd - 1) <= ' ') {
+            trimmedEnd--;
         }
 
-        String trimmedTextColumn = textColumn.trim();
         boolean isImgOrBarcodeLine = false;
 
-        if (this.textParserLine.getNbrColumns() == 1 && trimmedTextColumn.indexOf("<") == 0) {
+        if (this.textParserLine.getNbrColumns() == 1 && trimmedStart < trimmedEnd && source.charAt(trimmedStart) == '<') {
             // =================================================================
             // Image or Barcode Lines
-            int openTagIndex = trimmedTextColumn.indexOf("<"),
-                    openTagEndIndex = trimmedTextColumn.indexOf(">", openTagIndex + 1) + 1;
-
-            if (openTagIndex < openTagEndIndex) {
-                PrinterTextParserTag textParserTag = new PrinterTextParserTag(trimmedTextColumn.substring(openTagIndex, openTagEndIndex));
-
-                switch (textParserTag.getTagName()) {
-                    case PrinterTextParser.TAGS_IMAGE:
-                    case PrinterTextParser.TAGS_BARCODE:
-                    case PrinterTextParser.TAGS_QRCODE:
-                        String closeTag = "</" + textParserTag.getTagName() + ">";
-                        int closeTagPosition = trimmedTextColumn.length() - closeTag.length();
-
-                        if (trimmedTextColumn.substring(closeTagPosition).equals(closeTag)) {
-                            switch (textParserTag.getTagName()) {
-                                case PrinterTextParser.TAGS_IMAGE:
-                                    this.appendImage(textAlign, trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
-                                    break;
-                                case PrinterTextParser.TAGS_BARCODE:
-                                    this.appendBarcode(textAlign, textParserTag.getAttributes(), trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
-                                    break;
-                                case PrinterTextParser.TAGS_QRCODE:
-                                    this.appendQRCode(textAlign, textParserTag.getAttributes(), trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
-                                    break;
-                            }
-                            isImgOrBarcodeLine = true;
-                        }
-                        break;
-                }
-            }
-        }
 
-        if (!isImgOrBarcodeLine) {
-            // =================================================================
-            // If the tag is for format text
-
-            int offset = 0;
-            while (true) {
-                int openTagIndex = textColumn.indexOf("<", offset), closeTagIndex = -1;
+            if (lexer.getTokenStart() != trimmedStart) {
+                lexer.seek(trimmedStart);
+                token = lexer.next();
+            }
 
-                if (openTagIndex != -1) {
-                    closeTagIndex = textColumn.indexOf(">", openTagIndex);
-                } else {
-                    openTagIndex = textColumn.length();
+            if (token == PrinterTextParserLexer.TOKEN_TAG_OPEN) {
+                String tagName = null;
+                if (lexer.nameEquals(PrinterTextParser.TAGS_IMAGE)) {
+                    tagName = PrinterTextParser.TAGS_IMAGE;
+                } else if (lexer.nameEquals(PrinterTextParser.TAGS_BARCODE)) {
+                    tagName = PrinterTextParser.TAGS_BARCODE;
+                } else if (lexer.nameEquals(PrinterTextParser.TAGS_QRCODE)) {
+                    tagName = PrinterTextParser.TAGS_QRCODE;
                 }
 
-                this.appendString(textColumn.substring(offset, openTagIndex));
-
-                if (closeTagIndex == -1) {
-                    // No closing '>' found - append the '<' and remaining text as literal
-                    if (openTagIndex < textColumn.length()) {
-                        this.appendString(textColumn.substring(openTagIndex));
+                if (tagName != null) {
+                    int openTagEndIndex = lexer.getTagEnd(),
+                            closeTagPosition = trimmedEnd - tagName.length() - 3;
+
+                    if (
+                            closeTagPosition >= openTagEndIndex &&
+                            PrinterTextParserLexer.regionEquals(source, closeTagPosition, closeTagPosition + 2, "</", false) &&
+                            PrinterTextParserLexer.regionEquals(source, closeTagPosition + 2, trimmedEnd - 1, tagName, false) &&
+                            source.charAt(trimmedEnd - 1) == '>'
+                    ) {
+                        isImgOrBarcodeLine = true;
                     }
-                    break;
-                }
 
-                closeTagIndex++;
-                PrinterTextParserTag textParserTag = new PrinterTextParserTag(textColumn.substring(openTagIndex, closeTagIndex));
-
-                if (PrinterTextParser.isTagTextFormat(textParserTag.getTagName())) {
-                    if (textParserTag.isCloseTag()) {
-                        switch (textParserTag.getTagName()) {
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_BOLD:
-                                textParser.dropTextBold();
-                                break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE:
-                                textParser.dropLastTextUnderline();
-                                textParser.dropLastTextDoubleStrike();
-                                break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_STRIKETHROUGH:
-                                textParser.dropLastTextStrikethrough();
-                                break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_FONT:
-                                textParser.dropLastTextSize();
-                                textParser.dropLastTextColor();
-                                textParser.dropLastTextReverseColor();
-                                textParser.dropLastTextFont();
-                                break;
+                    if (isImgOrBarcodeLine && !styleOnly) {
+                        Hashtable<String, String> attributes = new Hashtable<String, String>();
+                        while (lexer.nextAttribute()) {
+                            attributes.put(lexer.getName(), lexer.getValue());
                         }
-                    } else {
-                        switch (textParserTag.getTagName()) {
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_BOLD:
-                                textParser.addTextBold(EscPosPrinterCommands.TEXT_WEIGHT_BOLD);
-                                break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_STRIKETHROUGH:
-                                textParser.addTextStrikethrough(true);
+                        String content = source.subSequence(openTagEndIndex, closeTagPosition).toString();
+
+                        switch (tagName) {
+                            case PrinterTextParser.TAGS_IMAGE:
+                                this.appendImage(textAlign, content);
                                 break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE:
-                                if (textParserTag.hasAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE)) {
-                                    switch (textParserTag.getAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE)) {
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE_NORMAL:
-                                            textParser.addTextUnderline(EscPosPrinterCommands.TEXT_UNDERLINE_LARGE);
-                                            textParser.addTextDoubleStrike(textParser.getLastTextDoubleStrike());
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE_DOUBLE:
-                                            textParser.addTextUnderline(textParser.getLastTextUnderline());
-                                            textParser.addTextDoubleStrike(EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_ON);
-                                            break;
-                                    }
-                                } else {
-                                    textParser.addTextUnderline(EscPosPrinterCommands.TEXT_UNDERLINE_LARGE);
-                                    textParser.addTextDoubleStrike(textParser.getLastTextDoubleStrike());
-                                }
+                            case PrinterTextParser.TAGS_BARCODE:
+                                this.appendBarcode(textAlign, attributes, content);
                                 break;
-                            case PrinterTextParser.TAGS_FORMAT_TEXT_FONT:
-                                if (textParserTag.hasAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE)) {
-                                    switch (textParserTag.getAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE)) {
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_NORMAL:
-                                        default:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_NORMAL);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_TALL:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_WIDE:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_DOUBLE_WIDTH);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_2:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG_2);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_3:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG_3);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_4:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG_4);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_5:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG_5);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_6:
-                                            textParser.addTextSize(EscPosPrinterCommands.TEXT_SIZE_BIG_6);
-                                            break;
-                                    }
-                                } else {
-                                    textParser.addTextSize(textParser.getLastTextSize());
-                                }
-
-                                if (textParserTag.hasAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR)) {
-                                    switch (textParserTag.getAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR)) {
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BLACK:
-                                        default:
-                                            textParser.addTextColor(EscPosPrinterCommands.TEXT_COLOR_BLACK);
-                                            textParser.addTextReverseColor(EscPosPrinterCommands.TEXT_COLOR_REVERSE_OFF);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BG_BLACK:
-                                            textParser.addTextColor(EscPosPrinterCommands.TEXT_COLOR_BLACK);
-                                            textParser.addTextReverseColor(EscPosPrinterCommands.TEXT_COLOR_REVERSE_ON);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_RED:
-                                            textParser.addTextColor(EscPosPrinterCommands.TEXT_COLOR_RED);
-                                            textParser.addTextReverseColor(EscPosPrinterCommands.TEXT_COLOR_REVERSE_OFF);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BG_RED:
-                                            textParser.addTextColor(EscPosPrinterCommands.TEXT_COLOR_RED);
-                                            textParser.addTextReverseColor(EscPosPrinterCommands.TEXT_COLOR_REVERSE_ON);
-                                            break;
-                                    }
-                                } else {
-                                    textParser.addTextColor(textParser.getLastTextColor());
-                                    textParser.addTextReverseColor(textParser.getLastTextReverseColor());
-                                }
-
-                                if (textParserTag.hasAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT)) {
-                                    switch (textParserTag.getAttribute(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT).toLowerCase()) {
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_A:
-                                        default:
-                                            textParser.addTextFont(EscPosPrinterCommands.TEXT_FONT_A);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_B:
-                                            textParser.addTextFont(EscPosPrinterCommands.TEXT_FONT_B);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_C:
-                                            textParser.addTextFont(EscPosPrinterCommands.TEXT_FONT_C);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_D:
-                                            textParser.addTextFont(EscPosPrinterCommands.TEXT_FONT_D);
-                                            break;
-                                        case PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_E:
-                                            textParser.addTextFont(EscPosPrinterCommands.TEXT_FONT_E);
-                                            break;
-                                    }
-                                } else {
-                                    textParser.addTextFont(textParser.getLastTextFont());
-                                }
+                            case PrinterTextParser.TAGS_QRCODE:
+                                this.appendQRCode(textAlign, attributes, content);
                                 break;
                         }
                     }
-                    offset = closeTagIndex;
-                } else {
-                    this.appendString("<");
-                    offset = openTagIndex + 1;
                 }
             }
+        }
+
+        if (!isImgOrBarcodeLine) {
+            // =================================================================
+            // If the tag is for format text
+
+            if (lexer.getTokenStart() != start) {
+                lexer.seek(start);
+                token = lexer.next();
+            }
+
+            while (token != PrinterTextParserLexer.TOKEN_EOF) {
+                switch (token) {
+                    case PrinterTextParserLexer.TOKEN_TAG_OPEN:
+                    case PrinterTextParserLexer.TOKEN_TAG_CLOSE:
+                        if (PrinterTextParser.isTagTextFormat(lexer)) {
+                            this.applyTextFormatTag(lexer);
+                        } else {
+                            if (!styleOnly) {
+                                this.appendString("<");
+                            }
+                            lexer.seek(lexer.getTokenStart() + 1);
+                        }
+                        break;
+                    case PrinterTextParserLexer.TOKEN_ATTRIBUTE:
+                        // Attributes of a format tag that does not use them
+                        break;
+                    default:
+                        // Text, or an alignment tag that is not at the column start and so is literal text
+                        if (styleOnly) {
+                            break;
+                        }
+                        this.appendString(source.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString());
+                        break;
+                }
+                token = lexer.next();
+            }
+
+            if (styleOnly) {
+                return;
+            }
 
             // =================================================================
             // Define the number of spaces required for the different alignments
@@ -306,10 +236,10 @@ public class PrinterTextParserColumn {
             }
 
             if (leftSpace > 0) {
-                this.prependString(PrinterTextParserColumn.generateSpace(leftSpace), EscPosPrinterCommands.TEXT_SIZE_NORMAL, textColorStartColumn, textReverseColorStartColumn, EscPosPrinterCommands.TEXT_WEIGHT_NORMAL, textUnderlineStartColumn, textDoubleStrikeStartColumn);
+                this.prependString(PrinterTextParserColumn.generateSpace(leftSpace), textStyleStartColumn & PrinterTextParserStyle.PADDING_MASK);
             }
             if (rightSpace > 0) {
-                this.appendString(PrinterTextParserColumn.generateSpace(rightSpace), EscPosPrinterCommands.TEXT_SIZE_NORMAL, textParser.getLastTextColor(), textParser.getLastTextReverseColor(), EscPosPrinterCommands.TEXT_WEIGHT_NORMAL, textParser.getLastTextUnderline(), textParser.getLastTextDoubleStrike());
+                this.appendString(PrinterTextParserColumn.generateSpace(rightSpace), textParser.getStyle() & PrinterTextParserStyle.PADDING_MASK);
             }
 
             // =================================================================================================
@@ -321,17 +251,116 @@ public class PrinterTextParserColumn {
         }
     }
 
-    private PrinterTextParserColumn prependString(String text) {
+    /**
+     * Push or drop the text styles of the text format tag the lexer is positioned on.
+     */
+    private void applyTextFormatTag(PrinterTextParserLexer lexer) {
         PrinterTextParser textParser = this.textParserLine.getTextParser();
-        return this.prependString(text, textParser.getLastTextSize(), textParser.getLastTextColor(), textParser.getLastTextReverseColor(), textParser.getLastTextBold(), textParser.getLastTextUnderline(), textParser.getLastTextDoubleStrike(), textParser.getLastTextFont());
+
+        if (lexer.getTokenType() == PrinterTextParserLexer.TOKEN_TAG_CLOSE) {
+            if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_BOLD)) {
+                textParser.dropStyle(PrinterTextParserStyle.FIELD_BOLD);
+            } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE)) {
+                textParser
+                        .dropStyle(PrinterTextParserStyle.FIELD_UNDERLINE)
+                        .dropStyle(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE);
+            } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_STRIKETHROUGH)) {
+                textParser.dropStyle(PrinterTextParserStyle.FIELD_STRIKETHROUGH);
+            } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_FONT)) {
+                textParser
+                        .dropStyle(PrinterTextParserStyle.FIELD_SIZE)
+                        .dropStyle(PrinterTextParserStyle.FIELD_COLOR)
+                        .dropStyle(PrinterTextParserStyle.FIELD_REVERSE_COLOR)
+                        .dropStyle(PrinterTextParserStyle.FIELD_FONT);
+            }
+            return;
+        }
+
+        int style = textParser.getStyle();
+
+        if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_BOLD)) {
+            textParser.pushStyle(PrinterTextParserStyle.FIELD_BOLD, PrinterTextParserStyle.ON);
+        } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_STRIKETHROUGH)) {
+            textParser.pushStyle(PrinterTextParserStyle.FIELD_STRIKETHROUGH, PrinterTextParserStyle.ON);
+        } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE)) {
+            boolean hasType = false, normal = false, doubleStrike = false;
+            while (lexer.nextAttribute()) {
+                if (lexer.nameEquals(PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE)) {
+                    hasType = true;
+                    normal = lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE_NORMAL, false);
+                    doubleStrike = lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_UNDERLINE_TYPE_DOUBLE, false);
+                }
+            }
+            if (!hasType || normal) {
+                textParser
+                        .pushStyle(PrinterTextParserStyle.FIELD_UNDERLINE, PrinterTextParserStyle.UNDERLINE_LARGE)
+                        .pushStyle(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE, PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE));
+            } else if (doubleStrike) {
+                textParser
+                        .pushStyle(PrinterTextParserStyle.FIELD_UNDERLINE, PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_UNDERLINE))
+                        .pushStyle(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE, PrinterTextParserStyle.ON);
+            }
+        } else if (lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_FONT)) {
+            int textSize = PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_SIZE),
+                    textColor = PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_COLOR),
+                    textReverseColor = PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_REVERSE_COLOR),
+                    textFont = PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_FONT);
+            while (lexer.nextAttribute()) {
+                if (lexer.nameEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE)) {
+                    textSize = PrinterTextParserColumn.getTextSize(lexer);
+                } else if (lexer.nameEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR)) {
+                    boolean isRed = lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_RED, false) || lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BG_RED, false),
+                            isReverse = lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BG_BLACK, false) || lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_COLOR_BG_RED, false);
+                    textColor = isRed ? PrinterTextParserStyle.ON : PrinterTextParserStyle.OFF;
+                    textReverseColor = isReverse ? PrinterTextParserStyle.ON : PrinterTextParserStyle.OFF;
+                } else if (lexer.nameEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT)) {
+                    textFont = PrinterTextParserColumn.getTextFont(lexer);
+                }
+            }
+            textParser
+                    .pushStyle(PrinterTextParserStyle.FIELD_SIZE, textSize)
+                    .pushStyle(PrinterTextParserStyle.FIELD_COLOR, textColor)
+                    .pushStyle(PrinterTextParserStyle.FIELD_REVERSE_COLOR, textReverseColor)
+                    .pushStyle(PrinterTextParserStyle.FIELD_FONT, textFont);
+        }
+    }
+
+    private static int getTextSize(PrinterTextParserLexer lexer) {
+        if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_TALL, false)) {
+            return PrinterTextParserStyle.SIZE_DOUBLE_HEIGHT;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_WIDE, false)) {
+            return PrinterTextParserStyle.SIZE_DOUBLE_WIDTH;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG, false)) {
+            return PrinterTextParserStyle.SIZE_BIG;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_2, false)) {
+            return PrinterTextParserStyle.SIZE_BIG_2;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_3, false)) {
+            return PrinterTextParserStyle.SIZE_BIG_3;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_4, false)) {
+            return PrinterTextParserStyle.SIZE_BIG_4;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_5, false)) {
+            return PrinterTextParserStyle.SIZE_BIG_5;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE_BIG_6, false)) {
+            return PrinterTextParserStyle.SIZE_BIG_6;
+        }
+        return PrinterTextParserStyle.SIZE_NORMAL;
     }
 
-    private PrinterTextParserColumn prependString(String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike) {
-        return this.prependString(text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, EscPosPrinterCommands.TEXT_FONT_A);
+    private static int getTextFont(PrinterTextParserLexer lexer) {
+        if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_B, true)) {
+            return PrinterTextParserStyle.FONT_B;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_C, true)) {
+            return PrinterTextParserStyle.FONT_C;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_D, true)) {
+            return PrinterTextParserStyle.FONT_D;
+        } else if (lexer.valueEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_FONT_E, true)) {
+            return PrinterTextParserStyle.FONT_E;
+        }
+        return PrinterTextParserStyle.FONT_A;
     }
 
-    private PrinterTextParserColumn prependString(String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike, byte[] textFont) {
-        return this.prependElement(new PrinterTextParserString(this, text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, textFont));
+    private PrinterTextParserColumn prependString(String text, int style) {
+        return this.prependElement(new PrinterTextParserString(this, text, style));
     }
 
     private PrinterTextParserColumn appendString(String text) {
@@ -340,15 +369,11 @@ public class PrinterTextParserColumn {
         if (textParser.getLastTextStrikethrough()) {
             text = PrinterTextParser.applyStrikethrough(text);
         }
-        return this.appendString(text, textParser.getLastTextSize(), textParser.getLastTextColor(), textParser.getLastTextReverseColor(), textParser.getLastTextBold(), textParser.getLastTextUnderline(), textParser.getLastTextDoubleStrike(), textParser.getLastTextFont());
-    }
-
-    private PrinterTextParserColumn appendString(String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike) {
-        return this.appendString(text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, EscPosPrinterCommands.TEXT_FONT_A);
+        return this.appendString(text, textParser.getStyle());
     }
 
-    private PrinterTextParserColumn appendString(String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike, byte[] textFont) {
-        return this.appendElement(new PrinterTextParserString(this, text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, textFont));
+    private PrinterTextParserColumn appendString(String text, int style) {
+        return this.appendElement(new PrinterTextParserString(this, text, style));
     }
 
     private PrinterTextParserColumn prependImage(String textAlign, String hexString) {
@@ -0,0 +1,358 @@
+package com.dantsu.escposprinter.textparser;
+
+/**
+ * Single-pass, index-based lexer for the formatted text syntax.
+ * <p>
+ * The lexer walks a {@link CharSequence} range without copying it and emits tokens described by
+ * indexes into the source: alignment tags (<code>[L]</code>, <code>[C]</code>, <code>[R]</code>),
+ * open tags, close tags, tag attributes (<code>name='value'</code>) and plain text runs.
+ * Attributes of a tag are emitted right after the tag token, they can also be consumed one by one
+ * with {@link #nextAttribute()}.
+ * <p>
+ * Alignment tags are uppercase, except at the very start of the range where they are case-insensitive
+ * (a column is allowed to start with <code>[c]</code>).
+ */
+public class PrinterTextParserLexer {
+
+    public static final int TOKEN_EOF = 0;
+    public static final int TOKEN_TEXT = 1;
+    public static final int TOKEN_ALIGN = 2;
+    public static final int TOKEN_TAG_OPEN = 3;
+    public static final int TOKEN_TAG_CLOSE = 4;
+    public static final int TOKEN_ATTRIBUTE = 5;
+
+    /**
+     * Check if the range of the char sequence is equal to the expected string.
+     *
+     * @param source     Char sequence to check
+     * @param start      Start index of the range in the char sequence
+     * @param end        End index (exclusive) of the range in the char sequence
+     * @param expected   Expected string
+     * @param ignoreCase true to ignore ASCII case
+     * @return true if equal
+     */
+    public static boolean regionEquals(CharSequence source, int start, int end, String expected, boolean ignoreCase) {
+        if (start < 0 || end - start != expected.length() || end > source.length()) {
+            return false;
+        }
+        for (int i = start, j = 0; i < end; i++, j++) {
+            char c1 = source.charAt(i), c2 = expected.charAt(j);
+            if (c1 != c2 && (!ignoreCase || Character.toLowerCase(c1) != Character.toLowerCase(c2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the first occurrence of a char in a range of a char sequence.
+     *
+     * @return Index of the char or -1 if not found
+     */
+    public static int indexOf(CharSequence source, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+
+
+    private CharSequence source = "";
+    private int start;
+    private int end;
+    private int position;
+    private int lastTagEnd;
+
+    private int attributesPosition = -1;
+    private int attributesEnd;
+    private int tagEnd;
+
+    private int tokenType = PrinterTextParserLexer.TOKEN_EOF;
+    private int tokenStart;
+    private int tokenEnd;
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    public PrinterTextParserLexer() {
+    }
+
+    public PrinterTextParserLexer(CharSequence source) {
+        this.reset(source, 0, source.length());
+    }
+
+    /**
+     * Start lexing a new range of a char sequence.
+     *
+     * @param source Char sequence to lex
+     * @param start  Start index of the range
+     * @param end    End index (exclusive) of the range
+     * @return Fluent interface
+     */
+    public PrinterTextParserLexer reset(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.position = start;
+        this.attributesPosition = -1;
+        this.tokenType = PrinterTextParserLexer.TOKEN_EOF;
+        this.tokenStart = start;
+        this.tokenEnd = start;
+
+        // A '<' after the last '>' can not open a tag, knowing it avoids rescanning the range for each lonely '<'.
+        this.lastTagEnd = -1;
+        for (int i = end - 1; i >= start; i--) {
+            if (source.charAt(i) == '>') {
+                this.lastTagEnd = i;
+                break;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Move the cursor to an index of the range, discarding the pending attributes of the current tag.
+     *
+     * @param position New cursor index
+     * @return Fluent interface
+     */
+    public PrinterTextParserLexer seek(int position) {
+        this.position = position;
+        this.attributesPosition = -1;
+        return this;
+    }
+
+    /**
+     * Read the next token.
+     *
+     * @return Token type (TOKEN_* constant)
+     */
+    public int next() {
+        if (this.attributesPosition != -1) {
+            if (this.nextAttribute()) {
+                return this.tokenType;
+            }
+            this.position = this.tagEnd;
+            this.attributesPosition = -1;
+        }
+
+        int position = this.position;
+
+        if (position >= this.end) {
+            return this.setToken(PrinterTextParserLexer.TOKEN_EOF, this.end, this.end);
+        }
+
+        char c = this.source.charAt(position);
+
+        if (c == '[' && this.isAlignAt(position)) {
+            this.position = position + 3;
+            this.nameStart = position + 1;
+            this.nameEnd = position + 2;
+            return this.setToken(PrinterTextParserLexer.TOKEN_ALIGN, position, position + 3);
+        }
+
+        if (c == '<' && position < this.lastTagEnd) {
+            return this.readTag(position);
+        }
+
+        int i = position + 1;
+        for (; i < this.end; i++) {
+            c = this.source.charAt(i);
+            if ((c == '<' && i < this.lastTagEnd) || (c == '[' && this.isAlignAt(i))) {
+                break;
+            }
+        }
+        this.position = i;
+        return this.setToken(PrinterTextParserLexer.TOKEN_TEXT, position, i);
+    }
+
+    /**
+     * Read the next attribute of the current tag, without moving to the next token when there is none left.
+     *
+     * @return true if an attribute has been read
+     */
+    public boolean nextAttribute() {
+        if (this.attributesPosition == -1) {
+            return false;
+        }
+
+        while (true) {
+            int i = this.attributesPosition;
+            while (i < this.attributesEnd && PrinterTextParserLexer.isWhitespace(this.source.charAt(i))) {
+                i++;
+            }
+
+            int equalIndex = -1;
+            for (int j = i; j < this.attributesEnd - 1; j++) {
+                if (this.source.charAt(j) == '=' && this.source.charAt(j + 1) == '\'') {
+                    equalIndex = j;
+                    break;
+                }
+            }
+            if (equalIndex == -1) {
+                this.attributesPosition = this.attributesEnd;
+                return false;
+            }
+
+            int valueStart = equalIndex + 2,
+                    valueEnd = PrinterTextParserLexer.indexOf(this.source, '\'', valueStart, this.attributesEnd);
+            if (valueEnd == -1) {
+                valueEnd = this.attributesEnd;
+            }
+            this.attributesPosition = Math.min(valueEnd + 1, this.attributesEnd);
+
+            if (equalIndex > i) {
+                this.nameStart = i;
+                this.nameEnd = equalIndex;
+                this.valueStart = valueStart;
+                this.valueEnd = valueEnd;
+                this.setToken(PrinterTextParserLexer.TOKEN_ATTRIBUTE, i, this.attributesPosition);
+                return true;
+            }
+        }
+    }
+
+    private int readTag(int position) {
+        int closeIndex = PrinterTextParserLexer.indexOf(this.source, '>', position + 1, this.end),
+                nameStart = position + 1,
+                tokenType = PrinterTextParserLexer.TOKEN_TAG_OPEN;
+
+        int spaceIndex = PrinterTextParserLexer.indexOf(this.source, ' ', nameStart, closeIndex),
+                nameEnd = spaceIndex == -1 ? closeIndex : spaceIndex;
+
+        if (nameStart < nameEnd && this.source.charAt(nameStart) == '/') {
+            nameStart++;
+            tokenType = PrinterTextParserLexer.TOKEN_TAG_CLOSE;
+        }
+
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.tagEnd = closeIndex + 1;
+        this.position = this.tagEnd;
+
+        if (spaceIndex != -1) {
+            this.attributesPosition = spaceIndex;
+            this.attributesEnd = closeIndex;
+        } else {
+            this.attributesPosition = -1;
+        }
+
+        return this.setToken(tokenType, position, closeIndex + 1);
+    }
+
+    private boolean isAlignAt(int position) {
+        if (position + 2 >= this.end || this.source.charAt(position + 2) != ']') {
+            return false;
+        }
+        char align = this.source.charAt(position + 1);
+        if (position == this.start) {
+            align = Character.toUpperCase(align);
+        }
+        return align == 'L' || align == 'C' || align == 'R';
+    }
+
+    private int setToken(int tokenType, int tokenStart, int tokenEnd) {
+        this.tokenType = tokenType;
+        this.tokenStart = tokenStart;
+        this.tokenEnd = tokenEnd;
+        return tokenType;
+    }
+
+
+    public CharSequence getSource() {
+        return this.source;
+    }
+
+    public int getPosition() {
+        return this.position;
+    }
+
+    public int getTokenType() {
+        return this.tokenType;
+    }
+
+    public int getTokenStart() {
+        return this.tokenStart;
+    }
+
+    public int getTokenEnd() {
+        return this.tokenEnd;
+    }
+
+    /**
+     * @return Index after the '&gt;' of the last read tag
+     */
+    public int getTagEnd() {
+        return this.tagEnd;
+    }
+
+    public int getNameStart() {
+        return this.nameStart;
+    }
+
+    public int getNameEnd() {
+        return this.nameEnd;
+    }
+
+    public int getValueStart() {
+        return this.valueStart;
+    }
+
+    public int getValueEnd() {
+        return this.valueEnd;
+    }
+
+    /**
+     * @return Alignment of the current TOKEN_ALIGN token (one of PrinterTextParser.TAGS_ALIGN_*)
+     */
+    public String getAlign() {
+        switch (Character.toUpperCase(this.source.charAt(this.nameStart))) {
+            case 'C':
+                return PrinterTextParser.TAGS_ALIGN_CENTER;
+            case 'R':
+                return PrinterTextParser.TAGS_ALIGN_RIGHT;
+            default:
+                return PrinterTextParser.TAGS_ALIGN_LEFT;
+        }
+    }
+
+    /**
+     * Compare the name of the current token. Tag names are case-insensitive, attribute names are not.
+     *
+     * @param name Expected name
+     * @return true if equal
+     */
+    public boolean nameEquals(String name) {
+        return PrinterTextParserLexer.regionEquals(this.source, this.nameStart, this.nameEnd, name, this.tokenType != PrinterTextParserLexer.TOKEN_ATTRIBUTE);
+    }
+
+    /**
+     * Compare the value of the current attribute token.
+     *
+     * @param value      Expected value
+     * @param ignoreCase true to ignore ASCII case
+     * @return true if equal
+     */
+    public boolean valueEquals(String value, boolean ignoreCase) {
+        return PrinterTextParserLexer.regionEquals(this.source, this.valueStart, this.valueEnd, value, ignoreCase);
+    }
+
+    public String getName() {
+        return this.source.subSequence(this.nameStart, this.nameEnd).toString();
+    }
+
+    public String getValue() {
+        return this.source.subSequence(this.valueStart, this.valueEnd).toString();
+    }
+
+    public boolean isNameEmpty() {
+        return this.nameStart >= this.nameEnd;
+    }
+}
@@ -4,10 +4,6 @@ import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
 import com.dantsu.escposprinter.exceptions.EscPosParserException;
 
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class PrinterTextParserLine {
     private PrinterTextParser textParser;
     private int nbrColumns;
@@ -17,36 +13,104 @@ public class PrinterTextParserLine {
     private PrinterTextParserColumn[] columns;
     
     public PrinterTextParserLine(PrinterTextParser textParser, String textLine) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
-        this.textParser = textParser;
-        int nbrCharactersPerLine = this.getTextParser().getPrinter().getPrinterNbrCharactersPerLine();
+        this(textParser, textLine, 0, textLine.length());
+    }
     
-        Pattern pattern = Pattern.compile(PrinterTextParser.getRegexAlignTags());
-        Matcher matcher = pattern.matcher(textLine);
+    /**
+     * Create a new instance of PrinterTextParserLine from a range of a char sequence, the line is not copied.
+     *
+     * @param textParser Parent PrinterTextParser instance
+     * @param source     Char sequence containing the line
+     * @param start      Start index of the line in the char sequence
+     * @param end        End index (exclusive) of the line in the char sequence
+     */
+    public PrinterTextParserLine(PrinterTextParser textParser, CharSequence source, int start, int end) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        this(textParser, source, start, end, false);
+    }
     
-        ArrayList<String> columnsList = new ArrayList<String>();
-        int lastPosition = 0;
+    /**
+     * Create a new instance of PrinterTextParserLine from a range of a char sequence, the line is not copied.
+     *
+     * @param textParser Parent PrinterTextParser instance
+     * @param source     Char sequence containing the line
+     * @param start      Start index of the line in the char sequence
+     * @param end        End index (exclusive) of the line in the char sequence
+     * @param styleOnly  true to only apply the text format tags to the parser styles, without building the columns elements
+     */
+    PrinterTextParserLine(PrinterTextParser textParser, CharSequence source, int start, int end, boolean styleOnly) throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        this.textParser = textParser;
+        int nbrCharactersPerLine = this.getTextParser().getPrinter().getPrinterNbrCharactersPerLine();
+        
+        // Columns start at each alignment tag, except the one starting the line.
+        PrinterTextParserLexer lexer = textParser.getLexer().reset(source, start, end);
+        int[] columnsStart = new int[4];
+        int nbrColumns = 1, token;
+        columnsStart[0] = start;
         
-        while (matcher.find()) {
-            int startPosition = matcher.start();
-            if(startPosition > 0) {
-                columnsList.add(textLine.substring(lastPosition, startPosition));
+        while ((token = lexer.next()) != PrinterTextParserLexer.TOKEN_EOF) {
+            if (token == PrinterTextParserLexer.TOKEN_ALIGN && lexer.getTokenStart() > start) {
+                if (nbrColumns == columnsStart.length) {
+                    int[] columnsStartTmp = new int[nbrColumns * 2];
+                    System.arraycopy(columnsStart, 0, columnsStartTmp, 0, nbrColumns);
+                    columnsStart = columnsStartTmp;
+                }
+                columnsStart[nbrColumns++] = lexer.getTokenStart();
+            } else if ((token == PrinterTextParserLexer.TOKEN_TAG_OPEN || token == PrinterTextParserLexer.TOKEN_TAG_CLOSE) && !PrinterTextParser.isTagTextFormat(lexer)) {
+                // Like the columns do, an unknown tag is literal text.
+                lexer.seek(lexer.getTokenStart() + 1);
             }
-            lastPosition = startPosition;
         }
-        columnsList.add(textLine.substring(lastPosition));
         
-        this.nbrColumns = columnsList.size();
+        this.nbrColumns = nbrColumns;
+        this.nbrCharColumn = (int) Math.floor(((float) nbrCharactersPerLine) / ((float) this.nbrColumns));
+        this.nbrCharForgetted = nbrCharactersPerLine - (nbrCharColumn * this.nbrColumns);
+        this.nbrCharColumnExceeded = 0;
+        this.columns = new PrinterTextParserColumn[this.nbrColumns];
+        
+        for (int i = 0; i < nbrColumns; i++) {
+            this.columns[i] = new PrinterTextParserColumn(this, source, columnsStart[i], i + 1 < nbrColumns ? columnsStart[i + 1] : end, styleOnly);
+        }
+    }
+    
+    
+    /**
+     * Create a new instance of PrinterTextParserLine from the elements of an already parsed line.
+     *
+     * @param textParser      Parent PrinterTextParser instance
+     * @param columnsElements Elements of each column
+     */
+    PrinterTextParserLine(PrinterTextParser textParser, IPrinterTextParserElement[][] columnsElements) {
+        this.textParser = textParser;
+        int nbrCharactersPerLine = this.getTextParser().getPrinter().getPrinterNbrCharactersPerLine();
+        this.nbrColumns = columnsElements.length;
         this.nbrCharColumn = (int) Math.floor(((float) nbrCharactersPerLine) / ((float) this.nbrColumns));
         this.nbrCharForgetted = nbrCharactersPerLine - (nbrCharColumn * this.nbrColumns);
         this.nbrCharColumnExceeded = 0;
         this.columns = new PrinterTextParserColumn[this.nbrColumns];
         
-        int i=0;
-        for (String column : columnsList) {
-            this.columns[i++] = new PrinterTextParserColumn(this, column);
+        for (int i = 0; i < this.nbrColumns; i++) {
+            this.columns[i] = new PrinterTextParserColumn(this, columnsElements[i]);
         }
     }
     
+    /**
+     * Get the elements of each column, if the line only contains text.
+     *
+     * @return Elements of each column, null if the line contains an image, a barcode or a QR code
+     */
+    IPrinterTextParserElement[][] getColumnsElements() {
+        IPrinterTextParserElement[][] columnsElements = new IPrinterTextParserElement[this.columns.length][];
+        for (int i = 0; i < this.columns.length; i++) {
+            IPrinterTextParserElement[] elements = this.columns[i].getElements();
+            for (IPrinterTextParserElement element : elements) {
+                if (!(element instanceof PrinterTextParserString)) {
+                    return null;
+                }
+            }
+            columnsElements[i] = elements;
+        }
+        return columnsElements;
+    }
     
     public PrinterTextParser getTextParser() {
         return this.textParser;
@@ -3,6 +3,7 @@ package com.dantsu.escposprinter.textparser;
 import com.dantsu.escposprinter.EscPosPrinter;
 import com.dantsu.escposprinter.EscPosPrinterCommands;
 import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
 import com.dantsu.escposprinter.exceptions.EscPosParserException;
 
@@ -10,11 +11,7 @@ import java.util.Hashtable;
 
 public class PrinterTextParserQRCode extends PrinterTextParserImg {
 
-    private static byte[] initConstructor(PrinterTextParserColumn printerTextParserColumn,
-                                          Hashtable<String, String> qrCodeAttributes, String data) throws EscPosParserException, EscPosBarcodeException {
-        EscPosPrinter printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
-        data = data.trim();
-
+    private static int getSize(EscPosPrinter printer, Hashtable<String, String> qrCodeAttributes) throws EscPosParserException {
         int size = printer.mmToPx(20f);
 
         if (qrCodeAttributes.containsKey(PrinterTextParser.ATTR_QRCODE_SIZE)) {
@@ -29,9 +26,19 @@ public class PrinterTextParserQRCode extends PrinterTextParserImg {
             }
         }
 
-        return EscPosPrinterCommands.QRCodeDataToBytes(data, size);
+        return size;
+    }
+
+    private static byte[] initConstructor(PrinterTextParserColumn printerTextParserColumn,
+                                          Hashtable<String, String> qrCodeAttributes, String data) throws EscPosParserException, EscPosBarcodeException {
+        EscPosPrinter printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
+        return EscPosPrinterCommands.QRCodeDataToBytes(data.trim(), PrinterTextParserQRCode.getSize(printer, qrCodeAttributes));
     }
 
+    private String data = null;
+    private byte[] align;
+    private int moduleSize;
+
     public PrinterTextParserQRCode(PrinterTextParserColumn printerTextParserColumn, String textAlign,
                                    Hashtable<String, String> qrCodeAttributes, String data) throws EscPosParserException, EscPosBarcodeException {
         super(
@@ -39,5 +46,45 @@ public class PrinterTextParserQRCode extends PrinterTextParserImg {
                 textAlign,
                 PrinterTextParserQRCode.initConstructor(printerTextParserColumn, qrCodeAttributes, data)
         );
+
+        EscPosPrinter printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
+        EscPosPrinterCommands printerCommands = printer.getPrinterCommands();
+        if (printerCommands != null && printerCommands.isNativeQrCodeSupported()) {
+            this.data = data.trim();
+            this.moduleSize = EscPosPrinterCommands.QRCodeModuleSize(this.data, PrinterTextParserQRCode.getSize(printer, qrCodeAttributes));
+            switch (textAlign) {
+                case PrinterTextParser.TAGS_ALIGN_CENTER:
+                    this.align = EscPosPrinterCommands.TEXT_ALIGN_CENTER;
+                    break;
+                case PrinterTextParser.TAGS_ALIGN_RIGHT:
+                    this.align = EscPosPrinterCommands.TEXT_ALIGN_RIGHT;
+                    break;
+                default:
+                    this.align = EscPosPrinterCommands.TEXT_ALIGN_LEFT;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Print QR code, with GS ( k when the printer supports it, as an image otherwise.
+     *
+     * @param printerSocket Instance of EscPosPrinterCommands
+     * @return this Fluent method
+     */
+    @Override
+    public PrinterTextParserImg print(EscPosPrinterCommands printerSocket) throws EscPosConnectionException {
+        if (this.data == null) {
+            return super.print(printerSocket);
+        }
+        try {
+            printerSocket
+                    .setAlign(this.align)
+                    .printQRCode(EscPosPrinterCommands.QRCODE_2, this.data, this.moduleSize);
+        } catch (EscPosEncodingException e) {
+            return super.print(printerSocket);
+        }
+        printerSocket.setAlign(EscPosPrinterCommands.TEXT_ALIGN_LEFT);
+        return this;
     }
 }
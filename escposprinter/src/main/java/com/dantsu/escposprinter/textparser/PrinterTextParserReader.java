@@ -0,0 +1,230 @@
+package com.dantsu.escposprinter.textparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import com.dantsu.escposprinter.exceptions.EscPosBarcodeException;
+import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
+import com.dantsu.escposprinter.exceptions.EscPosParserException;
+
+/**
+ * Incremental parser of formatted text.
+ * <p>
+ * Lines are split on "\n" and "\r\n" and parsed one by one as soon as they are complete, so a long document does not
+ * have to be loaded nor parsed at once. With a Reader, only a window of the text is kept in memory : the buffer size,
+ * or the longest line if it does not fit in the buffer. With a CharSequence, lines are parsed in place.
+ * <p>
+ * Like PrinterTextParser.parse(), trailing empty lines are ignored.
+ */
+public class PrinterTextParserReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private PrinterTextParser textParser;
+    private Reader reader;
+    private CharSequence source;
+    private char[] buffer;
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private boolean endOfText = false;
+
+    private boolean hasReadText = false;
+    private boolean hasReturnedLine = false;
+    private int pendingEmptyLines = 0;
+    private int emptyLinesToReturn = 0;
+    private int heldLineStart = -1;
+    private int heldLineEnd;
+
+    private CharSequence lineSource;
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * Create new instance of PrinterTextParserReader.
+     *
+     * @param textParser PrinterTextParser instance used to parse the lines, its style state goes from one line to the next
+     * @param reader     Reader of the formatted text
+     */
+    public PrinterTextParserReader(PrinterTextParser textParser, Reader reader) {
+        this(textParser, reader, PrinterTextParserReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create new instance of PrinterTextParserReader.
+     *
+     * @param textParser PrinterTextParser instance used to parse the lines, its style state goes from one line to the next
+     * @param reader     Reader of the formatted text
+     * @param bufferSize Initial size of the window in characters
+     */
+    public PrinterTextParserReader(PrinterTextParser textParser, Reader reader, int bufferSize) {
+        this.textParser = textParser;
+        this.reader = reader;
+        this.buffer = new char[Math.max(bufferSize, 16)];
+        this.source = CharBuffer.wrap(this.buffer);
+    }
+
+    /**
+     * Create new instance of PrinterTextParserReader.
+     *
+     * @param textParser PrinterTextParser instance used to parse the lines, its style state goes from one line to the next
+     * @param text       Formatted text, lines are parsed without copying it
+     */
+    public PrinterTextParserReader(PrinterTextParser textParser, CharSequence text) {
+        this.textParser = textParser;
+        this.source = text;
+        this.bufferEnd = text.length();
+        this.endOfText = true;
+    }
+
+    /**
+     * Read and parse the next line.
+     *
+     * @return Parsed line, null at the end of the text
+     */
+    public PrinterTextParserLine readLine() throws EscPosParserException, EscPosBarcodeException, EscPosEncodingException {
+        if (!this.nextLine()) {
+            return null;
+        }
+        return this.textParser.parseLine(this.lineSource, this.lineStart, this.lineEnd);
+    }
+
+    /**
+     * Move to the next line without parsing it. The line is then given by getLineSource(), getLineStart() and
+     * getLineEnd(), it is only valid until the next call.
+     *
+     * @return false at the end of the text
+     */
+    boolean nextLine() throws EscPosParserException {
+        while (true) {
+            if (this.emptyLinesToReturn > 0) {
+                this.emptyLinesToReturn--;
+                return this.setLine("", 0, 0);
+            }
+
+            if (this.heldLineStart != -1) {
+                int start = this.heldLineStart;
+                this.heldLineStart = -1;
+                return this.setLine(this.source, start, this.heldLineEnd);
+            }
+
+            if (!this.nextRawLine()) {
+                if (!this.hasReadText && !this.hasReturnedLine) {
+                    // Like "".split(), an empty text is one empty line.
+                    return this.setLine("", 0, 0);
+                }
+                return false;
+            }
+
+            if (this.lineEnd == this.lineStart) {
+                // Empty lines are only returned if a not empty line follows them.
+                this.pendingEmptyLines++;
+                continue;
+            }
+
+            this.emptyLinesToReturn = this.pendingEmptyLines;
+            this.pendingEmptyLines = 0;
+            this.heldLineStart = this.lineStart;
+            this.heldLineEnd = this.lineEnd;
+        }
+    }
+
+    private boolean setLine(CharSequence source, int start, int end) {
+        this.hasReturnedLine = true;
+        this.lineSource = source;
+        this.lineStart = start;
+        this.lineEnd = end;
+        return true;
+    }
+
+    CharSequence getLineSource() {
+        return this.lineSource;
+    }
+
+    int getLineStart() {
+        return this.lineStart;
+    }
+
+    int getLineEnd() {
+        return this.lineEnd;
+    }
+
+    /**
+     * Find the next line in the window, reading more text if needed.
+     *
+     * @return false at the end of the text
+     */
+    private boolean nextRawLine() throws EscPosParserException {
+        int scanIndex = this.bufferStart;
+
+        while (true) {
+            for (int i = scanIndex; i < this.bufferEnd; i++) {
+                if (this.source.charAt(i) == '\n') {
+                    this.lineStart = this.bufferStart;
+                    this.lineEnd = i > this.bufferStart && this.source.charAt(i - 1) == '\r' ? i - 1 : i;
+                    this.bufferStart = i + 1;
+                    this.hasReadText = true;
+                    return true;
+                }
+            }
+            scanIndex = this.bufferEnd;
+
+            if (this.endOfText) {
+                if (this.bufferStart < this.bufferEnd) {
+                    this.lineStart = this.bufferStart;
+                    this.lineEnd = this.bufferEnd;
+                    this.bufferStart = this.bufferEnd;
+                    this.hasReadText = true;
+                    return true;
+                }
+                return false;
+            }
+
+            scanIndex -= this.bufferStart;
+            this.fillBuffer();
+        }
+    }
+
+    private void fillBuffer() throws EscPosParserException {
+        int length = this.bufferEnd - this.bufferStart;
+
+        if (this.bufferStart > 0) {
+            System.arraycopy(this.buffer, this.bufferStart, this.buffer, 0, length);
+            this.bufferStart = 0;
+            this.bufferEnd = length;
+        } else if (length == this.buffer.length) {
+            // The current line is longer than the window.
+            char[] buffer = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, buffer, 0, length);
+            this.buffer = buffer;
+            this.source = CharBuffer.wrap(buffer);
+        }
+
+        try {
+            int read = this.reader.read(this.buffer, this.bufferEnd, this.buffer.length - this.bufferEnd);
+            if (read == -1) {
+                this.endOfText = true;
+            } else {
+                this.bufferEnd += read;
+            }
+        } catch (IOException e) {
+            throw new EscPosParserException("Unable to read the formatted text : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close the reader of the formatted text.
+     */
+    @Override
+    public void close() {
+        if (this.reader != null) {
+            try {
+                this.reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.reader = null;
+        }
+    }
+}
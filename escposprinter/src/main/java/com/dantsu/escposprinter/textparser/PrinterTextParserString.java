@@ -1,64 +1,72 @@
 package com.dantsu.escposprinter.textparser;
 
 import java.io.UnsupportedEncodingException;
-import java.util.Arrays;
 
 import com.dantsu.escposprinter.EscPosCharsetEncoding;
-import com.dantsu.escposprinter.EscPosPrinter;
 import com.dantsu.escposprinter.EscPosPrinterCommands;
 import com.dantsu.escposprinter.exceptions.EscPosEncodingException;
 
 public class PrinterTextParserString implements IPrinterTextParserElement {
-    private EscPosPrinter printer;
+    private EscPosCharsetEncoding charsetEncoding;
     private String text;
-    private byte[] textSize;
-    private byte[] textColor;
-    private byte[] textReverseColor;
-    private byte[] textBold;
-    private byte[] textUnderline;
-    private byte[] textDoubleStrike;
-    private byte[] textFont;
+    private volatile byte[] textBytes;
+    private int style;
 
     public PrinterTextParserString(PrinterTextParserColumn printerTextParserColumn, String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike) {
         this(printerTextParserColumn, text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, EscPosPrinterCommands.TEXT_FONT_A);
     }
 
     public PrinterTextParserString(PrinterTextParserColumn printerTextParserColumn, String text, byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike, byte[] textFont) {
-        this.printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
+        this(printerTextParserColumn, text, PrinterTextParserStyle.fromCommands(textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike, textFont));
+    }
+
+    /**
+     * Create new instance of PrinterTextParserString.
+     *
+     * @param printerTextParserColumn Parent PrinterTextParserColumn instance.
+     * @param text                    Text to be printed
+     * @param style                   Text style word, see PrinterTextParserStyle
+     */
+    public PrinterTextParserString(PrinterTextParserColumn printerTextParserColumn, String text, int style) {
+        this.charsetEncoding = printerTextParserColumn.getLine().getTextParser().getPrinter().getEncoding();
         this.text = text;
-        this.textSize = textSize;
-        this.textColor = textColor;
-        this.textReverseColor = textReverseColor;
-        this.textBold = textBold;
-        this.textUnderline = textUnderline;
-        this.textDoubleStrike = textDoubleStrike;
-        this.textFont = textFont;
+        this.style = style;
     }
 
-    @Override
-    public int length() throws EscPosEncodingException {
-        EscPosCharsetEncoding charsetEncoding = this.printer.getEncoding();
+    public String getText() {
+        return this.text;
+    }
 
-        int coef = 1;
-        if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_DOUBLE_WIDTH) || Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG))
-            coef = 2;
-        else if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG_2))
-            coef = 3;
-        else if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG_3))
-            coef = 4;
-        else if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG_4))
-            coef = 5;
-        else if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG_5))
-            coef = 6;
-        else if(Arrays.equals(this.textSize, EscPosPrinterCommands.TEXT_SIZE_BIG_6))
-            coef = 7;
+    public int getStyle() {
+        return this.style;
+    }
 
-        if (charsetEncoding != null) {
+    /**
+     * Get the text encoded with the charset encoding of the printer. The encoding is done once, then kept : a cached
+     * line can be printed by several threads, the volatile field publishes the encoded text safely to all of them.
+     *
+     * @return Encoded text, null if the printer has no charset encoding
+     */
+    public byte[] getTextBytes() throws EscPosEncodingException {
+        byte[] textBytes = this.textBytes;
+        if (textBytes == null && this.charsetEncoding != null) {
             try {
-                return this.text.getBytes(charsetEncoding.getName()).length * coef;
+                textBytes = this.text.getBytes(this.charsetEncoding.getName());
             } catch (UnsupportedEncodingException e) {
                 throw new EscPosEncodingException(e.getMessage());
             }
+            this.textBytes = textBytes;
+        }
+        return textBytes;
+    }
+
+    @Override
+    public int length() throws EscPosEncodingException {
+        int coef = PrinterTextParserStyle.getWidthMultiplier(this.style);
+        byte[] textBytes = this.getTextBytes();
+
+        if (textBytes != null) {
+            return textBytes.length * coef;
         }
 
         return this.text.length() * coef;
@@ -72,8 +80,23 @@ public class PrinterTextParserString implements IPrinterTextParserElement {
      */
     @Override
     public PrinterTextParserString print(EscPosPrinterCommands printerSocket) throws EscPosEncodingException {
-        printerSocket.setFont(this.textFont);
-        printerSocket.printText(this.text, this.textSize, this.textColor, this.textReverseColor, this.textBold, this.textUnderline, this.textDoubleStrike);
+        int style = this.style;
+        byte[]
+                textBytes = this.getTextBytes(),
+                textSize = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_SIZE),
+                textColor = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_COLOR),
+                textReverseColor = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_REVERSE_COLOR),
+                textBold = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_BOLD),
+                textUnderline = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_UNDERLINE),
+                textDoubleStrike = PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE);
+
+        printerSocket.setFont(PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_FONT));
+        EscPosCharsetEncoding printerCharsetEncoding = printerSocket.getCharsetEncoding();
+        if (textBytes != null && printerCharsetEncoding != null && this.charsetEncoding.getName().equals(printerCharsetEncoding.getName())) {
+            printerSocket.printText(textBytes, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike);
+        } else {
+            printerSocket.printText(this.text, textSize, textColor, textReverseColor, textBold, textUnderline, textDoubleStrike);
+        }
         return this;
     }
 }
@@ -0,0 +1,184 @@
+package com.dantsu.escposprinter.textparser;
+
+import java.util.Arrays;
+
+import com.dantsu.escposprinter.EscPosPrinterCommands;
+
+/**
+ * Text style packed in a single int.
+ * <p>
+ * Each field of the style is a small code stored in its own bits. Codes are only translated to
+ * ESC/POS command bytes when the text is printed, using the lookup tables of this class.
+ * The style 0 is the printer default style (normal size, black, not bold, no underline, font A).
+ */
+public final class PrinterTextParserStyle {
+
+    public static final int FIELD_SIZE = 0;
+    public static final int FIELD_COLOR = 1;
+    public static final int FIELD_REVERSE_COLOR = 2;
+    public static final int FIELD_BOLD = 3;
+    public static final int FIELD_UNDERLINE = 4;
+    public static final int FIELD_DOUBLE_STRIKE = 5;
+    public static final int FIELD_STRIKETHROUGH = 6;
+    public static final int FIELD_FONT = 7;
+    public static final int FIELDS_COUNT = 8;
+
+    private static final int[] FIELDS_SHIFT = {0, 4, 5, 6, 7, 9, 10, 11};
+    private static final int[] FIELDS_MASK = {0xF, 0x1, 0x1, 0x1, 0x3, 0x1, 0x1, 0x7};
+
+    public static final int DEFAULT = 0;
+
+    public static final int SIZE_NORMAL = 0;
+    public static final int SIZE_DOUBLE_HEIGHT = 1;
+    public static final int SIZE_DOUBLE_WIDTH = 2;
+    public static final int SIZE_BIG = 3;
+    public static final int SIZE_BIG_2 = 4;
+    public static final int SIZE_BIG_3 = 5;
+    public static final int SIZE_BIG_4 = 6;
+    public static final int SIZE_BIG_5 = 7;
+    public static final int SIZE_BIG_6 = 8;
+
+    public static final int UNDERLINE_OFF = 0;
+    public static final int UNDERLINE_ON = 1;
+    public static final int UNDERLINE_LARGE = 2;
+
+    public static final int FONT_A = 0;
+    public static final int FONT_B = 1;
+    public static final int FONT_C = 2;
+    public static final int FONT_D = 3;
+    public static final int FONT_E = 4;
+
+    public static final int OFF = 0;
+    public static final int ON = 1;
+
+    /**
+     * Fields kept by the spaces added to align a column : color, reverse color, underline and double strike.
+     */
+    public static final int PADDING_MASK =
+            (0x1 << 4) | (0x1 << 5) | (0x3 << 7) | (0x1 << 9);
+
+    private static final byte[][] TEXT_SIZES = {
+            EscPosPrinterCommands.TEXT_SIZE_NORMAL,
+            EscPosPrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT,
+            EscPosPrinterCommands.TEXT_SIZE_DOUBLE_WIDTH,
+            EscPosPrinterCommands.TEXT_SIZE_BIG,
+            EscPosPrinterCommands.TEXT_SIZE_BIG_2,
+            EscPosPrinterCommands.TEXT_SIZE_BIG_3,
+            EscPosPrinterCommands.TEXT_SIZE_BIG_4,
+            EscPosPrinterCommands.TEXT_SIZE_BIG_5,
+            EscPosPrinterCommands.TEXT_SIZE_BIG_6
+    };
+    private static final int[] TEXT_SIZES_WIDTH = {1, 1, 2, 2, 3, 4, 5, 6, 7};
+    private static final byte[][] TEXT_COLORS = {EscPosPrinterCommands.TEXT_COLOR_BLACK, EscPosPrinterCommands.TEXT_COLOR_RED};
+    private static final byte[][] TEXT_REVERSE_COLORS = {EscPosPrinterCommands.TEXT_COLOR_REVERSE_OFF, EscPosPrinterCommands.TEXT_COLOR_REVERSE_ON};
+    private static final byte[][] TEXT_WEIGHTS = {EscPosPrinterCommands.TEXT_WEIGHT_NORMAL, EscPosPrinterCommands.TEXT_WEIGHT_BOLD};
+    private static final byte[][] TEXT_UNDERLINES = {EscPosPrinterCommands.TEXT_UNDERLINE_OFF, EscPosPrinterCommands.TEXT_UNDERLINE_ON, EscPosPrinterCommands.TEXT_UNDERLINE_LARGE};
+    private static final byte[][] TEXT_DOUBLE_STRIKES = {EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_OFF, EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_ON};
+    private static final byte[][] TEXT_FONTS = {
+            EscPosPrinterCommands.TEXT_FONT_A,
+            EscPosPrinterCommands.TEXT_FONT_B,
+            EscPosPrinterCommands.TEXT_FONT_C,
+            EscPosPrinterCommands.TEXT_FONT_D,
+            EscPosPrinterCommands.TEXT_FONT_E
+    };
+
+    private static final byte[][][] FIELDS_COMMANDS = {
+            PrinterTextParserStyle.TEXT_SIZES,
+            PrinterTextParserStyle.TEXT_COLORS,
+            PrinterTextParserStyle.TEXT_REVERSE_COLORS,
+            PrinterTextParserStyle.TEXT_WEIGHTS,
+            PrinterTextParserStyle.TEXT_UNDERLINES,
+            PrinterTextParserStyle.TEXT_DOUBLE_STRIKES,
+            null,
+            PrinterTextParserStyle.TEXT_FONTS
+    };
+
+    private PrinterTextParserStyle() {
+    }
+
+    /**
+     * Read the code of a field.
+     *
+     * @param style Style word
+     * @param field One of PrinterTextParserStyle.FIELD_... constants
+     * @return Code of the field
+     */
+    public static int get(int style, int field) {
+        return (style >>> PrinterTextParserStyle.FIELDS_SHIFT[field]) & PrinterTextParserStyle.FIELDS_MASK[field];
+    }
+
+    /**
+     * Replace the code of a field.
+     *
+     * @param style Style word
+     * @param field One of PrinterTextParserStyle.FIELD_... constants
+     * @param code  New code of the field
+     * @return New style word
+     */
+    public static int set(int style, int field, int code) {
+        int shift = PrinterTextParserStyle.FIELDS_SHIFT[field], mask = PrinterTextParserStyle.FIELDS_MASK[field];
+        return (style & ~(mask << shift)) | ((code & mask) << shift);
+    }
+
+    /**
+     * Translate the code of a field to the ESC/POS command bytes.
+     *
+     * @param style Style word
+     * @param field One of PrinterTextParserStyle.FIELD_... constants, except FIELD_STRIKETHROUGH
+     * @return One of EscPosPrinterCommands.TEXT_... constants
+     */
+    public static byte[] getCommand(int style, int field) {
+        byte[][] commands = PrinterTextParserStyle.FIELDS_COMMANDS[field];
+        int code = PrinterTextParserStyle.get(style, field);
+        return code < commands.length ? commands[code] : commands[0];
+    }
+
+    /**
+     * Find the code of ESC/POS command bytes for a field.
+     *
+     * @param field   One of PrinterTextParserStyle.FIELD_... constants, except FIELD_STRIKETHROUGH
+     * @param command One of EscPosPrinterCommands.TEXT_... constants
+     * @return Code of the field, 0 (default) if the command is unknown
+     */
+    public static int getCode(int field, byte[] command) {
+        byte[][] commands = PrinterTextParserStyle.FIELDS_COMMANDS[field];
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i] == command) {
+                return i;
+            }
+        }
+        for (int i = 0; i < commands.length; i++) {
+            if (Arrays.equals(commands[i], command)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Build a style word from ESC/POS command bytes.
+     *
+     * @return Style word
+     */
+    public static int fromCommands(byte[] textSize, byte[] textColor, byte[] textReverseColor, byte[] textBold, byte[] textUnderline, byte[] textDoubleStrike, byte[] textFont) {
+        int style = PrinterTextParserStyle.DEFAULT;
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_SIZE, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_SIZE, textSize));
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_COLOR, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_COLOR, textColor));
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_REVERSE_COLOR, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_REVERSE_COLOR, textReverseColor));
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_BOLD, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_BOLD, textBold));
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_UNDERLINE, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_UNDERLINE, textUnderline));
+        style = PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_DOUBLE_STRIKE, textDoubleStrike));
+        return PrinterTextParserStyle.set(style, PrinterTextParserStyle.FIELD_FONT, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_FONT, textFont));
+    }
+
+    /**
+     * Get the width multiplier of the text size of a style.
+     *
+     * @param style Style word
+     * @return Number of characters used by one character
+     */
+    public static int getWidthMultiplier(int style) {
+        int code = PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_SIZE);
+        return code < PrinterTextParserStyle.TEXT_SIZES_WIDTH.length ? PrinterTextParserStyle.TEXT_SIZES_WIDTH[code] : 1;
+    }
+}
@@ -12,39 +12,24 @@ public class PrinterTextParserTag {
     public PrinterTextParserTag(String tag) {
         tag = tag.trim();
         
-        if(!tag.substring(0, 1).equals("<") || !tag.substring(tag.length() - 1).equals(">")) {
+        if(!tag.startsWith("<") || !tag.endsWith(">")) {
             return;
         }
         
         this.length = tag.length();
-        int openTagIndex = tag.indexOf("<"),
-            closeTagIndex = tag.indexOf(">"),
-            nextSpaceIndex = tag.indexOf(" ");
         
-        if(nextSpaceIndex != -1 && nextSpaceIndex < closeTagIndex) {
-            this.tagName = tag.substring(openTagIndex + 1, nextSpaceIndex).toLowerCase();
-    
-            String attributesString = tag.substring(nextSpaceIndex, closeTagIndex).trim();
-            while (attributesString.contains("='")) {
-                int egalPos = attributesString.indexOf("='"), endPos = attributesString.indexOf("'", egalPos + 2);
-        
-                String attributeName = attributesString.substring(0, egalPos);
-                String attributeValue = attributesString.substring(egalPos + 2, endPos);
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer(tag);
+        int token = lexer.next();
         
-                if(!attributeName.equals("")) {
-                    this.attributes.put(attributeName, attributeValue);
-                }
-        
-                attributesString = attributesString.substring(endPos + 1).trim();
-            }
-        } else {
-            this.tagName = tag.substring(openTagIndex + 1, closeTagIndex).toLowerCase();
+        if(token != PrinterTextParserLexer.TOKEN_TAG_OPEN && token != PrinterTextParserLexer.TOKEN_TAG_CLOSE) {
+            return;
         }
         
+        this.tagName = lexer.getName().toLowerCase();
+        this.isCloseTag = token == PrinterTextParserLexer.TOKEN_TAG_CLOSE;
         
-        if(this.tagName.substring(0, 1).equals("/")) {
-            this.tagName = this.tagName.substring(1);
-            this.isCloseTag = true;
+        while (lexer.nextAttribute()) {
+            this.attributes.put(lexer.getName(), lexer.getValue());
         }
     }
     
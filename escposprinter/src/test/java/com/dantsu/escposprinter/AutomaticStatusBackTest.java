@@ -0,0 +1,77 @@
+package com.dantsu.escposprinter;
+
+import com.dantsu.escposprinter.connection.DeviceInputReader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class AutomaticStatusBackTest {
+
+    private static DeviceInputReader newReader(AutomaticStatusBack automaticStatusBack) {
+        CopyOnWriteArrayList<DeviceInputReader.Listener> listeners = new CopyOnWriteArrayList<DeviceInputReader.Listener>();
+        listeners.add(automaticStatusBack);
+        return new DeviceInputReader("test", listeners, 64);
+    }
+
+    @Test
+    public void frames_areTakenOutOfTheReplies() throws Exception {
+        final ArrayList<PrinterStatus> statuses = new ArrayList<PrinterStatus>();
+        AutomaticStatusBack automaticStatusBack = new AutomaticStatusBack().addListener(new PrinterStatusListener() {
+            @Override
+            public void onStatusChanged(PrinterStatus status, PrinterStatus previous) {
+                statuses.add(status);
+            }
+        });
+        DeviceInputReader reader = AutomaticStatusBackTest.newReader(automaticStatusBack);
+
+        // ASB frame (cover open, paper near end) split over two packets, a DLE EOT reply in between.
+        reader.receive(new byte[]{0x30, 0x00}, 0, 2);
+        reader.receive(new byte[]{0x03, 0x00, 0x12}, 0, 3);
+
+        assertArrayEquals(new byte[]{0x12}, reader.read(4, 50));
+        assertEquals(1, statuses.size());
+        PrinterStatus status = statuses.get(0);
+        assertTrue(status.isAutomaticStatusBack());
+        assertTrue(status.isOnline());
+        assertTrue(status.isCoverOpen());
+        assertTrue(status.isPaperNearEnd());
+        assertFalse(status.isPaperEnd());
+        assertSame(status, automaticStatusBack.getStatus());
+    }
+
+    @Test
+    public void adapter_tellsOnlyTheChanges() {
+        final ArrayList<String> events = new ArrayList<String>();
+        AutomaticStatusBack automaticStatusBack = new AutomaticStatusBack().addListener(new PrinterStatusAdapter() {
+            @Override
+            public void onCoverOpenChanged(boolean coverOpen) {
+                events.add("cover " + coverOpen);
+            }
+
+            @Override
+            public void onPaperEndChanged(boolean paperEnd) {
+                events.add("paper " + paperEnd);
+            }
+
+            @Override
+            public void onErrorChanged(PrinterStatus status) {
+                events.add("error " + status.isErrorOccurred());
+            }
+        });
+        DeviceInputReader reader = AutomaticStatusBackTest.newReader(automaticStatusBack);
+
+        reader.receive(new byte[]{0x10, 0x00, 0x00, 0x00}, 0, 4);
+        events.clear();
+        // Same status again, then cover open, then paper end with autocutter error.
+        reader.receive(new byte[]{0x10, 0x00, 0x00, 0x00, 0x30, 0x00, 0x00, 0x00, 0x30, 0x08, 0x0C, 0x00}, 0, 12);
+
+        assertEquals(3, events.size());
+        assertEquals("cover true", events.get(0));
+        assertEquals("paper true", events.get(1));
+        assertEquals("error true", events.get(2));
+    }
+}
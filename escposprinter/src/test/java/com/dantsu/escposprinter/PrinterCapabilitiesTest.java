@@ -0,0 +1,127 @@
+package com.dantsu.escposprinter;
+
+import com.dantsu.escposprinter.connection.tcp.TcpConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Capabilities probe against a loopback stand-in printer answering DLE EOT, GS I, GS ( k fn 82 and GS a.
+ */
+public class PrinterCapabilitiesTest {
+
+    private ServerSocket server;
+    private Thread printerThread;
+
+    private static void writeInformation(OutputStream out, String value) throws IOException {
+        out.write(0x5F);
+        out.write(value.getBytes(StandardCharsets.US_ASCII));
+        out.write(0x00);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.printerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = PrinterCapabilitiesTest.this.server.accept()) {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    int[] last = new int[]{-1, -1, -1};
+                    int b;
+                    while ((b = in.read()) != -1) {
+                        last[0] = last[1];
+                        last[1] = last[2];
+                        last[2] = b;
+                        if (last[0] == 0x10 && last[1] == 0x04) {
+                            out.write(0x12);
+                        } else if (last[0] == 0x1D && last[1] == 0x49) {
+                            switch (b) {
+                                case 0x01:
+                                    out.write(0x20);
+                                    break;
+                                case 0x02:
+                                    out.write(0x02);
+                                    break;
+                                case 0x41:
+                                    PrinterCapabilitiesTest.writeInformation(out, "1.02 ESC/POS");
+                                    break;
+                                case 0x42:
+                                    PrinterCapabilitiesTest.writeInformation(out, "EPSON");
+                                    break;
+                                case 0x43:
+                                    PrinterCapabilitiesTest.writeInformation(out, "TM-T20II");
+                                    break;
+                            }
+                        } else if (last[0] == 0x31 && last[1] == 0x52 && b == 0x30) {
+                            out.write(new byte[]{0x37, 0x36, 0x31, 0x1F, 0x30, 0x00});
+                        } else if (last[0] == 0x1D && last[1] == 0x61 && b == 0x0F) {
+                            out.write(new byte[]{0x10, 0x00, 0x00, 0x00});
+                        }
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        this.printerThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.close();
+        this.printerThread.join(2000);
+    }
+
+    @Test
+    public void probe_readsIdentityAndSupportedCommands() throws Exception {
+        TcpConnection connection = new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), this.server.getLocalPort(), 2000);
+        EscPosPrinterCommands printer = new EscPosPrinterCommands(connection).connect();
+
+        PrinterCapabilities capabilities = printer.probeCapabilities(500);
+        printer.disconnect();
+
+        assertSame(capabilities, printer.getCapabilities());
+        assertTrue(capabilities.isStatusSupported());
+        assertEquals(0x20, capabilities.getModelId());
+        assertTrue(capabilities.hasAutocutter());
+        assertEquals("1.02 ESC/POS", capabilities.getFirmware());
+        assertEquals("EPSON", capabilities.getManufacturer());
+        assertEquals("TM-T20II", capabilities.getModelName());
+        assertTrue(capabilities.isNativeQrCodeSupported());
+        assertTrue(capabilities.isAutomaticStatusBackSupported());
+        assertTrue(capabilities.isRasterImageSupported());
+    }
+
+    @Test
+    public void serialize_keepsAllTheCapabilities() {
+        PrinterCapabilities capabilities = new PrinterCapabilities().setRasterImageSupported(false);
+        capabilities.parseStatusReply(new byte[]{0x12});
+        capabilities.parseIds(new byte[]{0x20, 0x02});
+        capabilities.parseInformation(PrinterCapabilities.INFO_MODEL_NAME, new byte[]{0x5F, 'T', ';', '1', 0x00});
+
+        PrinterCapabilities copy = PrinterCapabilities.unserialize(capabilities.serialize());
+
+        assertNotNull(copy);
+        assertEquals("T,1", copy.getModelName());
+        assertNull(copy.getFirmware());
+        assertEquals(0x20, copy.getModelId());
+        assertTrue(copy.isStatusSupported());
+        assertFalse(copy.isNativeQrCodeSupported());
+        assertFalse(copy.isRasterImageSupported());
+        assertEquals(capabilities.serialize(), copy.serialize());
+    }
+}
@@ -0,0 +1,41 @@
+package com.dantsu.escposprinter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterProfilesTest {
+
+    @Test
+    public void bundledProfiles_areFoundByIdAndModelName() throws Exception {
+        PrinterProfiles profiles = PrinterProfiles.getDefault();
+
+        PrinterProfile profile = profiles.get("epson-tm-t20");
+        assertNotNull(profile);
+        assertSame(profile, profiles.findByModelName(" tm-t20ii "));
+        assertEquals(48, profile.getCharsPerLine());
+        assertEquals(64, profile.getCharsPerLine(PrinterProfile.FONT_B));
+        assertEquals(576, new EscPosPrinter((EscPosPrinterCommands) null, 203, profile.getPrinterWidthMM(), 48).getPrinterWidthPx());
+        assertArrayEquals(new byte[]{0x1B, 0x74, 19}, profile.getCharsetEncoding("cp858").getCommand());
+        assertNull(profile.getCharsetEncoding("cp1256"));
+        assertTrue(profile.supportsSymbology(PrinterProfile.SYMBOLOGY_QRCODE));
+        assertNull(profiles.findByModelName("Unknown"));
+    }
+
+    @Test
+    public void load_overridesTheProfileWithTheSameId() throws Exception {
+        PrinterProfiles profiles = new PrinterProfiles()
+                .load("{\"profiles\": [{\"id\": \"p58\", \"models\": [\"P-58\"], \"dpi\": 203, \"dotsPerLine\": 384, " +
+                        "\"charsPerLine\": {\"A\": 32}, \"graphics\": [\"GS v 0\"]}]}")
+                .load("{\"profiles\": [{\"id\": \"p58\", \"models\": [\"P-58B\"], \"dpi\": 203, \"dotsPerLine\": 384, " +
+                        "\"charsPerLine\": {\"A\": 30}, \"printSpeed\": 50, \"graphics\": [\"ESC *\"]}]}");
+
+        PrinterProfile profile = profiles.get("p58");
+        assertEquals(30, profile.getCharsPerLine());
+        assertNull(profiles.findByModelName("P-58"));
+        assertSame(profile, profiles.findByModelName("P-58B"));
+        assertFalse(profile.supportsGraphics(PrinterProfile.GRAPHICS_RASTER_IMAGE));
+        assertEquals(2.5f, profile.getMillisPerDotLine(), 0.01f);
+        assertEquals(1, profiles.getAll().size());
+    }
+}
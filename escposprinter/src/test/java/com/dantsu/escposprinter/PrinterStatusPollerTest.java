@@ -0,0 +1,122 @@
+package com.dantsu.escposprinter;
+
+import com.dantsu.escposprinter.connection.tcp.TcpConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * PrinterStatusPoller against a loopback stand-in printer answering the DLE EOT queries.
+ */
+public class PrinterStatusPollerTest {
+
+    private ServerSocket server;
+    private Thread printerThread;
+    private final AtomicInteger queries = new AtomicInteger();
+    private volatile byte offlineStatus = 0x12;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.printerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = PrinterStatusPollerTest.this.server.accept()) {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    int b;
+                    int previous = -1;
+                    int beforePrevious = -1;
+                    while ((b = in.read()) != -1) {
+                        if (beforePrevious == 0x10 && previous == 0x04) {
+                            if (b == 0x01) {
+                                PrinterStatusPollerTest.this.queries.incrementAndGet();
+                            }
+                            out.write(b == 0x02 ? PrinterStatusPollerTest.this.offlineStatus : 0x12);
+                            out.flush();
+                        }
+                        beforePrevious = previous;
+                        previous = b;
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        this.printerThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.close();
+        this.printerThread.join(2000);
+    }
+
+    @Test
+    public void poller_publishesOnlyChanges() throws Exception {
+        TcpConnection connection = new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), this.server.getLocalPort(), 2000);
+        EscPosPrinterCommands printer = new EscPosPrinterCommands(connection).connect();
+        final ArrayList<PrinterStatus> statuses = new ArrayList<PrinterStatus>();
+        PrinterStatusPoller poller = new PrinterStatusPoller().setFastInterval(20).setIdleIntervals(20, 40);
+
+        poller.register(printer, new PrinterStatusListener() {
+            @Override
+            public void onStatusChanged(PrinterStatus status, PrinterStatus previous) {
+                synchronized (statuses) {
+                    statuses.add(status);
+                }
+            }
+        });
+        Thread.sleep(300);
+        synchronized (statuses) {
+            assertEquals(1, statuses.size());
+            assertFalse(statuses.get(0).isCoverOpen());
+        }
+        assertTrue(this.queries.get() > 2);
+
+        this.offlineStatus = 0x16;
+        Thread.sleep(300);
+        synchronized (statuses) {
+            assertEquals(2, statuses.size());
+            assertTrue(statuses.get(1).isCoverOpen());
+        }
+
+        poller.clear();
+        printer.disconnect();
+    }
+
+    @Test
+    public void poller_skipsPrinterUsedByAnotherThread() throws Exception {
+        TcpConnection connection = new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), this.server.getLocalPort(), 2000);
+        EscPosPrinterCommands printer = new EscPosPrinterCommands(connection).connect();
+        PrinterStatusPoller poller = new PrinterStatusPoller().setFastInterval(20).setIdleIntervals(20, 40);
+
+        connection.getLock().lock();
+        try {
+            poller.register(printer, new PrinterStatusAdapter() {
+            });
+            Thread.sleep(200);
+            assertEquals(0, this.queries.get());
+        } finally {
+            connection.getLock().unlock();
+        }
+        Thread.sleep(200);
+        assertTrue(this.queries.get() > 0);
+        assertNotNull(poller.getStatus(printer));
+
+        poller.clear();
+        printer.disconnect();
+    }
+}
@@ -0,0 +1,36 @@
+package com.dantsu.escposprinter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterStatusTest {
+
+    @Test
+    public void parseStatusReplies_setsAllStatuses() {
+        PrinterStatus status = new PrinterStatus();
+        // Online, cover open, no error, paper near end
+        assertEquals(4, status.parseStatusReplies(new byte[]{0x12, 0x16, 0x12, 0x1E}));
+
+        assertTrue(status.isOnline());
+        assertTrue(status.isCoverOpen());
+        assertFalse(status.isUnrecoverableError());
+        assertTrue(status.isPaperNearEnd());
+        assertFalse(status.isPaperEnd());
+        assertTrue(status.isPaperStatusQueried());
+    }
+
+    @Test
+    public void parseStatusReplies_keepsPartialAnswers() {
+        PrinterStatus status = new PrinterStatus();
+        // DLE EOT 1 answered offline, DLE EOT 2 answered with noise, nothing else
+        assertEquals(1, status.parseStatusReplies(new byte[]{0x1A, (byte) 0xFF}));
+
+        assertTrue(status.isPrinterStatusQueried());
+        assertFalse(status.isOnline());
+        assertFalse(status.isOfflineStatusQueried());
+        assertFalse(status.isErrorStatusQueried());
+        assertFalse(status.isPaperStatusQueried());
+        assertTrue(status.hasAnyStatus());
+    }
+}
@@ -0,0 +1,100 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ByteRingBufferTest {
+
+    @Test
+    public void write_wrapsAroundAndDropsOverflow() {
+        ByteRingBuffer ring = new ByteRingBuffer(5);
+        assertEquals(8, ring.getCapacity());
+
+        assertEquals(6, ring.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6));
+        byte[] read = new byte[4];
+        assertEquals(4, ring.read(read, 0, 4));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, read);
+
+        // 2 bytes left, 6 free : the last 2 bytes are dropped.
+        assertEquals(6, ring.write(new byte[]{7, 8, 9, 10, 11, 12, 13, 14}, 0, 8));
+        assertEquals(8, ring.available());
+        read = new byte[10];
+        assertEquals(8, ring.read(read, 0, 10));
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 10, 11, 12, 0, 0}, read);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void read_returnsNothingAfterTimeout() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(16);
+        long start = System.currentTimeMillis();
+        assertEquals(0, ring.read(new byte[4], 0, 4, 50));
+        assertTrue(System.currentTimeMillis() - start >= 40);
+    }
+
+    @Test
+    public void read_wakesUpWhenDataArrives() throws Exception {
+        final ByteRingBuffer ring = new ByteRingBuffer(16);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ring.write(new byte[]{0x12}, 0, 1);
+            }
+        });
+        writer.start();
+
+        byte[] read = new byte[4];
+        long start = System.currentTimeMillis();
+        assertEquals(1, ring.read(read, 0, 4, 5000));
+        assertEquals(0x12, read[0]);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        writer.join();
+    }
+
+    @Test
+    public void readAndWrite_keepOrderAcrossThreads() throws Exception {
+        final ByteRingBuffer ring = new ByteRingBuffer(64);
+        final int total = 200000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] chunk = new byte[7];
+                int value = 0;
+                while (value < total) {
+                    int length = Math.min(chunk.length, total - value);
+                    for (int i = 0; i < length; i++) {
+                        chunk[i] = (byte) (value + i);
+                    }
+                    int written = 0;
+                    while (written < length) {
+                        written += ring.write(chunk, written, length - written);
+                    }
+                    value += length;
+                }
+            }
+        });
+        writer.start();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] buffer = new byte[13];
+        while (received.size() < total) {
+            int read = ring.read(buffer, 0, buffer.length, 5000);
+            assertTrue(read > 0);
+            received.write(buffer, 0, read);
+        }
+        writer.join();
+
+        byte[] bytes = received.toByteArray();
+        for (int i = 0; i < total; i++) {
+            assertEquals((byte) i, bytes[i]);
+        }
+    }
+}
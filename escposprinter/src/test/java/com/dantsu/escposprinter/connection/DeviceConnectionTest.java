@@ -0,0 +1,63 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class DeviceConnectionTest {
+
+    private static class CaptureConnection extends DeviceConnection {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        public DeviceConnection connect() {
+            this.outputStream = this.received;
+            return this;
+        }
+
+        @Override
+        public DeviceConnection disconnect() {
+            this.outputStream = null;
+            return this;
+        }
+    }
+
+    @Test
+    public void write_doesNotLoseBytesWrittenFromSeveralThreads() throws Exception {
+        final CaptureConnection connection = new CaptureConnection();
+        connection.connect();
+        final Exception[] errors = new Exception[2];
+        Thread[] threads = new Thread[2];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            connection.write(new byte[]{(byte) index, (byte) i});
+                            if (i % 100 == 99) {
+                                connection.send();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors[index] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        connection.send();
+
+        assertNull(errors[0]);
+        assertNull(errors[1]);
+        assertEquals(2 * 2000 * 2, connection.received.size());
+        assertFalse(connection.hasPendingData());
+    }
+}
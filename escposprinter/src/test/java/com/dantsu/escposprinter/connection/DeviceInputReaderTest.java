@@ -0,0 +1,80 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class DeviceInputReaderTest {
+
+    @Test
+    public void read_gathersReplySplitOverPackets() throws Exception {
+        PipedInputStream input = new PipedInputStream();
+        final PipedOutputStream printer = new PipedOutputStream(input);
+        DeviceInputReader reader = new DeviceInputReader("test", new CopyOnWriteArrayList<DeviceInputReader.Listener>(), 64)
+                .start(new DeviceInputReader.InputStreamSource(input));
+        // A pipe is broken once its writer thread ends, the sender lives until the end of the test.
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    printer.write(new byte[]{0x12, 0x13});
+                    printer.flush();
+                    Thread.sleep(50);
+                    printer.write(new byte[]{0x14, 0x15, 0x16});
+                    printer.flush();
+                    done.await();
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        sender.start();
+
+        assertArrayEquals(new byte[]{0x12, 0x13, 0x14, 0x15}, reader.read(4, 2000));
+        assertArrayEquals(new byte[]{0x16}, reader.read(1, 2000));
+
+        long start = System.currentTimeMillis();
+        assertArrayEquals(new byte[0], reader.read(1, 60));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        done.countDown();
+        sender.join();
+
+        printer.close();
+        reader.read(1, 2000);
+        assertFalse(reader.isRunning());
+        reader.stop();
+    }
+
+    @Test
+    public void receive_givesUnsolicitedBytesToListeners() throws Exception {
+        final ByteArrayOutputStream unsolicited = new ByteArrayOutputStream();
+        CopyOnWriteArrayList<DeviceInputReader.Listener> listeners = new CopyOnWriteArrayList<DeviceInputReader.Listener>();
+        listeners.add(new DeviceInputReader.Listener() {
+            @Override
+            public boolean onByteReceived(int b) {
+                // XON / XOFF
+                if (b == 0x11 || b == 0x13) {
+                    unsolicited.write(b);
+                    return true;
+                }
+                return false;
+            }
+        });
+        DeviceInputReader reader = new DeviceInputReader("test", listeners, 64);
+
+        reader.receive(new byte[]{0x13, 0x12, 0x11, 0x16, 0x13}, 0, 5);
+
+        assertArrayEquals(new byte[]{0x13, 0x11, 0x13}, unsolicited.toByteArray());
+        assertArrayEquals(new byte[]{0x12, 0x16}, reader.read(100));
+        assertArrayEquals(new byte[0], reader.read(10));
+    }
+}
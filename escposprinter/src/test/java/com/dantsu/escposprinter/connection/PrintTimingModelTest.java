@@ -0,0 +1,36 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrintTimingModelTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void reserve_waitsOnlyWhenTheBufferWouldOverflow() {
+        PrintTimingModel model = new PrintTimingModel(100, 2f);
+        long now = System.nanoTime();
+
+        assertEquals(0, model.reserve(60, 10, 0, now));
+        assertEquals(0, model.reserve(30, 10, 0, now));
+        assertEquals(90, model.getBufferedBytes(now));
+
+        // The first block must be printed (10 lines x 2ms) to free enough space.
+        assertEquals(20, model.reserve(30, 0, 0, now));
+        assertEquals(60, model.getBufferedBytes(now));
+        assertEquals(0, model.getBufferedBytes(now + 50 * MS));
+    }
+
+    @Test
+    public void reserve_neverWaitsForAFasterPrinter() {
+        PrintTimingModel model = new PrintTimingModel(4096, 0.5f);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, model.reserve(500, 10, 0, now + i * 10 * MS));
+        }
+        assertTrue(model.getBufferedBytes(now + 100 * 10 * MS) <= 500);
+    }
+}
@@ -0,0 +1,200 @@
+package com.dantsu.escposprinter.connection;
+
+import com.dantsu.escposprinter.connection.tcp.TcpConnection;
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * PrinterSessionManager with TcpConnection against a loopback stand-in printer.
+ */
+public class PrinterSessionManagerTest {
+
+    private ServerSocket server;
+    private final ArrayList<Socket> accepted = new ArrayList<Socket>();
+    private Thread acceptThread;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ServerSocket(0, 4, InetAddress.getLoopbackAddress());
+        this.acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = PrinterSessionManagerTest.this.server.accept();
+                        synchronized (PrinterSessionManagerTest.this.accepted) {
+                            PrinterSessionManagerTest.this.accepted.add(socket);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        this.acceptThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.close();
+        this.acceptThread.join(2000);
+        synchronized (this.accepted) {
+            for (Socket socket : this.accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    private TcpConnection newConnection() {
+        return new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), this.server.getLocalPort(), 2000);
+    }
+
+    private int acceptedCount() throws InterruptedException {
+        Thread.sleep(100);
+        synchronized (this.accepted) {
+            return this.accepted.size();
+        }
+    }
+
+    @Test
+    public void acquire_reusesOpenConnection() throws Exception {
+        PrinterSessionManager manager = new PrinterSessionManager(60000);
+
+        DeviceConnection first = manager.acquire(this.newConnection());
+        manager.release(first);
+        DeviceConnection second = manager.acquire(this.newConnection());
+        manager.release(second);
+
+        assertSame(first, second);
+        assertTrue(second.isConnected());
+        assertEquals(1, this.acceptedCount());
+        manager.closeAll();
+        assertFalse(first.isConnected());
+    }
+
+    @Test
+    public void acquire_reconnectsWhenPrinterClosedConnection() throws Exception {
+        PrinterSessionManager manager = new PrinterSessionManager(60000);
+
+        DeviceConnection first = manager.acquire(this.newConnection());
+        manager.release(first);
+        assertEquals(1, this.acceptedCount());
+        synchronized (this.accepted) {
+            this.accepted.get(0).close();
+        }
+        Thread.sleep(100);
+
+        DeviceConnection second = manager.acquire(this.newConnection());
+        assertTrue(second.isConnected());
+        assertEquals(2, this.acceptedCount());
+        manager.closeAll();
+    }
+
+    @Test
+    public void release_closesConnectionAfterIdleTimeout() throws Exception {
+        PrinterSessionManager manager = new PrinterSessionManager(100);
+
+        DeviceConnection connection = manager.acquire(this.newConnection());
+        manager.release(connection);
+        assertEquals(1, manager.size());
+        Thread.sleep(400);
+
+        assertEquals(0, manager.size());
+        assertFalse(connection.isConnected());
+    }
+
+    @Test
+    public void release_closesConnectionInBatchModeOrWithDataNotSent() throws Exception {
+        PrinterSessionManager manager = new PrinterSessionManager(60000);
+
+        DeviceConnection connection = manager.acquire(this.newConnection());
+        connection.setBatchMode(true);
+        manager.release(connection);
+        assertEquals(0, manager.size());
+        assertFalse(connection.isConnected());
+
+        connection = manager.acquire(this.newConnection());
+        connection.write(new byte[]{0x1B, 0x40});
+        manager.release(connection);
+        assertEquals(0, manager.size());
+        assertFalse(connection.isConnected());
+
+        connection = manager.acquire(this.newConnection());
+        connection.write(new byte[]{0x1B, 0x40});
+        connection.send();
+        manager.release(connection);
+        assertEquals(1, manager.size());
+        manager.closeAll();
+    }
+
+    /**
+     * Connection to a printer that takes as long to connect as the test wants.
+     */
+    private static class SlowConnection extends DeviceConnection {
+        private final CountDownLatch connecting = new CountDownLatch(1);
+        private final CountDownLatch connected = new CountDownLatch(1);
+
+        @Override
+        public DeviceConnection connect() throws EscPosConnectionException {
+            this.connecting.countDown();
+            try {
+                this.connected.await();
+            } catch (InterruptedException e) {
+                throw new EscPosConnectionException(e.getMessage());
+            }
+            this.outputStream = new ByteArrayOutputStream();
+            return this;
+        }
+
+        @Override
+        public DeviceConnection disconnect() {
+            this.outputStream = null;
+            return this;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void acquire_doesNotWaitForTheConnectionToAnotherPrinter() throws Exception {
+        final PrinterSessionManager manager = new PrinterSessionManager(60000);
+        final SlowConnection slow = new SlowConnection();
+        final DeviceConnection[] acquired = new DeviceConnection[1];
+        Thread slowJob = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    acquired[0] = manager.acquire("slow", slow);
+                } catch (EscPosConnectionException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        slowJob.start();
+        assertTrue(slow.connecting.await(2000, TimeUnit.MILLISECONDS));
+
+        DeviceConnection other = manager.acquire(this.newConnection());
+        assertTrue(other.isConnected());
+        manager.release(other);
+
+        slow.connected.countDown();
+        slowJob.join(2000);
+        assertSame(slow, acquired[0]);
+        assertTrue(slow.isConnected());
+        manager.release(slow);
+        assertEquals(2, manager.size());
+        manager.closeAll();
+    }
+}
@@ -0,0 +1,48 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransportTunerTest {
+
+    @Test
+    public void onSuccess_growsAdditivelyAndOnError_backsOffMultiplicatively() {
+        TransportTuner tuner = new TransportTuner(200, 20, 512);
+        final int[] notifications = {0};
+        tuner.setListener(new TransportTuner.Listener() {
+            @Override
+            public void onTuned(TransportTuner tuner) {
+                notifications[0]++;
+            }
+        });
+
+        for (int i = 0; i < 8; i++) {
+            tuner.onSuccess();
+        }
+        assertEquals(232, tuner.getChunkSize());
+        assertEquals(18, tuner.getChunkDelay());
+        assertEquals(1, notifications[0]);
+
+        tuner.onError();
+        assertEquals(116, tuner.getChunkSize());
+        assertEquals(36, tuner.getChunkDelay());
+
+        for (int i = 0; i < 8 * 100; i++) {
+            tuner.onSuccess();
+        }
+        assertEquals(512, tuner.getChunkSize());
+        assertEquals(0, tuner.getChunkDelay());
+
+        tuner.onError();
+        assertEquals(256, tuner.getChunkSize());
+        assertEquals(10, tuner.getChunkDelay());
+    }
+
+    @Test
+    public void unserialize_restoresSerializedValues() {
+        assertArrayEquals(new int[]{300, 4}, TransportTuner.unserialize(TransportTuner.serialize(new int[]{300, 4})));
+        assertNull(TransportTuner.unserialize("300"));
+        assertNull(TransportTuner.unserialize("a;b"));
+    }
+}
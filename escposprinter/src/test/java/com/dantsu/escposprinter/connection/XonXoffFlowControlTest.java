@@ -0,0 +1,43 @@
+package com.dantsu.escposprinter.connection;
+
+import org.junit.Test;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class XonXoffFlowControlTest {
+
+    @Test
+    public void awaitXon_blocksWhileXoffIsInEffect() throws Exception {
+        final XonXoffFlowControl flowControl = new XonXoffFlowControl();
+        CopyOnWriteArrayList<DeviceInputReader.Listener> listeners = new CopyOnWriteArrayList<DeviceInputReader.Listener>();
+        listeners.add(flowControl);
+        final DeviceInputReader reader = new DeviceInputReader("test", listeners, 64);
+
+        // XOFF and XON never reach the replies.
+        reader.receive(new byte[]{0x12, XonXoffFlowControl.XOFF, 0x14}, 0, 3);
+        assertArrayEquals(new byte[]{0x12, 0x14}, reader.read(0));
+        assertTrue(flowControl.isPaused());
+        assertFalse(flowControl.awaitXon(20));
+
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                reader.receive(new byte[]{XonXoffFlowControl.XON}, 0, 1);
+            }
+        });
+        printer.start();
+
+        long start = System.nanoTime();
+        assertTrue(flowControl.awaitXon(2000));
+        assertTrue(System.nanoTime() - start >= 40000000L);
+        assertFalse(flowControl.isPaused());
+        printer.join();
+    }
+}
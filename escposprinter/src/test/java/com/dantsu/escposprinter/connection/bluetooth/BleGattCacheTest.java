@@ -0,0 +1,213 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * BleGattCache saved to and read back from in-memory preferences, like after a restart of the application.
+ */
+public class BleGattCacheTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE_UUID = UUID.fromString("000018f0-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("00002af1-0000-1000-8000-00805f9b34fb");
+    private static final UUID NOTIFY_UUID = UUID.fromString("00002af0-0000-1000-8000-00805f9b34fb");
+
+    private static class FakePreferences implements SharedPreferences {
+        private final HashMap<String, String> values = new HashMap<String, String>();
+        private int commits = 0;
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<String, String>(this.values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return this.values.containsKey(key) ? this.values.get(key) : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return this.values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class FakeEditor implements SharedPreferences.Editor {
+            private final HashMap<String, String> puts = new HashMap<String, String>();
+            private final HashSet<String> removes = new HashSet<String>();
+            private boolean clear = false;
+
+            @Override
+            public Editor putString(String key, String value) {
+                this.puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor remove(String key) {
+                this.removes.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                this.clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (this.clear) {
+                    FakePreferences.this.values.clear();
+                }
+                for (String key : this.removes) {
+                    FakePreferences.this.values.remove(key);
+                }
+                FakePreferences.this.values.putAll(this.puts);
+                FakePreferences.this.commits++;
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                this.commit();
+            }
+        }
+    }
+
+    @Test
+    public void get_readsBackTheLayoutSavedByAnotherInstance() {
+        FakePreferences preferences = new FakePreferences();
+        new BleGattCache(preferences).put(BleGattCacheTest.ADDRESS, new BleGattCache.Entry(
+                BleGattCacheTest.SERVICE_UUID, BleGattCacheTest.CHARACTERISTIC_UUID, BleGattCacheTest.NOTIFY_UUID,
+                185, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE));
+
+        BleGattCache.Entry entry = new BleGattCache(preferences).get(BleGattCacheTest.ADDRESS);
+
+        assertNotNull(entry);
+        assertEquals(BleGattCacheTest.SERVICE_UUID, entry.getServiceUuid());
+        assertEquals(BleGattCacheTest.CHARACTERISTIC_UUID, entry.getCharacteristicUuid());
+        assertEquals(BleGattCacheTest.NOTIFY_UUID, entry.getNotifyCharacteristicUuid());
+        assertEquals(185, entry.getMtu());
+        assertEquals(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE, entry.getWriteType());
+        assertNull(new BleGattCache(preferences).get("66:77:88:99:AA:BB"));
+    }
+
+    @Test
+    public void get_readsBackALayoutWithoutNotifyCharacteristic() {
+        FakePreferences preferences = new FakePreferences();
+        new BleGattCache(preferences).put(BleGattCacheTest.ADDRESS, new BleGattCache.Entry(
+                BleGattCacheTest.SERVICE_UUID, BleGattCacheTest.CHARACTERISTIC_UUID, null,
+                23, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT));
+
+        BleGattCache.Entry entry = new BleGattCache(preferences).get(BleGattCacheTest.ADDRESS);
+
+        assertNotNull(entry);
+        assertNull(entry.getNotifyCharacteristicUuid());
+        assertEquals(23, entry.getMtu());
+        assertEquals(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, entry.getWriteType());
+    }
+
+    @Test
+    public void get_ignoresACorruptedLayout() {
+        FakePreferences preferences = new FakePreferences();
+        preferences.values.put(BleGattCacheTest.ADDRESS, "not-an-uuid;" + BleGattCacheTest.CHARACTERISTIC_UUID + ";185;1;");
+        preferences.values.put("66:77:88:99:AA:BB", BleGattCacheTest.SERVICE_UUID + ";185");
+
+        BleGattCache cache = new BleGattCache(preferences);
+
+        assertNull(cache.get(BleGattCacheTest.ADDRESS));
+        assertNull(cache.get("66:77:88:99:AA:BB"));
+    }
+
+    @Test
+    public void put_savesOnlyAChangedLayout() {
+        FakePreferences preferences = new FakePreferences();
+        BleGattCache cache = new BleGattCache(preferences);
+
+        cache.put(BleGattCacheTest.ADDRESS, new BleGattCache.Entry(BleGattCacheTest.SERVICE_UUID, BleGattCacheTest.CHARACTERISTIC_UUID, null, 185, 1));
+        cache.put(BleGattCacheTest.ADDRESS, new BleGattCache.Entry(BleGattCacheTest.SERVICE_UUID, BleGattCacheTest.CHARACTERISTIC_UUID, null, 185, 1));
+        assertEquals(1, preferences.commits);
+
+        cache.put(BleGattCacheTest.ADDRESS, new BleGattCache.Entry(BleGattCacheTest.SERVICE_UUID, BleGattCacheTest.CHARACTERISTIC_UUID, null, 247, 1));
+        assertEquals(2, preferences.commits);
+        assertEquals(247, new BleGattCache(preferences).get(BleGattCacheTest.ADDRESS).getMtu());
+
+        cache.remove(BleGattCacheTest.ADDRESS);
+        assertNull(cache.get(BleGattCacheTest.ADDRESS));
+        assertNull(new BleGattCache(preferences).get(BleGattCacheTest.ADDRESS));
+    }
+}
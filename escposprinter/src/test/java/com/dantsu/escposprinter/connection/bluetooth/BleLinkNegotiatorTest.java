@@ -0,0 +1,141 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * BleLinkNegotiator with a stand-in GATT connection and main thread : the posted runnable is run by the test.
+ */
+public class BleLinkNegotiatorTest {
+
+    private static class FakeLink implements BleLinkNegotiator.Link {
+        private final ArrayList<Integer> priorities = new ArrayList<Integer>();
+        private boolean accept = true;
+        private int phyRequests = 0;
+        private Runnable posted = null;
+        private long postedDelay = -1;
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            if (this.accept) {
+                this.priorities.add(priority);
+            }
+            return this.accept;
+        }
+
+        @Override
+        public void requestLe2mPhy() {
+            this.phyRequests++;
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delay) {
+            assertNull("Only one relax can be scheduled", this.posted);
+            this.posted = runnable;
+            this.postedDelay = delay;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            if (this.posted == runnable) {
+                this.posted = null;
+                this.postedDelay = -1;
+            }
+        }
+
+        private void runPosted() {
+            Runnable runnable = this.posted;
+            this.posted = null;
+            this.postedDelay = -1;
+            runnable.run();
+        }
+    }
+
+    @Test
+    public void requestFastLink_asksForTheHighPriorityOnceAndThe2mPhy() {
+        FakeLink link = new FakeLink();
+        BleLinkNegotiator negotiator = new BleLinkNegotiator(link);
+
+        negotiator.requestFastLink();
+        negotiator.requestHighPriority();
+
+        assertEquals(1, link.priorities.size());
+        assertEquals(BluetoothGatt.CONNECTION_PRIORITY_HIGH, (int) link.priorities.get(0));
+        assertEquals(1, link.phyRequests);
+        assertTrue(negotiator.isHighPriority());
+    }
+
+    @Test
+    public void requestHighPriority_retriesWhenTheRequestIsNotSent() {
+        FakeLink link = new FakeLink();
+        BleLinkNegotiator negotiator = new BleLinkNegotiator(link);
+
+        link.accept = false;
+        negotiator.requestHighPriority();
+        assertFalse(negotiator.isHighPriority());
+
+        link.accept = true;
+        negotiator.requestHighPriority();
+        assertTrue(negotiator.isHighPriority());
+        assertEquals(1, link.priorities.size());
+    }
+
+    @Test
+    public void scheduleRelaxPriority_goesBackToBalancedAfterTheIdleDelayOnly() {
+        FakeLink link = new FakeLink();
+        BleLinkNegotiator negotiator = new BleLinkNegotiator(link);
+        negotiator.requestFastLink();
+
+        // Data sent before the delay cancels the relax
+        negotiator.scheduleRelaxPriority();
+        assertEquals(BluetoothLeConnection.DEFAULT_IDLE_PRIORITY_DELAY_MS, link.postedDelay);
+        negotiator.requestHighPriority();
+        assertNull(link.posted);
+        assertEquals(1, link.priorities.size());
+
+        negotiator.scheduleRelaxPriority();
+        link.runPosted();
+        assertFalse(negotiator.isHighPriority());
+        assertEquals(BluetoothGatt.CONNECTION_PRIORITY_BALANCED, (int) link.priorities.get(1));
+
+        // The next send raises the priority again
+        negotiator.requestHighPriority();
+        assertTrue(negotiator.isHighPriority());
+        assertEquals(BluetoothGatt.CONNECTION_PRIORITY_HIGH, (int) link.priorities.get(2));
+
+        // 0 keeps the high priority
+        negotiator.setIdlePriorityDelay(0).scheduleRelaxPriority();
+        assertNull(link.posted);
+    }
+
+    @Test
+    public void onPhyUpdate_keepsTheParametersGrantedByTheDevice() {
+        FakeLink link = new FakeLink();
+        BleLinkNegotiator negotiator = new BleLinkNegotiator(link);
+
+        assertEquals(BluetoothDevice.PHY_LE_1M, negotiator.getTxPhy());
+        assertEquals(-1f, negotiator.getConnectionInterval(), 0f);
+
+        negotiator.onPhyUpdate(BluetoothDevice.PHY_LE_2M, BluetoothDevice.PHY_LE_1M, BluetoothGatt.GATT_SUCCESS);
+        negotiator.onPhyUpdate(BluetoothDevice.PHY_LE_CODED, BluetoothDevice.PHY_LE_CODED, BluetoothGatt.GATT_FAILURE);
+        negotiator.onConnectionUpdated(6, 0, BluetoothGatt.GATT_SUCCESS);
+        negotiator.onConnectionUpdated(80, 0, BluetoothGatt.GATT_FAILURE);
+
+        assertEquals(BluetoothDevice.PHY_LE_2M, negotiator.getTxPhy());
+        assertEquals(BluetoothDevice.PHY_LE_1M, negotiator.getRxPhy());
+        assertEquals(7.5f, negotiator.getConnectionInterval(), 0.001f);
+
+        negotiator.requestFastLink();
+        negotiator.scheduleRelaxPriority();
+        negotiator.reset();
+        assertNull(link.posted);
+        assertFalse(negotiator.isHighPriority());
+        assertEquals(-1f, negotiator.getConnectionInterval(), 0f);
+    }
+}
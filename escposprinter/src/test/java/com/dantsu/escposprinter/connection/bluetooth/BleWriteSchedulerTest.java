@@ -0,0 +1,108 @@
+package com.dantsu.escposprinter.connection.bluetooth;
+
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * BleWriteScheduler with a stand-in GATT stack calling back each packet from another thread.
+ */
+public class BleWriteSchedulerTest {
+
+    private static class FakeStack implements BleWriteScheduler.PacketWriter {
+        private final ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor();
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private int maxOutstanding = 0;
+        private int capacity;
+        private int busyAnswers = 0;
+        private boolean callBack = true;
+        private boolean reject = false;
+        private BleWriteScheduler scheduler;
+
+        FakeStack(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public synchronized int writePacket(byte[] packet) {
+            if (this.outstanding.get() >= this.capacity) {
+                this.busyAnswers++;
+                return BleWriteScheduler.WRITE_BUSY;
+            }
+            this.received.write(packet, 0, packet.length);
+            this.maxOutstanding = Math.max(this.maxOutstanding, this.outstanding.incrementAndGet());
+            if (this.callBack) {
+                this.callbacks.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        FakeStack.this.outstanding.decrementAndGet();
+                        FakeStack.this.scheduler.onPacketWritten(!FakeStack.this.reject);
+                    }
+                }, 1, TimeUnit.MILLISECONDS);
+            }
+            return BleWriteScheduler.WRITE_OK;
+        }
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void write_sendsAllPacketsWithinTheWindow() throws Exception {
+        FakeStack stack = new FakeStack(8);
+        stack.scheduler = new BleWriteScheduler(stack).setMaxOutstandingPackets(3);
+
+        byte[] data = BleWriteSchedulerTest.data(5000);
+        stack.scheduler.write(data, 182);
+
+        assertArrayEquals(data, stack.received.toByteArray());
+        assertTrue(stack.maxOutstanding <= 3);
+        assertEquals(0, stack.outstanding.get());
+    }
+
+    @Test
+    public void write_retriesWhenStackIsBusy() throws Exception {
+        FakeStack stack = new FakeStack(1);
+        stack.scheduler = new BleWriteScheduler(stack).setMaxOutstandingPackets(4);
+
+        byte[] data = BleWriteSchedulerTest.data(2000);
+        stack.scheduler.write(data, 100);
+
+        assertArrayEquals(data, stack.received.toByteArray());
+        assertTrue(stack.busyAnswers > 0);
+    }
+
+    @Test
+    public void write_continuesWithoutCallbacks() throws Exception {
+        FakeStack stack = new FakeStack(Integer.MAX_VALUE);
+        stack.callBack = false;
+        stack.scheduler = new BleWriteScheduler(stack).setMaxOutstandingPackets(4).setPacketTimeout(20);
+
+        byte[] data = BleWriteSchedulerTest.data(1000);
+        stack.scheduler.write(data, 100);
+
+        assertArrayEquals(data, stack.received.toByteArray());
+    }
+
+    @Test(expected = EscPosConnectionException.class)
+    public void write_failsWhenPrinterRejectsPacket() throws Exception {
+        FakeStack stack = new FakeStack(8);
+        stack.reject = true;
+        stack.scheduler = new BleWriteScheduler(stack);
+        stack.scheduler.write(BleWriteSchedulerTest.data(1000), 100);
+    }
+}
@@ -0,0 +1,254 @@
+package com.dantsu.escposprinter.connection.tcp;
+
+import com.dantsu.escposprinter.connection.PrintTimingModel;
+import com.dantsu.escposprinter.connection.TransportTuner;
+import com.dantsu.escposprinter.exceptions.EscPosConnectionException;
+import com.dantsu.escposprinter.exceptions.EscPosTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * TcpConnection against a loopback stand-in printer.
+ */
+public class TcpConnectionTest {
+
+    private ServerSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.server.close();
+    }
+
+    private TcpConnection newConnection() {
+        return new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), this.server.getLocalPort(), 2000);
+    }
+
+    @Test
+    public void send_deliversAllBytesInOrder() throws Exception {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = TcpConnectionTest.this.server.accept(); InputStream in = socket.getInputStream()) {
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        received.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        printer.start();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        TcpConnection connection = this.newConnection().connect();
+        for (int i = 0; i < 50; i++) {
+            byte[] bytes = new byte[1 + i * 997];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) (i + j);
+            }
+            connection.write(bytes);
+            expected.write(bytes);
+            if (i % 10 == 9) {
+                connection.send();
+            }
+        }
+        connection.disconnect();
+        printer.join(5000);
+
+        assertArrayEquals(expected.toByteArray(), received.toByteArray());
+    }
+
+    @Test
+    public void send_failsWhenPrinterStopsReading() throws Exception {
+        this.server.setReceiveBufferSize(4096);
+        TcpConnection connection = this.newConnection()
+                .setSendBufferSize(4096)
+                .setWriteTimeout(300)
+                .connect();
+        final Socket socket = this.server.accept();
+
+        connection.write(new byte[16 * 1024 * 1024]);
+        long start = System.currentTimeMillis();
+        int bytesWritten = 0;
+        try {
+            connection.send();
+            fail("send() must fail when the printer does not read");
+        } catch (EscPosTimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(e.getBytesWritten() > 0);
+            assertTrue(e.getBytesWritten() < 16 * 1024 * 1024);
+            bytesWritten = e.getBytesWritten();
+        }
+
+        // The printer reads again, the next send must only deliver its own bytes.
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (InputStream in = socket.getInputStream()) {
+                    byte[] buffer = new byte[65536];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        received.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        printer.start();
+        try {
+            connection.write(new byte[]{1, 2, 3, 4, 5});
+            connection.send();
+        } finally {
+            connection.disconnect();
+            printer.join(5000);
+            socket.close();
+        }
+
+        byte[] bytes = received.toByteArray();
+        assertEquals(bytesWritten + 5, bytes.length);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, Arrays.copyOfRange(bytes, bytes.length - 5, bytes.length));
+    }
+
+    @Test
+    public void send_waitsOnlyWhenThePrinterBufferIsFull() throws Exception {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = TcpConnectionTest.this.server.accept(); InputStream in = socket.getInputStream()) {
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        received.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        printer.start();
+
+        TcpConnection connection = this.newConnection();
+        connection.setTimingModel(new PrintTimingModel(100, 1f));
+        connection.connect();
+
+        // 100 dot lines fill the buffer of the printer, the next block waits until they are printed.
+        long start = System.currentTimeMillis();
+        connection.write(new byte[100]);
+        connection.addDotLines(100).send();
+        assertTrue(System.currentTimeMillis() - start < 50);
+        connection.write(new byte[50]);
+        connection.addPrintingTime(20).send();
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        connection.disconnect();
+        printer.join(5000);
+
+        assertEquals(150, received.size());
+    }
+
+    @Test
+    public void send_usesTheTunerChunksAndWaitsForXon() throws Exception {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = TcpConnectionTest.this.server.accept(); InputStream in = socket.getInputStream()) {
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    // XOFF after the first chunk, XON 200ms later
+                    while (received.size() < 20 && (read = in.read(buffer, 0, 20 - received.size())) != -1) {
+                        received.write(buffer, 0, read);
+                    }
+                    socket.getOutputStream().write(new byte[]{0x13});
+                    Thread.sleep(200);
+                    socket.getOutputStream().write(new byte[]{0x11});
+                    while ((read = in.read(buffer)) != -1) {
+                        received.write(buffer, 0, read);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        printer.start();
+
+        TcpConnection connection = this.newConnection();
+        TransportTuner tuner = new TransportTuner(20, 50, 20);
+        connection.setTimingModel(null);
+        connection.setTuner(tuner).setXonXoffFlowControl(true);
+        connection.connect();
+
+        long start = System.currentTimeMillis();
+        byte[] bytes = new byte[60];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        connection.write(bytes);
+        connection.send();
+        assertTrue(System.currentTimeMillis() - start >= 150);
+        connection.disconnect();
+        printer.join(5000);
+
+        assertArrayEquals(bytes, received.toByteArray());
+        assertEquals(20, tuner.getChunkSize());
+    }
+
+    @Test
+    public void read_returnsPrinterReply() throws Exception {
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = TcpConnectionTest.this.server.accept()) {
+                    byte[] query = new byte[3];
+                    int offset = 0;
+                    while (offset < 3) {
+                        offset += socket.getInputStream().read(query, offset, 3 - offset);
+                    }
+                    socket.getOutputStream().write(new byte[]{0x16});
+                    socket.getInputStream().read();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        printer.start();
+
+        TcpConnection connection = this.newConnection().connect();
+        assertTrue(connection.canRead());
+        assertArrayEquals(new byte[0], connection.read(50));
+        connection.write(new byte[]{0x10, 0x04, 0x01});
+        connection.send();
+        assertArrayEquals(new byte[]{0x16}, connection.read(2000));
+        connection.disconnect();
+        printer.join(5000);
+    }
+
+    @Test(expected = EscPosConnectionException.class)
+    public void connect_failsWithoutPrinter() throws Exception {
+        int port = this.server.getLocalPort();
+        this.server.close();
+        new TcpConnection(InetAddress.getLoopbackAddress().getHostAddress(), port, 500).connect();
+    }
+}
@@ -0,0 +1,104 @@
+package com.dantsu.escposprinter.connection.tcp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TcpPrintersDiscovery against loopback stand-in printers.
+ */
+public class TcpPrintersDiscoveryTest {
+
+    private ServerSocket printer;
+    private Thread printerThread;
+
+    @Before
+    public void setUp() throws IOException {
+        this.printer = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+        this.printerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = TcpPrintersDiscoveryTest.this.printer.accept();
+                        InputStream in = socket.getInputStream();
+                        byte[] query = new byte[3];
+                        int offset = 0;
+                        int read;
+                        while (offset < 3 && (read = in.read(query, offset, 3 - offset)) != -1) {
+                            offset += read;
+                        }
+                        if (offset == 3 && query[0] == 0x10 && query[1] == 0x04) {
+                            socket.getOutputStream().write(0x16);
+                        }
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        this.printerThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.printer.close();
+        this.printerThread.join(2000);
+    }
+
+    private List<InetSocketAddress> targets() throws IOException {
+        ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        int closedPort = closed.getLocalPort();
+        closed.close();
+
+        ArrayList<InetSocketAddress> targets = new ArrayList<InetSocketAddress>();
+        targets.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), closedPort));
+        targets.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.printer.getLocalPort()));
+        return targets;
+    }
+
+    @Test
+    public void scan_findsListeningPrinterOnly() throws Exception {
+        long start = System.currentTimeMillis();
+        List<TcpPrintersDiscovery.TcpPrinter> printers = new TcpPrintersDiscovery(null)
+                .setTimeBudget(3000)
+                .scan(this.targets(), null);
+
+        assertEquals(1, printers.size());
+        assertEquals(this.printer.getLocalPort(), printers.get(0).getConnection().getPort());
+        assertFalse(printers.get(0).isStatusConfirmed());
+        assertTrue(printers.get(0).getRtt() >= 0);
+        // Without the probe, the scan ends as soon as every address answered.
+        assertTrue(System.currentTimeMillis() - start < 2500);
+    }
+
+    @Test
+    public void scan_confirmsPrinterWithStatusProbe() throws Exception {
+        final ArrayList<TcpPrintersDiscovery.TcpPrinter> notified = new ArrayList<TcpPrintersDiscovery.TcpPrinter>();
+        List<TcpPrintersDiscovery.TcpPrinter> printers = new TcpPrintersDiscovery(null)
+                .setTimeBudget(1000)
+                .setStatusProbe(true)
+                .scan(this.targets(), new TcpPrintersDiscovery.OnPrinterFoundListener() {
+                    @Override
+                    public void onPrinterFound(TcpPrintersDiscovery.TcpPrinter printer) {
+                        notified.add(printer);
+                    }
+                });
+
+        assertEquals(1, printers.size());
+        assertTrue(printers.get(0).isStatusConfirmed());
+        assertEquals(1, notified.size());
+    }
+}
@@ -0,0 +1,179 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class UsbOutputStreamTest {
+
+    /**
+     * Printer endpoint ending the transfers in order while it reads. When it stops reading, the transfers in flight
+     * never end, and a cancelled transfer is given back only if loseCancelled is false.
+     */
+    private static class FakeTransport implements UsbOutputStream.Transport {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final ArrayDeque<UsbOutputStream.Transfer> inFlight = new ArrayDeque<UsbOutputStream.Transfer>();
+        private final ArrayDeque<UsbOutputStream.Transfer> cancelled = new ArrayDeque<UsbOutputStream.Transfer>();
+        private final ArrayList<Integer> transferLengths = new ArrayList<Integer>();
+        private boolean reading = true;
+        private boolean loseCancelled = false;
+        private int maxInFlight = 0;
+        private int initialized = 0;
+        private int released = 0;
+
+        @Override
+        public boolean initialize(UsbOutputStream.Transfer transfer) {
+            this.initialized++;
+            return true;
+        }
+
+        @Override
+        public boolean queue(UsbOutputStream.Transfer transfer) {
+            assertEquals(transfer.length, transfer.buffer.remaining());
+            this.inFlight.add(transfer);
+            this.transferLengths.add(transfer.length);
+            this.maxInFlight = Math.max(this.maxInFlight, this.inFlight.size());
+            return true;
+        }
+
+        @Override
+        public UsbOutputStream.Transfer requestWait(int timeout) throws TimeoutException {
+            if (!this.cancelled.isEmpty()) {
+                return this.cancelled.poll();
+            }
+            if (!this.reading || this.inFlight.isEmpty()) {
+                if (timeout == 0) {
+                    throw new IllegalStateException("requestWait() would wait forever");
+                }
+                throw new TimeoutException();
+            }
+            UsbOutputStream.Transfer transfer = this.inFlight.poll();
+            byte[] bytes = new byte[transfer.length];
+            transfer.buffer.get(bytes);
+            this.received.write(bytes, 0, bytes.length);
+            return transfer;
+        }
+
+        @Override
+        public void cancel(UsbOutputStream.Transfer transfer) {
+            if (this.inFlight.remove(transfer) && !this.loseCancelled) {
+                this.cancelled.add(transfer);
+            }
+        }
+
+        @Override
+        public void release(UsbOutputStream.Transfer transfer) {
+            this.released++;
+        }
+
+        @Override
+        public boolean hasRequestWaitTimeout() {
+            return true;
+        }
+
+        @Override
+        public int bulkTransfer(byte[] bytes, int offset, int length, int timeout) {
+            throw new IllegalStateException("Not used with a requestWait() timeout");
+        }
+
+        @Override
+        public int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout) {
+            // GET_STATUS : the endpoint is not halted
+            return length;
+        }
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i * 7);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void write_splitsOnMaxPacketSizeAndKeepsTheRequestsCountInFlight() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        UsbOutputStream stream = new UsbOutputStream(transport, 0x01, 48, 2);
+        byte[] bytes = UsbOutputStreamTest.bytes(40000, 3);
+
+        stream.write(bytes);
+        stream.flush();
+
+        // 16384 / 48 = 341 packets of 48 bytes per transfer
+        assertEquals(3, transport.transferLengths.size());
+        assertEquals(16368, (int) transport.transferLengths.get(0));
+        assertEquals(16368, (int) transport.transferLengths.get(1));
+        assertEquals(40000 - 2 * 16368, (int) transport.transferLengths.get(2));
+        assertEquals(2, transport.maxInFlight);
+        assertEquals(2, transport.initialized);
+        assertEquals(40000, stream.getBytesWritten());
+        assertArrayEquals(bytes, transport.received.toByteArray());
+
+        // The pool is whole again : the next writes reuse the same requests
+        byte[] more = UsbOutputStreamTest.bytes(100, 5);
+        stream.write(more);
+        stream.write(more);
+        stream.flush();
+        assertEquals(40200, stream.getBytesWritten());
+        assertEquals(2, transport.initialized);
+
+        stream.close();
+        assertEquals(2, transport.released);
+    }
+
+    @Test
+    public void write_timesOutWhenThePrinterStopsReading() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        UsbOutputStream stream = new UsbOutputStream(transport, 0x01, 64, 2).setWriteTimeout(100);
+
+        stream.write(UsbOutputStreamTest.bytes(16384, 0));
+        transport.reading = false;
+        try {
+            stream.write(UsbOutputStreamTest.bytes(3 * 16384, 0));
+            fail("write() must fail when the printer does not read");
+        } catch (InterruptedIOException e) {
+            assertEquals(0, e.bytesTransferred);
+        }
+
+        // The cancelled transfers are back in the pool
+        transport.reading = true;
+        byte[] bytes = UsbOutputStreamTest.bytes(5 * 16384, 9);
+        stream.write(bytes);
+        stream.flush();
+        assertEquals(2, transport.initialized);
+        assertEquals(5 * 16384, stream.getBytesWritten());
+    }
+
+    @Test
+    public void write_replacesTheRequestsLostAfterACancel() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        UsbOutputStream stream = new UsbOutputStream(transport, 0x01, 64, 2).setWriteTimeout(100);
+
+        transport.reading = false;
+        transport.loseCancelled = true;
+        try {
+            stream.write(UsbOutputStreamTest.bytes(3 * 16384, 0));
+            fail("write() must fail when the printer does not read");
+        } catch (InterruptedIOException e) {
+            assertEquals(0, e.bytesTransferred);
+        }
+        assertEquals(2, transport.released);
+        assertEquals(4, transport.initialized);
+
+        // Without the replaced requests, this write would wait for a transfer that is not in flight
+        transport.reading = true;
+        transport.received.reset();
+        byte[] bytes = UsbOutputStreamTest.bytes(3 * 16384 + 10, 1);
+        stream.write(bytes);
+        stream.flush();
+        assertEquals(2, transport.maxInFlight);
+        assertArrayEquals(bytes, transport.received.toByteArray());
+    }
+}
@@ -0,0 +1,112 @@
+package com.dantsu.escposprinter.connection.usb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class UsbSerialDriverTest {
+
+    /**
+     * Adapter recording the control transfers and answering the IN requests with a fixed reply.
+     */
+    private static class FakeTransport implements UsbSerialDriver.Transport {
+        private final ArrayList<int[]> requests = new ArrayList<int[]>();
+        private final ArrayList<byte[]> data = new ArrayList<byte[]>();
+        private byte[] reply = new byte[]{0, 0};
+        private byte[] interrupt = null;
+
+        @Override
+        public int controlTransfer(int requestType, int request, int value, int index, byte[] buffer, int length, int timeout) {
+            this.requests.add(new int[]{requestType, request, value, index});
+            if ((requestType & 0x80) != 0) {
+                System.arraycopy(this.reply, 0, buffer, 0, Math.min(length, this.reply.length));
+                this.data.add(null);
+            } else {
+                this.data.add(buffer != null ? buffer.clone() : null);
+            }
+            return length;
+        }
+
+        @Override
+        public int readInterrupt(byte[] buffer, int length, int timeout) {
+            if (this.interrupt == null) {
+                return -1;
+            }
+            System.arraycopy(this.interrupt, 0, buffer, 0, this.interrupt.length);
+            this.interrupt = null;
+            return buffer.length;
+        }
+    }
+
+    @Test
+    public void ch34x_writesBaudRateAndLineControlRegisters() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        Ch34xSerialDriver driver = new Ch34xSerialDriver();
+        driver.open(transport);
+        driver.setLineCoding(9600, 8, UsbSerialDriver.STOP_BITS_1, UsbSerialDriver.PARITY_NONE);
+
+        assertArrayEquals(new int[]{0xC0, 0x5F, 0, 0}, transport.requests.get(0));
+        assertArrayEquals(new int[]{0x40, 0xA1, 0, 0}, transport.requests.get(1));
+        assertArrayEquals(new int[]{0x40, 0x9A, 0x1312, 0xB282}, transport.requests.get(2));
+        assertArrayEquals(new int[]{0x40, 0x9A, 0x0F2C, 0x0C}, transport.requests.get(3));
+        assertArrayEquals(new int[]{0x40, 0x9A, 0x2518, 0xC3}, transport.requests.get(4));
+
+        driver.setControlLines(true, true);
+        assertArrayEquals(new int[]{0x40, 0xA4, 0xFF9F, 0}, transport.requests.get(5));
+
+        // Active low : CTS asserted, the other lines not
+        transport.reply = new byte[]{(byte) 0xFE, 0};
+        assertEquals(UsbSerialDriver.MODEM_STATUS_CTS, driver.getModemStatus());
+        transport.reply = new byte[]{(byte) 0xFF, 0};
+        assertEquals(0, driver.getModemStatus());
+    }
+
+    @Test
+    public void ftdi_setsDivisorAndRemovesStatusBytes() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        FtdiSerialDriver driver = new FtdiSerialDriver(0, false, 4);
+        driver.open(transport);
+        driver.setLineCoding(9600, 8, UsbSerialDriver.STOP_BITS_1, UsbSerialDriver.PARITY_EVEN);
+
+        assertArrayEquals(new int[]{0x40, 0x00, 0, 0}, transport.requests.get(0));
+        assertArrayEquals(new int[]{0x40, 0x03, 0x4138, 0}, transport.requests.get(1));
+        assertArrayEquals(new int[]{0x40, 0x04, 0x0208, 0}, transport.requests.get(2));
+
+        transport.reply = new byte[]{0x11, 0x60};
+        assertEquals(UsbSerialDriver.MODEM_STATUS_CTS, driver.getModemStatus());
+
+        byte[] received = {0x11, 0x60, 'a', 'b', 0x11, 0x60, 'c', 'd', 0x11, 0x60};
+        assertEquals(4, driver.filterInput(received, received.length));
+        assertArrayEquals(new byte[]{'a', 'b', 'c', 'd'}, Arrays.copyOf(received, 4));
+    }
+
+    @Test
+    public void cdcAcm_sendsLineCodingToTheControlInterface() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        CdcAcmSerialDriver driver = new CdcAcmSerialDriver(2);
+        driver.open(transport);
+        driver.setLineCoding(115200, 8, UsbSerialDriver.STOP_BITS_2, UsbSerialDriver.PARITY_NONE);
+        driver.setControlLines(true, false);
+
+        assertArrayEquals(new int[]{0x21, 0x20, 0, 2}, transport.requests.get(0));
+        assertArrayEquals(new byte[]{0x00, (byte) 0xC2, 0x01, 0x00, 2, 0, 8}, transport.data.get(0));
+        assertArrayEquals(new int[]{0x21, 0x22, 0x01, 2}, transport.requests.get(1));
+        assertEquals(-1, driver.getModemStatus());
+    }
+
+    @Test
+    public void pl2303_keepsTheLastModemStatusReceived() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        Pl2303SerialDriver driver = new Pl2303SerialDriver(true);
+        driver.open(transport);
+        assertArrayEquals(new int[]{0x40, 0x01, 2, 0x44}, transport.requests.get(transport.requests.size() - 1));
+
+        assertEquals(UsbSerialDriver.MODEM_STATUS_CTS | UsbSerialDriver.MODEM_STATUS_DSR, driver.getModemStatus());
+        transport.interrupt = new byte[]{(byte) 0xA1, 0x20, 0, 0, 0, 0, 0x02, 0, 0x02, 0};
+        assertEquals(UsbSerialDriver.MODEM_STATUS_DSR, driver.getModemStatus());
+        assertEquals(UsbSerialDriver.MODEM_STATUS_DSR, driver.getModemStatus());
+    }
+}
@@ -0,0 +1,28 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.connection.DeviceConnection;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Connection keeping the bytes sent, without pacing, for the tests and the benchmark of the parser.
+ */
+class CaptureDeviceConnection extends DeviceConnection {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    CaptureDeviceConnection() {
+        this.timingModel = null;
+    }
+
+    @Override
+    public DeviceConnection connect() {
+        this.outputStream = this.sent;
+        return this;
+    }
+
+    @Override
+    public DeviceConnection disconnect() {
+        this.outputStream = null;
+        return this;
+    }
+}
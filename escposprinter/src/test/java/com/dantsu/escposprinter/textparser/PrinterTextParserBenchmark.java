@@ -0,0 +1,139 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
+import com.dantsu.escposprinter.EscPosPrinter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JMH benchmark of the formatted text tokenization on large receipts.
+ * <p>
+ * <code>legacyTokenize</code> reproduces the previous tokenization (regex split of each line and substring slicing
+ * of columns and tags), <code>lexerTokenize</code> does the same work with PrinterTextParserLexer and
+ * <code>parse</code> and <code>parseParallel</code> measure the complete parser.
+ * <p>
+ * Run it with the main method from the IDE or the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterTextParserBenchmark {
+
+    private static final String RECEIPT_ITEM =
+            "[L]<b>BEAUTIFUL SHIRT</b>[R]9.99e\n" +
+            "[L]  + Size : S\n" +
+            "[L]<font size='tall' color='bg-black'>AWESOME HAT</font>[C]x2[R]<u type='double'>24.99e</u>\n" +
+            "[C]--------------------------------\n" +
+            "[R]TOTAL PRICE :[R]<s>34.98e</s>\n";
+
+    @Param({"100", "2000"})
+    public int items;
+
+    private String text;
+    private EscPosPrinter printer;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder text = new StringBuilder("[C]<u><font size='big'>ORDER N°045</font></u>\n");
+        for (int i = 0; i < this.items; i++) {
+            text.append(PrinterTextParserBenchmark.RECEIPT_ITEM);
+        }
+        text.append("[C]<barcode type='ean13' height='10'>831254784551</barcode>\n");
+        this.text = text.toString();
+        this.printer = new EscPosPrinter(new CaptureDeviceConnection(), 203, 48f, 32, new EscPosCharsetEncoding("windows-1252", 16));
+    }
+
+    @Benchmark
+    public void legacyTokenize(Blackhole blackhole) {
+        for (String line : this.text.split("\n|\r\n")) {
+            Matcher matcher = Pattern.compile(PrinterTextParser.getRegexAlignTags()).matcher(line);
+            ArrayList<String> columns = new ArrayList<>();
+            int lastPosition = 0;
+            while (matcher.find()) {
+                if (matcher.start() > 0) {
+                    columns.add(line.substring(lastPosition, matcher.start()));
+                }
+                lastPosition = matcher.start();
+            }
+            columns.add(line.substring(lastPosition));
+
+            for (String column : columns) {
+                if (column.length() > 2) {
+                    blackhole.consume(column.substring(0, 3).toUpperCase());
+                    column = column.substring(3);
+                }
+                int offset = 0;
+                while (true) {
+                    int openTagIndex = column.indexOf("<", offset), closeTagIndex = -1;
+                    if (openTagIndex != -1) {
+                        closeTagIndex = column.indexOf(">", openTagIndex);
+                    } else {
+                        openTagIndex = column.length();
+                    }
+                    blackhole.consume(column.substring(offset, openTagIndex));
+                    if (closeTagIndex == -1) {
+                        break;
+                    }
+                    closeTagIndex++;
+                    PrinterTextParserTag tag = new PrinterTextParserTag(column.substring(openTagIndex, closeTagIndex));
+                    blackhole.consume(PrinterTextParser.isTagTextFormat(tag.getTagName()));
+                    offset = closeTagIndex;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void lexerTokenize(Blackhole blackhole) {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer(this.text);
+        int token;
+        while ((token = lexer.next()) != PrinterTextParserLexer.TOKEN_EOF) {
+            if (token == PrinterTextParserLexer.TOKEN_TAG_OPEN || token == PrinterTextParserLexer.TOKEN_TAG_CLOSE) {
+                blackhole.consume(PrinterTextParser.isTagTextFormat(lexer));
+            } else {
+                blackhole.consume(lexer.getTokenEnd());
+            }
+        }
+    }
+
+    @Benchmark
+    public PrinterTextParserLine[] parse() throws Exception {
+        return new PrinterTextParser(this.printer).setFormattedText(this.text).parse();
+    }
+
+    @Benchmark
+    public PrinterTextParserLine[] parseParallel() throws Exception {
+        return new PrinterTextParser(this.printer).setFormattedText(this.text).parse(ForkJoinPool.commonPool());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                new OptionsBuilder()
+                        .include(PrinterTextParserBenchmark.class.getSimpleName())
+                        .build()
+        ).run();
+    }
+}
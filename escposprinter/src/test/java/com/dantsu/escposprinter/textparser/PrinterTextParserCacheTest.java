@@ -0,0 +1,89 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
+import com.dantsu.escposprinter.EscPosPrinter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserCacheTest {
+
+    private static EscPosPrinter newPrinter(int nbrCharactersPerLine, String charsetName) throws Exception {
+        return new EscPosPrinter(new CaptureDeviceConnection(), 203, 48f, nbrCharactersPerLine, charsetName != null ? new EscPosCharsetEncoding(charsetName, 16) : null);
+    }
+
+    private static PrinterTextParserCache.CachedLine line() {
+        return new PrinterTextParserCache.CachedLine(new IPrinterTextParserElement[0][], new byte[0]);
+    }
+
+    @Test
+    public void put_removesTheLeastRecentlyUsedLine() {
+        PrinterTextParserCache cache = new PrinterTextParserCache(2, 100);
+        PrinterTextParserCache.Key a = new PrinterTextParserCache.Key("a", new byte[]{1}, 32, null),
+                b = new PrinterTextParserCache.Key("b", new byte[]{1}, 32, null),
+                c = new PrinterTextParserCache.Key("c", new byte[]{1}, 32, null);
+
+        cache.put(a, PrinterTextParserCacheTest.line());
+        cache.put(b, PrinterTextParserCacheTest.line());
+        assertNotNull(cache.get(a));
+        cache.put(c, PrinterTextParserCacheTest.line());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void key_comparesTextStyleStateWidthAndCharset() {
+        PrinterTextParserCache.Key key = new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 32, "windows-1252");
+
+        assertEquals(key, new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 32, "windows-1252"));
+        assertEquals(key.hashCode(), new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 32, "windows-1252").hashCode());
+        assertNotEquals(key, new PrinterTextParserCache.Key("[C]x", new byte[]{0, 0, 0, 1, 0}, 32, "windows-1252"));
+        assertNotEquals(key, new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 1}, 32, "windows-1252"));
+        assertNotEquals(key, new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 48, "windows-1252"));
+        assertNotEquals(key, new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 32, "UTF-8"));
+        assertNotEquals(key, new PrinterTextParserCache.Key("[L]x", new byte[]{0, 0, 0, 1, 0}, 32, null));
+        assertEquals(new PrinterTextParserCache.Key("[L]x", new byte[0], 32, null), new PrinterTextParserCache.Key("[L]x", new byte[0], 32, null));
+    }
+
+    @Test
+    public void parseLine_reusesTheLinesOfTheSamePrinterSettingsOnly() throws Exception {
+        PrinterTextParserCache cache = new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, PrinterTextParserCache.DEFAULT_MAX_LINE_LENGTH);
+        String text = "[L]<b>Item</b>[R]1.00";
+
+        new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(32, "windows-1252")).setCache(cache).setFormattedText(text).parse();
+        assertEquals(0, cache.getHitCount());
+        new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(32, "windows-1252")).setCache(cache).setFormattedText(text).parse();
+        assertEquals(1, cache.getHitCount());
+
+        new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(48, "windows-1252")).setCache(cache).setFormattedText(text).parse();
+        new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(32, "UTF-8")).setCache(cache).setFormattedText(text).parse();
+        new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(32, "windows-1252")).setCache(cache).setFormattedText("<u>\n" + text).parse();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void parseLine_cachesTextLinesOnly() throws Exception {
+        PrinterTextParserCache cache = new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, 16);
+        String text = "[L]short line\n" +
+                "[L]a line longer than the maximum length\n" +
+                "[C]<barcode type='ean13' height='10'>831254784551</barcode>";
+
+        PrinterTextParserLine[] lines = new PrinterTextParser(PrinterTextParserCacheTest.newPrinter(32, "windows-1252")).setCache(cache).setFormattedText(text).parse();
+
+        assertEquals(3, lines.length);
+        assertEquals(1, cache.size());
+        assertTrue(lines[2].getColumns()[0].getElements()[0] instanceof PrinterTextParserBarcode);
+    }
+}
@@ -0,0 +1,136 @@
+package com.dantsu.escposprinter.textparser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserLexerTest {
+
+    /**
+     * Read all the tokens of a text as "type:text of the token".
+     */
+    private static ArrayList<String> tokens(PrinterTextParserLexer lexer) {
+        ArrayList<String> tokens = new ArrayList<String>();
+        int token;
+        while ((token = lexer.next()) != PrinterTextParserLexer.TOKEN_EOF) {
+            tokens.add(token + ":" + lexer.getSource().subSequence(lexer.getTokenStart(), lexer.getTokenEnd()));
+        }
+        return tokens;
+    }
+
+    @Test
+    public void next_readsAlignTagsTagsAttributesAndText() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("[L]<b>Hi</b>[R]<font size='big' color='red'>x</font>");
+
+        assertEquals(PrinterTextParserLexer.TOKEN_ALIGN, lexer.next());
+        assertEquals(PrinterTextParser.TAGS_ALIGN_LEFT, lexer.getAlign());
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN, lexer.next());
+        assertTrue(lexer.nameEquals("b"));
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT, lexer.next());
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_CLOSE, lexer.next());
+        assertEquals("b", lexer.getName());
+        assertEquals(PrinterTextParserLexer.TOKEN_ALIGN, lexer.next());
+        assertEquals(PrinterTextParser.TAGS_ALIGN_RIGHT, lexer.getAlign());
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN, lexer.next());
+        assertEquals("font", lexer.getName());
+        assertEquals(PrinterTextParserLexer.TOKEN_ATTRIBUTE, lexer.next());
+        assertEquals("size", lexer.getName());
+        assertEquals("big", lexer.getValue());
+        assertEquals(PrinterTextParserLexer.TOKEN_ATTRIBUTE, lexer.next());
+        assertEquals("color", lexer.getName());
+        assertTrue(lexer.valueEquals("red", false));
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT, lexer.next());
+        assertEquals("x", lexer.getSource().subSequence(lexer.getTokenStart(), lexer.getTokenEnd()));
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_CLOSE, lexer.next());
+        assertEquals(PrinterTextParserLexer.TOKEN_EOF, lexer.next());
+    }
+
+    @Test
+    public void next_alignTagsAreCaseInsensitiveOnlyAtTheStart() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("[c]A[c]B[R]C[l]");
+        assertEquals(PrinterTextParserLexer.TOKEN_ALIGN, lexer.next());
+        assertEquals(PrinterTextParser.TAGS_ALIGN_CENTER, lexer.getAlign());
+
+        ArrayList<String> tokens = PrinterTextParserLexerTest.tokens(lexer);
+        assertEquals(3, tokens.size());
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT + ":A[c]B", tokens.get(0));
+        assertEquals(PrinterTextParserLexer.TOKEN_ALIGN + ":[R]", tokens.get(1));
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT + ":C[l]", tokens.get(2));
+
+        lexer.reset("x[r]y", 1, 5);
+        assertEquals(PrinterTextParserLexer.TOKEN_ALIGN, lexer.next());
+        assertEquals(PrinterTextParser.TAGS_ALIGN_RIGHT, lexer.getAlign());
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT, lexer.next());
+        assertEquals(PrinterTextParserLexer.TOKEN_EOF, lexer.next());
+    }
+
+    @Test
+    public void next_lonelyOpeningBracketIsText() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("<b>1 < 2[X] and 3 <");
+        ArrayList<String> tokens = PrinterTextParserLexerTest.tokens(lexer);
+
+        assertEquals(2, tokens.size());
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN + ":<b>", tokens.get(0));
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT + ":1 < 2[X] and 3 <", tokens.get(1));
+    }
+
+    @Test
+    public void nameEquals_ignoresTheCaseOfTagNamesOnly() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("<FONT Size='big'></B>");
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN, lexer.next());
+        assertTrue(lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_FONT));
+        assertTrue(PrinterTextParser.isTagTextFormat(lexer));
+        assertEquals(PrinterTextParserLexer.TOKEN_ATTRIBUTE, lexer.next());
+        assertFalse(lexer.nameEquals(PrinterTextParser.ATTR_FORMAT_TEXT_FONT_SIZE));
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_CLOSE, lexer.next());
+        assertTrue(lexer.nameEquals(PrinterTextParser.TAGS_FORMAT_TEXT_BOLD));
+        assertTrue(PrinterTextParser.isTagTextFormat("/b"));
+        assertFalse(PrinterTextParser.isTagTextFormat("img"));
+    }
+
+    @Test
+    public void nextAttribute_readsTheAttributesOfTheCurrentTagOnly() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("<barcode type='ean13'  height='10' broken text='above'>123</barcode>");
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN, lexer.next());
+        assertTrue(lexer.nextAttribute());
+        assertEquals("type", lexer.getName());
+        assertEquals("ean13", lexer.getValue());
+        assertTrue(lexer.nextAttribute());
+        assertEquals("height", lexer.getName());
+        assertTrue(lexer.nextAttribute());
+        assertEquals("broken text", lexer.getName());
+        assertEquals("above", lexer.getValue());
+        assertFalse(lexer.nextAttribute());
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT, lexer.next());
+        assertEquals(lexer.getTagEnd(), lexer.getTokenStart());
+    }
+
+    @Test
+    public void seek_skipsThePendingAttributes() {
+        PrinterTextParserLexer lexer = new PrinterTextParserLexer("<u type='double'>x");
+
+        assertEquals(PrinterTextParserLexer.TOKEN_TAG_OPEN, lexer.next());
+        lexer.seek(lexer.getTokenStart() + 1);
+        ArrayList<String> tokens = PrinterTextParserLexerTest.tokens(lexer);
+
+        assertEquals(1, tokens.size());
+        assertEquals(PrinterTextParserLexer.TOKEN_TEXT + ":u type='double'>x", tokens.get(0));
+    }
+
+    @Test
+    public void regionEquals_comparesARangeOfTheSource() {
+        assertTrue(PrinterTextParserLexer.regionEquals("[L]<Img>", 4, 7, "img", true));
+        assertFalse(PrinterTextParserLexer.regionEquals("[L]<Img>", 4, 7, "img", false));
+        assertFalse(PrinterTextParserLexer.regionEquals("[L]<Img>", 4, 8, "img", true));
+        assertFalse(PrinterTextParserLexer.regionEquals("ab", 1, 4, "bcd", true));
+        assertEquals(3, PrinterTextParserLexer.indexOf("ab<d>", 'd', 0, 5));
+        assertEquals(-1, PrinterTextParserLexer.indexOf("ab<d>", 'd', 0, 3));
+    }
+}
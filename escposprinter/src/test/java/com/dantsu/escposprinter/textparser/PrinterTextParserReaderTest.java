@@ -0,0 +1,111 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
+import com.dantsu.escposprinter.EscPosPrinter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserReaderTest {
+
+    /**
+     * Reader giving at most 3 chars per read, like a slow stream.
+     */
+    private static class SlowReader extends StringReader {
+        SlowReader(String text) {
+            super(text);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+
+    private static PrinterTextParser newParser() throws Exception {
+        EscPosPrinter printer = new EscPosPrinter(new CaptureDeviceConnection(), 203, 48f, 32, new EscPosCharsetEncoding("windows-1252", 16));
+        return new PrinterTextParser(printer).setCache(null);
+    }
+
+    private static ArrayList<String> lines(PrinterTextParserReader reader) throws Exception {
+        ArrayList<String> lines = new ArrayList<String>();
+        while (reader.nextLine()) {
+            lines.add(reader.getLineSource().subSequence(reader.getLineStart(), reader.getLineEnd()).toString());
+        }
+        return lines;
+    }
+
+    private static ArrayList<String> linesOf(String text) throws Exception {
+        ArrayList<String> lines = PrinterTextParserReaderTest.lines(new PrinterTextParserReader(PrinterTextParserReaderTest.newParser(), text)),
+                readerLines = PrinterTextParserReaderTest.lines(new PrinterTextParserReader(PrinterTextParserReaderTest.newParser(), new SlowReader(text), 16));
+        assertEquals(lines, readerLines);
+        return lines;
+    }
+
+    @Test
+    public void nextLine_splitsOnLineFeedAndCarriageReturnLineFeed() throws Exception {
+        ArrayList<String> lines = PrinterTextParserReaderTest.linesOf("[L]a\r\n[L]b\n\r\n[C]c\rd\n[R]e");
+
+        assertEquals(5, lines.size());
+        assertEquals("[L]a", lines.get(0));
+        assertEquals("[L]b", lines.get(1));
+        assertEquals("", lines.get(2));
+        assertEquals("[C]c\rd", lines.get(3));
+        assertEquals("[R]e", lines.get(4));
+    }
+
+    @Test
+    public void nextLine_dropsTrailingEmptyLinesOnly() throws Exception {
+        ArrayList<String> lines = PrinterTextParserReaderTest.linesOf("\n\n[L]a\n\n\n[L]b\n\r\n\n");
+
+        assertEquals(6, lines.size());
+        assertEquals("", lines.get(0));
+        assertEquals("", lines.get(1));
+        assertEquals("[L]a", lines.get(2));
+        assertEquals("", lines.get(3));
+        assertEquals("", lines.get(4));
+        assertEquals("[L]b", lines.get(5));
+
+        assertEquals(1, PrinterTextParserReaderTest.linesOf("").size());
+        assertEquals(0, PrinterTextParserReaderTest.linesOf("\n\n").size());
+    }
+
+    @Test
+    public void nextLine_growsTheWindowForLongLines() throws Exception {
+        StringBuilder longLine = new StringBuilder("[L]");
+        for (int i = 0; i < 100; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        ArrayList<String> lines = PrinterTextParserReaderTest.linesOf("[C]short\r\n" + longLine + "\r\n[R]end");
+
+        assertEquals(3, lines.size());
+        assertEquals("[C]short", lines.get(0));
+        assertEquals(longLine.toString(), lines.get(1));
+        assertEquals("[R]end", lines.get(2));
+    }
+
+    @Test
+    public void readLine_keepsTheStylesFromOneLineToTheNext() throws Exception {
+        String text = "[L]<b>bold\n[L]still bold</b>\n[L]normal";
+        Reader source = new SlowReader(text);
+        PrinterTextParserReader reader = new PrinterTextParserReader(PrinterTextParserReaderTest.newParser(), source, 16);
+        PrinterTextParserLine[] expected = PrinterTextParserReaderTest.newParser().setFormattedText(text).parse();
+
+        for (PrinterTextParserLine expectedLine : expected) {
+            PrinterTextParserLine line = reader.readLine();
+            assertNotNull(line);
+            PrinterTextParserString expectedString = (PrinterTextParserString) expectedLine.getColumns()[0].getElements()[0],
+                    string = (PrinterTextParserString) line.getColumns()[0].getElements()[0];
+            assertEquals(expectedString.getText(), string.getText());
+            assertEquals(expectedString.getStyle(), string.getStyle());
+        }
+        assertNull(reader.readLine());
+        reader.close();
+    }
+}
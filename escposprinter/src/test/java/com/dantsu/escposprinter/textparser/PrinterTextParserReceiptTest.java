@@ -0,0 +1,173 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
+import com.dantsu.escposprinter.EscPosPrinter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Print the receipts of the test resources and compare what the printer prints with the output of the parser before
+ * the lexer, packed styles, cache and Reader rewrites (receipt-N.expected).
+ * <p>
+ * The bytes sent are not compared as is : the previous parser sent the style commands of empty texts and in another
+ * order. They are rendered like a printer does, each printed character with the styles in effect, see render().
+ */
+public class PrinterTextParserReceiptTest {
+
+    private static final int NBR_RECEIPTS = 3;
+
+    /**
+     * Render the ESC/POS commands sent by the library : the printed text with a {size,bold,underline,double strike,
+     * color,reverse,font} marker each time the style of the printed characters changes, and the other commands in [].
+     *
+     * @param bytes Bytes sent to the printer
+     * @return Rendered receipt
+     */
+    static String render(byte[] bytes) {
+        Charset charset = Charset.forName("windows-1252");
+        StringBuilder result = new StringBuilder();
+        int[] style = new int[7], printedStyle = null;
+        int i = 0;
+
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xFF;
+            if (b == 0x0A) {
+                result.append('\n');
+                i++;
+            } else if (b == 0x1B || b == 0x1D) {
+                int command = bytes[i + 1] & 0xFF;
+                if (b == 0x1B && command == 0x40) {
+                    style = new int[7];
+                    printedStyle = null;
+                    result.append("[reset]");
+                    i += 2;
+                } else if (b == 0x1B && command == 0x32) {
+                    result.append("[line spacing default]");
+                    i += 2;
+                } else if (b == 0x1D && command == 0x76) {
+                    int byteWidth = (bytes[i + 4] & 0xFF) + (bytes[i + 5] & 0xFF) * 256,
+                            height = (bytes[i + 6] & 0xFF) + (bytes[i + 7] & 0xFF) * 256,
+                            end = i + 8 + byteWidth * height;
+                    result.append("[image ").append(byteWidth).append('x').append(height).append(' ').append(PrinterTextParserReceiptTest.hex(bytes, i + 8, end)).append(']');
+                    i = end;
+                } else if (b == 0x1D && command == 0x6B) {
+                    int end = i + 4 + (bytes[i + 3] & 0xFF);
+                    result.append("[barcode ").append(bytes[i + 2] & 0xFF).append(' ').append(new String(bytes, i + 4, end - i - 4, charset)).append(']');
+                    i = end;
+                } else if (b == 0x1D && command == 0x28) {
+                    int end = i + 5 + (bytes[i + 3] & 0xFF) + (bytes[i + 4] & 0xFF) * 256;
+                    result.append("[qrcode ").append(PrinterTextParserReceiptTest.hex(bytes, i + 5, end)).append(']');
+                    i = end;
+                } else {
+                    int value = bytes[i + 2] & 0xFF;
+                    if (b == 0x1D && command == 0x21) {
+                        style[0] = value;
+                    } else if (b == 0x1B && command == 0x45) {
+                        style[1] = value;
+                    } else if (b == 0x1B && command == 0x2D) {
+                        style[2] = value;
+                    } else if (b == 0x1B && command == 0x47) {
+                        style[3] = value;
+                    } else if (b == 0x1B && command == 0x72) {
+                        style[4] = value;
+                    } else if (b == 0x1D && command == 0x42) {
+                        style[5] = value;
+                    } else if (b == 0x1B && command == 0x4D) {
+                        style[6] = value;
+                    } else if (b == 0x1B && command == 0x74) {
+                        // Charset, the text is decoded with windows-1252
+                    } else if (b == 0x1B && command == 0x61) {
+                        result.append("[align ").append(value).append(']');
+                    } else if (b == 0x1B && (command == 0x33 || command == 0x4A)) {
+                        result.append(command == 0x33 ? "[line spacing " : "[feed ").append(value).append(']');
+                    } else if (b == 0x1D && (command == 0x48 || command == 0x77 || command == 0x68)) {
+                        result.append("[barcode setting ").append(Integer.toHexString(command)).append(' ').append(value).append(']');
+                    } else {
+                        throw new IllegalArgumentException("Unknown command " + PrinterTextParserReceiptTest.hex(bytes, i, i + 3) + " at " + i);
+                    }
+                    i += 3;
+                }
+            } else {
+                int end = i;
+                while (end < bytes.length && (bytes[end] & 0xFF) != 0x0A && (bytes[end] & 0xFF) != 0x1B && (bytes[end] & 0xFF) != 0x1D) {
+                    end++;
+                }
+                if (printedStyle == null || !Arrays.equals(printedStyle, style)) {
+                    printedStyle = style.clone();
+                    result.append('{');
+                    for (int j = 0; j < style.length; j++) {
+                        result.append(j > 0 ? "," : "").append(style[j]);
+                    }
+                    result.append('}');
+                }
+                result.append(new String(bytes, i, end - i, charset));
+                i = end;
+            }
+        }
+        return result.toString();
+    }
+
+    private static String hex(byte[] bytes, int start, int end) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            hex.append(String.format("%02X", bytes[i] & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private static String readResource(String name) throws Exception {
+        InputStream input = PrinterTextParserReceiptTest.class.getResourceAsStream(name);
+        assertNotNull(name, input);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toString("UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    private static EscPosPrinter newPrinter(CaptureDeviceConnection connection) throws Exception {
+        return new EscPosPrinter(connection, 203, 48f, 32, new EscPosCharsetEncoding("windows-1252", 16));
+    }
+
+    @Test
+    public void printFormattedText_printsLikeThePreviousParser() throws Exception {
+        PrinterTextParserCache.getDefault().clear();
+        for (int n = 1; n <= PrinterTextParserReceiptTest.NBR_RECEIPTS; n++) {
+            String text = PrinterTextParserReceiptTest.readResource("receipt-" + n + ".txt"),
+                    expected = PrinterTextParserReceiptTest.readResource("receipt-" + n + ".expected");
+
+            // Twice, the second time with the lines in the default cache
+            for (int i = 0; i < 2; i++) {
+                CaptureDeviceConnection connection = new CaptureDeviceConnection();
+                PrinterTextParserReceiptTest.newPrinter(connection).printFormattedText(text);
+                assertEquals("receipt-" + n, expected, PrinterTextParserReceiptTest.render(connection.sent.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void printFormattedText_readerPrintsLikeThePreviousParser() throws Exception {
+        for (int n = 1; n <= PrinterTextParserReceiptTest.NBR_RECEIPTS; n++) {
+            String text = PrinterTextParserReceiptTest.readResource("receipt-" + n + ".txt"),
+                    expected = PrinterTextParserReceiptTest.readResource("receipt-" + n + ".expected");
+
+            CaptureDeviceConnection connection = new CaptureDeviceConnection();
+            PrinterTextParserReceiptTest.newPrinter(connection).printFormattedText(new StringReader(text));
+            assertEquals("receipt-" + n, expected, PrinterTextParserReceiptTest.render(connection.sent.toByteArray()));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosPrinterCommands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserStyleTest {
+
+    private static final int[] MAX_CODES = {
+            PrinterTextParserStyle.SIZE_BIG_6,
+            PrinterTextParserStyle.ON,
+            PrinterTextParserStyle.ON,
+            PrinterTextParserStyle.ON,
+            PrinterTextParserStyle.UNDERLINE_LARGE,
+            PrinterTextParserStyle.ON,
+            PrinterTextParserStyle.ON,
+            PrinterTextParserStyle.FONT_E
+    };
+
+    @Test
+    public void set_changesOnlyItsField() {
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            int style = PrinterTextParserStyle.set(PrinterTextParserStyle.DEFAULT, field, PrinterTextParserStyleTest.MAX_CODES[field]);
+            for (int other = 0; other < PrinterTextParserStyle.FIELDS_COUNT; other++) {
+                assertEquals(other == field ? PrinterTextParserStyleTest.MAX_CODES[field] : 0, PrinterTextParserStyle.get(style, other));
+            }
+        }
+
+        int style = PrinterTextParserStyle.DEFAULT;
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            style = PrinterTextParserStyle.set(style, field, PrinterTextParserStyleTest.MAX_CODES[field]);
+        }
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            assertEquals(PrinterTextParserStyleTest.MAX_CODES[field], PrinterTextParserStyle.get(style, field));
+            assertEquals(0, PrinterTextParserStyle.get(PrinterTextParserStyle.set(style, field, 0), field));
+        }
+    }
+
+    @Test
+    public void getCode_translatesTheCommandsBothWays() {
+        assertEquals(PrinterTextParserStyle.SIZE_BIG_3, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_SIZE, EscPosPrinterCommands.TEXT_SIZE_BIG_3));
+        assertEquals(PrinterTextParserStyle.SIZE_DOUBLE_WIDTH, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_SIZE, new byte[]{0x1D, 0x21, 0x10}));
+        assertEquals(PrinterTextParserStyle.DEFAULT, PrinterTextParserStyle.getCode(PrinterTextParserStyle.FIELD_SIZE, new byte[]{0x1D, 0x21, 0x77}));
+
+        int style = PrinterTextParserStyle.fromCommands(
+                EscPosPrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT,
+                EscPosPrinterCommands.TEXT_COLOR_RED,
+                EscPosPrinterCommands.TEXT_COLOR_REVERSE_ON,
+                EscPosPrinterCommands.TEXT_WEIGHT_BOLD,
+                EscPosPrinterCommands.TEXT_UNDERLINE_ON,
+                EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_ON,
+                EscPosPrinterCommands.TEXT_FONT_C
+        );
+        assertArrayEquals(EscPosPrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_SIZE));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_COLOR_RED, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_COLOR));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_COLOR_REVERSE_ON, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_REVERSE_COLOR));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_WEIGHT_BOLD, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_BOLD));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_UNDERLINE_ON, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_UNDERLINE));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_ON, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE));
+        assertArrayEquals(EscPosPrinterCommands.TEXT_FONT_C, PrinterTextParserStyle.getCommand(style, PrinterTextParserStyle.FIELD_FONT));
+        assertEquals(PrinterTextParserStyle.OFF, PrinterTextParserStyle.get(style, PrinterTextParserStyle.FIELD_STRIKETHROUGH));
+
+        assertEquals(PrinterTextParserStyle.DEFAULT, PrinterTextParserStyle.fromCommands(
+                EscPosPrinterCommands.TEXT_SIZE_NORMAL,
+                EscPosPrinterCommands.TEXT_COLOR_BLACK,
+                EscPosPrinterCommands.TEXT_COLOR_REVERSE_OFF,
+                EscPosPrinterCommands.TEXT_WEIGHT_NORMAL,
+                EscPosPrinterCommands.TEXT_UNDERLINE_OFF,
+                EscPosPrinterCommands.TEXT_DOUBLE_STRIKE_OFF,
+                EscPosPrinterCommands.TEXT_FONT_A
+        ));
+    }
+
+    @Test
+    public void paddingMask_keepsColorsUnderlineAndDoubleStrikeOnly() {
+        int style = PrinterTextParserStyle.DEFAULT;
+        for (int field = 0; field < PrinterTextParserStyle.FIELDS_COUNT; field++) {
+            style = PrinterTextParserStyle.set(style, field, PrinterTextParserStyleTest.MAX_CODES[field]);
+        }
+        int padding = style & PrinterTextParserStyle.PADDING_MASK;
+
+        assertEquals(PrinterTextParserStyle.ON, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_COLOR));
+        assertEquals(PrinterTextParserStyle.ON, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_REVERSE_COLOR));
+        assertEquals(PrinterTextParserStyle.UNDERLINE_LARGE, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_UNDERLINE));
+        assertEquals(PrinterTextParserStyle.ON, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_DOUBLE_STRIKE));
+
+        assertEquals(PrinterTextParserStyle.SIZE_NORMAL, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_SIZE));
+        assertEquals(PrinterTextParserStyle.OFF, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_BOLD));
+        assertEquals(PrinterTextParserStyle.OFF, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_STRIKETHROUGH));
+        assertEquals(PrinterTextParserStyle.FONT_A, PrinterTextParserStyle.get(padding, PrinterTextParserStyle.FIELD_FONT));
+    }
+
+    @Test
+    public void getWidthMultiplier_followsTheTextSize() {
+        assertEquals(1, PrinterTextParserStyle.getWidthMultiplier(PrinterTextParserStyle.DEFAULT));
+        assertEquals(1, PrinterTextParserStyle.getWidthMultiplier(PrinterTextParserStyle.set(0, PrinterTextParserStyle.FIELD_SIZE, PrinterTextParserStyle.SIZE_DOUBLE_HEIGHT)));
+        assertEquals(2, PrinterTextParserStyle.getWidthMultiplier(PrinterTextParserStyle.set(0, PrinterTextParserStyle.FIELD_SIZE, PrinterTextParserStyle.SIZE_DOUBLE_WIDTH)));
+        assertEquals(7, PrinterTextParserStyle.getWidthMultiplier(PrinterTextParserStyle.set(0, PrinterTextParserStyle.FIELD_SIZE, PrinterTextParserStyle.SIZE_BIG_6)));
+    }
+}
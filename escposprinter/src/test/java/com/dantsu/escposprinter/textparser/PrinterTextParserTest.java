@@ -0,0 +1,174 @@
+package com.dantsu.escposprinter.textparser;
+
+import com.dantsu.escposprinter.EscPosCharsetEncoding;
+import com.dantsu.escposprinter.EscPosPrinter;
+import com.dantsu.escposprinter.EscPosPrinterCommands;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserTest {
+
+    private static final String[] LINES = {
+            "[L]<b>BEAUTIFUL SHIRT</b>[R]9.99e",
+            "[L]  + Size : S",
+            "[L]<font size='tall' color='bg-black'>AWESOME HAT</font>[C]x2[R]<u type='double'>24.99e</u>",
+            "[C]--------------------------------",
+            "[R]TOTAL PRICE :[R]<s>34.98e</s>",
+            "[c]<b>open bold",
+            "[L]<u>open underline[R]<font font='b' color='red'>open font",
+            "[r]<font size='big-2' color='bg-red'>open big",
+            "<s>open strike [C] literal",
+            "close</b></u>",
+            "[C]</font>close font",
+            "[L]</s>close strike[R]1 < 2",
+            "<unknown>[L]tag</unknown>",
+    };
+
+    private static EscPosPrinter newPrinter() throws Exception {
+        return new EscPosPrinter(new CaptureDeviceConnection(), 203, 48f, 32, new EscPosCharsetEncoding("windows-1252", 16));
+    }
+
+    /**
+     * Generate a long text repeating a few lines. A quarter of the lines open tags without closing them, so the style
+     * stacks get deeper than 255.
+     */
+    static String generateText(long seed, int nbrLines) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < nbrLines; i++) {
+            if (random.nextInt(4) == 0) {
+                text.append("[L]<b><u type='double'><font color='bg-black'>x");
+            } else {
+                text.append(PrinterTextParserTest.LINES[random.nextInt(PrinterTextParserTest.LINES.length)]);
+            }
+            text.append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Print the lines the way EscPosPrinter does. The printer must be new, EscPosPrinterCommands skips the style commands
+     * already sent.
+     *
+     * @return Bytes sent to the printer
+     */
+    static byte[] print(EscPosPrinter printer, PrinterTextParserLine[] lines) throws Exception {
+        EscPosPrinterCommands commands = printer.getPrinterCommands();
+        commands.reset();
+        for (PrinterTextParserLine line : lines) {
+            IPrinterTextParserElement lastElement = null;
+            for (PrinterTextParserColumn column : line.getColumns()) {
+                for (IPrinterTextParserElement element : column.getElements()) {
+                    element.print(commands);
+                    lastElement = element;
+                }
+            }
+            if (lastElement instanceof PrinterTextParserString) {
+                commands.newLine();
+            }
+        }
+        commands.send();
+        return ((CaptureDeviceConnection) commands.getConnection()).sent.toByteArray();
+    }
+
+    static byte[] print(String text, PrinterTextParserCache cache) throws Exception {
+        EscPosPrinter printer = PrinterTextParserTest.newPrinter();
+        return PrinterTextParserTest.print(printer, new PrinterTextParser(printer).setCache(cache).setFormattedText(text).parse());
+    }
+
+    @Test
+    public void styleState_roundTripsStacksDeeperThan255() throws Exception {
+        EscPosPrinter printer = PrinterTextParserTest.newPrinter();
+        PrinterTextParser parser = new PrinterTextParser(printer);
+        for (int i = 0; i < 300; i++) {
+            parser.addTextBold(EscPosPrinterCommands.TEXT_WEIGHT_BOLD);
+        }
+        parser.addTextUnderline(EscPosPrinterCommands.TEXT_UNDERLINE_LARGE);
+        byte[] state = parser.saveStyleState();
+
+        PrinterTextParser restored = new PrinterTextParser(printer).restoreStyleState(state);
+        assertEquals(parser.getStyle(), restored.getStyle());
+        assertArrayEquals(state, restored.saveStyleState());
+
+        restored.dropLastTextUnderline();
+        for (int i = 0; i < 299; i++) {
+            restored.dropTextBold();
+        }
+        assertArrayEquals(EscPosPrinterCommands.TEXT_WEIGHT_BOLD, restored.getLastTextBold());
+        restored.dropTextBold();
+        assertEquals(PrinterTextParserStyle.DEFAULT, restored.getStyle());
+    }
+
+    @Test
+    public void parseLine_warmCachePrintsLikeColdCache() throws Exception {
+        for (long seed = 0; seed < 10; seed++) {
+            String text = PrinterTextParserTest.generateText(seed, 1500);
+            PrinterTextParserCache cache = new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, PrinterTextParserCache.DEFAULT_MAX_LINE_LENGTH);
+
+            byte[] expected = PrinterTextParserTest.print(text, null);
+            byte[] cold = PrinterTextParserTest.print(text, cache);
+            assertTrue(cache.getHitCount() > 0);
+            long hitCount = cache.getHitCount();
+            byte[] warm = PrinterTextParserTest.print(text, cache);
+
+            assertTrue(cache.getHitCount() > hitCount);
+            assertArrayEquals(expected, cold);
+            assertArrayEquals(expected, warm);
+        }
+    }
+
+    @Test
+    public void parseLine_sharedCacheKeepsTheStylesOfEachText() throws Exception {
+        PrinterTextParserCache cache = new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, PrinterTextParserCache.DEFAULT_MAX_LINE_LENGTH);
+        String plain = "[L]same line\n[L]next", bold = "<b>\n[L]same line\n[L]next";
+
+        byte[] plainExpected = PrinterTextParserTest.print(plain, null),
+                boldExpected = PrinterTextParserTest.print(bold, null);
+
+        assertArrayEquals(plainExpected, PrinterTextParserTest.print(plain, cache));
+        assertArrayEquals(boldExpected, PrinterTextParserTest.print(bold, cache));
+        assertArrayEquals(plainExpected, PrinterTextParserTest.print(plain, cache));
+        assertFalse(Arrays.equals(plainExpected, boldExpected));
+    }
+
+    @Test
+    public void parse_parallelGivesTheLinesOfSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed = 0; seed < 10; seed++) {
+                String text = PrinterTextParserTest.generateText(seed, PrinterTextParser.PARALLEL_LINES_PER_CHUNK * 5 + 17);
+                PrinterTextParserCache cache = seed % 2 == 0 ? null : new PrinterTextParserCache(PrinterTextParserCache.DEFAULT_MAX_LINES, PrinterTextParserCache.DEFAULT_MAX_LINE_LENGTH);
+
+                EscPosPrinter sequentialPrinter = PrinterTextParserTest.newPrinter(), parallelPrinter = PrinterTextParserTest.newPrinter();
+                PrinterTextParserLine[]
+                        sequential = new PrinterTextParser(sequentialPrinter).setCache(null).setFormattedText(text).parse(),
+                        parallel = new PrinterTextParser(parallelPrinter).setCache(cache).setFormattedText(text).parse(pool);
+
+                assertEquals(sequential.length, parallel.length);
+                for (int i = 0; i < sequential.length; i++) {
+                    PrinterTextParserColumn[] sequentialColumns = sequential[i].getColumns(), parallelColumns = parallel[i].getColumns();
+                    assertEquals(sequentialColumns.length, parallelColumns.length);
+                    for (int j = 0; j < sequentialColumns.length; j++) {
+                        IPrinterTextParserElement[] sequentialElements = sequentialColumns[j].getElements(), parallelElements = parallelColumns[j].getElements();
+                        assertEquals(sequentialElements.length, parallelElements.length);
+                        for (int k = 0; k < sequentialElements.length; k++) {
+                            PrinterTextParserString sequentialString = (PrinterTextParserString) sequentialElements[k],
+                                    parallelString = (PrinterTextParserString) parallelElements[k];
+                            assertEquals(sequentialString.getText(), parallelString.getText());
+                            assertEquals("Line " + i, sequentialString.getStyle(), parallelString.getStyle());
+                        }
+                    }
+                }
+                assertArrayEquals(PrinterTextParserTest.print(sequentialPrinter, sequential), PrinterTextParserTest.print(parallelPrinter, parallel));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}